@@ -468,6 +468,8 @@ public class BenchmarkRunner {
                         new SetPropertyTransientTest(),
                         new GetURITest(),
                         new ISO8601FormatterTest(),
+                        new RDBDocumentCodecTest(),
+                        new CommitQueueThroughputTest(),
                         new ReadBinaryPropertiesTest(),
                         new AccessAfterMoveTest()
                 )
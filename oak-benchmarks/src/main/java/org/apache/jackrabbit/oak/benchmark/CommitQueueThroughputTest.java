@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.jackrabbit.oak.plugins.document.DocumentNodeStore;
+import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+
+import static org.apache.jackrabbit.oak.plugins.document.DocumentNodeStoreBuilder.newDocumentNodeStoreBuilder;
+
+/**
+ * Measures the commit throughput of a DocumentNodeStore on a
+ * MemoryDocumentStore with many concurrent writers, where the time spent in
+ * the commit queue is significant. The number of writer threads is set with
+ * the system property {@code CommitQueueThroughputTest.writers}
+ * (default 64).
+ */
+public class CommitQueueThroughputTest extends AbstractTest<Object> {
+
+    private static final int WRITERS = Integer.getInteger("CommitQueueThroughputTest.writers", 64);
+
+    private static final int COMMITS_PER_WRITER = 100;
+
+    private DocumentNodeStore ns;
+
+    private int iteration;
+
+    @Override
+    protected void beforeSuite() throws Exception {
+        ns = newDocumentNodeStoreBuilder()
+                .setDocumentStore(new MemoryDocumentStore())
+                .setAsyncDelay(0).build();
+        NodeBuilder builder = ns.getRoot().builder();
+        for (int i = 0; i < WRITERS; i++) {
+            builder.child("writer-" + i);
+        }
+        ns.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+    }
+
+    @Override
+    protected void runTest() throws Exception {
+        final int it = iteration++;
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        List<Thread> writers = new ArrayList<>();
+        for (int i = 0; i < WRITERS; i++) {
+            final String name = "writer-" + i;
+            writers.add(new Thread(() -> {
+                try {
+                    for (int c = 0; c < COMMITS_PER_WRITER; c++) {
+                        NodeBuilder builder = ns.getRoot().builder();
+                        builder.child(name).setProperty("p", it * COMMITS_PER_WRITER + c);
+                        ns.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+                    }
+                } catch (Exception e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        }
+        for (Thread t : writers) {
+            t.start();
+        }
+        for (Thread t : writers) {
+            t.join();
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    @Override
+    protected void afterSuite() throws Exception {
+        ns.dispose();
+    }
+}
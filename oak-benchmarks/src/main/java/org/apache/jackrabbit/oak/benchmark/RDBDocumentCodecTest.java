@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jackrabbit.oak.plugins.document.Collection;
+import org.apache.jackrabbit.oak.plugins.document.NodeDocument;
+import org.apache.jackrabbit.oak.plugins.document.Revision;
+import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.rdb.RDBDocumentSerializer;
+import org.apache.jackrabbit.oak.plugins.document.rdb.RDBOptions;
+import org.apache.jackrabbit.oak.plugins.document.rdb.RDBRow;
+
+/**
+ * Encodes and decodes the BDATA column of RDBDocumentStore with the codec
+ * given by the system property {@code RDBDocumentCodecTest}: "gzip" (the
+ * default format without codec), "none", "deflate" or "lz4". The end-to-end
+ * effect on a database can be measured by running the Oak-RDB fixture with
+ * {@code -Dorg.apache.jackrabbit.oak.plugins.document.rdb.RDBOptions.BDATACODEC}.
+ */
+public class RDBDocumentCodecTest extends AbstractTest<Object> {
+
+    private static final String CODEC = System.getProperty("RDBDocumentCodecTest", "gzip");
+
+    private static final int COUNT = 1000;
+
+    private static final int REVISIONS = 200;
+
+    private final List<String> documents = new ArrayList<>();
+
+    private RDBDocumentSerializer ser;
+
+    private long bytes;
+
+    private long chars;
+
+    @Override
+    protected void beforeSuite() throws Exception {
+        RDBOptions options = new RDBOptions();
+        if (!"gzip".equals(CODEC)) {
+            options.bdataCodec(CODEC);
+        }
+        ser = new RDBDocumentSerializer(new MemoryDocumentStore(), options.getBdataCodec());
+        long time = System.currentTimeMillis();
+        for (int i = 0; i < COUNT; i++) {
+            StringBuilder sb = new StringBuilder("{\"_path\":\"/content/node-").append(i).append('"');
+            for (String key : new String[] { "_revisions", "_commitRoot", "title", "size" }) {
+                sb.append(",\"").append(key).append("\":{");
+                for (int r = 0; r < REVISIONS; r++) {
+                    Revision rev = new Revision(time + i * REVISIONS + r, 0, 1 + r % 3);
+                    sb.append(r == 0 ? "" : ",").append('"').append(rev).append("\":\"");
+                    sb.append(key.startsWith("_") ? "c" : "\\\"value " + i + "-" + r + "\\\"").append('"');
+                }
+                sb.append('}');
+            }
+            documents.add(sb.append('}').toString());
+        }
+    }
+
+    @Override
+    protected void runTest() throws Exception {
+        for (String json : documents) {
+            byte[] data = ser.asBytes(json);
+            RDBRow row = new RDBRow("1:/content", 0L, false, 1L, 1L, 0L, 2L, null, null, "\"blob\"", data);
+            NodeDocument doc = ser.fromRow(Collection.NODES, row);
+            Object revisions = doc.get("_revisions");
+            if (!(revisions instanceof Map) || ((Map<?, ?>) revisions).size() != REVISIONS) {
+                System.err.println("unexpected revisions: " + revisions);
+            }
+            bytes += data.length;
+            chars += json.length();
+        }
+    }
+
+    @Override
+    protected void afterSuite() throws Exception {
+        if (chars > 0) {
+            System.out.format("%s: %d%% of JSON size%n", CODEC, 100 * bytes / chars);
+        }
+    }
+}
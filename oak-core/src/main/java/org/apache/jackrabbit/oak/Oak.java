@@ -31,6 +31,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
@@ -84,6 +85,7 @@ import org.apache.jackrabbit.oak.plugins.index.nodetype.NodeTypeIndexProvider;
 import org.apache.jackrabbit.oak.plugins.index.property.OrderedPropertyIndexEditorProvider;
 import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexEditorProvider;
 import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexProvider;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexStatistics;
 import org.apache.jackrabbit.oak.plugins.index.property.jmx.PropertyIndexAsyncReindex;
 import org.apache.jackrabbit.oak.plugins.index.property.jmx.PropertyIndexAsyncReindexMBean;
 import org.apache.jackrabbit.oak.plugins.index.reference.ReferenceEditorProvider;
@@ -180,6 +182,8 @@ public class Oak {
 
     private Executor executor;
 
+    private Executor queryExecutor;
+
     private final Closer closer = Closer.create();
 
     private ContentRepository contentRepository;
@@ -240,6 +244,34 @@ public class Oak {
         return executor;
     }
 
+    /**
+     * Default {@code ExecutorService} used to read the index rows of union
+     * queries ahead. It uses at most one thread per processor, and rejects
+     * tasks if too many are waiting: the query then reads the rows itself.
+     * Idle threads are pruned after one minute.
+     * @return  fresh ExecutorService
+     */
+    public static ExecutorService defaultQueryExecutor() {
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(16 * threads), new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(@NotNull Runnable r) {
+                Thread thread = new Thread(r, createName());
+                thread.setDaemon(true);
+                return thread;
+            }
+
+            private String createName() {
+                return "oak-query-executor-" + counter.getAndIncrement();
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     private synchronized ScheduledExecutorService getScheduledExecutor() {
         if (scheduledExecutor == null) {
             scheduledExecutor = defaultScheduledExecutor();
@@ -257,6 +289,15 @@ public class Oak {
         return executor;
     }
 
+    private synchronized Executor getQueryExecutor() {
+        if (queryExecutor == null) {
+            ExecutorService executorService = defaultQueryExecutor();
+            queryExecutor = executorService;
+            closer.register(new ExecutorCloser(executorService));
+        }
+        return queryExecutor;
+    }
+
     private MBeanServer mbeanServer;
 
     private String defaultWorkspaceName = DEFAULT_WORKSPACE_NAME;
@@ -364,6 +405,12 @@ public class Oak {
      */
     private Map<String, Long> asyncTasks;
 
+    /**
+     * The delay in seconds between updates of the property index statistics,
+     * or 0 if they are not updated.
+     */
+    private long indexStatisticsDelay;
+
     private boolean failOnMissingIndexProvider;
 
     public Oak(NodeStore store) {
@@ -415,6 +462,20 @@ public class Oak {
         this.queryEngineSettings.setLimitInMemory(settings.getLimitInMemory());
         this.queryEngineSettings.setLimitReads(settings.getLimitReads());
         this.queryEngineSettings.setStrictPathRestriction(settings.getStrictPathRestriction());
+        if (settings instanceof QueryEngineSettings) {
+            this.queryEngineSettings.unwrap().setSpillThreshold(
+                    ((QueryEngineSettings) settings).getSpillThreshold());
+            this.queryEngineSettings.unwrap().setPlanCacheSize(
+                    ((QueryEngineSettings) settings).getPlanCacheSize());
+            this.queryEngineSettings.unwrap().setPlanCacheTtl(
+                    ((QueryEngineSettings) settings).getPlanCacheTtl());
+            this.queryEngineSettings.unwrap().setUnionParallelism(
+                    ((QueryEngineSettings) settings).getUnionParallelism());
+            this.queryEngineSettings.unwrap().setRowBatchSize(
+                    ((QueryEngineSettings) settings).getRowBatchSize());
+            this.queryEngineSettings.unwrap().setReplanFactor(
+                    ((QueryEngineSettings) settings).getReplanFactor());
+        }
         return this;
     }
 
@@ -576,6 +637,12 @@ public class Oak {
             newSettings.setFastQuerySize(queryEngineSettings.isFastQuerySize());
             newSettings.setLimitInMemory(queryEngineSettings.getLimitInMemory());
             newSettings.setLimitReads(queryEngineSettings.getLimitReads());
+            newSettings.setSpillThreshold(queryEngineSettings.unwrap().getSpillThreshold());
+            newSettings.setPlanCacheSize(queryEngineSettings.unwrap().getPlanCacheSize());
+            newSettings.setPlanCacheTtl(queryEngineSettings.unwrap().getPlanCacheTtl());
+            newSettings.setUnionParallelism(queryEngineSettings.unwrap().getUnionParallelism());
+            newSettings.setRowBatchSize(queryEngineSettings.unwrap().getRowBatchSize());
+            newSettings.setReplanFactor(queryEngineSettings.unwrap().getReplanFactor());
             queryEngineSettings = new AnnotatedQueryEngineSettings(newSettings);
         }
 
@@ -668,6 +735,20 @@ public class Oak {
         return this;
     }
 
+    /**
+     * Enable sampling the statistics of the property indexes in the
+     * background, so that the cost of conditions on skewed values can be
+     * estimated. See {@link PropertyIndexStatistics}.
+     *
+     * @param delayInSeconds the delay between updates
+     * @return this
+     */
+    public Oak withIndexStatistics(long delayInSeconds) {
+        checkState(delayInSeconds > 0, "delayInSeconds value must be > 0");
+        this.indexStatisticsDelay = delayInSeconds;
+        return this;
+    }
+
     @NotNull
     public Whiteboard getWhiteboard() {
         return this.whiteboard;
@@ -762,6 +843,11 @@ public class Oak {
                     PropertyIndexAsyncReindexMBean.TYPE, "async"));
         }
 
+        if (indexStatisticsDelay > 0) {
+            regs.add(WhiteboardUtils.scheduleWithFixedDelay(whiteboard,
+                    new PropertyIndexStatistics(store), indexStatisticsDelay, true, false));
+        }
+
         if (NodeCounter.USE_OLD_COUNTER) {
             regs.add(registerMBean(whiteboard, NodeCounterMBean.class,
                     new NodeCounterOld(store), NodeCounterMBean.TYPE, "nodeCounter"));
@@ -777,6 +863,9 @@ public class Oak {
                 queryEngineSettings.getQueryStats(), QueryStatsMBean.TYPE, "Oak Query Statistics (Extended)"));
 
         queryEngineSettings.unwrap().getQueryValidator().init(store);
+        if (queryEngineSettings.unwrap().getExecutor() == null) {
+            queryEngineSettings.unwrap().setExecutor(getQueryExecutor());
+        }
 
         // add index hooks later to prevent the OakInitializer to do excessive indexing
         commitHooks.add(new EditorHook(new IndexUpdateProvider(indexEditors, failOnMissingIndexProvider)));
@@ -785,6 +874,9 @@ public class Oak {
         for (Observer observer : observers) {
             regs.add(whiteboard.register(Observer.class, observer, emptyMap()));
         }
+        // the query plan cache is cleared when the index definitions change
+        regs.add(whiteboard.register(Observer.class,
+                queryEngineSettings.unwrap().getPlanCache(), emptyMap()));
 
         RepositoryManager repositoryManager = new RepositoryManager(whiteboard);
         regs.add(registerMBean(whiteboard, RepositoryManagementMBean.class, repositoryManager,
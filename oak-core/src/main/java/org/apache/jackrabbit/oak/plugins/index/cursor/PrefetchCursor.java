@@ -26,12 +26,15 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
+import org.apache.jackrabbit.oak.api.PropertyValue;
 import org.apache.jackrabbit.oak.api.Result.SizePrecision;
 import org.apache.jackrabbit.oak.commons.PathUtils;
 import org.apache.jackrabbit.oak.spi.query.Cursor;
 import org.apache.jackrabbit.oak.spi.query.IndexRow;
+import org.apache.jackrabbit.oak.spi.query.QueryIndex.OrderEntry;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
 import org.apache.jackrabbit.oak.spi.state.PrefetchNodeStore;
+import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -100,6 +103,11 @@ public class PrefetchCursor extends AbstractCursor {
         return prefetched.hasNext() || cursor.hasNext();
     }
 
+    @Override
+    public void setOrderThreshold(@NotNull OrderEntry orderEntry, @NotNull PropertyValue value) {
+        cursor.setOrderThreshold(orderEntry, value);
+    }
+
     private void prefetchRelative(Set<String> target, String p) {
         try {
             for (String r : prefetchRelative) {
@@ -156,6 +156,10 @@ class PropertyIndex implements QueryIndex {
         if (!isEnabled(definition, root)) {
             return true;
         }
+        if (filter.getExcludedIndexNames().contains(entry.getName())) {
+            // it returned many more rows than estimated
+            return true;
+        }
         PropertyRestriction indexName = filter.getPropertyRestriction(IndexConstants.INDEX_NAME_OPTION);
         boolean wrong = false;
         if (indexName != null && indexName.first != null) {
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.property;
+
+import static java.util.Objects.requireNonNull;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_CONTENT_NODE_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_DEFINITIONS_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.REINDEX_PROPERTY_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.TYPE_PROPERTY_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.UNIQUE_PROPERTY_NAME;
+
+import org.apache.jackrabbit.oak.api.CommitFailedException;
+import org.apache.jackrabbit.oak.plugins.index.property.strategy.ContentMirrorStoreStrategy;
+import org.apache.jackrabbit.oak.plugins.index.property.strategy.IndexStoreStrategy;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.mount.MountInfoProvider;
+import org.apache.jackrabbit.oak.spi.mount.Mounts;
+import org.apache.jackrabbit.oak.spi.query.IndexStatistics;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.spi.state.NodeStore;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A task that samples the statistics of the values of the property indexes
+ * in /oak:index, and stores them in the index definitions (see
+ * {@link IndexStatistics}). The property index then uses them to estimate
+ * the cost of conditions on skewed values.
+ * <p>
+ * Unique indexes are not sampled, as each value has at most one entry.
+ * Indexes that are being reindexed are skipped. The statistics of an index
+ * are only written if they changed, or if they are about to expire.
+ */
+public class PropertyIndexStatistics implements Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PropertyIndexStatistics.class);
+
+    /**
+     * The maximum number of values read per index.
+     */
+    static final int MAX_KEYS = Integer.getInteger("oak.indexStatistics.maxKeys", 10000);
+
+    /**
+     * The maximum number of entries counted per value. For values with more
+     * entries, the approximate count is used.
+     */
+    static final int MAX_COUNT = 1000;
+
+    /**
+     * The number of most common values that are kept.
+     */
+    static final int MOST_COMMON_COUNT = 20;
+
+    /**
+     * The age in milliseconds after which unchanged statistics are written
+     * again, so that they do not expire (see
+     * {@link ContentMirrorStoreStrategy#STATISTICS_MAX_AGE}).
+     */
+    static final long REFRESH_AGE = ContentMirrorStoreStrategy.STATISTICS_MAX_AGE / 2;
+
+    private final NodeStore store;
+
+    private final MountInfoProvider mountInfoProvider;
+
+    public PropertyIndexStatistics(@NotNull NodeStore store) {
+        this(store, Mounts.defaultMountInfoProvider());
+    }
+
+    public PropertyIndexStatistics(@NotNull NodeStore store,
+            @NotNull MountInfoProvider mountInfoProvider) {
+        this.store = requireNonNull(store);
+        this.mountInfoProvider = requireNonNull(mountInfoProvider);
+    }
+
+    @Override
+    public void run() {
+        try {
+            update();
+        } catch (CommitFailedException e) {
+            LOG.warn("Could not store the index statistics", e);
+        }
+    }
+
+    /**
+     * Sample the statistics of all property indexes, and store them.
+     *
+     * @throws CommitFailedException if storing failed
+     */
+    public void update() throws CommitFailedException {
+        NodeState root = store.getRoot();
+        NodeBuilder builder = root.builder();
+        NodeBuilder definitions = builder.getChildNode(INDEX_DEFINITIONS_NAME);
+        boolean changed = false;
+        for (ChildNodeEntry e : root.getChildNode(INDEX_DEFINITIONS_NAME).getChildNodeEntries()) {
+            NodeState definition = e.getNodeState();
+            if (!PropertyIndexEditorProvider.TYPE.equals(definition.getString(TYPE_PROPERTY_NAME))
+                    || definition.getBoolean(UNIQUE_PROPERTY_NAME)
+                    || definition.getBoolean(REINDEX_PROPERTY_NAME)) {
+                continue;
+            }
+            NodeBuilder d = definitions.getChildNode(e.getName());
+            for (IndexStoreStrategy s : Multiplexers.getStrategies(
+                    false, mountInfoProvider, definition, INDEX_CONTENT_NODE_NAME)) {
+                if (!(s instanceof ContentMirrorStoreStrategy)) {
+                    continue;
+                }
+                IndexStatistics statistics = ((ContentMirrorStoreStrategy) s).sample(
+                        definition, MAX_KEYS, MAX_COUNT, MOST_COMMON_COUNT);
+                LOG.debug("Index {} {}: {}", e.getName(), s.getIndexNodeName(), statistics);
+                IndexStatistics old = IndexStatistics.read(definition, s.getIndexNodeName());
+                if (old == null || !old.hasSameValues(statistics)
+                        || statistics.getLastUpdated() - old.getLastUpdated() > REFRESH_AGE) {
+                    statistics.write(d, s.getIndexNodeName());
+                    changed = true;
+                }
+            }
+        }
+        if (changed) {
+            store.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        }
+    }
+
+}
@@ -21,9 +21,15 @@ import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.ENTRY_COUNT
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_CONTENT_NODE_NAME;
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.KEY_COUNT_PROPERTY_NAME;
 
+import java.util.ArrayList;
 import java.util.Deque;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
 import org.apache.jackrabbit.oak.api.PropertyState;
@@ -36,6 +42,7 @@ import org.apache.jackrabbit.oak.plugins.index.counter.jmx.NodeCounter;
 import org.apache.jackrabbit.oak.plugins.memory.MemoryChildNodeEntry;
 import org.apache.jackrabbit.oak.query.FilterIterators;
 import org.apache.jackrabbit.oak.spi.query.Filter;
+import org.apache.jackrabbit.oak.spi.query.IndexStatistics;
 import org.apache.jackrabbit.oak.spi.query.QueryLimits;
 import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
 import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
@@ -81,6 +88,13 @@ public class ContentMirrorStoreStrategy implements IndexStoreStrategy {
      */
     public static final int TRAVERSING_WARN = Integer.getInteger("oak.traversing.warn", 10000);
 
+    /**
+     * The maximum age in milliseconds of the sampled index statistics. Older
+     * statistics are ignored. Default {@code oak.indexStatistics.maxAge} is one day
+     */
+    public static final long STATISTICS_MAX_AGE = Long.getLong("oak.indexStatistics.maxAge",
+            TimeUnit.DAYS.toMillis(1));
+
     private final String indexName;
     private final String pathPrefix;
     private final boolean prependPathPrefix;
@@ -216,9 +230,12 @@ public class ContentMirrorStoreStrategy implements IndexStoreStrategy {
         if (values == null) {
             // property is not null
             PropertyState ec = indexMeta.getProperty(ENTRY_COUNT_PROPERTY_NAME);
+            IndexStatistics statistics;
             if (ec != null) {
                 // negative value implies fall-back to counting
                 count = ec.getValue(Type.LONG);
+            } else if ((statistics = readStatistics(indexMeta, indexStorageNodeName)) != null) {
+                count = statistics.getEntryCount();
             } else {
                 // negative value means that approximation isn't available
                 count = ApproximateCounter.getCountSync(index);
@@ -239,6 +256,7 @@ public class ContentMirrorStoreStrategy implements IndexStoreStrategy {
                 return 0;
             }
             PropertyState ec = indexMeta.getProperty(ENTRY_COUNT_PROPERTY_NAME);       
+            IndexStatistics statistics;
             if (ec != null) {
                 count = ec.getValue(Type.LONG);
                 if (count >= 0) {
@@ -256,6 +274,12 @@ public class ContentMirrorStoreStrategy implements IndexStoreStrategy {
                     keyCount = Math.max(1, keyCount);
                     count = (long) ((double) count / keyCount) + size;
                 }
+            } else if ((statistics = readStatistics(indexMeta, indexStorageNodeName)) != null) {
+                // the sampled statistics know the distribution of the values
+                count = 0;
+                for (String p : values) {
+                    count += statistics.getEstimatedCount(p);
+                }
             } else {
                 // for this index, property "entryCount" is not set
                 long approxMax = 0;
@@ -589,6 +613,75 @@ public class ContentMirrorStoreStrategy implements IndexStoreStrategy {
 
     }
     
+    /**
+     * Read the sampled statistics of an index storage node, if they are not
+     * older than {@link #STATISTICS_MAX_AGE}. Statistics that are no longer
+     * sampled would otherwise override the approximate counts forever.
+     */
+    @Nullable
+    private static IndexStatistics readStatistics(NodeState indexMeta, String indexStorageNodeName) {
+        IndexStatistics statistics = IndexStatistics.read(indexMeta, indexStorageNodeName);
+        if (statistics == null
+                || System.currentTimeMillis() - statistics.getLastUpdated() > STATISTICS_MAX_AGE) {
+            return null;
+        }
+        return statistics;
+    }
+
+    /**
+     * Sample the statistics of the values stored with this strategy.
+     *
+     * @param indexMeta the index definition
+     * @param maxKeys the maximum number of values to read; if there are more,
+     *            the counts are extrapolated
+     * @param maxCount the maximum number of entries to count for a value; if
+     *            the approximate count of a value is larger, it is used instead
+     * @param mostCommonCount the number of most common values to keep
+     * @return the statistics
+     */
+    @NotNull
+    public IndexStatistics sample(NodeState indexMeta, int maxKeys, int maxCount, int mostCommonCount) {
+        NodeState index = indexMeta.getChildNode(indexName);
+        // the least common of the kept values is at the head
+        PriorityQueue<Map.Entry<String, Long>> top = new PriorityQueue<>(
+                Map.Entry.comparingByValue());
+        long entries = 0;
+        long keys = 0;
+        for (ChildNodeEntry e : index.getChildNodeEntries()) {
+            if (keys >= maxKeys) {
+                break;
+            }
+            // the approximate count is only accurate for large counts
+            long count = ApproximateCounter.getCountSync(e.getNodeState());
+            if (count < maxCount) {
+                CountingNodeVisitor v = new CountingNodeVisitor(maxCount);
+                v.visit(e.getNodeState());
+                count = v.getEstimatedCount();
+            }
+            entries += count;
+            keys++;
+            top.add(Map.entry(e.getName(), count));
+            if (top.size() > mostCommonCount) {
+                top.poll();
+            }
+        }
+        long distinct = keys;
+        if (keys >= maxKeys) {
+            long total = index.getChildNodeCount(Long.MAX_VALUE);
+            if (total > keys) {
+                entries = (long) ((double) entries * total / keys);
+                distinct = total;
+            }
+        }
+        List<Map.Entry<String, Long>> list = new ArrayList<>(top);
+        list.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        Map<String, Long> mostCommon = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> e : list) {
+            mostCommon.put(e.getKey(), e.getValue());
+        }
+        return new IndexStatistics(entries, distinct, mostCommon, System.currentTimeMillis());
+    }
+
     /**
      * fetch from the index the <i>key</i> node
      * 
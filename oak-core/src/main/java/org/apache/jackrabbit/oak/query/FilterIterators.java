@@ -13,17 +13,32 @@
  */
 package org.apache.jackrabbit.oak.query;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
 
 import org.apache.jackrabbit.oak.spi.query.QueryLimits;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 /**
  * Filtering iterators that are useful for queries with limit, offset, order by,
  * or distinct.
@@ -78,15 +93,42 @@ public class FilterIterators {
     public static <K> Iterator<K> newCombinedFilter(
             Iterator<K> it, boolean distinct, long limit, long offset, 
             Comparator<K> orderBy, QueryLimits settings) {
+        return newCombinedFilter(it, distinct, limit, offset, orderBy, settings, null, 0);
+    }
+
+    /**
+     * Same as {@link #newCombinedFilter(Iterator, boolean, long, long, Comparator, QueryLimits)},
+     * but with a codec and a positive spill threshold, the distinct and sort
+     * operators write sorted runs of entries to temporary files once they
+     * keep {@code spillThreshold} entries in memory, and merge the runs
+     * afterwards. If an entry can not be encoded before the first run was
+     * written, the operators continue in memory.
+     *
+     * @param codec the codec for the entries, or null to not spill to disk
+     * @param spillThreshold the maximum number of entries kept in memory by
+     *          an operator before a run is written to disk
+     */
+    public static <K> Iterator<K> newCombinedFilter(
+            Iterator<K> it, boolean distinct, long limit, long offset,
+            Comparator<K> orderBy, QueryLimits settings,
+            @Nullable SpillCodec<K> codec, long spillThreshold) {
+        if (spillThreshold <= 0) {
+            codec = null;
+        }
         if (distinct) {
-            it = FilterIterators.newDistinct(it, settings);
+            it = new DistinctIterator<K>(it, settings, codec, spillThreshold);
         }
         if (orderBy != null) {
             // avoid overflow (both offset and limit could be Long.MAX_VALUE)
             int max = (int) Math.min(Integer.MAX_VALUE, 
                     Math.min(Integer.MAX_VALUE, offset) + 
                     Math.min(Integer.MAX_VALUE, limit));
-            it = FilterIterators.newSort(it, orderBy, max, settings);
+            if (max < Integer.MAX_VALUE && (codec == null || max < spillThreshold)) {
+                // the kept entries fit in memory
+                it = new TopKIterator<K>(it, orderBy, max, settings);
+            } else {
+                it = new SortIterator<K>(it, orderBy, max, settings, codec, spillThreshold);
+            }
         }
         if (offset != 0) {
             it = FilterIterators.newOffset(it, offset);
@@ -98,7 +140,7 @@ public class FilterIterators {
     }
     
     public static <K> DistinctIterator<K> newDistinct(Iterator<K> it, QueryLimits settings) {
-        return new DistinctIterator<K>(it, settings);
+        return new DistinctIterator<K>(it, settings, null, 0);
     }
     
     public static <K> Iterator<K> newLimit(Iterator<K> it, long limit) {
@@ -110,7 +152,96 @@ public class FilterIterators {
     }
     
     public static <K> Iterator<K> newSort(Iterator<K> it, Comparator<K> orderBy, int max, QueryLimits settings) {
-        return new SortIterator<K>(it, orderBy, max, settings);
+        return new SortIterator<K>(it, orderBy, max, settings, null, 0);
+    }
+
+    /**
+     * Closes an iterator returned by the methods of this class, and with it
+     * its source. This releases the temporary files of entries written to
+     * disk, if the iterator is not read to the end.
+     *
+     * @param it the iterator
+     */
+    public static void close(Iterator<?> it) {
+        if (it instanceof Closeable) {
+            try {
+                ((Closeable) it).close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close the query result", e);
+            }
+        }
+    }
+
+    /**
+     * A source of entries that can skip entries that would not be kept by the
+     * top-K operator of {@link #newCombinedFilter}.
+     *
+     * @param <K> the entry type
+     */
+    public interface TopKSource<K> extends Iterator<K> {
+
+        /**
+         * Called by the top-K operator whenever the entry that sorts last
+         * among the kept entries changes, once the operator keeps the
+         * requested number of entries. Entries that don't sort before this
+         * entry don't need to be returned any longer, except that they still
+         * need to be counted for the size of the result.
+         *
+         * @param last the entry that sorts last among the kept entries
+         */
+        void setLast(K last);
+
+    }
+
+    /**
+     * Converts entries to and from a single line of text, so that the sort
+     * and distinct operators can write them to temporary files.
+     *
+     * @param <K> the entry type
+     */
+    public interface SpillCodec<K> {
+
+        /**
+         * Encodes an entry as a single line of text.
+         *
+         * @param entry the entry
+         * @return the encoded entry, or null if the entry can not be written
+         *          to a file
+         */
+        @Nullable
+        String encode(@NotNull K entry);
+
+        /**
+         * Decodes an entry encoded with {@link #encode(Object)}.
+         *
+         * @param line the encoded entry
+         * @return the entry
+         */
+        @NotNull
+        K decode(@NotNull String line);
+
+        /**
+         * An order that is consistent with {@link Object#equals(Object)} of
+         * the entries, which is used to find duplicates in sorted runs.
+         *
+         * @return the comparator
+         */
+        @NotNull
+        Comparator<K> getDistinctOrder();
+
+        /**
+         * Called after a run of entries was written to a temporary file.
+         */
+        default void spilled() {
+        }
+    }
+
+    private static UnsupportedOperationException notSpillable() {
+        String message = "The query read an entry that can not be written to disk.";
+        UnsupportedOperationException e = new UnsupportedOperationException(
+                message + " Processing was stopped.");
+        LOG.warn(message, e);
+        return e;
     }
 
     /**
@@ -120,17 +251,24 @@ public class FilterIterators {
      * 
      * @param <K> the entry type
      */
-    static class DistinctIterator<K> implements Iterator<K> {
+    static class DistinctIterator<K> implements Iterator<K>, Closeable {
 
         private final Iterator<K> source;
         private final QueryLimits settings;
-        private final HashSet<K> distinctSet;
+        private final long spillThreshold;
+        private SpillCodec<K> codec;
+        private HashSet<K> distinctSet;
+        private SpilledRuns<K> returned;
+        private Iterator<K> remaining;
         private K current;
         private boolean end;
 
-        DistinctIterator(Iterator<K> source, QueryLimits settings) {
+        DistinctIterator(Iterator<K> source, QueryLimits settings,
+                         SpillCodec<K> codec, long spillThreshold) {
             this.source = source;
             this.settings = settings;
+            this.codec = codec;
+            this.spillThreshold = spillThreshold;
             distinctSet = new HashSet<K>();
         }
 
@@ -138,10 +276,19 @@ public class FilterIterators {
             if (end) {
                 return;
             }
+            if (returned != null) {
+                fetchRemaining();
+                return;
+            }
             while (source.hasNext()) {
                 current = source.next();
                 if (distinctSet.add(current)) {
-                    checkMemoryLimit(distinctSet.size(), settings);
+                    if (codec != null && distinctSet.size() >= spillThreshold) {
+                        spillReturned();
+                    }
+                    if (distinctSet != null) {
+                        checkMemoryLimit(distinctSet.size(), settings);
+                    }
                     return;
                 }
             }
@@ -149,6 +296,51 @@ public class FilterIterators {
             end = true;
         }
 
+        /**
+         * Writes the entries returned so far to disk. The remaining entries
+         * of the source are then read at once, and returned in the
+         * distinct order unless they were already returned before.
+         */
+        private void spillReturned() {
+            SpilledRuns<K> runs = new SpilledRuns<K>(codec, codec.getDistinctOrder(), true);
+            if (runs.spill(distinctSet)) {
+                returned = runs;
+                distinctSet = null;
+            } else {
+                // continue in memory
+                codec = null;
+            }
+        }
+
+        private void fetchRemaining() {
+            if (remaining == null) {
+                Comparator<K> order = codec.getDistinctOrder();
+                SpilledRuns<K> runs = new SpilledRuns<K>(codec, order, true);
+                List<K> buffer = new ArrayList<K>();
+                while (source.hasNext()) {
+                    buffer.add(source.next());
+                    if (buffer.size() >= spillThreshold) {
+                        if (!runs.spill(buffer)) {
+                            runs.close();
+                            throw notSpillable();
+                        }
+                        buffer.clear();
+                    }
+                }
+                if (!runs.spill(buffer)) {
+                    runs.close();
+                    throw notSpillable();
+                }
+                remaining = new ExceptIterator<K>(runs.merge(), returned.merge(), order);
+            }
+            if (remaining.hasNext()) {
+                current = remaining.next();
+            } else {
+                current = null;
+                end = true;
+            }
+        }
+
         @Override
         public boolean hasNext() {
             if (current == null) {
@@ -175,8 +367,121 @@ public class FilterIterators {
             throw new UnsupportedOperationException();
         }
 
+        @Override
+        public void close() {
+            if (returned != null) {
+                returned.close();
+            }
+            FilterIterators.close(remaining);
+            FilterIterators.close(source);
+        }
+
     }
     
+    /**
+     * An iterator that returns the first entries in sorted order, using a
+     * bounded heap, so that only the requested number of entries is kept in
+     * memory. As with a stable sort, entries that compare equal are returned
+     * in the order they were read. If the source is a {@link TopKSource}, it
+     * is told about the entry that sorts last once the heap is full.
+     *
+     * @param <K> the entry type
+     */
+    static class TopKIterator<K> implements Iterator<K>, Closeable {
+
+        private final Iterator<K> source;
+        private final Comparator<K> orderBy;
+        private final int max;
+        private final QueryLimits settings;
+        private Iterator<K> result;
+
+        TopKIterator(Iterator<K> source, Comparator<K> orderBy, int max, QueryLimits settings) {
+            this.source = source;
+            this.orderBy = orderBy;
+            this.max = max;
+            this.settings = settings;
+        }
+
+        private void init() {
+            if (result != null) {
+                return;
+            }
+            TopKSource<K> feedback = source instanceof TopKSource ? (TopKSource<K>) source : null;
+            Comparator<HeapEntry<K>> order = Comparator.<HeapEntry<K>, K>comparing(
+                    e -> e.value, orderBy).thenComparingLong(e -> e.index);
+            // the entry that sorts last is at the head
+            PriorityQueue<HeapEntry<K>> heap = new PriorityQueue<HeapEntry<K>>(
+                    Math.min(max, 1024) + 1, order.reversed());
+            long index = 0;
+            while (source.hasNext()) {
+                K x = source.next();
+                if (heap.size() < max) {
+                    heap.add(new HeapEntry<K>(x, index++));
+                    checkMemoryLimit(heap.size(), settings);
+                } else if (max > 0 && orderBy.compare(x, heap.peek().value) < 0) {
+                    heap.poll();
+                    heap.add(new HeapEntry<K>(x, index++));
+                } else {
+                    continue;
+                }
+                if (feedback != null && heap.size() == max) {
+                    feedback.setLast(heap.peek().value);
+                }
+            }
+            ArrayList<HeapEntry<K>> list = new ArrayList<HeapEntry<K>>(heap);
+            Collections.sort(list, order);
+            ArrayList<K> values = new ArrayList<K>(list.size());
+            for (HeapEntry<K> e : list) {
+                values.add(e.value);
+            }
+            result = values.iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            init();
+            return result.hasNext();
+        }
+
+        @Override
+        public K next() {
+            init();
+            return result.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            FilterIterators.close(source);
+        }
+
+    }
+
+    /**
+     * An entry of the top-K heap.
+     *
+     * @param <K> the entry type
+     */
+    private static class HeapEntry<K> {
+
+        final K value;
+
+        /**
+         * The position in the source, to keep the order of equal entries.
+         */
+        final long index;
+
+        HeapEntry(K value, long index) {
+            this.value = value;
+            this.index = index;
+        }
+
+    }
+
     /**
      * An iterator that returns entries in sorted order. The internal list of
      * sorted entries can be limited to a given number of entries, and the
@@ -184,19 +489,26 @@ public class FilterIterators {
      * 
      * @param <K> the entry type
      */
-    static class SortIterator<K> implements Iterator<K> {
+    static class SortIterator<K> implements Iterator<K>, Closeable {
 
         private final Iterator<K> source;
         private final QueryLimits settings;
         private final Comparator<K> orderBy;
+        private final long spillThreshold;
+        private SpilledRuns<K> runs;
         private Iterator<K> result;
         private final int max;
 
-        SortIterator(Iterator<K> source, Comparator<K> orderBy, int max, QueryLimits settings) {
+        SortIterator(Iterator<K> source, Comparator<K> orderBy, int max, QueryLimits settings,
+                     SpillCodec<K> codec, long spillThreshold) {
             this.source = source;
             this.orderBy = orderBy;
             this.max = max;
             this.settings = settings;
+            this.spillThreshold = spillThreshold;
+            if (codec != null) {
+                runs = new SpilledRuns<K>(codec, orderBy, false);
+            }
         }
         
         private void init() {
@@ -207,6 +519,22 @@ public class FilterIterators {
             while (source.hasNext()) {
                 K x = source.next();
                 list.add(x);
+                if (runs != null && list.size() >= spillThreshold) {
+                    if (list.size() > max) {
+                        Collections.sort(list, orderBy);
+                        keepFirst(list, max);
+                    }
+                    if (runs.spill(list)) {
+                        list.clear();
+                        continue;
+                    } else if (runs.isEmpty()) {
+                        // continue in memory
+                        runs = null;
+                    } else {
+                        runs.close();
+                        throw notSpillable();
+                    }
+                }
                 checkMemoryLimit(list.size(), settings);
                 // from time to time, sort and truncate
                 // this should need less than O(n*log(3*keep)) operations,
@@ -219,7 +547,14 @@ public class FilterIterators {
             }
             Collections.sort(list, orderBy);
             keepFirst(list, max);
-            result = list.iterator();
+            if (runs == null || runs.isEmpty()) {
+                result = list.iterator();
+            } else if (runs.spill(list)) {
+                result = new LimitIterator<K>(runs.merge(), max);
+            } else {
+                runs.close();
+                throw notSpillable();
+            }
         }
         
         /**
@@ -252,6 +587,15 @@ public class FilterIterators {
         public void remove() {
             throw new UnsupportedOperationException();
         }
+
+        @Override
+        public void close() {
+            if (runs != null) {
+                runs.close();
+            }
+            FilterIterators.close(result);
+            FilterIterators.close(source);
+        }
         
     }
     
@@ -261,7 +605,7 @@ public class FilterIterators {
      * 
      * @param <K> the entry type
      */
-    static class OffsetIterator<K> implements Iterator<K> {
+    static class OffsetIterator<K> implements Iterator<K>, Closeable {
 
         private final Iterator<K> source;
         private final long offset;
@@ -298,16 +642,22 @@ public class FilterIterators {
         public void remove() {
             throw new UnsupportedOperationException();
         }
+
+        @Override
+        public void close() {
+            FilterIterators.close(source);
+        }
         
     }
     
     /**
      * An iterator that limits the number of returned entries. Entries are only
      * read when needed (on demand).
+     * Once the limit is reached, the source is closed.
      * 
      * @param <K> the entry type
      */
-    static class LimitIterator<K> implements Iterator<K> {
+    static class LimitIterator<K> implements Iterator<K>, Closeable {
 
         private final Iterator<K> source;
         private final long limit;
@@ -320,7 +670,12 @@ public class FilterIterators {
         
         @Override
         public boolean hasNext() {
-            return count < limit && source.hasNext();
+            if (count < limit) {
+                return source.hasNext();
+            }
+            // the rest of the source is not read
+            FilterIterators.close(source);
+            return false;
         }
 
         @Override
@@ -336,7 +691,314 @@ public class FilterIterators {
         public void remove() {
             throw new UnsupportedOperationException();
         }
+
+        @Override
+        public void close() {
+            FilterIterators.close(source);
+        }
         
     }
 
+    /**
+     * Sorted runs of entries written to temporary files. The files are
+     * deleted when the runs are closed, or once the runs are no longer
+     * referenced, if the result is not read to the end and not closed.
+     *
+     * @param <K> the entry type
+     */
+    static class SpilledRuns<K> implements Closeable {
+
+        private static final Cleaner CLEANER = Cleaner.create();
+
+        private final SpillCodec<K> codec;
+        private final Comparator<K> order;
+        private final boolean distinct;
+        private final RunFiles files = new RunFiles();
+        private Cleaner.Cleanable cleanable;
+
+        SpilledRuns(SpillCodec<K> codec, Comparator<K> order, boolean distinct) {
+            this.codec = codec;
+            this.order = order;
+            this.distinct = distinct;
+        }
+
+        boolean isEmpty() {
+            return files.isEmpty();
+        }
+
+        /**
+         * Sorts the given entries and writes them to a new run.
+         *
+         * @param entries the entries
+         * @return false if an entry can not be encoded, in which case
+         *          nothing is written. Nothing is written either if there
+         *          are no entries.
+         */
+        boolean spill(Collection<K> entries) {
+            if (entries.isEmpty()) {
+                return true;
+            }
+            List<Line<K>> lines = new ArrayList<Line<K>>(entries.size());
+            for (K entry : entries) {
+                String line = codec.encode(entry);
+                if (line == null) {
+                    return false;
+                }
+                lines.add(new Line<K>(entry, line));
+            }
+            // stable, so that entries that compare equal keep their order
+            Collections.sort(lines, (a, b) -> order.compare(a.entry, b.entry));
+            if (cleanable == null) {
+                cleanable = CLEANER.register(this, files);
+            }
+            try {
+                File file = File.createTempFile("oak-query-", ".tmp");
+                files.add(file);
+                try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), UTF_8)) {
+                    Line<K> last = null;
+                    for (Line<K> l : lines) {
+                        if (!distinct || last == null || order.compare(l.entry, last.entry) != 0) {
+                            writer.write(l.line);
+                            writer.write('\n');
+                            last = l;
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to write query results to disk", e);
+            }
+            codec.spilled();
+            return true;
+        }
+
+        /**
+         * Returns an iterator that merges the runs while it is read. The runs
+         * are deleted when the end is reached, or when the iterator is
+         * closed.
+         *
+         * @return the entries
+         */
+        Iterator<K> merge() {
+            try {
+                return new MergeIterator<K>(this);
+            } catch (IOException e) {
+                close();
+                throw new UncheckedIOException("Failed to read query results from disk", e);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (cleanable != null) {
+                cleanable.clean();
+            }
+        }
+    }
+
+    /**
+     * The temporary files of {@link SpilledRuns}, and the readers opened on
+     * them. It must not reference the runs, so that it can clean up once the
+     * runs are no longer referenced.
+     */
+    private static class RunFiles implements Runnable {
+
+        private final List<File> files = new ArrayList<File>();
+        private final List<Closeable> readers = new ArrayList<Closeable>();
+
+        synchronized boolean isEmpty() {
+            return files.isEmpty();
+        }
+
+        synchronized void add(File file) {
+            files.add(file);
+        }
+
+        synchronized List<File> getFiles() {
+            return new ArrayList<File>(files);
+        }
+
+        synchronized void opened(Closeable reader) {
+            readers.add(reader);
+        }
+
+        @Override
+        public synchronized void run() {
+            for (Closeable r : readers) {
+                try {
+                    r.close();
+                } catch (IOException e) {
+                    LOG.debug("Failed to close a query result file", e);
+                }
+            }
+            readers.clear();
+            for (File f : files) {
+                try {
+                    Files.deleteIfExists(f.toPath());
+                } catch (IOException e) {
+                    LOG.warn("Failed to delete the query result file {}", f, e);
+                }
+            }
+            files.clear();
+        }
+    }
+
+    private static class Line<K> {
+
+        final K entry;
+        final String line;
+
+        Line(K entry, String line) {
+            this.entry = entry;
+            this.line = line;
+        }
+    }
+
+    /**
+     * Reads the entries of one run.
+     */
+    private static class RunReader<K> {
+
+        final int index;
+        private final BufferedReader reader;
+        private final SpillCodec<K> codec;
+        K current;
+
+        RunReader(int index, BufferedReader reader, SpillCodec<K> codec) {
+            this.index = index;
+            this.reader = reader;
+            this.codec = codec;
+        }
+
+        boolean fetchNext() {
+            try {
+                String line = reader.readLine();
+                current = line == null ? null : codec.decode(line);
+                return current != null;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read query results from disk", e);
+            }
+        }
+    }
+
+    /**
+     * An iterator that merges the runs of {@link SpilledRuns}, reading each
+     * run only as far as needed. Entries that compare equal are returned in
+     * the order of the runs. The runs are deleted when the end is reached.
+     */
+    private static class MergeIterator<K> implements Iterator<K>, Closeable {
+
+        private final SpilledRuns<K> runs;
+        private final PriorityQueue<RunReader<K>> queue;
+        private K last;
+        private K next;
+
+        MergeIterator(SpilledRuns<K> runs) throws IOException {
+            this.runs = runs;
+            List<File> files = runs.files.getFiles();
+            queue = new PriorityQueue<RunReader<K>>(Math.max(1, files.size()),
+                    Comparator.<RunReader<K>, K>comparing(r -> r.current, runs.order)
+                            .thenComparingInt(r -> r.index));
+            for (int i = 0; i < files.size(); i++) {
+                BufferedReader reader = Files.newBufferedReader(files.get(i).toPath(), UTF_8);
+                runs.files.opened(reader);
+                RunReader<K> r = new RunReader<K>(i, reader, runs.codec);
+                if (r.fetchNext()) {
+                    queue.add(r);
+                }
+            }
+            fetchNext();
+        }
+
+        private void fetchNext() {
+            while (!queue.isEmpty()) {
+                RunReader<K> r = queue.poll();
+                K x = r.current;
+                if (r.fetchNext()) {
+                    queue.add(r);
+                }
+                if (!runs.distinct || last == null || runs.order.compare(x, last) != 0) {
+                    next = x;
+                    last = x;
+                    return;
+                }
+            }
+            next = null;
+            close();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public K next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            K entry = next;
+            fetchNext();
+            return entry;
+        }
+
+        @Override
+        public void close() {
+            queue.clear();
+            next = null;
+            runs.close();
+        }
+    }
+
+    /**
+     * Returns the entries of a sorted iterator that are not contained in
+     * another iterator sorted in the same order.
+     */
+    private static class ExceptIterator<K> implements Iterator<K>, Closeable {
+
+        private final Iterator<K> source;
+        private final Iterator<K> except;
+        private final Comparator<K> order;
+        private K exceptCurrent;
+        private K current;
+
+        ExceptIterator(Iterator<K> source, Iterator<K> except, Comparator<K> order) {
+            this.source = source;
+            this.except = except;
+            this.order = order;
+            exceptCurrent = except.hasNext() ? except.next() : null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (current == null && source.hasNext()) {
+                K x = source.next();
+                int comp = -1;
+                while (exceptCurrent != null
+                        && (comp = order.compare(exceptCurrent, x)) < 0) {
+                    exceptCurrent = except.hasNext() ? except.next() : null;
+                }
+                if (exceptCurrent == null || comp != 0) {
+                    current = x;
+                }
+            }
+            return current != null;
+        }
+
+        @Override
+        public K next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            K r = current;
+            current = null;
+            return r;
+        }
+
+        @Override
+        public void close() {
+            FilterIterators.close(source);
+            FilterIterators.close(except);
+        }
+    }
+
 }
@@ -63,6 +63,13 @@ public interface Query {
 
     int getSelectorIndex(String selectorName);
 
+    /**
+     * Get the rows. If the rows are not read to the end, the iterator should
+     * be closed with {@link FilterIterators#close(Iterator)}, to release the
+     * temporary files of rows written to disk.
+     *
+     * @return the rows
+     */
     Iterator<ResultRowImpl> getRows();
 
     /**
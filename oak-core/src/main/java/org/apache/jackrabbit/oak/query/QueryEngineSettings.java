@@ -19,6 +19,8 @@
 package org.apache.jackrabbit.oak.query;
 
 import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.jackrabbit.oak.api.StrictPathRestriction;
 import org.apache.jackrabbit.oak.api.jmx.QueryEngineSettingsMBean;
@@ -59,6 +61,62 @@ public class QueryEngineSettings implements QueryEngineSettingsMBean, QueryLimit
     public static final long DEFAULT_QUERY_LIMIT_READS =
             Long.getLong(OAK_QUERY_LIMIT_READS, 100000);
 
+    public static final String OAK_QUERY_SPILL_THRESHOLD = "oak.querySpillThreshold";
+
+    /**
+     * The number of entries the sort and distinct operators keep in memory
+     * before they write them to disk. Zero disables spilling to disk.
+     */
+    public static final long DEFAULT_QUERY_SPILL_THRESHOLD =
+            Long.getLong(OAK_QUERY_SPILL_THRESHOLD, 0);
+
+    public static final String OAK_QUERY_PLAN_CACHE_SIZE = "oak.queryPlanCacheSize";
+
+    /**
+     * The maximum number of entries in the query plan cache. Zero disables
+     * the cache.
+     */
+    public static final int DEFAULT_QUERY_PLAN_CACHE_SIZE =
+            Integer.getInteger(OAK_QUERY_PLAN_CACHE_SIZE, 0);
+
+    public static final String OAK_QUERY_PLAN_CACHE_TTL = "oak.queryPlanCacheTtl";
+
+    /**
+     * The number of seconds after which an entry of the query plan cache
+     * expires, so that the query is planned again with all indexes. Zero
+     * means entries only expire when the index definitions change.
+     */
+    public static final long DEFAULT_QUERY_PLAN_CACHE_TTL =
+            Long.getLong(OAK_QUERY_PLAN_CACHE_TTL, 600);
+
+    public static final String OAK_QUERY_UNION_PARALLELISM = "oak.queryUnionParallelism";
+
+    /**
+     * The maximum number of branches of a union query that are read
+     * concurrently. Zero or one disables reading the branches concurrently.
+     */
+    public static final int DEFAULT_QUERY_UNION_PARALLELISM =
+            Integer.getInteger(OAK_QUERY_UNION_PARALLELISM, 0);
+
+    public static final String OAK_QUERY_ROW_BATCH_SIZE = "oak.queryRowBatchSize";
+
+    /**
+     * The number of index rows a selector reads and resolves at once. Zero
+     * disables batching, in which case each row is resolved when it is read.
+     */
+    public static final int DEFAULT_QUERY_ROW_BATCH_SIZE =
+            Integer.getInteger(OAK_QUERY_ROW_BATCH_SIZE, 0);
+
+    public static final String OAK_QUERY_REPLAN_FACTOR = "oak.queryReplanFactor";
+
+    /**
+     * If a selector reads this many times more index rows than the plan
+     * estimated, before it returned enough rows, the selector is planned
+     * again. Zero disables re-planning.
+     */
+    public static final int DEFAULT_QUERY_REPLAN_FACTOR =
+            Integer.getInteger(OAK_QUERY_REPLAN_FACTOR, 0);
+
     public static final String OAK_QUERY_PREFETCH_COUNT = "oak.prefetchCount";
 
     public static final String FT_NAME_PREFETCH_FOR_QUERIES = "FT_OAK-10490";
@@ -78,6 +136,16 @@ public class QueryEngineSettings implements QueryEngineSettingsMBean, QueryLimit
     
     private long limitReads = DEFAULT_QUERY_LIMIT_READS;
 
+    private long spillThreshold = DEFAULT_QUERY_SPILL_THRESHOLD;
+
+    private int unionParallelism = DEFAULT_QUERY_UNION_PARALLELISM;
+
+    private int rowBatchSize = DEFAULT_QUERY_ROW_BATCH_SIZE;
+
+    private int replanFactor = DEFAULT_QUERY_REPLAN_FACTOR;
+
+    private Executor executor;
+
     private int prefetchCount = DEFAULT_PREFETCH_COUNT;
 
     private boolean failTraversal = DEFAULT_FAIL_TRAVERSAL;
@@ -103,6 +171,9 @@ public class QueryEngineSettings implements QueryEngineSettingsMBean, QueryLimit
 
     private final QueryValidator queryValidator = new QueryValidator();
 
+    private final QueryPlanCache planCache = new QueryPlanCache(DEFAULT_QUERY_PLAN_CACHE_SIZE,
+            TimeUnit.SECONDS.toMillis(DEFAULT_QUERY_PLAN_CACHE_TTL));
+
     private String[] classNamesIgnoredInCallTrace = new String[] {};
 
 
@@ -158,6 +229,93 @@ public class QueryEngineSettings implements QueryEngineSettingsMBean, QueryLimit
         this.limitReads = limitReads;
     }
 
+    /**
+     * @return the number of entries the sort and distinct operators keep in
+     *          memory before they write them to disk, or zero if they never
+     *          write to disk.
+     */
+    public long getSpillThreshold() {
+        return spillThreshold;
+    }
+
+    public void setSpillThreshold(long spillThreshold) {
+        this.spillThreshold = spillThreshold;
+    }
+
+    /**
+     * @return the maximum number of entries in the query plan cache, or zero
+     *          if the cache is disabled.
+     */
+    public int getPlanCacheSize() {
+        return planCache.getMaxSize();
+    }
+
+    public void setPlanCacheSize(int planCacheSize) {
+        planCache.setMaxSize(planCacheSize);
+    }
+
+    /**
+     * @return the number of seconds after which an entry of the query plan
+     *          cache expires, or zero if entries only expire when the index
+     *          definitions change.
+     */
+    public long getPlanCacheTtl() {
+        return TimeUnit.MILLISECONDS.toSeconds(planCache.getTtlMillis());
+    }
+
+    public void setPlanCacheTtl(long planCacheTtl) {
+        planCache.setTtlMillis(TimeUnit.SECONDS.toMillis(planCacheTtl));
+    }
+
+    /**
+     * @return the maximum number of branches of a union query that are read
+     *          concurrently, or zero if they are read one after the other.
+     */
+    public int getUnionParallelism() {
+        return unionParallelism;
+    }
+
+    public void setUnionParallelism(int unionParallelism) {
+        this.unionParallelism = unionParallelism;
+    }
+
+    /**
+     * @return the number of index rows a selector reads and resolves at once,
+     *          or zero if each row is resolved when it is read
+     */
+    public int getRowBatchSize() {
+        return rowBatchSize;
+    }
+
+    public void setRowBatchSize(int rowBatchSize) {
+        this.rowBatchSize = rowBatchSize;
+    }
+
+    /**
+     * @return how many times more index rows than estimated a selector reads
+     *          before it is planned again, or zero if it is not planned again
+     */
+    public int getReplanFactor() {
+        return replanFactor;
+    }
+
+    public void setReplanFactor(int replanFactor) {
+        this.replanFactor = replanFactor;
+    }
+
+    /**
+     * @return the executor used to read the index rows of the branches of
+     *          union queries ahead, or null if none was set
+     */
+    @Nullable
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public void setExecutor(@Nullable Executor executor) {
+        this.executor = executor;
+    }
+
     @Override
     public void setPrefetchCount(int prefetchCount) {
         this.prefetchCount = prefetchCount;
@@ -263,6 +421,10 @@ public class QueryEngineSettings implements QueryEngineSettingsMBean, QueryLimit
     public QueryValidator getQueryValidator() {
         return queryValidator;
     }
+
+    public QueryPlanCache getPlanCache() {
+        return planCache;
+    }
     
     public void setIgnoredClassNamesInCallTrace(@NotNull String[] packageNames) {
         classNamesIgnoredInCallTrace = packageNames;
@@ -277,6 +439,12 @@ public class QueryEngineSettings implements QueryEngineSettingsMBean, QueryLimit
         return "QueryEngineSettings{" +
                 "limitInMemory=" + limitInMemory +
                 ", limitReads=" + limitReads +
+                ", spillThreshold=" + spillThreshold +
+                ", planCacheSize=" + planCache.getMaxSize() +
+                ", planCacheTtl=" + getPlanCacheTtl() +
+                ", unionParallelism=" + unionParallelism +
+                ", rowBatchSize=" + rowBatchSize +
+                ", replanFactor=" + replanFactor +
                 ", failTraversal=" + failTraversal +
                 ", fullTextComparisonWithoutIndex=" + fullTextComparisonWithoutIndex +
                 ", sql2Optimisation=" + sql2Optimisation +
@@ -17,6 +17,7 @@ import static java.util.Objects.requireNonNull;
 import static org.apache.jackrabbit.guava.common.collect.Lists.newArrayList;
 import static org.apache.jackrabbit.oak.query.ast.AstElementFactory.copyElementAndCheckReference;
 
+import java.io.Closeable;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -30,10 +31,14 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import org.apache.jackrabbit.oak.api.PropertyValue;
 import org.apache.jackrabbit.oak.api.Result.SizePrecision;
 import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.api.Type;
 import org.apache.jackrabbit.oak.namepath.JcrPathParser;
 import org.apache.jackrabbit.oak.namepath.NamePathMapper;
 import org.apache.jackrabbit.oak.plugins.index.IndexUtils;
@@ -84,8 +89,10 @@ import org.apache.jackrabbit.oak.query.ast.UpperCaseImpl;
 import org.apache.jackrabbit.oak.query.index.FilterImpl;
 import org.apache.jackrabbit.oak.query.index.TraversingIndex;
 import org.apache.jackrabbit.oak.query.plan.ExecutionPlan;
+import org.apache.jackrabbit.oak.query.plan.JoinExecutionPlan;
 import org.apache.jackrabbit.oak.query.plan.SelectorExecutionPlan;
 import org.apache.jackrabbit.oak.query.stats.QueryStatsData.QueryExecutionStats;
+import org.apache.jackrabbit.oak.spi.query.Cursor;
 import org.apache.jackrabbit.oak.spi.query.Filter;
 import org.apache.jackrabbit.oak.spi.query.Filter.PathRestriction;
 import org.apache.jackrabbit.oak.spi.query.QueryConstants;
@@ -101,6 +108,7 @@ import org.apache.jackrabbit.oak.stats.HistogramStats;
 import org.apache.jackrabbit.oak.stats.StatisticsProvider;
 import org.apache.jackrabbit.oak.stats.StatsOptions;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -119,6 +127,19 @@ public class QueryImpl implements Query {
             new UnsupportedOperationException("Too many union queries");
     public final static int MAX_UNION = Integer.getInteger("oak.sql2MaxUnion", 1000);
 
+    /**
+     * The maximum number of selectors of an inner join for which all join
+     * orders are considered. For larger joins, a greedy algorithm is used.
+     */
+    final static int JOIN_REORDER_LIMIT = Integer.getInteger("oak.query.joinReorderLimit", 4);
+
+    /**
+     * The minimum number of rows a selector reads before it is planned
+     * again, so that plans with a very low estimate are not planned again
+     * too early.
+     */
+    final static int REPLAN_MIN_ROWS = 100;
+
     private static final Logger LOG = LoggerFactory.getLogger(QueryImpl.class);
 
     private static final String INDEX_UNAVAILABLE = "INDEX-UNAVAILABLE";
@@ -198,6 +219,12 @@ public class QueryImpl implements Query {
 
     private boolean potentiallySlowTraversalQuery;
 
+    /**
+     * The branches of the union this query is a branch of, if the index
+     * rows are read ahead, or null.
+     */
+    private UnionBranch.Group readAhead;
+
     QueryImpl(String statement, SourceImpl source, ConstraintImpl constraint,
         ColumnImpl[] columns, NamePathMapper mapper, QueryEngineSettings settings,
         QueryExecutionStats stats) {
@@ -617,17 +644,22 @@ public class QueryImpl implements Query {
             logDebug("query execute " + statement);
             logDebug("query plan " + getPlan());
         }
-        final RowIterator rowIt = new RowIterator(context.getBaseState());
         Comparator<ResultRowImpl> orderBy;
         if (isSortedByIndex) {
             orderBy = null;
         } else {
             orderBy = ResultRowImpl.getComparator(orderings);
         }
+        final RowIterator rowIt = new RowIterator(context.getBaseState(), orderBy);
+        if (readAhead != null) {
+            // start reading the index rows ahead
+            rowIt.start();
+        }
         long localLimit = limit.orElse(Long.MAX_VALUE);
         long localOffset = offset.orElse(0L);
         Iterator<ResultRowImpl> it =
-                FilterIterators.newCombinedFilter(rowIt, distinct, localLimit, localOffset, orderBy, settings);
+                FilterIterators.newCombinedFilter(rowIt, distinct, localLimit, localOffset, orderBy, settings,
+                        new ResultRowCodec(this, distinctColumns, stats), settings.getSpillThreshold());
         if (orderBy != null) {
             // this will force the rows to be read, so that the size is known
             it.hasNext();
@@ -737,6 +769,19 @@ public class QueryImpl implements Query {
             return;
         }
 
+        if (sources.size() <= JOIN_REORDER_LIMIT) {
+            JoinOrderSearch search = new JoinOrderSearch(conditions);
+            search.search(null, null, sources);
+            if (search.best != null) {
+                search.best.prepare(search.bestPlan);
+                potentiallySlowTraversalQuery = search.potentiallySlow;
+                estimatedCost = search.best.prepare().getEstimatedCost();
+                source = search.best;
+                isSortedByIndex = canSortByIndex();
+                return;
+            }
+        }
+
         // use a greedy algorithm
         SourceImpl result = null;
         Set<SourceImpl> available = new HashSet<SourceImpl>();
@@ -779,6 +824,122 @@ public class QueryImpl implements Query {
         isSortedByIndex = canSortByIndex();
     }
     
+    /**
+     * Estimate the cost of executing a join plan. Unlike the estimated cost
+     * of the plan itself, this takes into account that the right hand side of
+     * a nested loop join is executed once for each row of the left hand side.
+     * Its plan is prepared with the restriction of the join condition, so
+     * that the cost is the cost of one execution.
+     *
+     * @param p the plan
+     * @return the estimated cost
+     */
+    static double getJoinOrderCost(ExecutionPlan p) {
+        if (p instanceof JoinExecutionPlan) {
+            JoinExecutionPlan j = (JoinExecutionPlan) p;
+            double left = getJoinOrderCost(j.getLeftPlan());
+            double right = getJoinOrderCost(j.getRightPlan());
+            if (j.getStrategy() == JoinExecutionPlan.Strategy.NESTED_LOOP) {
+                return left + getEstimatedRowCount(j.getLeftPlan()) * right;
+            }
+            // the right hand side is read once
+            return left + right;
+        }
+        return p.getEstimatedCost();
+    }
+
+    /**
+     * Estimate the number of rows of a plan. For selectors, this is the
+     * estimated entry count of the index plan if known, and otherwise the
+     * cost.
+     *
+     * @param p the plan
+     * @return the estimated number of rows (at least 1)
+     */
+    static double getEstimatedRowCount(ExecutionPlan p) {
+        if (p instanceof JoinExecutionPlan) {
+            JoinExecutionPlan j = (JoinExecutionPlan) p;
+            double left = getEstimatedRowCount(j.getLeftPlan());
+            if (j.getStrategy() == JoinExecutionPlan.Strategy.NESTED_LOOP) {
+                // the right hand side is restricted by the join condition
+                return left * getEstimatedRowCount(j.getRightPlan());
+            }
+            return left;
+        }
+        if (p instanceof SelectorExecutionPlan) {
+            IndexPlan indexPlan = ((SelectorExecutionPlan) p).getIndexPlan();
+            if (indexPlan != null && indexPlan.getEstimatedEntryCount() >= 0) {
+                return Math.max(1, indexPlan.getEstimatedEntryCount());
+            }
+        }
+        return Math.max(1, p.getEstimatedCost());
+    }
+
+    /**
+     * Finds the cheapest join order, by trying all orders in which each
+     * selector can be joined using a join condition. The cost of an order is
+     * estimated using {@link #getJoinOrderCost(ExecutionPlan)}. Orders are no
+     * longer tried once the cost of the joined selectors exceeds the cost of
+     * the best complete order found so far.
+     */
+    private class JoinOrderSearch {
+
+        private final List<JoinConditionImpl> conditions;
+
+        SourceImpl best;
+        ExecutionPlan bestPlan;
+        double bestCost = Double.POSITIVE_INFINITY;
+
+        /**
+         * The query is only slow if all tried join orders are slow.
+         */
+        boolean potentiallySlow = true;
+
+        JoinOrderSearch(List<JoinConditionImpl> conditions) {
+            this.conditions = conditions;
+        }
+
+        /**
+         * Try to join the remaining sources to the given (prepared) prefix.
+         * All sources are unprepared afterwards.
+         *
+         * @param prefix the joined sources, or null
+         * @param prefixPlan the plan of the prefix, or null
+         * @param remaining the sources that are not joined yet
+         */
+        void search(SourceImpl prefix, ExecutionPlan prefixPlan, List<SourceImpl> remaining) {
+            for (int i = 0; i < remaining.size(); i++) {
+                SourceImpl test = buildJoin(prefix, remaining.get(i), conditions);
+                if (test == null) {
+                    // no join condition
+                    continue;
+                }
+                if (prefix != null) {
+                    prefix.unprepare();
+                    prefix.prepare(prefixPlan);
+                }
+                ExecutionPlan testPlan = test.prepare();
+                if (!potentiallySlowTraversalQuery) {
+                    potentiallySlow = false;
+                }
+                double cost = getJoinOrderCost(testPlan);
+                if (cost < bestCost) {
+                    if (remaining.size() == 1) {
+                        best = test;
+                        bestPlan = testPlan;
+                        bestCost = cost;
+                    } else {
+                        List<SourceImpl> rest = new ArrayList<SourceImpl>(remaining);
+                        rest.remove(i);
+                        search(test, testPlan, rest);
+                    }
+                }
+                test.unprepare();
+            }
+        }
+
+    }
+
     private static SourceImpl buildJoin(SourceImpl result, SourceImpl last, List<JoinConditionImpl> conditions) {
         if (result == null) {
             return last;
@@ -816,7 +977,8 @@ public class QueryImpl implements Query {
      * Abstract decorating iterator for measure queries. The iterator delegates to the underlying actual
      * query iterator to lazily execute and return counts.
      */
-    abstract static class MeasuringIterator extends AbstractIterator<ResultRowImpl> {
+    abstract static class MeasuringIterator extends AbstractIterator<ResultRowImpl>
+            implements Closeable {
         private Iterator<ResultRowImpl> delegate;
         private Query query;
         private List<ResultRowImpl> results;
@@ -841,6 +1003,11 @@ public class QueryImpl implements Query {
             }
         }
 
+        @Override
+        public void close() {
+            FilterIterators.close(delegate);
+        }
+
         void getRows() {
             // run the query
             while (delegate.hasNext()) {
@@ -904,38 +1071,80 @@ public class QueryImpl implements Query {
     }
 
     /**
-     * An iterator over result rows.
+     * An iterator over result rows. If the rows are sorted by the top-K
+     * operator, rows that would not be kept are skipped before the columns
+     * are read, and the index cursor is told that it can skip them as well.
      */
-    class RowIterator implements Iterator<ResultRowImpl> {
+    class RowIterator implements FilterIterators.TopKSource<ResultRowImpl> {
 
         private final NodeState rootState;
+        private final Comparator<ResultRowImpl> orderBy;
         private ResultRowImpl current;
         private boolean started, end;
         private long rowIndex;
 
-        RowIterator(NodeState rootState) {
+        /**
+         * The row that sorts last among the rows kept by the top-K operator,
+         * or null.
+         */
+        private ResultRowImpl last;
+
+        /**
+         * The first sort order of the query, if the index cursor can be told
+         * to skip rows, or null.
+         */
+        private final OrderEntry thresholdOrder;
+
+        RowIterator(NodeState rootState, Comparator<ResultRowImpl> orderBy) {
             this.rootState = rootState;
+            this.orderBy = orderBy;
+            this.thresholdOrder = orderBy == null ? null : getThresholdOrder();
+        }
+
+        @Override
+        public void setLast(ResultRowImpl last) {
+            this.last = last;
+            if (thresholdOrder != null) {
+                PropertyValue v = last.getOrderValues()[0];
+                if (v != null && !v.isArray()) {
+                    ((SelectorImpl) source).setOrderThreshold(thresholdOrder, v);
+                }
+            }
         }
 
         public long getReadCount() {
             return rowIndex;
         }
 
+        /**
+         * Execute the source, if not done yet.
+         */
+        void start() {
+            if (!started) {
+                source.execute(rootState);
+                started = true;
+            }
+        }
+
         private void fetchNext() {
             if (end) {
                 return;
             }
             long nanos = System.nanoTime();
             long oldIndex = rowIndex;
-            if (!started) {
-                source.execute(rootState);
-                started = true;
-            }
+            start();
             while (true) {
                 if (source.next()) {
                     if (constraint == null || constraint.evaluate()) {
-                        current = currentRow();
+                        PropertyValue[] orderValues = currentOrderValues();
                         rowIndex++;
+                        if (last != null && orderBy.compare(
+                                new ResultRowImpl(QueryImpl.this, null, null, null, orderValues),
+                                last) >= 0) {
+                            // would not be kept
+                            continue;
+                        }
+                        current = currentRow(orderValues);
                         break;
                     }
                     if (constraint != null && constraint.evaluateStop()) {
@@ -984,7 +1193,39 @@ public class QueryImpl implements Query {
 
     }
 
-    ResultRowImpl currentRow() {
+    /**
+     * Get the first sort order of the query, if it is on the only selector, so
+     * that the index cursor can skip rows that sort after a given value.
+     *
+     * @return the sort order, or null
+     */
+    private OrderEntry getThresholdOrder() {
+        if (orderings == null || !(source instanceof SelectorImpl)) {
+            return null;
+        }
+        SelectorImpl s = (SelectorImpl) source;
+        OrderingImpl o = orderings[0];
+        DynamicOperandImpl op = o.getOperand();
+        if (op instanceof FullTextSearchScoreImpl) {
+            return new OrderEntry(QueryConstants.JCR_SCORE, Type.UNDEFINED,
+                    o.isDescending() ? Order.DESCENDING : Order.ASCENDING);
+        }
+        return op.getOrderEntry(s, o);
+    }
+
+    private PropertyValue[] currentOrderValues() {
+        if (orderings == null) {
+            return null;
+        }
+        int size = orderings.length;
+        PropertyValue[] orderValues = new PropertyValue[size];
+        for (int i = 0; i < size; i++) {
+            orderValues[i] = orderings[i].getOperand().currentProperty();
+        }
+        return orderValues;
+    }
+
+    private ResultRowImpl currentRow(PropertyValue[] orderValues) {
         int selectorCount = selectors.size();
         Tree[] trees = new Tree[selectorCount];
         for (int i = 0; i < selectorCount; i++) {
@@ -997,16 +1238,6 @@ public class QueryImpl implements Query {
             ColumnImpl c = columns[i];
             values[i] = c.currentProperty();
         }
-        PropertyValue[] orderValues;
-        if (orderings == null) {
-            orderValues = null;
-        } else {
-            int size = orderings.length;
-            orderValues = new PropertyValue[size];
-            for (int i = 0; i < size; i++) {
-                orderValues[i] = orderings[i].getOperand().currentProperty();
-            }
-        }
         return new ResultRowImpl(this, trees, values, distinctColumns, orderValues);
     }
 
@@ -1071,13 +1302,196 @@ public class QueryImpl implements Query {
     }
 
     public SelectorExecutionPlan getBestSelectorExecutionPlan(FilterImpl filter) {
-        return getBestSelectorExecutionPlan(context.getBaseState(), filter,
-                context.getIndexProvider(), traversalEnabled);
+        NodeState rootState = context.getBaseState();
+        QueryIndexProvider indexProvider = context.getIndexProvider();
+        QueryPlanCache planCache = getSettings().getPlanCache();
+        if (!planCache.isEnabled()) {
+            return getBestSelectorExecutionPlan(rootState, filter,
+                    indexProvider, traversalEnabled, true);
+        }
+        String key = getPlanCacheKey(filter);
+        long generation = planCache.getGeneration();
+        String cachedIndexName = planCache.get(key);
+        if (cachedIndexName != null) {
+            // only ask the index that was selected the last time
+            SelectorExecutionPlan plan = getBestSelectorExecutionPlan(rootState, filter,
+                    state -> indexProvider.getQueryIndexes(state).stream()
+                            .filter(index -> cachedIndexName.equals(index.getIndexName()))
+                            .collect(Collectors.toList()),
+                    traversalEnabled, true);
+            QueryIndex index = plan.getIndex();
+            if (index != null && cachedIndexName.equals(index.getIndexName())) {
+                return plan;
+            }
+            // the index is gone, or can no longer be used
+            planCache.remove(key);
+        }
+        SelectorExecutionPlan plan = getBestSelectorExecutionPlan(rootState, filter,
+                indexProvider, traversalEnabled, true);
+        QueryIndex index = plan.getIndex();
+        if (index != null && !(index instanceof TraversingIndex)) {
+            planCache.put(key, index.getIndexName(), generation);
+        }
+        return plan;
+    }
+
+    /**
+     * Read the index rows of this query ahead, using the given group of union
+     * branches. Must be called before the rows are read.
+     *
+     * @param readAhead the group
+     */
+    void setReadAhead(UnionBranch.Group readAhead) {
+        this.readAhead = readAhead;
+    }
+
+    /**
+     * Create the index cursor of a selector. If the index rows of this query
+     * are read ahead, the cursor of the selector that is the source of this
+     * query (so not for joins) is created and read by a task of the query
+     * executor, once: if the selector is executed again, the cursor is
+     * created directly.
+     *
+     * @param selector the selector
+     * @param cursor creates the cursor, using only the index and the base
+     *            state
+     * @return the cursor
+     */
+    public Cursor newCursor(SelectorImpl selector, Supplier<Cursor> cursor) {
+        UnionBranch.Group group = readAhead;
+        if (group == null || selector != source) {
+            return cursor.get();
+        }
+        readAhead = null;
+        return group.add(cursor, statement, isInternal);
+    }
+
+    /**
+     * Get the number of index rows after which a selector is planned again,
+     * because it read many more rows than the plan estimated. Only the
+     * selector of a query without join can be planned again, and only if the
+     * rows don't need to be returned in the sort order of the index.
+     *
+     * @param plan the plan of the selector
+     * @return the number of rows, or 0 if it is not planned again
+     */
+    public long getReplanRowCount(SelectorExecutionPlan plan) {
+        int factor = getSettings().getReplanFactor();
+        if (factor <= 0 || selectors.size() != 1 || isSortedByIndex) {
+            return 0;
+        }
+        if (queryOptions != null && (queryOptions.indexName != null || queryOptions.indexTag != null)) {
+            // the index was chosen explicitly
+            return 0;
+        }
+        QueryIndex index = plan.getIndex();
+        if (index == null || index instanceof TraversingIndex) {
+            return 0;
+        }
+        double rows = Math.max(REPLAN_MIN_ROWS, getEstimatedRowCount(plan));
+        return (long) Math.min(Long.MAX_VALUE, factor * rows);
+    }
+
+    /**
+     * Plan a selector again, because it read many more index rows than the
+     * plan estimated. The index definition that was used is excluded, and
+     * another plan is only used if it is cheaper than the old plan, with its
+     * cost corrected by the number of rows read. The index definition is only
+     * excluded for this execution, as the number of rows usually depends on
+     * the values of the restrictions, which are not part of the key of the
+     * plan cache.
+     *
+     * @param filter the filter
+     * @param plan the old plan
+     * @param indexName the name of the index definition of the old plan
+     * @param rowCount the number of rows read so far
+     * @return the new plan, or null if there is no cheaper plan
+     */
+    @Nullable
+    public SelectorExecutionPlan replan(FilterImpl filter, SelectorExecutionPlan plan,
+            String indexName, long rowCount) {
+        double correctedCost = plan.getEstimatedCost() * rowCount / getEstimatedRowCount(plan);
+        Set<String> excluded = new HashSet<>(plan.getExcludedIndexNames());
+        excluded.add(indexName);
+        filter.setExcludedIndexNames(Collections.unmodifiableSet(excluded));
+        SelectorExecutionPlan best;
+        boolean slow = potentiallySlowTraversalQuery;
+        try {
+            best = getBestSelectorExecutionPlan(context.getBaseState(), filter,
+                    context.getIndexProvider(), false, false);
+        } finally {
+            potentiallySlowTraversalQuery = slow;
+        }
+        QueryIndex index = best.getIndex();
+        if (index == null || best.getEstimatedCost() >= correctedCost) {
+            return null;
+        }
+        return best;
+    }
+
+    /**
+     * Get the key of the plan cache for the given filter. It consists of the
+     * statement, the names and types of the bind variables, the options, and
+     * the shape of the filter, but not the values of the restrictions.
+     *
+     * @param filter the filter
+     * @return the key
+     */
+    private String getPlanCacheKey(FilterImpl filter) {
+        StringBuilder buff = new StringBuilder();
+        buff.append(statement.trim().replaceAll("\\s+", " "));
+        for (String name : new TreeSet<String>(bindVariableMap.keySet())) {
+            PropertyValue v = bindVariableMap.get(name);
+            buff.append(" $").append(name).append(':').append(v == null ? -1 : v.getType().tag());
+        }
+        buff.append(" | ").append(traversalEnabled);
+        if (queryOptions != null) {
+            buff.append(' ').append(queryOptions.traversal).
+                append(' ').append(queryOptions.indexName).
+                append(' ').append(queryOptions.indexTag);
+        }
+        buff.append(" | ").append(filter.getSelector().getSelectorName());
+        if (filter.isAlwaysFalse()) {
+            buff.append(" false");
+        }
+        buff.append(' ').append(filter.getPathRestriction()).append(' ').append(filter.getPath());
+        for (Filter.PropertyRestriction r : filter.getPropertyRestrictions()) {
+            buff.append(' ').append(r.propertyName).
+                append(r.first == null ? "" : r.firstIncluding ? "[" : "(").
+                append(r.last == null ? "" : r.lastIncluding ? "]" : ")").
+                append(r.list == null ? "" : "list").
+                append(r.isLike ? "like" : "").
+                append(r.isNot ? "not" : "").
+                append(':').append(r.propertyType);
+        }
+        if (filter.getFullTextConstraint() != null) {
+            buff.append(" fulltext");
+        }
+        return buff.toString();
+    }
+
+    /**
+     * Get the best plan to read a selector once, as the right hand side of a
+     * hash or merge join. Traversal is not considered, and the plan doesn't
+     * affect whether the query is considered potentially slow.
+     *
+     * @param filter the filter
+     * @return the plan (with a null index if no index can be used)
+     */
+    public SelectorExecutionPlan getBestJoinBuildExecutionPlan(FilterImpl filter) {
+        boolean slow = potentiallySlowTraversalQuery;
+        try {
+            return getBestSelectorExecutionPlan(context.getBaseState(), filter,
+                    context.getIndexProvider(), false, false);
+        } finally {
+            potentiallySlowTraversalQuery = slow;
+        }
     }
 
     private SelectorExecutionPlan getBestSelectorExecutionPlan(
             NodeState rootState, FilterImpl filter,
-            QueryIndexProvider indexProvider, boolean traversalEnabled) {
+            QueryIndexProvider indexProvider, boolean traversalEnabled,
+            boolean reportMissingIndex) {
         QueryIndex bestIndex = null;
         if (LOG.isDebugEnabled()) {
             logDebug("cost using filter " + filter);
@@ -1098,6 +1512,7 @@ public class QueryImpl implements Query {
         List<? extends QueryIndex> queryIndexes = MINIMAL_COST_ORDERING
                 .sortedCopy(indexProvider.getQueryIndexes(rootState));
         List<OrderEntry> sortOrder = getSortOrder(filter); 
+        Set<String> excluded = filter.getExcludedIndexNames();
         for (int i = 0; i < queryIndexes.size(); i++) {
             QueryIndex index = queryIndexes.get(i);
             double minCost = index.getMinimumCost();
@@ -1122,6 +1537,9 @@ public class QueryImpl implements Query {
                         filter, sortOrder, rootState);
                 cost = Double.POSITIVE_INFINITY;
                 for (IndexPlan p : ipList) {
+                    if (excluded.contains(p.getPlanName())) {
+                        continue;
+                    }
                     
                     long entryCount = p.getEstimatedEntryCount();
                     if (p.getSupportsPathRestriction()) {
@@ -1154,6 +1572,8 @@ public class QueryImpl implements Query {
                         almostBestPlan = p;
                     }
                 }
+            } else if (!excluded.isEmpty() && excluded.contains(index.getIndexName(filter, rootState))) {
+                cost = Double.POSITIVE_INFINITY;
             } else {
                 cost = index.getCost(filter, rootState);
             }
@@ -1203,7 +1623,7 @@ public class QueryImpl implements Query {
             }
         }
 
-        if (potentiallySlowTraversalQuery || bestIndex == null) {
+        if (reportMissingIndex && (potentiallySlowTraversalQuery || bestIndex == null)) {
             // Log warning for fulltext queries without index, since these cannot return results
             if(!filter.getFulltextConditions().isEmpty()) { 
                 LOG.warn("Fulltext query without index for filter {}; no results will be returned", filter);
@@ -1221,7 +1641,7 @@ public class QueryImpl implements Query {
         }
 
         return new SelectorExecutionPlan(filter.getSelector(), bestIndex,
-                bestPlan, bestCost);
+                bestPlan, bestCost, excluded);
     }
     
     private long scaleEntryCount(NodeState rootState, FilterImpl filter, long count) {
@@ -0,0 +1,323 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_DEFINITIONS_NAME;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.Observer;
+import org.apache.jackrabbit.oak.spi.state.DefaultNodeStateDiff;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.spi.state.NodeStateDiff;
+import org.apache.jackrabbit.oak.spi.state.NodeStateUtils;
+import org.apache.jackrabbit.oak.stats.Clock;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A cache of the index that was selected for a selector of a query, shared by
+ * all sessions. The key consists of the statement, the names and types of the
+ * bind variables, and the shape of the filter (the restricted properties and
+ * operators, but not the values). If there is an entry, only the cached index
+ * is asked for plans, instead of all indexes.
+ * <p>
+ * The cache is cleared when the index definitions below /oak:index change.
+ * Changes to hidden nodes and properties (the index data) are ignored.
+ * Because of that, entries expire after a while, so that the query is planned
+ * again with all indexes: an index may become usable without a change of its
+ * definition (for example once an asynchronous index is reindexed), and the
+ * costs change as the data grows.
+ */
+public class QueryPlanCache implements Observer {
+
+    /**
+     * The diff that stops at the first change that is not in a hidden node
+     * or property.
+     */
+    private static final NodeStateDiff DEFINITION_DIFF = new DefaultNodeStateDiff() {
+
+        @Override
+        public boolean propertyAdded(PropertyState after) {
+            return NodeStateUtils.isHidden(after.getName());
+        }
+
+        @Override
+        public boolean propertyChanged(PropertyState before, PropertyState after) {
+            return NodeStateUtils.isHidden(after.getName());
+        }
+
+        @Override
+        public boolean propertyDeleted(PropertyState before) {
+            return NodeStateUtils.isHidden(before.getName());
+        }
+
+        @Override
+        public boolean childNodeAdded(String name, NodeState after) {
+            return NodeStateUtils.isHidden(name);
+        }
+
+        @Override
+        public boolean childNodeChanged(String name, NodeState before, NodeState after) {
+            return NodeStateUtils.isHidden(name) || after.compareAgainstBaseState(before, this);
+        }
+
+        @Override
+        public boolean childNodeDeleted(String name, NodeState before) {
+            return NodeStateUtils.isHidden(name);
+        }
+
+    };
+
+    private final Map<String, CacheEntry<String>> map = new LinkedHashMap<String, CacheEntry<String>>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CacheEntry<String>> eldest) {
+            return size() > maxSize;
+        }
+
+    };
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private volatile int maxSize;
+
+    private volatile long ttlMillis;
+
+    private Clock clock = Clock.SIMPLE;
+
+    /**
+     * Incremented whenever the cache is cleared, so that plans that were
+     * computed with the old index definitions are not added.
+     */
+    private long generation;
+
+    private NodeState indexDefinitions;
+
+    QueryPlanCache(int maxSize, long ttlMillis) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * @return whether the cache is enabled (the maximum size is larger than 0)
+     */
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the time in milliseconds after which an entry expires, or zero
+     *          if entries only expire when the index definitions change
+     */
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public void setTtlMillis(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        synchronized (map) {
+            if (maxSize <= 0) {
+                map.clear();
+            }
+        }
+    }
+
+    /**
+     * Get the name of the index that was selected for the given key.
+     *
+     * @param key the key
+     * @return the index name, or null if not cached
+     */
+    @Nullable
+    public String get(@NotNull String key) {
+        String indexName;
+        synchronized (map) {
+            indexName = getValid(map, key);
+        }
+        if (indexName == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return indexName;
+    }
+
+    /**
+     * @return the current generation, to be passed to
+     *          {@link #put(String, String, long)}
+     */
+    public long getGeneration() {
+        synchronized (map) {
+            return generation;
+        }
+    }
+
+    /**
+     * Add an entry, unless the cache was cleared since the given generation
+     * was read.
+     *
+     * @param key the key
+     * @param indexName the name of the selected index
+     * @param generation the generation read before planning
+     */
+    public void put(@NotNull String key, @NotNull String indexName, long generation) {
+        if (!isEnabled()) {
+            return;
+        }
+        synchronized (map) {
+            if (generation == this.generation) {
+                map.put(key, new CacheEntry<String>(indexName, clock.getTime()));
+            }
+        }
+    }
+
+    /**
+     * Get the value of an entry, and remove the entry if it expired. The
+     * caller needs to synchronize on the map.
+     *
+     * @param m the map
+     * @param key the key
+     * @return the value, or null if there is no entry or if it expired
+     */
+    @Nullable
+    private <V> V getValid(Map<String, CacheEntry<V>> m, String key) {
+        CacheEntry<V> e = m.get(key);
+        if (e == null) {
+            return null;
+        }
+        long ttl = ttlMillis;
+        if (ttl > 0 && clock.getTime() - e.created >= ttl) {
+            m.remove(key);
+            return null;
+        }
+        return e.value;
+    }
+
+    /**
+     * Remove an entry that is no longer valid, for example because the index
+     * can no longer be used for the query.
+     *
+     * @param key the key
+     */
+    public void remove(@NotNull String key) {
+        synchronized (map) {
+            if (map.remove(key) != null) {
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Remove all entries.
+     */
+    public void invalidate() {
+        synchronized (map) {
+            generation++;
+            if (!map.isEmpty()) {
+                map.clear();
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    public int size() {
+        synchronized (map) {
+            return map.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of times the cache was cleared because the index
+     *          definitions changed, plus the number of entries that were
+     *          removed because they were no longer valid
+     */
+    public long getInvalidationCount() {
+        return invalidations.get();
+    }
+
+    @Override
+    public void contentChanged(@NotNull NodeState root, @NotNull CommitInfo info) {
+        NodeState after = root.getChildNode(INDEX_DEFINITIONS_NAME);
+        NodeState before;
+        synchronized (this) {
+            before = indexDefinitions;
+            indexDefinitions = after;
+        }
+        if (before != null && isEnabled()
+                && !after.compareAgainstBaseState(before, DEFINITION_DIFF)) {
+            invalidate();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "QueryPlanCache{" +
+                "maxSize=" + maxSize +
+                ", size=" + size() +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", invalidations=" + invalidations +
+                '}';
+    }
+
+    /**
+     * A cached value, and when it was added.
+     */
+    private static class CacheEntry<V> {
+
+        final V value;
+        final long created;
+
+        CacheEntry(V value, long created) {
+            this.value = value;
+            this.created = created;
+        }
+
+    }
+
+}
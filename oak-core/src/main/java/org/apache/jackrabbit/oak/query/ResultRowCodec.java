@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.api.PropertyValue;
+import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.commons.json.JsopBuilder;
+import org.apache.jackrabbit.oak.commons.json.JsopReader;
+import org.apache.jackrabbit.oak.commons.json.JsopTokenizer;
+import org.apache.jackrabbit.oak.plugins.memory.MultiStringPropertyState;
+import org.apache.jackrabbit.oak.plugins.memory.PropertyStates;
+import org.apache.jackrabbit.oak.plugins.memory.PropertyValues;
+import org.apache.jackrabbit.oak.plugins.memory.StringPropertyState;
+import org.apache.jackrabbit.oak.query.FilterIterators.SpillCodec;
+import org.apache.jackrabbit.oak.query.stats.QueryStatsData.QueryExecutionStats;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Encodes the rows of a query as JSON arrays, so that the sort and distinct
+ * operators can write them to disk. A row is encoded as the paths of its
+ * trees, followed by the column values and the order values. The trees are
+ * looked up again when a row is decoded. Rows with binary values are not
+ * encoded.
+ */
+class ResultRowCodec implements SpillCodec<ResultRowImpl> {
+
+    private final QueryImpl query;
+
+    private final boolean[] distinctColumns;
+
+    private final QueryExecutionStats stats;
+
+    private final Comparator<ResultRowImpl> distinctOrder = this::compareDistinct;
+
+    ResultRowCodec(QueryImpl query, boolean[] distinctColumns, QueryExecutionStats stats) {
+        this.query = query;
+        this.distinctColumns = distinctColumns;
+        this.stats = stats;
+    }
+
+    @Nullable
+    @Override
+    public String encode(@NotNull ResultRowImpl row) {
+        JsopBuilder json = new JsopBuilder();
+        json.array();
+        json.array();
+        for (String path : row.getPaths()) {
+            json.value(path);
+        }
+        json.endArray();
+        if (!encodeValues(json, row.getValues())
+                || !encodeValues(json, row.getOrderValues())) {
+            return null;
+        }
+        json.endArray();
+        return json.toString();
+    }
+
+    @NotNull
+    @Override
+    public ResultRowImpl decode(@NotNull String line) {
+        JsopTokenizer t = new JsopTokenizer(line);
+        t.read('[');
+        List<String> paths = readStrings(t);
+        Tree[] trees = new Tree[paths.size()];
+        for (int i = 0; i < trees.length; i++) {
+            String path = paths.get(i);
+            trees[i] = path == null ? null : query.getTree(path);
+        }
+        t.read(',');
+        PropertyValue[] values = readValues(t);
+        t.read(',');
+        PropertyValue[] orderValues = readValues(t);
+        t.read(']');
+        return new ResultRowImpl(query, trees, values, distinctColumns, orderValues);
+    }
+
+    @NotNull
+    @Override
+    public Comparator<ResultRowImpl> getDistinctOrder() {
+        return distinctOrder;
+    }
+
+    @Override
+    public void spilled() {
+        stats.spill();
+    }
+
+    private int compareDistinct(ResultRowImpl r1, ResultRowImpl r2) {
+        String[] p1 = r1.getPaths();
+        String[] p2 = r2.getPaths();
+        for (int i = 0; i < p1.length; i++) {
+            int comp = compare(p1[i], p2[i]);
+            if (comp != 0) {
+                return comp;
+            }
+        }
+        PropertyValue[] v1 = r1.getValues();
+        PropertyValue[] v2 = r2.getValues();
+        for (int i = 0; i < v1.length; i++) {
+            if (distinctColumns == null || distinctColumns[i]) {
+                int comp = compare(v1[i], v2[i]);
+                if (comp != 0) {
+                    return comp;
+                }
+            }
+        }
+        return 0;
+    }
+
+    private static <T extends Comparable<? super T>> int compare(T a, T b) {
+        if (a == null || b == null) {
+            return a == b ? 0 : (a == null ? -1 : 1);
+        }
+        return a.compareTo(b);
+    }
+
+    private static boolean encodeValues(JsopBuilder json, PropertyValue[] values) {
+        if (values == null) {
+            json.value(null);
+            return true;
+        }
+        json.array();
+        for (PropertyValue v : values) {
+            if (v == null) {
+                json.value(null);
+                continue;
+            }
+            int tag = v.getType().tag();
+            if (tag == Type.BINARY.tag()) {
+                return false;
+            }
+            json.array();
+            if (v.isArray()) {
+                json.value(-tag);
+                for (String s : v.getValue(Type.STRINGS)) {
+                    json.value(s);
+                }
+            } else {
+                json.value(tag);
+                json.value(v.getValue(Type.STRING));
+            }
+            json.endArray();
+        }
+        json.endArray();
+        return true;
+    }
+
+    private static PropertyValue[] readValues(JsopTokenizer t) {
+        if (t.matches(JsopReader.NULL)) {
+            return null;
+        }
+        t.read('[');
+        List<PropertyValue> values = new ArrayList<>();
+        if (!t.matches(']')) {
+            do {
+                values.add(readValue(t));
+            } while (t.matches(','));
+            t.read(']');
+        }
+        return values.toArray(new PropertyValue[0]);
+    }
+
+    private static PropertyValue readValue(JsopTokenizer t) {
+        if (t.matches(JsopReader.NULL)) {
+            return null;
+        }
+        t.read('[');
+        int tag = Integer.parseInt(t.read(JsopReader.NUMBER));
+        List<String> strings;
+        if (t.matches(',')) {
+            strings = readStrings(t, ']');
+        } else {
+            // multi-valued without values
+            t.read(']');
+            strings = new ArrayList<>();
+        }
+        PropertyState state;
+        if (tag < 0) {
+            state = MultiStringPropertyState.stringProperty("", strings);
+        } else {
+            state = StringPropertyState.stringProperty("", strings.get(0));
+        }
+        return PropertyValues.create(PropertyStates.convert(
+                state, Type.fromTag(Math.abs(tag), tag < 0)));
+    }
+
+    private static List<String> readStrings(JsopTokenizer t) {
+        t.read('[');
+        if (t.matches(']')) {
+            return new ArrayList<>();
+        }
+        return readStrings(t, ']');
+    }
+
+    /**
+     * Reads a non-empty list of strings or null values up to the given end
+     * token.
+     */
+    private static List<String> readStrings(JsopTokenizer t, char end) {
+        List<String> strings = new ArrayList<>();
+        do {
+            strings.add(t.matches(JsopReader.NULL) ? null : t.readString());
+        } while (t.matches(','));
+        t.read(end);
+        return strings;
+    }
+}
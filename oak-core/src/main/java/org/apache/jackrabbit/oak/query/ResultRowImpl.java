@@ -212,7 +212,7 @@ public class ResultRowImpl implements ResultRow {
         return true;
     }
 
-    private String[] getPaths() {
+    String[] getPaths() {
         String[] paths = new String[trees.length];
         for (int i = 0; i < trees.length; i++) {
             if (trees[i] != null) {
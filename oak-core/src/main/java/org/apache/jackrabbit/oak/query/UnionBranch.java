@@ -0,0 +1,356 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import org.apache.jackrabbit.oak.api.PropertyValue;
+import org.apache.jackrabbit.oak.api.Result.SizePrecision;
+import org.apache.jackrabbit.oak.query.stats.QueryRecorder;
+import org.apache.jackrabbit.oak.spi.query.Cursor;
+import org.apache.jackrabbit.oak.spi.query.IndexRow;
+import org.apache.jackrabbit.oak.spi.query.QueryIndex.OrderEntry;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The index cursor of a branch of a union query, which is read by a task of
+ * the query executor, ahead of the consumer. The index rows are passed to the
+ * consumer using a bounded queue.
+ * <p>
+ * The task only reads the index (which only uses the immutable base state of
+ * the query). Everything else, for example reading the nodes and checking the
+ * constraints and access rights, is done by the consumer, as the session is
+ * not thread safe.
+ * <p>
+ * If the queue is full because the consumer falls behind, the task stops, and
+ * the consumer continues to read the cursor itself. If the task was not
+ * started yet when the consumer needs the rows, the consumer reads the cursor
+ * itself.
+ */
+class UnionBranch implements Cursor, Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UnionBranch.class);
+
+    /**
+     * The number of index rows a branch reads ahead of the consumer.
+     */
+    static final int QUEUE_SIZE = 100;
+
+    private static final long POLL_MILLIS = 100;
+
+    private static final Object END = new Object();
+
+    private enum State {
+        NEW, SUBMITTED, RUNNING, INLINE
+    }
+
+    private final Group group;
+    private final int index;
+    private final Supplier<Cursor> supplier;
+    private final String statement;
+    private final boolean internal;
+    private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final AtomicReference<State> state = new AtomicReference<>(State.NEW);
+
+    /**
+     * Whether the task stopped. Set after the last row was added to the
+     * queue.
+     */
+    private volatile boolean detached;
+
+    /**
+     * The order threshold to pass to the source, set by the consumer.
+     */
+    private volatile Threshold threshold;
+
+    /**
+     * The order threshold that was passed to the source.
+     */
+    private Threshold applied;
+
+    /**
+     * Whether the consumer reads the source itself.
+     */
+    private boolean inline;
+
+    private Cursor source;
+    private IndexRow pending;
+    private Throwable failure;
+    private long rowCount;
+    private long startNanos;
+
+    private IndexRow current;
+    private boolean end;
+
+    private UnionBranch(Group group, int index, Supplier<Cursor> supplier,
+            String statement, boolean internal) {
+        this.group = group;
+        this.index = index;
+        this.supplier = supplier;
+        this.statement = statement;
+        this.internal = internal;
+    }
+
+    @Override
+    public void run() {
+        try {
+            if (!state.compareAndSet(State.SUBMITTED, State.RUNNING)) {
+                // the consumer reads it
+                return;
+            }
+            startNanos = System.nanoTime();
+            source = supplier.get();
+            while (!group.cancelled) {
+                applyThreshold();
+                if (!source.hasNext()) {
+                    if (queue.offer(END)) {
+                        record();
+                    }
+                    return;
+                }
+                IndexRow row = source.next();
+                rowCount++;
+                if (!queue.offer(row)) {
+                    LOG.debug("Union branch {} is not read fast enough, stopping", index);
+                    pending = row;
+                    return;
+                }
+            }
+        } catch (RuntimeException | Error e) {
+            failure = e;
+        } finally {
+            detached = true;
+            group.finished();
+        }
+    }
+
+    private void applyThreshold() {
+        Threshold t = threshold;
+        if (t != null && t != applied) {
+            source.setOrderThreshold(t.orderEntry, t.value);
+            applied = t;
+        }
+    }
+
+    private void record() {
+        QueryRecorder.recordUnionBranch(statement, internal,
+                index, rowCount, System.nanoTime() - startNanos);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (current == null && !end) {
+            current = fetch();
+            end = current == null;
+        }
+        return current != null;
+    }
+
+    @Override
+    public IndexRow next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        IndexRow row = current;
+        current = null;
+        return row;
+    }
+
+    private IndexRow fetch() {
+        if (!inline) {
+            if (state.compareAndSet(State.NEW, State.INLINE)
+                    || state.compareAndSet(State.SUBMITTED, State.INLINE)) {
+                // not started yet
+                inline = true;
+                startNanos = System.nanoTime();
+                source = supplier.get();
+            } else {
+                Object o = take();
+                if (o == END) {
+                    return null;
+                } else if (o != null) {
+                    return (IndexRow) o;
+                }
+                // the task stopped: continue where it was
+                inline = true;
+                if (failure != null) {
+                    throw propagate(failure);
+                }
+                applyThreshold();
+                if (pending != null) {
+                    IndexRow row = pending;
+                    pending = null;
+                    return row;
+                }
+            }
+        }
+        if (!source.hasNext()) {
+            record();
+            return null;
+        }
+        rowCount++;
+        return source.next();
+    }
+
+    private static RuntimeException propagate(Throwable t) {
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return (RuntimeException) t;
+    }
+
+    /**
+     * Take the next entry from the queue.
+     *
+     * @return the entry, or null if the queue is empty and the task stopped
+     */
+    private Object take() {
+        try {
+            while (true) {
+                Object o = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (o != null) {
+                    return o;
+                }
+                if (detached) {
+                    // no more entries are added
+                    return queue.poll();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading a union branch", e);
+        }
+    }
+
+    @Override
+    public long getSize(SizePrecision precision, long max) {
+        // the source can't be used while the task reads it
+        return inline ? source.getSize(precision, max) : -1;
+    }
+
+    @Override
+    public void setOrderThreshold(@NotNull OrderEntry orderEntry, @NotNull PropertyValue value) {
+        threshold = new Threshold(orderEntry, value);
+        if (inline) {
+            applyThreshold();
+        }
+    }
+
+    /**
+     * An order threshold, as passed to
+     * {@link Cursor#setOrderThreshold(OrderEntry, PropertyValue)}.
+     */
+    private static class Threshold {
+
+        final OrderEntry orderEntry;
+        final PropertyValue value;
+
+        Threshold(OrderEntry orderEntry, PropertyValue value) {
+            this.orderEntry = orderEntry;
+            this.value = value;
+        }
+
+    }
+
+    /**
+     * The branches of a union query. At most {@code parallelism} of them are
+     * read ahead at the same time, in the order they were added.
+     */
+    static class Group {
+
+        private final int parallelism;
+        private final Executor executor;
+        private final List<UnionBranch> branches = new ArrayList<>();
+        private volatile boolean cancelled;
+        private int running;
+
+        /**
+         * Create a group.
+         *
+         * @param parallelism the maximum number of branches that are read
+         *            ahead concurrently
+         * @param executor the executor
+         */
+        Group(int parallelism, Executor executor) {
+            this.parallelism = parallelism;
+            this.executor = executor;
+        }
+
+        /**
+         * Add a branch, and start reading it if possible.
+         *
+         * @param supplier creates the index cursor; this is called by the
+         *            task, or by the consumer if the task was not started
+         * @param statement the statement of the branch
+         * @param internal whether the query is internal
+         * @return the cursor of the branch
+         */
+        synchronized Cursor add(Supplier<Cursor> supplier, String statement, boolean internal) {
+            UnionBranch b = new UnionBranch(this, branches.size(), supplier, statement, internal);
+            branches.add(b);
+            startNext();
+            return b;
+        }
+
+        /**
+         * Stop reading all branches.
+         */
+        void cancel() {
+            cancelled = true;
+        }
+
+        synchronized void finished() {
+            running--;
+            startNext();
+        }
+
+        private void startNext() {
+            for (UnionBranch b : branches) {
+                if (cancelled || running >= parallelism) {
+                    return;
+                }
+                if (b.state.compareAndSet(State.NEW, State.SUBMITTED)) {
+                    running++;
+                    try {
+                        executor.execute(b);
+                    } catch (RejectedExecutionException e) {
+                        LOG.debug("Could not start union branch {}", b.index, e);
+                        // the consumer will read it
+                        running--;
+                        b.state.compareAndSet(State.SUBMITTED, State.NEW);
+                        return;
+                    }
+                }
+            }
+        }
+
+    }
+
+}
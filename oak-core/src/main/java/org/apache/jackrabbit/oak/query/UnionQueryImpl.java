@@ -62,6 +62,13 @@ public class UnionQueryImpl implements Query {
     private long size = -1;
     private final QueryEngineSettings settings;
     private boolean isInternal;
+    private ExecutionContext context;
+
+    /**
+     * Whether this union is a branch of another union that reads its
+     * branches concurrently.
+     */
+    private boolean isBranch;
     
     UnionQueryImpl(final boolean unionAll, final Query left, final Query right,
                    final QueryEngineSettings settings) {
@@ -73,6 +80,7 @@ public class UnionQueryImpl implements Query {
 
     @Override
     public void setExecutionContext(ExecutionContext context) {
+        this.context = context;
         left.setExecutionContext(context);
         right.setExecutionContext(context);
     }
@@ -311,6 +319,12 @@ public class UnionQueryImpl implements Query {
         boolean distinct = !unionAll;
         Comparator<ResultRowImpl> orderBy = ResultRowImpl.getComparator(orderings);
 
+        List<Query> branches = new ArrayList<>();
+        addBranches(branches);
+        if (canReadConcurrently(branches)) {
+            return getRowsConcurrently(branches, orderBy);
+        }
+
         FacetMerger facetMerger = new FacetMerger(left, right);
 
         Iterator<ResultRowImpl> it;
@@ -373,6 +387,96 @@ public class UnionQueryImpl implements Query {
         return it;     
     }
 
+    /**
+     * Collect the branches of this union. Nested unions of the same kind
+     * (union or union all) are flattened.
+     *
+     * @param branches the list to add the branches to
+     */
+    private void addBranches(List<Query> branches) {
+        for (Query q : getChildren()) {
+            if (q instanceof UnionQueryImpl && ((UnionQueryImpl) q).unionAll == unionAll) {
+                ((UnionQueryImpl) q).addBranches(branches);
+            } else {
+                branches.add(q);
+            }
+        }
+    }
+
+    private boolean canReadConcurrently(List<Query> branches) {
+        if (isBranch || measure || settings == null || context == null) {
+            return false;
+        }
+        int parallelism = settings.getUnionParallelism();
+        if (parallelism <= 1 || settings.getExecutor() == null) {
+            return false;
+        }
+        // facets of the branches are merged
+        ColumnImpl[] cols = left.getColumns();
+        for (ColumnImpl c : cols) {
+            if (c.getColumnName().startsWith(QueryConstants.REP_FACET + "(")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read the index rows of the branches ahead using the query executor. At
+     * most {@link QueryEngineSettings#getUnionParallelism()} branches are read
+     * ahead at the same time. The nodes are read, and the conditions and
+     * access rights are checked, by the caller, as the session is not thread
+     * safe. The result is the same as when reading the branches one after the
+     * other: concatenated in the order of the branches, or merged if the
+     * result is sorted. Reading stops once the limit is reached.
+     *
+     * @param queries the branches
+     * @param orderBy the sort order, or null
+     * @return the rows
+     */
+    private Iterator<ResultRowImpl> getRowsConcurrently(List<Query> queries,
+            Comparator<ResultRowImpl> orderBy) {
+        final UnionBranch.Group group = new UnionBranch.Group(
+                settings.getUnionParallelism(), settings.getExecutor());
+        List<Iterator<ResultRowImpl>> iterators = new ArrayList<>(queries.size());
+        for (Query q : queries) {
+            if (q instanceof UnionQueryImpl) {
+                // read one after the other
+                ((UnionQueryImpl) q).isBranch = true;
+            } else if (q instanceof QueryImpl) {
+                ((QueryImpl) q).setReadAhead(group);
+            }
+            iterators.add(q.getRows());
+        }
+        Iterator<ResultRowImpl> it;
+        if (orderBy == null) {
+            it = Iterators.concat(iterators.iterator());
+        } else {
+            it = Iterators.mergeSorted(iterators, orderBy);
+        }
+        final long localLimit = limit.orElse(Long.MAX_VALUE);
+        final Iterator<ResultRowImpl> rows = FilterIterators.newCombinedFilter(
+                it, !unionAll, localLimit, offset.orElse(0L), null, settings);
+        return new AbstractIterator<ResultRowImpl>() {
+
+            private long count;
+
+            @Override
+            protected ResultRowImpl computeNext() {
+                if (count < localLimit && rows.hasNext()) {
+                    if (++count == localLimit) {
+                        // early termination
+                        group.cancel();
+                    }
+                    return rows.next();
+                }
+                group.cancel();
+                return endOfData();
+            }
+
+        };
+    }
+
     @Override
     public void setInternal(boolean isInternal) {
         this.isInternal = isInternal;
@@ -50,6 +50,14 @@ public class ChildNodeJoinConditionImpl extends JoinConditionImpl {
                 ", " + quote(parentSelectorName) + ')';
     }
 
+    SelectorImpl getChildSelector() {
+        return childSelector;
+    }
+
+    SelectorImpl getParentSelector() {
+        return parentSelector;
+    }
+
     public void bindSelector(SourceImpl source) {
         parentSelector = source.getExistingSelector(parentSelectorName);
         childSelector = source.getExistingSelector(childSelectorName);
@@ -71,7 +79,8 @@ public class ChildNodeJoinConditionImpl extends JoinConditionImpl {
             if (c == null && f.isPreparing() && f.isPrepared(childSelector)) {
                 // during the prepare phase, if the selector is already
                 // prepared, then we would know the value
-                f.restrictPath(KNOWN_PARENT_PATH, Filter.PathRestriction.EXACT);
+                f.restrictJoinPath(KNOWN_PARENT_PATH, Filter.PathRestriction.EXACT,
+                        "parent of " + quote(childSelectorName));
             } else if (c != null) {
                 f.restrictPath(PathUtils.getParentPath(c), Filter.PathRestriction.EXACT);
             }
@@ -81,7 +90,8 @@ public class ChildNodeJoinConditionImpl extends JoinConditionImpl {
             if (p == null && f.isPreparing() && f.isPrepared(parentSelector)) {
                 // during the prepare phase, if the selector is already
                 // prepared, then we would know the value
-                f.restrictPath(KNOWN_PATH, Filter.PathRestriction.DIRECT_CHILDREN);
+                f.restrictJoinPath(KNOWN_PATH, Filter.PathRestriction.DIRECT_CHILDREN,
+                        quote(parentSelectorName));
             } else if (p != null) {
                 f.restrictPath(p, Filter.PathRestriction.DIRECT_CHILDREN);
             }
@@ -41,6 +41,13 @@ public class ComparisonImpl extends ConstraintImpl {
     private final Operator operator;
     private final StaticOperandImpl operand2;
 
+    /**
+     * The static operand, converted to the type of the property it was last
+     * compared with. Constraints are evaluated for every row, and the
+     * property type rarely changes from one row to the next.
+     */
+    private ConvertedValue converted;
+
     public ComparisonImpl(DynamicOperandImpl operand1, Operator operator, StaticOperandImpl operand2) {
         this.operand1 = operand1;
         this.operator = operator;
@@ -89,7 +96,17 @@ public class ComparisonImpl extends ConstraintImpl {
         }
         // "the value of operand2 is converted to the
         // property type of the value of operand1" if possible
-        p2 = convertValueToType(p2, p1);
+        ConvertedValue c = convert(p2, p1);
+        p2 = c.value;
+        if (c.like != null) {
+            // "like" on the values, or on any element of an array
+            for (String s : p1.getValue(Type.STRINGS)) {
+                if (c.like.matches(s)) {
+                    return true;
+                }
+            }
+            return false;
+        }
         // if not possible, convert to the same type
         if (p1.getType().tag() != p2.getType().tag()) {
             // conversion failed: convert both to binary or string
@@ -115,6 +132,21 @@ public class ComparisonImpl extends ConstraintImpl {
         }
     }
     
+    private ConvertedValue convert(PropertyValue v, PropertyValue targetType) {
+        int type = targetType.getType().tag();
+        ConvertedValue c = converted;
+        if (c == null || c.source != v || c.type != type) {
+            PropertyValue value = convertValueToType(v, targetType);
+            LikePattern like = null;
+            if (operator == Operator.LIKE && value.getType().tag() == type) {
+                like = new LikePattern(value.getValue(Type.STRING));
+            }
+            c = new ConvertedValue(v, type, value, like);
+            converted = c;
+        }
+        return c;
+    }
+
     private static int getCommonType(PropertyValue p1, PropertyValue p2) {
         if (p1.getType().tag() == PropertyType.BINARY || p2.getType().tag() == PropertyType.BINARY) {
             return PropertyType.BINARY;
@@ -192,4 +224,25 @@ public class ComparisonImpl extends ConstraintImpl {
     public AstElement copyOf() {
         return new ComparisonImpl(operand1.createCopy(), operator, operand2);
     }
+
+    /**
+     * A static operand converted to a property type. Instances are
+     * immutable, so that they can be shared between threads.
+     */
+    private static final class ConvertedValue {
+
+        final PropertyValue source;
+        final int type;
+        final PropertyValue value;
+        final LikePattern like;
+
+        ConvertedValue(PropertyValue source, int type, PropertyValue value, LikePattern like) {
+            this.source = source;
+            this.type = type;
+            this.value = value;
+            this.like = like;
+        }
+
+    }
+
 }
@@ -52,6 +52,14 @@ public class DescendantNodeJoinConditionImpl extends JoinConditionImpl {
                 ", " + quote(ancestorSelectorName) + ')';
     }
 
+    SelectorImpl getDescendantSelector() {
+        return descendantSelector;
+    }
+
+    SelectorImpl getAncestorSelector() {
+        return ancestorSelector;
+    }
+
     public void bindSelector(SourceImpl source) {
         descendantSelector = source.getExistingSelector(descendantSelectorName);
         ancestorSelector = source.getExistingSelector(ancestorSelectorName);
@@ -75,7 +83,8 @@ public class DescendantNodeJoinConditionImpl extends JoinConditionImpl {
             if (a == null && f.isPreparing() && f.isPrepared(ancestorSelector)) {
                 // during the prepare phase, if the selector is already
                 // prepared, then we would know the value
-                f.restrictPath(KNOWN_PATH, Filter.PathRestriction.ALL_CHILDREN);
+                f.restrictJoinPath(KNOWN_PATH, Filter.PathRestriction.ALL_CHILDREN,
+                        quote(ancestorSelectorName));
             } else if (a != null) {
                 f.restrictPath(a, Filter.PathRestriction.ALL_CHILDREN);
             }
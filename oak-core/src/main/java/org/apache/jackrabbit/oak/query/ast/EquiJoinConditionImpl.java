@@ -55,6 +55,22 @@ public class EquiJoinConditionImpl extends JoinConditionImpl {
                 " = " + quote(selector2Name) + '.' + quote(property2Name);
     }
 
+    SelectorImpl getSelector1() {
+        return selector1;
+    }
+
+    SelectorImpl getSelector2() {
+        return selector2;
+    }
+
+    String getProperty1Name() {
+        return property1Name;
+    }
+
+    String getProperty2Name() {
+        return property2Name;
+    }
+
     public void bindSelector(SourceImpl source) {
         selector1 = source.getExistingSelector(selector1Name);
         selector2 = source.getExistingSelector(selector2Name);
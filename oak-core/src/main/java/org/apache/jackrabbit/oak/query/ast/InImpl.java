@@ -41,6 +41,12 @@ public class InImpl extends ConstraintImpl {
     private final DynamicOperandImpl operand1;
     private final List<StaticOperandImpl> operand2;
 
+    /**
+     * The static operands, converted to the type of the property they were
+     * last compared with.
+     */
+    private ConvertedValues converted;
+
     public InImpl(DynamicOperandImpl operand1, List<StaticOperandImpl> operand2) {
         this.operand1 = operand1;
         this.operand2 = operand2;
@@ -94,15 +100,11 @@ public class InImpl extends ConstraintImpl {
         if (p1 == null) {
             return false;
         }
-        for (StaticOperandImpl s : operand2) {
-            PropertyValue p2 = s.currentValue();
+        for (PropertyValue p2 : convert(p1).values) {
             if (p2 == null) {
                 // if the property doesn't exist, the result is false
                 continue;
             }
-            // "the value of operand2 is converted to the
-            // property type of the value of operand1"
-            p2 = convertValueToType(p2, p1);
             if (PropertyValues.match(p1, p2)) {
                 return true;
             }
@@ -110,6 +112,26 @@ public class InImpl extends ConstraintImpl {
         return false;
     }
 
+    private ConvertedValues convert(PropertyValue targetType) {
+        int type = targetType.getType().tag();
+        ConvertedValues c = converted;
+        if (c != null && c.type == type && c.isCurrent(operand2)) {
+            return c;
+        }
+        PropertyValue[] sources = new PropertyValue[operand2.size()];
+        PropertyValue[] values = new PropertyValue[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            PropertyValue v = operand2.get(i).currentValue();
+            sources[i] = v;
+            // "the value of operand2 is converted to the
+            // property type of the value of operand1"
+            values[i] = v == null ? null : convertValueToType(v, targetType);
+        }
+        c = new ConvertedValues(type, sources, values);
+        converted = c;
+        return c;
+    }
+
     @Override
     boolean accept(AstVisitor v) {
         return v.visit(this);
@@ -184,4 +206,32 @@ public class InImpl extends ConstraintImpl {
     public AstElement copyOf() {
         return new InImpl(operand1.createCopy(), operand2);
     }
+
+    /**
+     * The static operands converted to a property type. Instances are
+     * immutable, so that they can be shared between threads.
+     */
+    private static final class ConvertedValues {
+
+        final int type;
+        final PropertyValue[] sources;
+        final PropertyValue[] values;
+
+        ConvertedValues(int type, PropertyValue[] sources, PropertyValue[] values) {
+            this.type = type;
+            this.sources = sources;
+            this.values = values;
+        }
+
+        boolean isCurrent(List<StaticOperandImpl> operands) {
+            for (int i = 0; i < sources.length; i++) {
+                if (operands.get(i).currentValue() != sources[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
 }
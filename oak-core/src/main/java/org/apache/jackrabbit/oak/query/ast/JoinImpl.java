@@ -16,19 +16,43 @@ package org.apache.jackrabbit.oak.query.ast;
 import static org.apache.jackrabbit.oak.query.ast.AstElementFactory.copyElementAndCheckReference;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 import org.apache.jackrabbit.oak.api.Result.SizePrecision;
 import org.apache.jackrabbit.oak.query.plan.ExecutionPlan;
 import org.apache.jackrabbit.oak.query.plan.JoinExecutionPlan;
+import org.apache.jackrabbit.oak.query.plan.JoinExecutionPlan.Strategy;
+import org.apache.jackrabbit.oak.query.plan.SelectorExecutionPlan;
 import org.apache.jackrabbit.oak.spi.query.Filter;
+import org.apache.jackrabbit.oak.spi.query.IndexRow;
+import org.apache.jackrabbit.oak.spi.query.QueryIndex.IndexPlan;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * A join. This object contains the left hand side source, the right hand side
  * source, the join type, and the join condition.
+ * <p>
+ * By default, the right hand side is executed for each row of the left hand
+ * side (nested loop join). If the right hand side is a selector, and the join
+ * condition is an equi-join, or a child node or descendant node join, then
+ * the right hand side may instead be read only once and kept in memory (hash
+ * join or merge join), if the estimated cost is lower. If the right hand side
+ * has more than {@link #MAX_BUILD_ROWS} rows, the join falls back to a nested
+ * loop join.
  */
 public class JoinImpl extends SourceImpl {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JoinImpl.class);
+
+    /**
+     * The maximum number of rows of the right hand side that are kept in
+     * memory for a hash join or merge join. 0 disables those strategies.
+     */
+    static int MAX_BUILD_ROWS = Integer.getInteger("oak.query.joinMaxBuildRows", 100000);
+
     private final JoinConditionImpl joinCondition;
     private JoinType joinType;
     private SourceImpl left;
@@ -42,6 +66,13 @@ public class JoinImpl extends SourceImpl {
     
     private JoinExecutionPlan plan;
 
+    /**
+     * The rows of the right hand side, for a hash or merge join (null for a
+     * nested loop join).
+     */
+    private JoinTable table;
+    private Iterator<IndexRow> candidates;
+
     public JoinImpl(SourceImpl left, SourceImpl right, JoinType joinType,
             JoinConditionImpl joinCondition) {
         this.left = left;
@@ -107,6 +138,9 @@ public class JoinImpl extends SourceImpl {
             append(right.getPlan(rootState)).
             append(" on ").
             append(joinCondition);
+        if (plan != null && plan.getStrategy() != Strategy.NESTED_LOOP) {
+            buff.append(" /* ").append(plan.getStrategy()).append(" */");
+        }
         return buff.toString();
     }
 
@@ -192,9 +226,98 @@ public class JoinImpl extends SourceImpl {
         ExecutionPlan rightPlan = right.prepare();
         double cost = leftPlan.getEstimatedCost() + 2 * rightPlan.getEstimatedCost();
         plan = new JoinExecutionPlan(this, leftPlan, rightPlan, cost);
+        Strategy strategy = getBuildStrategy();
+        if (strategy != null) {
+            SelectorImpl s = (SelectorImpl) right;
+            SelectorExecutionPlan buildPlan = s.prepareJoinBuild();
+            // reading the right hand side once costs the same as
+            // executing it once without restriction; if the number of
+            // rows of the left hand side is known, that is the
+            // number of times the right hand side would be executed
+            double buildCost = leftPlan.getEstimatedCost() + buildPlan.getEstimatedCost();
+            long leftRows = Math.max(2, getEstimatedEntryCount(leftPlan));
+            double nestedLoopCost = leftPlan.getEstimatedCost() + leftRows * rightPlan.getEstimatedCost();
+            long buildRows = getEstimatedEntryCount(buildPlan);
+            if (buildPlan.getIndex() != null && buildRows <= MAX_BUILD_ROWS
+                    && buildCost < nestedLoopCost) {
+                s.setJoinPlan(buildPlan);
+                plan = new JoinExecutionPlan(this, leftPlan, buildPlan, buildCost, strategy, rightPlan);
+            }
+        }
         return plan;
     }
 
+    /**
+     * Get the strategy to use if the right hand side could be read once.
+     *
+     * @return the strategy, or null if only a nested loop join is possible
+     */
+    private Strategy getBuildStrategy() {
+        if (MAX_BUILD_ROWS <= 0 || !(right instanceof SelectorImpl)) {
+            return null;
+        }
+        SelectorImpl s = (SelectorImpl) right;
+        if (s.getJoinCondition() != joinCondition
+                || JoinTable.create(joinCondition, s, left) == null) {
+            return null;
+        }
+        return JoinTable.getStrategy(joinCondition);
+    }
+
+    private static long getEstimatedEntryCount(ExecutionPlan p) {
+        if (p instanceof SelectorExecutionPlan) {
+            IndexPlan indexPlan = ((SelectorExecutionPlan) p).getIndexPlan();
+            if (indexPlan != null) {
+                return indexPlan.getEstimatedEntryCount();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Read the right hand side into a new table.
+     *
+     * @return the table, or null if the right hand side needs to be executed
+     *         for each row of the left hand side
+     */
+    private JoinTable readRight() {
+        if (plan == null || plan.getStrategy() == Strategy.NESTED_LOOP) {
+            return null;
+        }
+        SelectorImpl s = (SelectorImpl) right;
+        JoinTable t = JoinTable.create(joinCondition, s, left);
+        if (t == null) {
+            return null;
+        }
+        s.setJoinPlan((SelectorExecutionPlan) plan.getRightPlan());
+        boolean complete = s.executeJoinBuild(rootState, row -> {
+            if (t.size() >= MAX_BUILD_ROWS) {
+                return false;
+            }
+            t.add(row);
+            return true;
+        });
+        if (!complete) {
+            LOG.debug("Using a nested loop join, as the right hand side has too many rows: {}", this);
+            // the plan that is restricted by the join condition
+            s.setJoinPlan((SelectorExecutionPlan) plan.getNestedLoopPlan());
+            return null;
+        }
+        return t;
+    }
+
+    private boolean nextRight() {
+        if (table == null) {
+            return right.next();
+        }
+        if (candidates.hasNext()) {
+            ((SelectorImpl) right).setJoinRow(candidates.next());
+            return true;
+        }
+        ((SelectorImpl) right).setJoinRow(null);
+        return false;
+    }
+
     @Override
     public SelectorImpl getSelector(String selectorName) {
         SelectorImpl s = left.getSelector(selectorName);
@@ -241,6 +364,7 @@ public class JoinImpl extends SourceImpl {
             return false;
         }
         if (leftNeedExecute) {
+            table = readRight();
             left.execute(rootState);
             leftNeedExecute = false;
             leftNeedNext = true;
@@ -249,17 +373,23 @@ public class JoinImpl extends SourceImpl {
             if (leftNeedNext) {
                 if (!left.next()) {
                     end = true;
+                    table = null;
+                    candidates = null;
                     return false;
                 }
                 leftNeedNext = false;
                 rightNeedExecute = true;
             }
             if (rightNeedExecute) {
-                right.execute(rootState);
+                if (table == null) {
+                    right.execute(rootState);
+                } else {
+                    candidates = table.lookup().iterator();
+                }
                 foundJoinedRow = false;
                 rightNeedExecute = false;
             }
-            if (!right.next()) {
+            if (!nextRight()) {
                 leftNeedNext = true;
             } else {
                 if (joinCondition.evaluate()) {
@@ -0,0 +1,328 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query.ast;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import javax.jcr.PropertyType;
+
+import org.apache.jackrabbit.oak.api.PropertyValue;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.commons.PathUtils;
+import org.apache.jackrabbit.oak.query.plan.JoinExecutionPlan.Strategy;
+import org.apache.jackrabbit.oak.spi.query.IndexRow;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The rows of the right hand side selector of a join, read once and kept in
+ * memory, so that the candidate rows for the current row of the left hand
+ * side can be looked up instead of executing the selector again for each
+ * row. The candidates are a superset of the matching rows: they still need to
+ * be checked with the join condition.
+ */
+abstract class JoinTable {
+
+    /**
+     * The selector the rows were read from.
+     */
+    protected final SelectorImpl build;
+
+    /**
+     * The selector (of the left hand side) used to look up the rows.
+     */
+    protected final SelectorImpl probe;
+
+    private int size;
+
+    JoinTable(SelectorImpl build, SelectorImpl probe) {
+        this.build = build;
+        this.probe = probe;
+    }
+
+    /**
+     * Get the join strategy that can be used for the given join condition, if
+     * the right hand side is read once.
+     *
+     * @param condition the join condition
+     * @return the strategy, or null if the right hand side needs to be
+     *         executed for each row of the left hand side
+     */
+    @Nullable
+    static Strategy getStrategy(JoinConditionImpl condition) {
+        if (condition instanceof EquiJoinConditionImpl) {
+            return Strategy.HASH;
+        } else if (condition instanceof ChildNodeJoinConditionImpl
+                || condition instanceof DescendantNodeJoinConditionImpl) {
+            return Strategy.MERGE;
+        }
+        return null;
+    }
+
+    /**
+     * Create an empty table for the given join condition.
+     *
+     * @param condition the join condition
+     * @param build the right hand side selector
+     * @param left the left hand side of the join
+     * @return the table, or null if the join condition doesn't relate the
+     *         right hand side selector with a selector of the left hand side
+     */
+    @Nullable
+    static JoinTable create(JoinConditionImpl condition, SelectorImpl build, SourceImpl left) {
+        if (condition instanceof EquiJoinConditionImpl) {
+            EquiJoinConditionImpl c = (EquiJoinConditionImpl) condition;
+            if (c.getSelector2() == build && isSelectorOf(c.getSelector1(), left)) {
+                return new HashTable(build, c.getProperty2Name(), c.getSelector1(), c.getProperty1Name());
+            } else if (c.getSelector1() == build && isSelectorOf(c.getSelector2(), left)) {
+                return new HashTable(build, c.getProperty1Name(), c.getSelector2(), c.getProperty2Name());
+            }
+        } else if (condition instanceof ChildNodeJoinConditionImpl) {
+            ChildNodeJoinConditionImpl c = (ChildNodeJoinConditionImpl) condition;
+            if (c.getParentSelector() == build && isSelectorOf(c.getChildSelector(), left)) {
+                return new PathTable(build, c.getChildSelector(), false, Lookup.PARENT);
+            } else if (c.getChildSelector() == build && isSelectorOf(c.getParentSelector(), left)) {
+                return new PathTable(build, c.getParentSelector(), true, Lookup.EXACT);
+            }
+        } else if (condition instanceof DescendantNodeJoinConditionImpl) {
+            DescendantNodeJoinConditionImpl c = (DescendantNodeJoinConditionImpl) condition;
+            if (c.getAncestorSelector() == build && isSelectorOf(c.getDescendantSelector(), left)) {
+                return new PathTable(build, c.getDescendantSelector(), false, Lookup.ANCESTORS);
+            } else if (c.getDescendantSelector() == build && isSelectorOf(c.getAncestorSelector(), left)) {
+                return new PathTable(build, c.getAncestorSelector(), false, Lookup.DESCENDANTS);
+            }
+        }
+        return null;
+    }
+
+    private static boolean isSelectorOf(SelectorImpl s, SourceImpl source) {
+        return s != null && source.getSelector(s.getSelectorName()) == s;
+    }
+
+    /**
+     * Add the current row of the right hand side selector.
+     *
+     * @param row the row
+     */
+    void add(IndexRow row) {
+        size++;
+        addRow(row);
+    }
+
+    /**
+     * The number of rows that were added.
+     *
+     * @return the number of rows
+     */
+    int size() {
+        return size;
+    }
+
+    abstract void addRow(IndexRow row);
+
+    /**
+     * Get the candidate rows for the current row of the left hand side.
+     *
+     * @return the candidates (possibly empty)
+     */
+    abstract Collection<IndexRow> lookup();
+
+    /**
+     * A hash table for an equi-join. Values of the types that are compared
+     * as strings are hashed; all other rows are candidates for each lookup,
+     * as converting between such types (for example long and double) may
+     * change the string representation.
+     */
+    private static class HashTable extends JoinTable {
+
+        private final String buildProperty;
+        private final String probeProperty;
+        private final Map<String, List<IndexRow>> map = new HashMap<>();
+        private final List<IndexRow> all = new ArrayList<>();
+        private final List<IndexRow> others = new ArrayList<>();
+
+        HashTable(SelectorImpl build, String buildProperty, SelectorImpl probe, String probeProperty) {
+            super(build, probe);
+            this.buildProperty = buildProperty;
+            this.probeProperty = probeProperty;
+        }
+
+        @Override
+        void addRow(IndexRow row) {
+            PropertyValue v = build.currentProperty(buildProperty);
+            if (v == null) {
+                // can never match
+                return;
+            }
+            all.add(row);
+            if (!isHashable(v)) {
+                others.add(row);
+                return;
+            }
+            for (String s : v.getValue(Type.STRINGS)) {
+                List<IndexRow> list = map.computeIfAbsent(s, k -> new ArrayList<>(1));
+                if (list.isEmpty() || list.get(list.size() - 1) != row) {
+                    list.add(row);
+                }
+            }
+        }
+
+        @Override
+        Collection<IndexRow> lookup() {
+            PropertyValue v = probe.currentProperty(probeProperty);
+            if (v == null) {
+                return Collections.emptyList();
+            }
+            if (!isHashable(v)) {
+                return all;
+            }
+            if (!v.isArray() && others.isEmpty()) {
+                List<IndexRow> list = map.get(v.getValue(Type.STRING));
+                return list == null ? Collections.<IndexRow>emptyList() : list;
+            }
+            LinkedHashSet<IndexRow> set = new LinkedHashSet<>();
+            for (String s : v.getValue(Type.STRINGS)) {
+                List<IndexRow> list = map.get(s);
+                if (list != null) {
+                    set.addAll(list);
+                }
+            }
+            set.addAll(others);
+            return set;
+        }
+
+        private static boolean isHashable(PropertyValue v) {
+            switch (v.getType().tag()) {
+            case PropertyType.STRING:
+            case PropertyType.NAME:
+            case PropertyType.PATH:
+            case PropertyType.REFERENCE:
+            case PropertyType.WEAKREFERENCE:
+            case PropertyType.URI:
+                return true;
+            default:
+                return false;
+            }
+        }
+
+    }
+
+    /**
+     * How the rows of a {@link PathTable} are looked up, given the path of
+     * the current row of the left hand side.
+     */
+    private enum Lookup {
+
+        /**
+         * The row with the same key.
+         */
+        EXACT,
+
+        /**
+         * The row at the parent path.
+         */
+        PARENT,
+
+        /**
+         * The rows at all ancestor paths.
+         */
+        ANCESTORS,
+
+        /**
+         * The rows within the subtree (a range of the sorted paths).
+         */
+        DESCENDANTS
+
+    }
+
+    /**
+     * The rows of the right hand side of a child node or descendant node
+     * join, sorted by path (or by parent path).
+     */
+    private static class PathTable extends JoinTable {
+
+        private final boolean keyByParent;
+        private final Lookup lookup;
+        private final NavigableMap<String, List<IndexRow>> map = new TreeMap<>();
+
+        PathTable(SelectorImpl build, SelectorImpl probe, boolean keyByParent, Lookup lookup) {
+            super(build, probe);
+            this.keyByParent = keyByParent;
+            this.lookup = lookup;
+        }
+
+        @Override
+        void addRow(IndexRow row) {
+            String key = row.getPath();
+            if (keyByParent) {
+                if (PathUtils.denotesRoot(key)) {
+                    // the root node is nobody's child
+                    return;
+                }
+                key = PathUtils.getParentPath(key);
+            }
+            map.computeIfAbsent(key, k -> new ArrayList<>(1)).add(row);
+        }
+
+        @Override
+        Collection<IndexRow> lookup() {
+            String path = probe.currentPath();
+            if (path == null) {
+                return Collections.emptyList();
+            }
+            switch (lookup) {
+            case EXACT:
+                return get(path);
+            case PARENT:
+                return PathUtils.denotesRoot(path) ?
+                        Collections.<IndexRow>emptyList() : get(PathUtils.getParentPath(path));
+            case ANCESTORS: {
+                List<IndexRow> list = new ArrayList<>();
+                while (!PathUtils.denotesRoot(path)) {
+                    path = PathUtils.getParentPath(path);
+                    list.addAll(get(path));
+                }
+                return list;
+            }
+            case DESCENDANTS: {
+                String prefix = PathUtils.denotesRoot(path) ? path : path + "/";
+                List<IndexRow> list = new ArrayList<>();
+                for (Map.Entry<String, List<IndexRow>> e : map.tailMap(prefix, true).entrySet()) {
+                    if (!e.getKey().startsWith(prefix)) {
+                        break;
+                    }
+                    list.addAll(e.getValue());
+                }
+                return list;
+            }
+            default:
+                throw new IllegalStateException("Unknown lookup " + lookup);
+            }
+        }
+
+        private List<IndexRow> get(String key) {
+            List<IndexRow> list = map.get(key);
+            return list == null ? Collections.<IndexRow>emptyList() : list;
+        }
+
+    }
+
+}
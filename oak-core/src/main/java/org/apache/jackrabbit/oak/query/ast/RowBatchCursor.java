@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query.ast;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.apache.jackrabbit.oak.api.PropertyValue;
+import org.apache.jackrabbit.oak.api.Result.SizePrecision;
+import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.commons.PathUtils;
+import org.apache.jackrabbit.oak.plugins.index.cursor.AbstractCursor;
+import org.apache.jackrabbit.oak.query.QueryImpl;
+import org.apache.jackrabbit.oak.spi.query.Cursor;
+import org.apache.jackrabbit.oak.spi.query.IndexRow;
+import org.apache.jackrabbit.oak.spi.query.QueryIndex.OrderEntry;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.spi.state.NodeStateUtils;
+import org.apache.jackrabbit.oak.spi.state.PrefetchNodeStore;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A cursor that reads the index rows in batches, and resolves the trees of a
+ * batch together. The node store can prefetch the node states of the batch,
+ * and the trees of siblings are resolved from the same parent tree, so that
+ * the access rights of the ancestors are only evaluated once per batch.
+ */
+class RowBatchCursor extends AbstractCursor {
+
+    private final Cursor cursor;
+    private final QueryImpl query;
+    private final int batchSize;
+    private final PrefetchNodeStore store;
+    private final NodeState rootState;
+    private final Map<String, Tree> trees = new HashMap<>();
+    private Iterator<IndexRow> rows = Collections.emptyIterator();
+
+    /**
+     * Create a new cursor.
+     *
+     * @param cursor the index cursor
+     * @param query the query
+     * @param batchSize the number of rows to read at once
+     * @param store the node store that prefetches the node states, or null
+     *            if they are not prefetched
+     * @param rootState the root state
+     */
+    RowBatchCursor(Cursor cursor, QueryImpl query, int batchSize,
+            @Nullable PrefetchNodeStore store, NodeState rootState) {
+        this.cursor = cursor;
+        this.query = query;
+        this.batchSize = batchSize;
+        this.store = store;
+        this.rootState = rootState;
+    }
+
+    @Override
+    public long getSize(SizePrecision precision, long max) {
+        return cursor.getSize(precision, max);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return rows.hasNext() || cursor.hasNext();
+    }
+
+    @Override
+    public void setOrderThreshold(@NotNull OrderEntry orderEntry, @NotNull PropertyValue value) {
+        cursor.setOrderThreshold(orderEntry, value);
+    }
+
+    @Override
+    public IndexRow next() {
+        if (!rows.hasNext()) {
+            readBatch();
+        }
+        return rows.next();
+    }
+
+    /**
+     * Get the tree of a row of the current batch.
+     *
+     * @param path the path of the row
+     * @return the tree, or null if it was not resolved
+     */
+    @Nullable
+    Tree getTree(@NotNull String path) {
+        return trees.get(path);
+    }
+
+    private void readBatch() {
+        List<IndexRow> list = new ArrayList<>(batchSize);
+        List<String> paths = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize && cursor.hasNext(); i++) {
+            IndexRow row = cursor.next();
+            list.add(row);
+            if (row.isVirtualRow()) {
+                continue;
+            }
+            String p = row.getPath();
+            if (PathUtils.isAbsolute(p) && !PathUtils.denotesRoot(p)
+                    && !NodeStateUtils.isHiddenPath(p)) {
+                paths.add(p);
+            }
+        }
+        trees.clear();
+        if (store != null && !paths.isEmpty()) {
+            prefetch(paths);
+        }
+        resolve(paths);
+        rows = list.iterator();
+    }
+
+    private void prefetch(List<String> paths) {
+        TreeSet<String> set = new TreeSet<>();
+        for (String p : paths) {
+            while (!PathUtils.denotesRoot(p) && set.add(p)) {
+                p = PathUtils.getParentPath(p);
+            }
+        }
+        store.prefetch(set, rootState);
+    }
+
+    private void resolve(List<String> paths) {
+        Map<String, Tree> parents = new HashMap<>();
+        for (String p : paths) {
+            String parentPath = PathUtils.getParentPath(p);
+            Tree parent;
+            if (parents.containsKey(parentPath)) {
+                parent = parents.get(parentPath);
+            } else {
+                parent = query.getTree(parentPath);
+                parents.put(parentPath, parent);
+            }
+            if (parent != null) {
+                trees.put(p, parent.getChild(PathUtils.getName(p)));
+            }
+        }
+    }
+
+}
@@ -86,7 +86,11 @@ public class SameNodeJoinConditionImpl extends JoinConditionImpl {
             if (p2 == null && f.isPreparing() && f.isPrepared(selector2)) {
                 // during the prepare phase, if the selector is already
                 // prepared, then we would know the value
-                f.restrictPath(KNOWN_PATH, Filter.PathRestriction.EXACT);
+                String description = quote(selector2Name);
+                if (!selector2Path.equals(".")) {
+                    description += "/" + normalizePath(selector2Path);
+                }
+                f.restrictJoinPath(KNOWN_PATH, Filter.PathRestriction.EXACT, description);
             } else if (p2 != null) {
                 if (selector2Path.equals(".")) {
                     f.restrictPath(p2, Filter.PathRestriction.EXACT);
@@ -102,7 +106,13 @@ public class SameNodeJoinConditionImpl extends JoinConditionImpl {
             if (p1 == null && f.isPreparing() && f.isPrepared(selector1)) {
                 // during the prepare phase, if the selector is already
                 // prepared, then we would know the value
-                f.restrictPath(KNOWN_PATH, Filter.PathRestriction.EXACT);
+                if (selector2Path.equals(".")) {
+                    f.restrictJoinPath(KNOWN_PATH, Filter.PathRestriction.EXACT,
+                            quote(selector1Name));
+                } else {
+                    // the path is not restricted when executing
+                    f.restrictPath(KNOWN_PATH, Filter.PathRestriction.EXACT);
+                }
             } else if (p1 != null) {
                 if (selector2Path.equals(".")) {
                     f.restrictPath(p1, Filter.PathRestriction.EXACT);
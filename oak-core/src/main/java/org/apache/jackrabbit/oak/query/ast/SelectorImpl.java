@@ -24,9 +24,11 @@ import static org.apache.jackrabbit.JcrConstants.NT_BASE;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 import org.apache.jackrabbit.oak.api.PropertyState;
 import org.apache.jackrabbit.oak.api.PropertyValue;
@@ -57,6 +59,7 @@ import org.apache.jackrabbit.oak.spi.query.QueryConstants;
 import org.apache.jackrabbit.oak.spi.query.QueryIndex;
 import org.apache.jackrabbit.oak.spi.query.QueryIndex.AdvancedQueryIndex;
 import org.apache.jackrabbit.oak.spi.query.QueryIndex.IndexPlan;
+import org.apache.jackrabbit.oak.spi.query.QueryIndex.OrderEntry;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
 import org.apache.jackrabbit.oak.spi.state.PrefetchNodeStore;
 import org.apache.jackrabbit.oak.stats.StatsOptions;
@@ -87,6 +90,11 @@ public class SelectorImpl extends SourceImpl {
     private static final String SLOW_QUERY_PERCENTILE_METRICS_NAME = "SLOW_QUERY_PERCENTILE_METRICS";
     private static final String SLOW_QUERY_COUNT_NAME = "SLOW_QUERY_COUNT";
 
+    /**
+     * The selector is only planned again if it returned fewer rows than this.
+     */
+    static final int REPLAN_MAX_RESULTS = 100;
+
     private static long timerSampleCounter;
 
     
@@ -176,9 +184,45 @@ public class SelectorImpl extends SourceImpl {
     private final List<ConstraintImpl> selectorConstraints = newArrayList();
     
     private Cursor cursor;
+    private RowBatchCursor batch;
     private IndexRow currentRow;
     private int scanCount;
 
+    /**
+     * The root state of the current execution.
+     */
+    private NodeState rootState;
+
+    /**
+     * The number of index rows after which the selector is planned again, or
+     * 0 if it is not planned again.
+     */
+    private long replanRowCount;
+
+    /**
+     * The last order threshold of the current execution, which is also
+     * passed to the cursor of a new plan, or null.
+     */
+    private OrderEntry thresholdOrder;
+    private PropertyValue thresholdValue;
+
+    /**
+     * The number of index rows read in the current execution.
+     */
+    private long rowCount;
+
+    /**
+     * The paths of the rows returned so far, if the selector can be planned
+     * again.
+     */
+    private Set<String> returnedPaths;
+
+    /**
+     * The paths of the rows that were returned before the selector was
+     * planned again, so that they are not returned twice.
+     */
+    private Set<String> skippedPaths;
+
     private String planIndexName;
     private TimerStats timerDuration;
 
@@ -316,6 +360,38 @@ public class SelectorImpl extends SourceImpl {
     public SelectorExecutionPlan getExecutionPlan() {
         return plan;
     }
+
+    /**
+     * Get the best execution plan to read all rows of this selector once, as
+     * the right hand side of a hash or merge join. The values of the join
+     * condition are not known in this case. The plan is not used until
+     * {@link #setJoinPlan(SelectorExecutionPlan)} is called.
+     *
+     * @return the plan
+     */
+    SelectorExecutionPlan prepareJoinBuild() {
+        JoinConditionImpl c = joinCondition;
+        joinCondition = null;
+        try {
+            return query.getBestJoinBuildExecutionPlan(createFilter(true));
+        } finally {
+            joinCondition = c;
+        }
+    }
+
+    /**
+     * Use the given plan as the right hand side of a join: either the plan to
+     * read all rows once, or the plan restricted by the join condition.
+     *
+     * @param joinPlan the plan
+     */
+    void setJoinPlan(SelectorExecutionPlan joinPlan) {
+        this.plan = joinPlan;
+    }
+
+    JoinConditionImpl getJoinCondition() {
+        return joinCondition;
+    }
     
     @Override
     public void setQueryConstraint(ConstraintImpl queryConstraint) {
@@ -343,7 +419,15 @@ public class SelectorImpl extends SourceImpl {
     public void execute(NodeState rootState) {
         long start = startTimer();
         try {
+            this.rootState = rootState;
+            thresholdOrder = null;
+            thresholdValue = null;
             executeInternal(rootState);
+            rowCount = 0;
+            // a plan without name can't be excluded
+            replanRowCount = planIndexName == null ? 0 : query.getReplanRowCount(plan);
+            returnedPaths = replanRowCount > 0 ? new HashSet<>() : null;
+            skippedPaths = null;
         } finally {
             stopTimer(start, true);
         }
@@ -352,6 +436,7 @@ public class SelectorImpl extends SourceImpl {
     private void executeInternal(NodeState rootState) {
         QueryIndex index = plan.getIndex();
         timerDuration = null;
+        batch = null;
         if (index == null) {
             cursor = Cursors.newPathCursor(new ArrayList<String>(), query.getSettings());
             planIndexName = "traverse";
@@ -362,11 +447,11 @@ public class SelectorImpl extends SourceImpl {
             planIndexName = p.getPlanName();
             p.setFilter(createFilter(false));
             AdvancedQueryIndex adv = (AdvancedQueryIndex) index;
-            cursor = adv.query(p, rootState);
+            cursor = query.newCursor(this, () -> adv.query(p, rootState));
         } else {
             FilterImpl f = createFilter(false);
             planIndexName = index.getIndexName(f, rootState);
-            cursor = index.query(f, rootState);
+            cursor = query.newCursor(this, () -> index.query(f, rootState));
         }
         int prefetchCount = query.getQueryOptions().prefetchCount.
                 orElse(query.getExecutionContext().getSettings().getPrefetchCount());
@@ -375,8 +460,70 @@ public class SelectorImpl extends SourceImpl {
             cursor = Cursors.newPrefetchCursor(cursor, store, prefetchCount,
                     rootState, query.getQueryOptions().prefetch);
         }
+        int batchSize = query.getSettings().getRowBatchSize();
+        if (batchSize > 1 && cursor != null) {
+            // if the prefetch cursor is used, the rows are already prefetched
+            PrefetchNodeStore store = query.getExecutionContext().getPrefetchNodeStore();
+            if (prefetchCount > 0 || store == PrefetchNodeStore.NOOP) {
+                store = null;
+            }
+            cursor = batch = new RowBatchCursor(cursor, query, batchSize, store, rootState);
+        }
     }
     
+    /**
+     * Execute this selector without evaluating the join condition, and pass
+     * all rows to the consumer. The selector is positioned on the row while
+     * the consumer is called.
+     *
+     * @param rootState the root state
+     * @param consumer the consumer, which returns false to stop reading
+     * @return true if all rows were read, false if the consumer stopped
+     *         reading or if there is a virtual row
+     */
+    boolean executeJoinBuild(NodeState rootState, Predicate<IndexRow> consumer) {
+        JoinConditionImpl c = joinCondition;
+        joinCondition = null;
+        try {
+            execute(rootState);
+            while (next()) {
+                if (currentRow.isVirtualRow() || !consumer.test(currentRow)) {
+                    cursor = null;
+                    currentRow = null;
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            joinCondition = c;
+        }
+    }
+
+    /**
+     * Tell the index cursor that rows that sort after the given value are no
+     * longer needed.
+     *
+     * @param orderEntry the first sort order of the query
+     * @param value the value
+     */
+    public void setOrderThreshold(@NotNull OrderEntry orderEntry, @NotNull PropertyValue value) {
+        thresholdOrder = orderEntry;
+        thresholdValue = value;
+        if (cursor != null) {
+            cursor.setOrderThreshold(orderEntry, value);
+        }
+    }
+
+    /**
+     * Position this selector on a row that was read by
+     * {@link #executeJoinBuild(NodeState, Predicate)}.
+     *
+     * @param row the row, or null for no row
+     */
+    void setJoinRow(@Nullable IndexRow row) {
+        currentRow = row;
+    }
+
     private long startTimer() {
         if (TIMER_DISABLED) {
             return -1;
@@ -468,6 +615,9 @@ public class SelectorImpl extends SourceImpl {
     public FilterImpl createFilter(boolean preparing) {
         FilterImpl f = new FilterImpl(this, query.getStatement(), query.getSettings());
         f.setPreparing(preparing);
+        if (plan != null) {
+            f.setExcludedIndexNames(plan.getExcludedIndexNames());
+        }
         if (joinCondition != null) {
             joinCondition.restrict(f);
         }
@@ -530,6 +680,11 @@ public class SelectorImpl extends SourceImpl {
     
     private boolean nextInternal() {
         while (cursor != null && cursor.hasNext()) {
+            if (replanRowCount > 0 && rowCount >= replanRowCount) {
+                replan();
+                continue;
+            }
+            rowCount++;
             scanCount++;
             query.getQueryExecutionStats().scan(1, scanCount);
             try {
@@ -540,6 +695,9 @@ public class SelectorImpl extends SourceImpl {
                 LOG.warn(e.getMessage() + " for query " + query.getStatement());
                 throw e;
             }
+            if (skippedPaths != null && skippedPaths.contains(currentRow.getPath())) {
+                continue;
+            }
             if (isParent) {
                 // we must not check whether the _parent_ is readable
                 // for joins of type
@@ -552,6 +710,8 @@ public class SelectorImpl extends SourceImpl {
                 // correct results
             } else if (currentRow.isVirtualRow()) {
                 // this is a virtual row and should be selected as is
+                replanRowCount = 0;
+                returnedPaths = null;
                 return true;
             } else {
                 // we must check whether the _child_ is readable
@@ -568,6 +728,14 @@ public class SelectorImpl extends SourceImpl {
                 }
             }
             if (evaluateCurrentRow()) {
+                if (replanRowCount > 0) {
+                    returnedPaths.add(currentRow.getPath());
+                    if (returnedPaths.size() >= REPLAN_MAX_RESULTS) {
+                        // enough rows were returned, the plan is kept
+                        replanRowCount = 0;
+                        returnedPaths = null;
+                    }
+                }
                 return true;
             }
         }
@@ -576,6 +744,28 @@ public class SelectorImpl extends SourceImpl {
         return false;
     }
 
+    /**
+     * Plan this selector again, because it read many more rows than
+     * estimated. If there is a cheaper plan, the rows are read from the new
+     * plan, skipping the rows that were already returned.
+     */
+    private void replan() {
+        replanRowCount = 0;
+        SelectorExecutionPlan p = query.replan(createFilter(true), plan, planIndexName, rowCount);
+        if (p != null) {
+            LOG.debug("Index {} read {} rows, with an estimated cost of {}; using {} instead for query {}",
+                    planIndexName, rowCount, plan.getEstimatedCost(),
+                    p.getIndexPlanName(), query.getStatement());
+            plan = p;
+            skippedPaths = returnedPaths;
+            executeInternal(rootState);
+            if (thresholdValue != null && cursor != null) {
+                cursor.setOrderThreshold(thresholdOrder, thresholdValue);
+            }
+        }
+        returnedPaths = null;
+    }
+
     private void totalQueryStats(QueryEngineSettings queryEngineSettings) {
         if (updateTotalQueryHistogram) {
             updateTotalQueryHistogram = false;
@@ -642,7 +832,7 @@ public class SelectorImpl extends SourceImpl {
      * @return the path
      */
     public String currentPath() {
-        return cursor == null ? null : currentRow.getPath();
+        return currentRow == null ? null : currentRow.getPath();
     }
     
     /**
@@ -673,7 +863,11 @@ public class SelectorImpl extends SourceImpl {
     @NotNull
     private CachedTree getCachedTree(@NotNull  String path) {
         if (cachedTree == null || !cachedTree.denotes(path)) {
-            cachedTree = new CachedTree(path, query);
+            Tree tree = batch == null ? null : batch.getTree(path);
+            if (tree == null) {
+                tree = query.getTree(path);
+            }
+            cachedTree = new CachedTree(path, tree, query);
         }
         return cachedTree;
     }
@@ -946,9 +1140,9 @@ public class SelectorImpl extends SourceImpl {
         private final ExecutionContext ctx;
         private final LazyValue<Tree> readOnlyTree;
 
-        private CachedTree(@NotNull String path, @NotNull QueryImpl query) {
+        private CachedTree(@NotNull String path, @Nullable Tree tree, @NotNull QueryImpl query) {
             this.path = path;
-            this.tree = query.getTree(path);
+            this.tree = tree;
             this.ctx = query.getExecutionContext();
             this.readOnlyTree = new LazyValue<Tree>() {
                 @Override
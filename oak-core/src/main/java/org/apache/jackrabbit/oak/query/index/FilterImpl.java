@@ -26,6 +26,7 @@ import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
 
 import javax.jcr.PropertyType;
 import javax.jcr.Session;
@@ -83,6 +84,14 @@ public class FilterImpl implements Filter {
      */
     private String pathPlan;
 
+    /**
+     * The most selective of the path restrictions of join conditions whose
+     * paths are known only at runtime, or NO_RESTRICTION, and the description
+     * of its path relative to the joined selector.
+     */
+    private PathRestriction joinPathRestriction = PathRestriction.NO_RESTRICTION;
+    private String joinPathDescription;
+
     /**
      * The fulltext search conditions, if any.
      */
@@ -110,6 +119,11 @@ public class FilterImpl implements Filter {
      */
     private boolean preparing;
 
+    /**
+     * The names of the index definitions that should not be used.
+     */
+    private Set<String> excludedIndexNames = Collections.emptySet();
+
     // TODO support "order by"
 
     /**
@@ -183,6 +197,16 @@ public class FilterImpl implements Filter {
         this.matchesAllTypes = selector != null ? selector.matchesAllTypes()
                 : false;
         this.settings = filter.getQueryLimits();
+        this.excludedIndexNames = impl.excludedIndexNames;
+    }
+
+    @Override
+    public Set<String> getExcludedIndexNames() {
+        return excludedIndexNames;
+    }
+
+    public void setExcludedIndexNames(@NotNull Set<String> excludedIndexNames) {
+        this.excludedIndexNames = excludedIndexNames;
     }
 
     public void setPreparing(boolean preparing) {
@@ -220,6 +244,27 @@ public class FilterImpl implements Filter {
         return pathRestriction;
     }
     
+    /**
+     * Get the most selective path restriction whose path is known only at
+     * runtime, for example the restriction of a join condition while the
+     * join is prepared.
+     *
+     * @return the restriction, or NO_RESTRICTION
+     */
+    public PathRestriction getJoinPathRestriction() {
+        return joinPathRestriction;
+    }
+
+    /**
+     * Get the description of the path of the join path restriction, relative
+     * to the joined selector, for example "parent of [a]".
+     *
+     * @return the description, or null if there is no such restriction
+     */
+    public String getJoinPathDescription() {
+        return joinPathDescription;
+    }
+
     @Override
     public String getPathPlan() {
         StringBuilder buff = new StringBuilder();
@@ -460,10 +505,35 @@ public class FilterImpl implements Filter {
             }
             buff.append("]");
         }
+        if (!excludedIndexNames.isEmpty()) {
+            buff.append(", excluded=").append(new TreeSet<>(excludedIndexNames));
+        }
         buff.append(")");
         return buff.toString();
     }
 
+    /**
+     * Restrict the path using a join condition, while the join is prepared.
+     * The path is not known yet, as it is the path of a node of the joined
+     * selector.
+     *
+     * @param addedPath the special path (starting with "//")
+     * @param addedPathRestriction the path restriction
+     * @param description the description of the path relative to the joined
+     *            selector, for example "parent of [a]"
+     */
+    public void restrictJoinPath(String addedPath, PathRestriction addedPathRestriction,
+            String description) {
+        restrictPath(addedPath, addedPathRestriction);
+        // EXACT is more selective than DIRECT_CHILDREN, which is more
+        // selective than ALL_CHILDREN
+        if (joinPathRestriction == PathRestriction.NO_RESTRICTION
+                || addedPathRestriction.compareTo(joinPathRestriction) < 0) {
+            joinPathRestriction = addedPathRestriction;
+            joinPathDescription = description;
+        }
+    }
+
     public void restrictPath(String addedPath, PathRestriction addedPathRestriction) {
         if (addedPath == null) {
             // currently unknown (prepare time)
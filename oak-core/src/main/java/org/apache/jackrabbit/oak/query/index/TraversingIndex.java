@@ -93,6 +93,12 @@ public class TraversingIndex implements QueryIndex {
         // (the path might be the root node), but that's OK
         String path = filter.getPath();
         PathRestriction restriction = filter.getPathRestriction();
+        boolean joinPath = false;
+        PathRestriction r = getJoinPathRestriction(filter);
+        if (r != PathRestriction.NO_RESTRICTION) {
+            restriction = r;
+            joinPath = true;
+        }
         // the simple cases
         switch (restriction) {
         case EXACT:
@@ -110,7 +116,7 @@ public class TraversingIndex implements QueryIndex {
             throw new IllegalArgumentException("Unknown restriction: " + restriction);
         }
         
-        if (!path.startsWith(JoinConditionImpl.SPECIAL_PATH_PREFIX)) {
+        if (!joinPath && !path.startsWith(JoinConditionImpl.SPECIAL_PATH_PREFIX)) {
             String testPath = path;
             if (restriction == PathRestriction.NO_RESTRICTION) {
                 testPath = "/";
@@ -132,7 +138,10 @@ public class TraversingIndex implements QueryIndex {
         case NO_RESTRICTION:
             break;
         case ALL_CHILDREN:
-            if (!PathUtils.denotesRoot(path)) {
+            if (joinPath) {
+                // the depth is not known
+                nodeCount = nodeCountChildren * 2;
+            } else if (!PathUtils.denotesRoot(path)) {
                 int depth = PathUtils.getDepth(path);
                 for (int i = depth; i > 0; i--) {
                     // estimate 10 child nodes per node,
@@ -156,12 +165,40 @@ public class TraversingIndex implements QueryIndex {
         return nodeCount;
     }
 
+    /**
+     * Get the path restriction that is set by another selector of a join
+     * while the join is prepared. The path is only known when the query is
+     * executed, but then only the nodes of this path are read. It is only
+     * used if the filter has no other path restriction, or if it is a single
+     * node.
+     *
+     * @param filter the filter
+     * @return the restriction, or NO_RESTRICTION
+     */
+    private static PathRestriction getJoinPathRestriction(Filter filter) {
+        if (filter instanceof FilterImpl) {
+            PathRestriction r = ((FilterImpl) filter).getJoinPathRestriction();
+            if (filter.getPathRestriction() == PathRestriction.NO_RESTRICTION
+                    || r == PathRestriction.EXACT) {
+                return r;
+            }
+        }
+        return PathRestriction.NO_RESTRICTION;
+    }
+
     @Override
     public String getPlan(Filter filter, NodeState rootState) {
         StringBuilder buff = new StringBuilder();
         buff.append("traverse\n");
         PathRestriction restriction = filter.getPathRestriction();
         String path = filter.getPath();
+        PathRestriction r = getJoinPathRestriction(filter);
+        if (r != PathRestriction.NO_RESTRICTION) {
+            restriction = r;
+            // the path is only known when executing:
+            // describe it relative to the joined selector
+            path = ((FilterImpl) filter).getJoinPathDescription();
+        }
         switch (restriction) {
         case EXACT:
             buff.append("    oneNode: ").append(path);
@@ -25,14 +25,34 @@ import org.apache.jackrabbit.oak.query.ast.JoinImpl;
 public class JoinExecutionPlan implements ExecutionPlan {
 
     private final JoinImpl join;
-    private final ExecutionPlan leftPlan, rightPlan;
+    private final ExecutionPlan leftPlan, rightPlan, nestedLoopPlan;
     private final double estimatedCost;
+    private final Strategy strategy;
     
     public JoinExecutionPlan(JoinImpl join, ExecutionPlan leftPlan, ExecutionPlan rightPlan, double estimatedCost) {
+        this(join, leftPlan, rightPlan, estimatedCost, Strategy.NESTED_LOOP, rightPlan);
+    }
+
+    /**
+     * Create a plan that reads the right hand side once.
+     *
+     * @param join the join
+     * @param leftPlan the plan of the left hand side
+     * @param rightPlan the plan to read the right hand side once
+     * @param estimatedCost the estimated cost
+     * @param strategy the strategy
+     * @param nestedLoopPlan the plan of the right hand side restricted by
+     *            the join condition, used if the right hand side has too
+     *            many rows to be read once
+     */
+    public JoinExecutionPlan(JoinImpl join, ExecutionPlan leftPlan, ExecutionPlan rightPlan,
+            double estimatedCost, Strategy strategy, ExecutionPlan nestedLoopPlan) {
         this.join = join;
         this.leftPlan = leftPlan;
         this.rightPlan = rightPlan;
         this.estimatedCost = estimatedCost;
+        this.strategy = strategy;
+        this.nestedLoopPlan = nestedLoopPlan;
     }
     
     @Override
@@ -52,4 +72,56 @@ public class JoinExecutionPlan implements ExecutionPlan {
         return rightPlan;
     }
 
+    /**
+     * Get the plan of the right hand side restricted by the join condition,
+     * as executed for each row of the left hand side. For a nested loop join,
+     * this is the same as the right plan.
+     *
+     * @return the plan
+     */
+    public ExecutionPlan getNestedLoopPlan() {
+        return nestedLoopPlan;
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * How the rows of the left and right hand side are combined.
+     */
+    public enum Strategy {
+
+        /**
+         * The right hand side is executed once for each row of the left hand
+         * side, with the values of the left hand side row as a restriction.
+         */
+        NESTED_LOOP("nested loop join"),
+
+        /**
+         * The right hand side is read once, and kept in a hash table keyed by
+         * the value of the equi-join property.
+         */
+        HASH("hash join"),
+
+        /**
+         * The right hand side is read once, and kept sorted by path. The path
+         * of each row of the left hand side is merged with the matching range
+         * of paths (the parent, the ancestors, or the subtree).
+         */
+        MERGE("merge join");
+
+        private final String name;
+
+        Strategy(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+
+    }
+
 }
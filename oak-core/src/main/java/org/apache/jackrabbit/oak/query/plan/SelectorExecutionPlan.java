@@ -16,6 +16,9 @@
  */
 package org.apache.jackrabbit.oak.query.plan;
 
+import java.util.Collections;
+import java.util.Set;
+
 import org.apache.jackrabbit.oak.query.ast.SelectorImpl;
 import org.apache.jackrabbit.oak.query.index.FilterImpl;
 import org.apache.jackrabbit.oak.spi.query.QueryIndex;
@@ -34,12 +37,19 @@ public class SelectorExecutionPlan implements ExecutionPlan {
     private final double estimatedCost;
     private final QueryIndex index;
     private final IndexPlan plan;
+    private final Set<String> excludedIndexNames;
 
     public SelectorExecutionPlan(SelectorImpl selector, QueryIndex index, IndexPlan plan, double estimatedCost) {
+        this(selector, index, plan, estimatedCost, Collections.emptySet());
+    }
+
+    public SelectorExecutionPlan(SelectorImpl selector, QueryIndex index, IndexPlan plan, double estimatedCost,
+            Set<String> excludedIndexNames) {
         this.selector = selector;
         this.index = index;
         this.estimatedCost = estimatedCost;
         this.plan = plan;
+        this.excludedIndexNames = excludedIndexNames;
     }
     
     @Override
@@ -58,6 +68,17 @@ public class SelectorExecutionPlan implements ExecutionPlan {
     public IndexPlan getIndexPlan() {
         return plan;
     }
+
+    /**
+     * Get the names of the index definitions that were excluded when this
+     * plan was chosen, because they returned many more rows than estimated.
+     * They are also excluded when the plan is executed.
+     *
+     * @return the names (empty if none)
+     */
+    public Set<String> getExcludedIndexNames() {
+        return excludedIndexNames;
+    }
     
     /**
      * Get the index name, or index type (may not always be the exact index name).
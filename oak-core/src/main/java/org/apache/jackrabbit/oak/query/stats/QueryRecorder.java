@@ -23,6 +23,7 @@ import java.io.LineNumberReader;
 import java.util.HashMap;
 import java.util.Map.Entry;
 import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -70,6 +71,29 @@ public class QueryRecorder {
         record(query);
     }
 
+    /**
+     * Record the execution of one branch of a union query, if the branches
+     * were read concurrently.
+     *
+     * @param query the statement of the branch
+     * @param internal whether the query is internal
+     * @param branch the index of the branch within the union
+     * @param rows the number of rows read from the branch
+     * @param nanos the time from starting the branch until the last row was read
+     */
+    public static void recordUnionBranch(String query, boolean internal, int branch, long rows, long nanos) {
+        if (internal) {
+            return;
+        }
+        if (!LOG.isDebugEnabled()) {
+            return;
+        }
+        query = query.replace('\n', ' ');
+        query = query.replace('\t', ' ');
+        LOG.debug("union branch:\t{}\trows:\t{}\ttime:\t{} ms\tquery:\t{}",
+                branch, rows, TimeUnit.NANOSECONDS.toMillis(nanos), simplifySafely(query));
+    }
+
     public static String simplifySafely(String query) {
         try {
             return simplify(query);
@@ -39,6 +39,7 @@ public class QueryStatsData {
      */
     private long totalRowsScanned;
     private long maxRowsScanned;
+    private long totalSpills;
     private long planNanos;
     private long readNanos;
     private long maxTimeNanos;
@@ -95,6 +96,16 @@ public class QueryStatsData {
         return totalRowsScanned;
     }
 
+    /**
+     * The number of sorted runs written to disk by the sort and distinct
+     * operators.
+     *
+     * @return the number of runs
+     */
+    public long getTotalSpills() {
+        return totalSpills;
+    }
+
     public String getLanguage() {
         return language;
     }
@@ -125,6 +136,7 @@ public class QueryStatsData {
             key("maxRowsRead").value(maxRowsRead).
             key("totalRowsScanned").value(totalRowsScanned).
             key("maxRowsScanned").value(maxRowsScanned).
+            key("totalSpills").value(totalSpills).
             key("planNanos").value(planNanos).
             key("readNanos").value(readNanos).
             key("maxTimeNanos").value(maxTimeNanos).
@@ -179,6 +191,10 @@ public class QueryStatsData {
             totalRowsScanned += count;
             maxRowsScanned = Math.max(maxRowsScanned, max);
         }
+
+        public void spill() {
+            totalSpills++;
+        }
     }
 
 }
\ No newline at end of file
@@ -54,5 +54,18 @@ public interface QueryStatsMBean {
     void setCaptureStackTraces(boolean captureStackTraces);
     
     boolean getCaptureStackTraces();
+
+    @Description("Get the number of query plan cache hits.")
+    long getPlanCacheHits();
+
+    @Description("Get the number of query plan cache misses.")
+    long getPlanCacheMisses();
+
+    @Description("Get the number of query plan cache invalidations " +
+            "(because the index definitions changed, or an index could no longer be used).")
+    long getPlanCacheInvalidations();
+
+    @Description("Get the number of entries in the query plan cache.")
+    int getPlanCacheSize();
     
 }
@@ -107,6 +107,26 @@ public class QueryStatsMBeanImpl extends AnnotatedStandardMBean
         return captureStackTraces;
     }
     
+    @Override
+    public long getPlanCacheHits() {
+        return settings.getPlanCache().getHitCount();
+    }
+
+    @Override
+    public long getPlanCacheMisses() {
+        return settings.getPlanCache().getMissCount();
+    }
+
+    @Override
+    public long getPlanCacheInvalidations() {
+        return settings.getPlanCache().getInvalidationCount();
+    }
+
+    @Override
+    public int getPlanCacheSize() {
+        return settings.getPlanCache().size();
+    }
+
     @Override
     public String asJson() {
         ArrayList<QueryStatsData> list = new ArrayList<QueryStatsData>(statistics.values());
@@ -208,7 +228,7 @@ public class QueryStatsMBeanImpl extends AnnotatedStandardMBean
 
         private final static String[] names = { "position", 
                 "maxTimeMillis", "totalTimeMillis", "executeCount", 
-                "rowsRead", "rowsScanned", "maxRowsRead", "maxRowsScanned",
+                "rowsRead", "rowsScanned", "maxRowsRead", "maxRowsScanned", "spills",
                 "language", "statement", "lastExecuted",
                 "lastThread"};
 
@@ -218,6 +238,7 @@ public class QueryStatsMBeanImpl extends AnnotatedStandardMBean
         private final static OpenType[] types = {SimpleType.LONG,
                     SimpleType.LONG, SimpleType.LONG, SimpleType.LONG,
                     SimpleType.LONG, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG,
+                    SimpleType.LONG,
                     SimpleType.STRING, SimpleType.STRING, SimpleType.STRING,
                     SimpleType.STRING};
 
@@ -230,6 +251,7 @@ public class QueryStatsMBeanImpl extends AnnotatedStandardMBean
             return new Object[] { (long) position,
                     q.getMaxTimeNanos() / 1000000, q.getTotalTimeNanos() / 1000000, q.getExecuteCount(), 
                     q.getTotalRowsRead(), q.getTotalRowsScanned(), q.getMaxRowsRead(), q.getMaxRowsScanned(),
+                    q.getTotalSpills(),
                     q.getLanguage(), q.getQuery(), QueryStatsData.getTimeString(q.getLastExecutedMillis()),
                     q.isInternal() ? "(internal query)" : q.getLastThreadName()};
         }
@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.property;
+
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_CONTENT_NODE_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_DEFINITIONS_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexUtils.createIndexDefinition;
+import static org.apache.jackrabbit.oak.spi.commit.CommitInfo.EMPTY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.jackrabbit.oak.InitialContentHelper;
+import org.apache.jackrabbit.oak.api.PropertyValue;
+import org.apache.jackrabbit.oak.plugins.index.IndexUpdateProvider;
+import org.apache.jackrabbit.oak.plugins.index.property.strategy.ContentMirrorStoreStrategy;
+import org.apache.jackrabbit.oak.plugins.memory.MemoryNodeStore;
+import org.apache.jackrabbit.oak.plugins.memory.PropertyValues;
+import org.apache.jackrabbit.oak.query.NodeStateNodeTypeInfoProvider;
+import org.apache.jackrabbit.oak.query.QueryEngineSettings;
+import org.apache.jackrabbit.oak.query.ast.NodeTypeInfo;
+import org.apache.jackrabbit.oak.query.ast.NodeTypeInfoProvider;
+import org.apache.jackrabbit.oak.query.ast.Operator;
+import org.apache.jackrabbit.oak.query.ast.SelectorImpl;
+import org.apache.jackrabbit.oak.query.index.FilterImpl;
+import org.apache.jackrabbit.oak.spi.commit.EditorHook;
+import org.apache.jackrabbit.oak.spi.query.IndexStatistics;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.spi.state.NodeStore;
+import org.junit.Test;
+
+/**
+ * Tests sampling the statistics of property indexes, and using them for
+ * cost estimation.
+ */
+public class PropertyIndexStatisticsTest {
+
+    private static final EditorHook HOOK = new EditorHook(
+            new IndexUpdateProvider(new PropertyIndexEditorProvider()));
+
+    private final NodeStore store = new MemoryNodeStore(InitialContentHelper.INITIAL_CONTENT);
+
+    @Test
+    public void skewedValues() throws Exception {
+        NodeBuilder builder = store.getRoot().builder();
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME), "status",
+                false, false, Set.of("status"), null);
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME), "id",
+                false, true, Set.of("id"), null);
+        NodeBuilder test = builder.child("test");
+        for (int i = 0; i < 500; i++) {
+            NodeBuilder n = test.child("n" + i);
+            n.setProperty("id", "id" + i);
+            // one common value, and 50 rare ones
+            n.setProperty("status", i < 400 ? "done" : "s" + (i % 50));
+        }
+        store.merge(builder, HOOK, EMPTY);
+
+        new PropertyIndexStatistics(store).update();
+
+        NodeState root = store.getRoot();
+        NodeState definition = root.getChildNode(INDEX_DEFINITIONS_NAME).getChildNode("status");
+        IndexStatistics statistics = IndexStatistics.read(definition, INDEX_CONTENT_NODE_NAME);
+        assertNotNull(statistics);
+        assertEquals(500, statistics.getEntryCount());
+        assertEquals(51, statistics.getDistinctCount());
+        assertEquals(PropertyIndexStatistics.MOST_COMMON_COUNT,
+                statistics.getMostCommonValues().size());
+        assertEquals("done", statistics.getMostCommonValues().keySet().iterator().next());
+        assertEquals(400, statistics.getEstimatedCount("done"));
+        assertEquals(2, statistics.getEstimatedCount("s1"));
+        assertEquals(2, statistics.getEstimatedCount("unknown"));
+        // unique indexes are not sampled
+        assertNull(IndexStatistics.read(root.getChildNode(INDEX_DEFINITIONS_NAME).getChildNode("id"),
+                INDEX_CONTENT_NODE_NAME));
+
+        double common = getCost(root, "status", "done");
+        double rare = getCost(root, "status", "s1");
+        assertTrue(common + " " + rare, common > 100 * rare);
+    }
+
+    @Test
+    public void staleStatistics() throws Exception {
+        NodeBuilder builder = store.getRoot().builder();
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME), "status",
+                false, false, Set.of("status"), null);
+        NodeBuilder test = builder.child("test");
+        for (int i = 0; i < 10; i++) {
+            test.child("n" + i).setProperty("status", "done");
+        }
+        store.merge(builder, HOOK, EMPTY);
+        new PropertyIndexStatistics(store).update();
+        double before = getCost(store.getRoot(), "status", "done");
+
+        builder = store.getRoot().builder();
+        test = builder.child("test");
+        for (int i = 10; i < 200; i++) {
+            test.child("n" + i).setProperty("status", "done");
+        }
+        store.merge(builder, HOOK, EMPTY);
+        // the statistics are used until they are updated
+        assertEquals(before, getCost(store.getRoot(), "status", "done"), 0);
+
+        new PropertyIndexStatistics(store).update();
+        assertTrue(getCost(store.getRoot(), "status", "done") > before + 100);
+    }
+
+    @Test
+    public void unchangedStatisticsNotWritten() throws Exception {
+        NodeBuilder builder = store.getRoot().builder();
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME), "status",
+                false, false, Set.of("status"), null);
+        builder.child("test").child("n").setProperty("status", "done");
+        store.merge(builder, HOOK, EMPTY);
+        new PropertyIndexStatistics(store).update();
+        NodeState before = store.getRoot();
+
+        Thread.sleep(2);
+        new PropertyIndexStatistics(store).update();
+        assertEquals(before, store.getRoot());
+
+        builder = store.getRoot().builder();
+        builder.child("test").child("n2").setProperty("status", "done");
+        store.merge(builder, HOOK, EMPTY);
+        new PropertyIndexStatistics(store).update();
+        NodeState definition = store.getRoot().getChildNode(INDEX_DEFINITIONS_NAME).getChildNode("status");
+        assertEquals(2, IndexStatistics.read(definition, INDEX_CONTENT_NODE_NAME).getEntryCount());
+    }
+
+    @Test
+    public void expiredStatistics() throws Exception {
+        NodeBuilder builder = store.getRoot().builder();
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME), "status",
+                false, false, Set.of("status"), null);
+        NodeBuilder test = builder.child("test");
+        for (int i = 0; i < 10; i++) {
+            test.child("n" + i).setProperty("status", "done");
+        }
+        store.merge(builder, HOOK, EMPTY);
+        double withoutStatistics = getCost(store.getRoot(), "status", "done");
+
+        builder = store.getRoot().builder();
+        NodeBuilder definition = builder.child(INDEX_DEFINITIONS_NAME).child("status");
+        long now = System.currentTimeMillis();
+        new IndexStatistics(100000, 1, Map.of("done", 100000L), now)
+                .write(definition, INDEX_CONTENT_NODE_NAME);
+        store.merge(builder, HOOK, EMPTY);
+        double recent = getCost(store.getRoot(), "status", "done");
+        assertTrue(recent + " " + withoutStatistics, recent > withoutStatistics + 1000);
+
+        // statistics that are no longer sampled are ignored after a while
+        builder = store.getRoot().builder();
+        definition = builder.child(INDEX_DEFINITIONS_NAME).child("status");
+        new IndexStatistics(100000, 1, Map.of("done", 100000L),
+                now - ContentMirrorStoreStrategy.STATISTICS_MAX_AGE - 1000)
+                .write(definition, INDEX_CONTENT_NODE_NAME);
+        store.merge(builder, HOOK, EMPTY);
+        assertEquals(withoutStatistics, getCost(store.getRoot(), "status", "done"), 0);
+    }
+
+    private static double getCost(NodeState root, String propertyName, String value) {
+        NodeTypeInfoProvider nodeTypes = new NodeStateNodeTypeInfoProvider(root);
+        NodeTypeInfo type = nodeTypes.getNodeTypeInfo("nt:base");
+        SelectorImpl selector = new SelectorImpl(type, "nt:base");
+        FilterImpl filter = new FilterImpl(selector, "SELECT * FROM [nt:base]",
+                new QueryEngineSettings());
+        PropertyValue v = PropertyValues.newString(value);
+        filter.restrictProperty(propertyName, Operator.EQUAL, v);
+        return new PropertyIndexLookup(root).getCost(filter, propertyName, v);
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.apache.jackrabbit.oak.InitialContentHelper;
+import org.apache.jackrabbit.oak.Oak;
+import org.apache.jackrabbit.oak.api.ContentRepository;
+import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.plugins.memory.MemoryNodeStore;
+import org.apache.jackrabbit.oak.spi.security.OpenSecurityProvider;
+import org.junit.Test;
+
+/**
+ * Tests evaluating constraints against rows with properties of different
+ * types, where the static operand is converted once per type.
+ */
+public class ConstraintEvaluationTest extends AbstractQueryTest {
+
+    @Override
+    protected ContentRepository createRepository() {
+        return new Oak(new MemoryNodeStore(InitialContentHelper.INITIAL_CONTENT))
+                .with(new OpenSecurityProvider())
+                .createContentRepository();
+    }
+
+    @Override
+    protected void createTestIndexNode() throws Exception {
+        // traverse
+    }
+
+    private void createNodes() throws Exception {
+        Tree test = root.getTree("/").addChild("test");
+        test.addChild("n0").setProperty("x", 10L);
+        test.addChild("n1").setProperty("x", "10");
+        test.addChild("n2").setProperty("x", List.of("5", "10"), Type.STRINGS);
+        test.addChild("n3").setProperty("x", "100");
+        test.addChild("n4").setProperty("x", 100L);
+        test.addChild("n5").setProperty("x", List.of("a", "10x"), Type.STRINGS);
+        test.addChild("n6").setProperty("x", true);
+        root.commit();
+    }
+
+    private List<String> query(String condition) {
+        return executeQuery("select [jcr:path] from [nt:base] " +
+                "where isdescendantnode('/test') and " + condition, SQL2);
+    }
+
+    @Test
+    public void comparison() throws Exception {
+        createNodes();
+        assertEquals(List.of("/test/n0", "/test/n1", "/test/n2"), query("[x] = 10"));
+        assertEquals(List.of("/test/n0", "/test/n1", "/test/n2"), query("[x] = '10'"));
+        // compared as strings if conversion is not possible
+        assertEquals(List.of("/test/n2", "/test/n3", "/test/n4", "/test/n5", "/test/n6"),
+                query("[x] > 10"));
+        assertEquals(List.of("/test/n6"), query("[x] = true"));
+    }
+
+    @Test
+    public void like() throws Exception {
+        createNodes();
+        assertEquals(List.of("/test/n0", "/test/n1", "/test/n2", "/test/n3", "/test/n4", "/test/n5"),
+                query("[x] like '10%'"));
+        assertEquals(List.of("/test/n2"), query("[x] like '5'"));
+        assertEquals(List.of("/test/n5"), query("[x] like '_0x'"));
+    }
+
+    @Test
+    public void in() throws Exception {
+        createNodes();
+        assertEquals(List.of("/test/n0", "/test/n1", "/test/n2"), query("[x] in (10, '5')"));
+        assertEquals(List.of("/test/n3", "/test/n4", "/test/n5"), query("[x] in ('100', 'a')"));
+    }
+
+}
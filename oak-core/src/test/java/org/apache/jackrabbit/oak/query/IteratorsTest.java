@@ -21,11 +21,18 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
@@ -144,6 +151,200 @@ public class IteratorsTest {
         assertTrue(compareCalls.get() <= maxComp);
     }
 
+    @Test
+    public void topK() {
+        Random r = new Random(1);
+        String[] list = new String[1000];
+        for (int i = 0; i < list.length; i++) {
+            list[i] = r.nextInt(100) + ":" + i;
+        }
+        // compare the first part only, so there are many equal entries
+        Comparator<String> comp = Comparator.comparing(x -> Integer.parseInt(x.split(":")[0]));
+        String[] sorted = list.clone();
+        // a stable sort
+        Arrays.sort(sorted, comp);
+        for (int limit : new int[] {0, 1, 5, 100, 1000, 2000}) {
+            List<String> last = new ArrayList<>();
+            TopKSource source = new TopKSource(it(list), last);
+            Iterator<String> it = FilterIterators.newCombinedFilter(
+                    source, false, limit, 0, comp, settings);
+            assertEquals(toString(FilterIterators.newLimit(it(sorted), limit)), toString(it));
+            if (limit == 0 || limit > list.length) {
+                assertTrue(last.isEmpty());
+            } else {
+                assertFalse(last.isEmpty());
+                // only moves towards the start
+                for (int i = 1; i < last.size(); i++) {
+                    assertTrue(comp.compare(last.get(i), last.get(i - 1)) <= 0);
+                }
+                assertEquals(sorted[limit - 1], last.get(last.size() - 1));
+            }
+        }
+    }
+
+    private static class TopKSource implements FilterIterators.TopKSource<String> {
+
+        private final Iterator<String> source;
+        private final List<String> last;
+
+        TopKSource(Iterator<String> source, List<String> last) {
+            this.source = source;
+            this.last = last;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return source.hasNext();
+        }
+
+        @Override
+        public String next() {
+            return source.next();
+        }
+
+        @Override
+        public void setLast(String last) {
+            this.last.add(last);
+        }
+
+    }
+
+    @Test
+    public void sortSpill() {
+        Random r = new Random(1);
+        Integer[] list = new Integer[1000];
+        for (int i = 0; i < list.length; i++) {
+            list[i] = r.nextInt(500);
+        }
+        Integer[] sorted = list.clone();
+        Arrays.sort(sorted);
+        for (int limit : new int[] {5, 100, 1000, Integer.MAX_VALUE}) {
+            IntCodec codec = new IntCodec();
+            Iterator<Integer> it = FilterIterators.newCombinedFilter(
+                    it(list), false, limit, 0, INT_COMP, settings, codec, 50);
+            assertEquals(toString(FilterIterators.newLimit(it(sorted), limit)), toString(it));
+            assertEquals(limit < 50 ? 0 : 20, codec.spills);
+        }
+    }
+
+    @Test
+    public void distinctSpill() {
+        Random r = new Random(1);
+        Integer[] list = new Integer[1000];
+        for (int i = 0; i < list.length; i++) {
+            list[i] = r.nextInt(500);
+        }
+        IntCodec codec = new IntCodec();
+        Iterator<Integer> it = FilterIterators.newCombinedFilter(
+                it(list), true, Long.MAX_VALUE, 0, null, settings, codec, 50);
+        LinkedHashSet<Integer> expected = new LinkedHashSet<Integer>(
+                Arrays.asList(list));
+        List<Integer> result = Lists.newArrayList(it);
+        assertEquals(expected.size(), result.size());
+        assertEquals(expected, new HashSet<Integer>(result));
+        // the entries up to the spill threshold are returned in source order
+        assertEquals(Lists.newArrayList(expected).subList(0, 50), result.subList(0, 50));
+        assertTrue(codec.spills > 1);
+    }
+
+    @Test
+    public void spilledFilesDeleted() {
+        Random r = new Random(1);
+        Integer[] list = new Integer[1000];
+        for (int i = 0; i < list.length; i++) {
+            list[i] = r.nextInt(500);
+        }
+        Set<String> before = tempFiles();
+
+        // closed before the end is reached
+        IntCodec codec = new IntCodec();
+        Iterator<Integer> it = FilterIterators.newCombinedFilter(
+                it(list), true, Long.MAX_VALUE, 0, INT_COMP, settings, codec, 50);
+        it.next();
+        assertTrue(codec.spills > 1);
+        assertFalse(before.containsAll(tempFiles()));
+        FilterIterators.close(it);
+        assertEquals(before, tempFiles());
+
+        // the limit is reached
+        codec = new IntCodec();
+        it = FilterIterators.newCombinedFilter(
+                it(list), false, 100, 0, INT_COMP, settings, codec, 50);
+        assertEquals(100, Lists.newArrayList(it).size());
+        assertTrue(codec.spills > 1);
+        assertEquals(before, tempFiles());
+
+        // distinct, before the runs are merged
+        codec = new IntCodec();
+        it = FilterIterators.newCombinedFilter(
+                it(list), true, Long.MAX_VALUE, 0, null, settings, codec, 50);
+        for (int i = 0; i < 50; i++) {
+            it.next();
+        }
+        assertEquals(1, codec.spills);
+        assertFalse(before.containsAll(tempFiles()));
+        FilterIterators.close(it);
+        assertEquals(before, tempFiles());
+    }
+
+    private static Set<String> tempFiles() {
+        String[] names = new File(System.getProperty("java.io.tmpdir")).list(
+                (dir, name) -> name.startsWith("oak-query-"));
+        return new HashSet<String>(Arrays.asList(names));
+    }
+
+    @Test
+    public void notSpillable() {
+        QueryEngineSettings s = new QueryEngineSettings();
+        s.setLimitInMemory(100);
+        IntCodec codec = new IntCodec();
+        codec.notSpillable = 7;
+        // continues in memory if an entry can not be written before
+        // the first run
+        assertEquals("1, 3, 7, 9", toString(FilterIterators.newCombinedFilter(
+                it(9, 7, 3, 1), false, Long.MAX_VALUE, 0, INT_COMP, s, codec, 2)));
+        assertEquals(0, codec.spills);
+
+        Integer[] list = new Integer[200];
+        for (int i = 0; i < list.length; i++) {
+            list[i] = i == 100 ? 7 : i + 10;
+        }
+        try {
+            Iterator<Integer> it = FilterIterators.newCombinedFilter(
+                    it(list), false, Long.MAX_VALUE, 0, INT_COMP, s, codec, 10);
+            it.hasNext();
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    private static class IntCodec implements FilterIterators.SpillCodec<Integer> {
+
+        int spills;
+        Integer notSpillable;
+
+        @Override
+        public String encode(Integer entry) {
+            return entry.equals(notSpillable) ? null : entry.toString();
+        }
+
+        @Override
+        public Integer decode(String line) {
+            return Integer.valueOf(line);
+        }
+
+        @Override
+        public Comparator<Integer> getDistinctOrder() {
+            return INT_COMP;
+        }
+
+        @Override
+        public void spilled() {
+            spills++;
+        }
+    }
+
     @Test
     public void combined() {
 
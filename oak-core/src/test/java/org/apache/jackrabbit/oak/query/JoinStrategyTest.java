@@ -0,0 +1,244 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import static org.apache.jackrabbit.oak.api.QueryEngine.NO_BINDINGS;
+import static org.apache.jackrabbit.oak.plugins.index.IndexUtils.createIndexDefinition;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.jackrabbit.oak.InitialContentHelper;
+import org.apache.jackrabbit.oak.Oak;
+import org.apache.jackrabbit.oak.api.ContentRepository;
+import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.commons.junit.LogCustomizer;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexEditorProvider;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexProvider;
+import org.apache.jackrabbit.oak.plugins.memory.MemoryNodeStore;
+import org.apache.jackrabbit.oak.spi.security.OpenSecurityProvider;
+import org.junit.Test;
+import org.slf4j.event.Level;
+
+/**
+ * Tests the hash join and merge join strategies, and the join order.
+ */
+public class JoinStrategyTest extends AbstractQueryTest {
+
+    @Override
+    protected ContentRepository createRepository() {
+        return new Oak(new MemoryNodeStore(InitialContentHelper.INITIAL_CONTENT))
+                .with(new OpenSecurityProvider())
+                .with(new PropertyIndexProvider())
+                .with(new PropertyIndexEditorProvider()).createContentRepository();
+    }
+
+    @Override
+    protected void createTestIndexNode() throws Exception {
+        Tree index = root.getTree("/oak:index");
+        createIndexDefinition(index, "id", false, new String[] {"id"});
+        createIndexDefinition(index, "kind", false, new String[] {"kind"});
+        createIndexDefinition(index, "folder", false, new String[] {"folder"});
+        createIndexDefinition(index, "file", false, new String[] {"file"});
+        root.commit();
+    }
+
+    @Test
+    public void hashJoin() throws Exception {
+        Tree test = root.getTree("/").addChild("test");
+        Tree parents = test.addChild("parents");
+        Tree children = test.addChild("children");
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            Tree p = parents.addChild("p" + i);
+            p.setProperty("kind", "parent");
+            p.setProperty("pid", "x" + i);
+        }
+        for (int i = 0; i < 200; i++) {
+            // some children don't have a parent
+            int p = i % 60;
+            Tree c = children.addChild("c" + i);
+            c.setProperty("kind", "child");
+            c.setProperty("ref", "x" + p);
+            if (p < 50) {
+                expected.add("/test/parents/p" + p + ", /test/children/c" + i);
+            }
+        }
+        root.commit();
+        Collections.sort(expected);
+
+        // the properties "pid" and "ref" are not indexed, so for each
+        // parent, all children would need to be read (and the other way round)
+        String query = "select p.[jcr:path], c.[jcr:path] from [nt:base] as p " +
+                "inner join [nt:base] as c on p.[pid] = c.[ref] " +
+                "where p.[kind] = 'parent' and c.[kind] = 'child'";
+        String plan = executeQuery("explain " + query, SQL2).get(0);
+        assertTrue(plan, plan.contains("/* hash join */"));
+        assertEquals(expected, executeQuery(query, SQL2));
+    }
+
+    @Test
+    public void hashJoinOuter() throws Exception {
+        Tree test = root.getTree("/").addChild("test");
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            test.addChild("a" + i).setProperty("folder", "f" + i);
+            if (i % 2 == 0) {
+                test.addChild("b" + i).setProperty("file", "f" + i);
+                expected.add("/test/a" + i + ", /test/b" + i);
+            } else {
+                expected.add("/test/a" + i + ", null");
+            }
+        }
+        root.commit();
+        Collections.sort(expected);
+
+        String query = "select a.[jcr:path], b.[jcr:path] from [nt:base] as a " +
+                "left outer join [nt:base] as b on a.[folder] = b.[file] " +
+                "where a.[folder] is not null";
+        assertEquals(expected, executeQuery(query, SQL2));
+    }
+
+    @Test
+    public void joinOrder() throws Exception {
+        Tree test = root.getTree("/").addChild("test");
+        for (int i = 0; i < 100; i++) {
+            Tree item = test.addChild("i" + i);
+            item.setProperty("kind", "item");
+            item.setProperty("owner", "o" + (i % 5));
+        }
+        for (int i = 0; i < 5; i++) {
+            Tree owner = test.addChild("o" + i);
+            owner.setProperty("kind", "owner");
+            owner.setProperty("id", "o" + i);
+        }
+        test.addChild("x").setProperty("file", "o3");
+        root.commit();
+        List<String> expected = new ArrayList<>();
+        for (int i = 3; i < 100; i += 5) {
+            expected.add("/test/i" + i + ", /test/o3, /test/x");
+        }
+        Collections.sort(expected);
+
+        // written with the largest selector first
+        String query = "select a.[jcr:path], b.[jcr:path], c.[jcr:path] from [nt:base] as a " +
+                "inner join [nt:base] as b on a.[owner] = b.[id] " +
+                "inner join [nt:base] as c on b.[id] = c.[file] " +
+                "where a.[kind] = 'item' and b.[kind] = 'owner' and c.[file] is not null";
+        String plan = executeQuery("explain " + query, SQL2).get(0);
+        assertTrue(plan, plan.startsWith("[nt:base] as [c]"));
+        assertEquals(expected, executeQuery(query, SQL2));
+    }
+
+    @Test
+    public void mergeJoin() throws Exception {
+        Tree test = root.getTree("/").addChild("test");
+        List<String> descendants = new ArrayList<>();
+        List<String> children = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Tree folder = test.addChild("f" + i);
+            folder.setProperty("folder", "yes");
+            for (int j = 0; j < 20; j++) {
+                Tree file = folder.addChild("a" + j);
+                file.setProperty("file", "yes");
+                Tree sub = file.addChild("b");
+                sub.setProperty("file", "yes");
+                String path = "/test/f" + i;
+                children.add(path + ", " + path + "/a" + j);
+                descendants.add(path + ", " + path + "/a" + j);
+                descendants.add(path + ", " + path + "/a" + j + "/b");
+            }
+        }
+        // a file that is not within a folder
+        test.addChild("other").setProperty("file", "yes");
+        root.commit();
+        Collections.sort(children);
+        Collections.sort(descendants);
+
+        String query = "select a.[jcr:path], b.[jcr:path] from [nt:base] as a " +
+                "inner join [nt:base] as b on isdescendantnode(b, a) " +
+                "where a.[folder] = 'yes' and b.[file] = 'yes'";
+        String plan = executeQuery("explain " + query, SQL2).get(0);
+        assertTrue(plan, plan.contains("/* merge join */"));
+        assertEquals(descendants, executeQuery(query, SQL2));
+
+        query = "select a.[jcr:path], b.[jcr:path] from [nt:base] as a " +
+                "inner join [nt:base] as b on ischildnode(b, a) " +
+                "where a.[folder] = 'yes' and b.[file] = 'yes'";
+        plan = executeQuery("explain " + query, SQL2).get(0);
+        assertTrue(plan, plan.contains("/* merge join */"));
+        assertEquals(children, executeQuery(query, SQL2));
+    }
+
+    @Test
+    public void traversingJoin() throws Exception {
+        Tree test = root.getTree("/").addChild("test");
+        Tree folder = test.addChild("f");
+        folder.setProperty("folder", "yes");
+        folder.addChild("a").setProperty("x", 1);
+        root.commit();
+
+        // the children are read by traversal, but only those of [a]:
+        // this is not reported as a traversal query
+        String query = "select b.[jcr:path] from [nt:base] as a " +
+                "inner join [nt:base] as b on ischildnode(b, a) " +
+                "where a.[folder] = 'yes' and b.[x] = 1";
+        String plan = executeQuery("explain " + query, SQL2).get(0);
+        assertTrue(plan, plan.contains("onlyDirectChildren: [a]"));
+        assertFalse(plan, plan.contains("warning: slow"));
+        LogCustomizer logs = LogCustomizer.forLogger(QueryImpl.class.getName())
+                .enable(Level.WARN).contains("Traversal query").create();
+        try {
+            logs.starting();
+            assertEquals(List.of("/test/f/a"), executeQuery(query, SQL2));
+            assertEquals(0, logs.getLogs().size());
+        } finally {
+            logs.finished();
+        }
+        assertEquals(List.of("/test/f/a"),
+                executeQuery(query + " option(traversal fail)", SQL2));
+
+        // no selector can use an index: this is a traversal query,
+        // even though one of the selectors is restricted by the join
+        query = "select b.[jcr:path] from [nt:base] as a " +
+                "inner join [nt:base] as b on ischildnode(b, a) " +
+                "where a.[y] is null and b.[x] = 1";
+        plan = executeQuery("explain " + query, SQL2).get(0);
+        assertTrue(plan, plan.contains("allNodes (warning: slow)"));
+        logs = LogCustomizer.forLogger(QueryImpl.class.getName())
+                .enable(Level.WARN).contains("Traversal query").create();
+        try {
+            logs.starting();
+            assertEquals(List.of("/test/f/a"), executeQuery(query, SQL2));
+            assertEquals(1, logs.getLogs().size());
+        } finally {
+            logs.finished();
+        }
+        try {
+            executeQuery(query + " option(traversal fail)", SQL2, NO_BINDINGS);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Traversal query"));
+        }
+    }
+
+}
@@ -0,0 +1,247 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import static org.apache.jackrabbit.oak.api.QueryEngine.NO_BINDINGS;
+import static org.apache.jackrabbit.oak.api.QueryEngine.NO_MAPPINGS;
+import static org.apache.jackrabbit.oak.plugins.index.IndexUtils.createIndexDefinition;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.jackrabbit.oak.InitialContentHelper;
+import org.apache.jackrabbit.oak.Oak;
+import org.apache.jackrabbit.oak.api.ContentRepository;
+import org.apache.jackrabbit.oak.api.Result;
+import org.apache.jackrabbit.oak.api.ResultRow;
+import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.plugins.index.cursor.Cursors;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexEditorProvider;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexProvider;
+import org.apache.jackrabbit.oak.plugins.memory.MemoryNodeStore;
+import org.apache.jackrabbit.oak.spi.query.Cursor;
+import org.apache.jackrabbit.oak.spi.query.Filter;
+import org.apache.jackrabbit.oak.spi.query.QueryIndex;
+import org.apache.jackrabbit.oak.spi.query.QueryIndexProvider;
+import org.apache.jackrabbit.oak.spi.security.OpenSecurityProvider;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.junit.Test;
+
+/**
+ * Tests reading the branches of union queries concurrently.
+ */
+public class ParallelUnionQueryTest extends AbstractQueryTest {
+
+    private static final String UNION =
+            "select [jcr:path] from [nt:base] where [a] = '0' " +
+            "union select [jcr:path] from [nt:base] where [b] = '1' " +
+            "union select [jcr:path] from [nt:base] where [a] = '1'";
+
+    private final Set<String> threads = ConcurrentHashMap.newKeySet();
+
+    @Override
+    protected ContentRepository createRepository() {
+        QueryEngineSettings settings = new QueryEngineSettings();
+        settings.setUnionParallelism(2);
+        return new Oak(new MemoryNodeStore(InitialContentHelper.INITIAL_CONTENT))
+                .with(new OpenSecurityProvider())
+                .with((QueryIndexProvider) state -> {
+                    List<QueryIndex> list = new ArrayList<>();
+                    for (QueryIndex index : new PropertyIndexProvider().getQueryIndexes(state)) {
+                        list.add(new RecordingIndex(index));
+                    }
+                    return list;
+                })
+                .with(new PropertyIndexEditorProvider())
+                .with(settings)
+                .createContentRepository();
+    }
+
+    @Override
+    protected void createTestIndexNode() throws Exception {
+        Tree index = root.getTree("/oak:index");
+        createIndexDefinition(index, "a", false, new String[] {"a"});
+        createIndexDefinition(index, "b", false, new String[] {"b"});
+        root.commit();
+    }
+
+    @Test
+    public void union() throws Exception {
+        createContent();
+        List<String> expected = getExpected(false);
+        assertEquals(expected, executeQuery(UNION, SQL2));
+        assertTrue(threads.toString(), threads.stream().anyMatch(t -> t.startsWith("oak-query-executor-")));
+
+        // the same as read one after the other, but sorted
+        assertEquals(expected, executeQuery(UNION + " order by [jcr:path]", SQL2));
+    }
+
+    @Test
+    public void unionAll() throws Exception {
+        createContent();
+        String query = UNION.replace(" union ", " union all ");
+        assertEquals(getExpected(true), executeQuery(query, SQL2));
+    }
+
+    @Test
+    public void limit() throws Exception {
+        createContent();
+        List<String> expected = getExpected(false);
+        Result result = qe.executeQuery(UNION + " order by [jcr:path]", SQL2, 10, 5,
+                NO_BINDINGS, NO_MAPPINGS);
+        List<String> paths = new ArrayList<>();
+        for (ResultRow row : result.getRows()) {
+            paths.add(row.getPath());
+        }
+        assertEquals(expected.subList(5, 15), paths);
+    }
+
+    @Test
+    public void changesWhileReading() throws Exception {
+        createContent();
+        threads.clear();
+        Result result = qe.executeQuery(UNION, SQL2, NO_BINDINGS, NO_MAPPINGS);
+        List<String> paths = new ArrayList<>();
+        for (ResultRow row : result.getRows()) {
+            paths.add(row.getPath());
+            if (paths.size() % 10 == 0) {
+                // the session is only used by this thread
+                root.getTree("/test").addChild("new" + paths.size());
+            }
+        }
+        Collections.sort(paths);
+        assertEquals(getExpected(false), paths);
+        assertTrue(threads.toString(), threads.stream().anyMatch(t -> t.startsWith("oak-query-executor-")));
+    }
+
+    @Test
+    public void consumerFallsBehind() {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < 3 * UnionBranch.QUEUE_SIZE; i++) {
+            paths.add("/n" + i);
+        }
+        // the task runs until the queue is full, and the rest is read inline
+        UnionBranch.Group group = new UnionBranch.Group(2, Runnable::run);
+        assertEquals(paths, readPaths(group.add(() -> newPathCursor(paths), "", true)));
+
+        // rejected: read inline
+        group = new UnionBranch.Group(2, r -> {
+            throw new RejectedExecutionException();
+        });
+        assertEquals(paths, readPaths(group.add(() -> newPathCursor(paths), "", true)));
+
+        // submitted but not started: read inline, and the task does nothing
+        List<Runnable> tasks = new ArrayList<>();
+        group = new UnionBranch.Group(2, tasks::add);
+        Cursor c = group.add(() -> newPathCursor(paths), "", true);
+        assertEquals(paths, readPaths(c));
+        tasks.forEach(Runnable::run);
+        assertFalse(c.hasNext());
+    }
+
+    private static Cursor newPathCursor(List<String> paths) {
+        return Cursors.newPathCursor(paths, new QueryEngineSettings());
+    }
+
+    private static List<String> readPaths(Cursor c) {
+        List<String> list = new ArrayList<>();
+        while (c.hasNext()) {
+            list.add(c.next().getPath());
+        }
+        return list;
+    }
+
+    private void createContent() throws Exception {
+        Tree test = root.getTree("/").addChild("test");
+        // more than fit into the queue of a branch
+        for (int i = 0; i < 3 * UnionBranch.QUEUE_SIZE; i++) {
+            Tree t = test.addChild("n" + i);
+            t.setProperty("a", "" + (i % 3));
+            t.setProperty("b", "" + (i % 5));
+        }
+        root.commit();
+    }
+
+    private static List<String> getExpected(boolean all) {
+        List<String> list = new ArrayList<>();
+        for (int i = 0; i < 3 * UnionBranch.QUEUE_SIZE; i++) {
+            String path = "/test/n" + i;
+            if (i % 3 == 0) {
+                list.add(path);
+            }
+            if (i % 5 == 1) {
+                list.add(path);
+            }
+            if (i % 3 == 1) {
+                list.add(path);
+            }
+        }
+        if (!all) {
+            list = new ArrayList<>(new TreeSet<>(list));
+        }
+        Collections.sort(list);
+        return list;
+    }
+
+    /**
+     * An index that records the threads that run queries.
+     */
+    private class RecordingIndex implements QueryIndex {
+
+        private final QueryIndex base;
+
+        RecordingIndex(QueryIndex base) {
+            this.base = base;
+        }
+
+        @Override
+        public double getMinimumCost() {
+            return base.getMinimumCost();
+        }
+
+        @Override
+        public double getCost(Filter filter, NodeState rootState) {
+            return base.getCost(filter, rootState);
+        }
+
+        @Override
+        public Cursor query(Filter filter, NodeState rootState) {
+            threads.add(Thread.currentThread().getName());
+            return base.query(filter, rootState);
+        }
+
+        @Override
+        public String getPlan(Filter filter, NodeState rootState) {
+            return base.getPlan(filter, rootState);
+        }
+
+        @Override
+        public String getIndexName() {
+            return base.getIndexName();
+        }
+
+    }
+
+}
@@ -21,8 +21,12 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThrows;
 
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
 import java.util.Properties;
 
@@ -32,6 +36,7 @@ import org.apache.jackrabbit.oak.Oak;
 import org.apache.jackrabbit.oak.api.ContentRepository;
 import org.apache.jackrabbit.oak.api.QueryEngine;
 import org.apache.jackrabbit.oak.api.ResultRow;
+import org.apache.jackrabbit.oak.api.Tree;
 import org.apache.jackrabbit.oak.commons.junit.LogCustomizer;
 import org.apache.jackrabbit.oak.plugins.memory.MemoryNodeStore;
 import org.apache.jackrabbit.oak.spi.security.OpenSecurityProvider;
@@ -127,4 +132,53 @@ public class QueryLimitTest extends AbstractQueryTest {
         }
         assertEquals(10, count);
     }
+
+    @Test
+    public void spillToDisk() throws Exception {
+        Tree test = root.getTree("/").addChild("test");
+        for (int i = 0; i < 100; i++) {
+            Tree t = test.addChild("n" + i);
+            t.setProperty("x", i % 30);
+            t.setProperty("y", "v" + (i % 7));
+        }
+        root.commit();
+
+        String sorted = "SELECT [jcr:path], [x] FROM [nt:base] AS a WHERE ISDESCENDANTNODE(a, '/test') " +
+                "ORDER BY [x] DESC, [jcr:path]";
+        String distinct = "SELECT DISTINCT [y] FROM [nt:base] AS a WHERE ISDESCENDANTNODE(a, '/test')";
+        String both = "SELECT DISTINCT [jcr:path], [y] FROM [nt:base] AS a WHERE ISDESCENDANTNODE(a, '/test') " +
+                "ORDER BY [y], [jcr:path]";
+        QueryEngine defaultEngine = root.getQueryEngine();
+        List<String> expectedSorted = readRows(defaultEngine, sorted);
+        assertEquals(100, expectedSorted.size());
+
+        QueryEngineSettings settings = new QueryEngineSettings();
+        settings.setLimitInMemory(30);
+        QueryEngine limited = createQueryEngine(settings);
+        assertThrows(UnsupportedOperationException.class, () -> readRows(limited, sorted));
+
+        settings.setSpillThreshold(10);
+        QueryEngine spilling = createQueryEngine(settings);
+        assertEquals(expectedSorted, readRows(spilling, sorted));
+        assertEquals(new HashSet<>(readRows(defaultEngine, distinct)),
+                new HashSet<>(readRows(spilling, distinct)));
+        assertEquals(readRows(defaultEngine, both), readRows(spilling, both));
+    }
+
+    private QueryEngine createQueryEngine(QueryEngineSettings settings) throws Exception {
+        ContentRepository repository = new Oak(store)
+                .with(new OpenSecurityProvider())
+                .with(settings)
+                .createContentRepository();
+        return repository.login(null, null).getLatestRoot().getQueryEngine();
+    }
+
+    private static List<String> readRows(QueryEngine engine, String query) throws ParseException {
+        List<String> rows = new ArrayList<>();
+        for (ResultRow row : engine.executeQuery(query, QueryEngineImpl.SQL2,
+                QueryEngine.NO_BINDINGS, QueryEngine.NO_MAPPINGS).getRows()) {
+            rows.add(Arrays.toString(row.getValues()));
+        }
+        return rows;
+    }
 }
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import static org.apache.jackrabbit.oak.plugins.index.IndexUtils.createIndexDefinition;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.jackrabbit.oak.InitialContentHelper;
+import org.apache.jackrabbit.oak.Oak;
+import org.apache.jackrabbit.oak.api.ContentRepository;
+import org.apache.jackrabbit.oak.api.Result;
+import org.apache.jackrabbit.oak.api.ResultRow;
+import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexEditorProvider;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexProvider;
+import org.apache.jackrabbit.oak.plugins.memory.MemoryNodeStore;
+import org.apache.jackrabbit.oak.plugins.memory.PropertyValues;
+import org.apache.jackrabbit.oak.query.stats.QueryStatsMBean;
+import org.apache.jackrabbit.oak.spi.security.OpenSecurityProvider;
+import org.apache.jackrabbit.oak.spi.whiteboard.WhiteboardUtils;
+import org.apache.jackrabbit.oak.stats.Clock;
+import org.junit.Test;
+
+/**
+ * Tests the query plan cache.
+ */
+public class QueryPlanCacheTest extends AbstractQueryTest {
+
+    private static final String QUERY = "select [jcr:path] from [nt:base] where [x] = $v";
+
+    private QueryStatsMBean stats;
+
+    @Override
+    protected ContentRepository createRepository() {
+        QueryEngineSettings settings = new QueryEngineSettings();
+        settings.setPlanCacheSize(100);
+        Oak oak = new Oak(new MemoryNodeStore(InitialContentHelper.INITIAL_CONTENT))
+                .with(new OpenSecurityProvider())
+                .with(new PropertyIndexProvider())
+                .with(new PropertyIndexEditorProvider())
+                .with(settings);
+        ContentRepository repository = oak.createContentRepository();
+        stats = WhiteboardUtils.getService(oak.getWhiteboard(), QueryStatsMBean.class);
+        return repository;
+    }
+
+    @Override
+    protected void createTestIndexNode() throws Exception {
+        Tree index = root.getTree("/oak:index");
+        createIndexDefinition(index, "x", false, new String[] {"x"});
+        root.commit();
+    }
+
+    @Test
+    public void hitsAndInvalidation() throws Exception {
+        Tree test = root.getTree("/").addChild("test");
+        for (int i = 0; i < 10; i++) {
+            Tree t = test.addChild("n" + i);
+            t.setProperty("x", "" + (i % 2));
+            t.setProperty("y", "" + (i % 3));
+        }
+        root.commit();
+
+        long hits = stats.getPlanCacheHits();
+        long misses = stats.getPlanCacheMisses();
+        assertEquals(List.of("/test/n0", "/test/n2", "/test/n4", "/test/n6", "/test/n8"),
+                query(QUERY, "0"));
+        assertEquals(hits, stats.getPlanCacheHits());
+        assertEquals(misses + 1, stats.getPlanCacheMisses());
+
+        // same statement and bind shape, different value
+        assertEquals(List.of("/test/n1", "/test/n3", "/test/n5", "/test/n7", "/test/n9"),
+                query(QUERY, "1"));
+        assertEquals(hits + 1, stats.getPlanCacheHits());
+        assertEquals(misses + 1, stats.getPlanCacheMisses());
+        String plan = executeQuery("explain select [jcr:path] from [nt:base] where [x] = '1'", SQL2).get(0);
+        assertTrue(plan, plan.contains("/oak:index/x"));
+
+        // changing the content (the index data) doesn't invalidate the cache
+        long invalidations = stats.getPlanCacheInvalidations();
+        test.getChild("n0").setProperty("x", "2");
+        root.commit();
+        assertEquals(List.of("/test/n0"), query(QUERY, "2"));
+        assertEquals(hits + 2, stats.getPlanCacheHits());
+        assertEquals(invalidations, stats.getPlanCacheInvalidations());
+
+        // changing the index definitions does
+        createIndexDefinition(root.getTree("/oak:index"), "y", false, new String[] {"y"});
+        root.commit();
+        assertEquals(invalidations + 1, stats.getPlanCacheInvalidations());
+        misses = stats.getPlanCacheMisses();
+        assertEquals(List.of("/test/n1", "/test/n3", "/test/n5", "/test/n7", "/test/n9"),
+                query(QUERY, "1"));
+        assertEquals(misses + 1, stats.getPlanCacheMisses());
+    }
+
+    @Test
+    public void expiry() throws Exception {
+        Clock.Virtual clock = new Clock.Virtual();
+        QueryPlanCache cache = new QueryPlanCache(10, 60 * 1000);
+        cache.setClock(clock);
+        long generation = cache.getGeneration();
+        cache.put("q", "x", generation);
+        clock.waitUntil(clock.getTime() + 59 * 1000);
+        assertEquals("x", cache.get("q"));
+
+        // the query is planned again with all indexes, for example because
+        // an index that was not ready before can now be used
+        clock.waitUntil(clock.getTime() + 1000);
+        assertNull(cache.get("q"));
+        assertEquals(0, cache.size());
+
+        // zero disables expiry
+        cache.setTtlMillis(0);
+        cache.put("q", "x", generation);
+        clock.waitUntil(clock.getTime() + 3600 * 1000);
+        assertEquals("x", cache.get("q"));
+    }
+
+    private List<String> query(String statement, String value) throws Exception {
+        Result result = executeQuery(statement, SQL2,
+                Collections.singletonMap("v", PropertyValues.newString(value)));
+        List<String> paths = new ArrayList<>();
+        for (ResultRow row : result.getRows()) {
+            paths.add(row.getPath());
+        }
+        Collections.sort(paths);
+        return paths;
+    }
+
+}
@@ -0,0 +1,259 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import static org.apache.jackrabbit.oak.api.QueryEngine.NO_BINDINGS;
+import static org.apache.jackrabbit.oak.api.QueryEngine.NO_MAPPINGS;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.ENTRY_COUNT_PROPERTY_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexUtils.createIndexDefinition;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.jackrabbit.oak.InitialContentHelper;
+import org.apache.jackrabbit.oak.Oak;
+import org.apache.jackrabbit.oak.api.ContentRepository;
+import org.apache.jackrabbit.oak.api.PropertyValue;
+import org.apache.jackrabbit.oak.api.Result;
+import org.apache.jackrabbit.oak.api.Result.SizePrecision;
+import org.apache.jackrabbit.oak.api.ResultRow;
+import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexEditorProvider;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexProvider;
+import org.apache.jackrabbit.oak.plugins.memory.MemoryNodeStore;
+import org.apache.jackrabbit.oak.spi.query.Cursor;
+import org.apache.jackrabbit.oak.spi.query.Filter;
+import org.apache.jackrabbit.oak.spi.query.IndexRow;
+import org.apache.jackrabbit.oak.spi.query.QueryIndex;
+import org.apache.jackrabbit.oak.spi.query.QueryIndex.OrderEntry;
+import org.apache.jackrabbit.oak.spi.query.QueryIndexProvider;
+import org.apache.jackrabbit.oak.spi.security.OpenSecurityProvider;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.junit.Test;
+
+/**
+ * Tests planning a selector again, if it reads many more rows than estimated.
+ */
+public class ReplanTest extends AbstractQueryTest {
+
+    private static final String QUERY =
+            "select [jcr:path] from [nt:base] where [x] = 'a' and [y] = 'b'";
+
+    private final QueryEngineSettings settings = new QueryEngineSettings();
+
+    private final List<String> queried = new ArrayList<>();
+
+    /**
+     * The index names and the number of rows read when a cursor was told
+     * about an order threshold.
+     */
+    private final List<String> thresholds = new ArrayList<>();
+
+    @Override
+    protected ContentRepository createRepository() {
+        settings.setReplanFactor(10);
+        settings.setPlanCacheSize(100);
+        return new Oak(new MemoryNodeStore(InitialContentHelper.INITIAL_CONTENT))
+                .with(new OpenSecurityProvider())
+                .with((QueryIndexProvider) state -> {
+                    List<QueryIndex> list = new ArrayList<>();
+                    for (QueryIndex index : new PropertyIndexProvider().getQueryIndexes(state)) {
+                        list.add(new RecordingIndex(index));
+                    }
+                    return list;
+                })
+                .with(new PropertyIndexEditorProvider())
+                .with(settings)
+                .createContentRepository();
+    }
+
+    @Override
+    protected void createTestIndexNode() throws Exception {
+        Tree index = root.getTree("/oak:index");
+        createIndexDefinition(index, "x", false, new String[] {"x"});
+        createIndexDefinition(index, "y", false, new String[] {"y"});
+        root.commit();
+    }
+
+    @Test
+    public void replan() throws Exception {
+        Tree test = root.getTree("/").addChild("test");
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            Tree t = test.addChild("n" + i);
+            t.setProperty("x", "a");
+            if (i % 40 == 0) {
+                t.setProperty("y", "b");
+                expected.add(t.getPath());
+            }
+        }
+        // the index "x" looks much cheaper than it is
+        root.getTree("/oak:index/x").setProperty(ENTRY_COUNT_PROPERTY_NAME, 1L);
+        root.commit();
+        Collections.sort(expected);
+
+        List<String> result = executeQuery(QUERY, SQL2);
+        // some rows were returned before planning again, but none twice
+        assertEquals(expected, result);
+        assertEquals(List.of("x", "y"), queried);
+
+        // "x" is only excluded for one execution, as the number of rows
+        // depends on the values
+        queried.clear();
+        assertEquals(expected, executeQuery(QUERY, SQL2));
+        assertEquals(List.of("x", "y"), queried);
+    }
+
+    @Test
+    public void orderThreshold() throws Exception {
+        Tree test = root.getTree("/").addChild("test");
+        for (int i = 0; i < 2000; i++) {
+            Tree t = test.addChild("n" + i);
+            t.setProperty("x", "a");
+            t.setProperty("z", (long) i);
+            if (i % 40 == 0) {
+                t.setProperty("y", "b");
+            }
+        }
+        root.getTree("/oak:index/x").setProperty(ENTRY_COUNT_PROPERTY_NAME, 1L);
+        root.commit();
+
+        Result result = qe.executeQuery(QUERY + " order by [z]", SQL2, 5, 0,
+                NO_BINDINGS, NO_MAPPINGS);
+        List<String> paths = new ArrayList<>();
+        for (ResultRow row : result.getRows()) {
+            paths.add(row.getPath());
+        }
+        assertEquals(List.of("/test/n0", "/test/n40", "/test/n80", "/test/n120", "/test/n160"), paths);
+        assertEquals(List.of("x", "y"), queried);
+        // the cursor of the new plan is told which rows are no longer
+        // needed before the first row is read
+        assertTrue(thresholds.toString(), thresholds.contains("y@0"));
+    }
+
+    @Test
+    public void noCheaperPlan() throws Exception {
+        Tree test = root.getTree("/").addChild("test");
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            Tree t = test.addChild("n" + i);
+            t.setProperty("x", "a");
+            t.setProperty("y", "b");
+            expected.add(t.getPath());
+        }
+        root.getTree("/oak:index/x").setProperty(ENTRY_COUNT_PROPERTY_NAME, 1L);
+        root.commit();
+        Collections.sort(expected);
+
+        assertEquals(expected, executeQuery(QUERY, SQL2));
+        assertEquals(List.of("x"), queried);
+    }
+
+    @Test
+    public void explicitIndex() throws Exception {
+        Tree test = root.getTree("/").addChild("test");
+        for (int i = 0; i < 2000; i++) {
+            Tree t = test.addChild("n" + i);
+            t.setProperty("x", "a");
+            if (i % 40 == 0) {
+                t.setProperty("y", "b");
+            }
+        }
+        root.getTree("/oak:index/x").setProperty(ENTRY_COUNT_PROPERTY_NAME, 1L);
+        root.commit();
+
+        assertEquals(50, executeQuery(QUERY + " option(index name x)", SQL2).size());
+        assertEquals(List.of("x"), queried);
+    }
+
+    /**
+     * An index that records the names of the index definitions it is
+     * queried with.
+     */
+    private class RecordingIndex implements QueryIndex {
+
+        private final QueryIndex base;
+
+        RecordingIndex(QueryIndex base) {
+            this.base = base;
+        }
+
+        @Override
+        public double getMinimumCost() {
+            return base.getMinimumCost();
+        }
+
+        @Override
+        public double getCost(Filter filter, NodeState rootState) {
+            return base.getCost(filter, rootState);
+        }
+
+        @Override
+        public Cursor query(Filter filter, NodeState rootState) {
+            String name = base.getIndexName(filter, rootState);
+            queried.add(name);
+            Cursor c = base.query(filter, rootState);
+            return new Cursor() {
+
+                private int rows;
+
+                @Override
+                public boolean hasNext() {
+                    return c.hasNext();
+                }
+
+                @Override
+                public IndexRow next() {
+                    rows++;
+                    return c.next();
+                }
+
+                @Override
+                public long getSize(SizePrecision precision, long max) {
+                    return c.getSize(precision, max);
+                }
+
+                @Override
+                public void setOrderThreshold(OrderEntry orderEntry, PropertyValue value) {
+                    thresholds.add(name + "@" + rows);
+                    c.setOrderThreshold(orderEntry, value);
+                }
+
+            };
+        }
+
+        @Override
+        public String getPlan(Filter filter, NodeState rootState) {
+            return base.getPlan(filter, rootState);
+        }
+
+        @Override
+        public String getIndexName() {
+            return base.getIndexName();
+        }
+
+        @Override
+        public String getIndexName(Filter filter, NodeState rootState) {
+            return base.getIndexName(filter, rootState);
+        }
+
+    }
+
+}
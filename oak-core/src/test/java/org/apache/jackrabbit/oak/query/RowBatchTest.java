@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import static org.apache.jackrabbit.oak.plugins.index.IndexUtils.createIndexDefinition;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.jackrabbit.oak.InitialContentHelper;
+import org.apache.jackrabbit.oak.Oak;
+import org.apache.jackrabbit.oak.api.ContentRepository;
+import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexEditorProvider;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexProvider;
+import org.apache.jackrabbit.oak.plugins.memory.MemoryNodeStore;
+import org.apache.jackrabbit.oak.spi.security.OpenSecurityProvider;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.spi.state.PrefetchNodeStore;
+import org.junit.Test;
+
+/**
+ * Tests reading and resolving the index rows of a selector in batches.
+ */
+public class RowBatchTest extends AbstractQueryTest {
+
+    private static final int BATCH_SIZE = 10;
+
+    private final List<Collection<String>> prefetched = new ArrayList<>();
+
+    @Override
+    protected ContentRepository createRepository() {
+        QueryEngineSettings settings = new QueryEngineSettings();
+        settings.setRowBatchSize(BATCH_SIZE);
+        return new Oak(new PrefetchingNodeStore(InitialContentHelper.INITIAL_CONTENT))
+                .with(new OpenSecurityProvider())
+                .with(new PropertyIndexProvider())
+                .with(new PropertyIndexEditorProvider())
+                .with(settings)
+                .createContentRepository();
+    }
+
+    @Override
+    protected void createTestIndexNode() throws Exception {
+        Tree index = root.getTree("/oak:index");
+        createIndexDefinition(index, "x", false, new String[] {"x"});
+        root.commit();
+    }
+
+    @Test
+    public void batches() throws Exception {
+        Tree test = root.getTree("/").addChild("test");
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            Tree folder = test.addChild("f" + (i % 3));
+            folder.addChild("n" + i).setProperty("x", "1");
+            // a node that is read from the index, but doesn't match
+            Tree other = folder.addChild("u" + i);
+            other.setProperty("x", "1");
+            other.setProperty("y", "1");
+            expected.add(folder.getPath() + "/n" + i);
+        }
+        root.commit();
+        Collections.sort(expected);
+
+        prefetched.clear();
+        List<String> result = executeQuery(
+                "select [jcr:path] from [nt:base] where [x] = '1' and isdescendantnode('/test') " +
+                "and [y] is null order by [jcr:path]", SQL2);
+        assertEquals(expected, result);
+        // 50 rows in batches of 10
+        assertEquals(prefetched.toString(), 5, prefetched.size());
+        for (Collection<String> paths : prefetched) {
+            // the rows, and their ancestors
+            assertTrue(paths.toString(), paths.contains("/test"));
+            assertTrue(paths.toString(), paths.size() > BATCH_SIZE);
+        }
+    }
+
+    @Test
+    public void join() throws Exception {
+        Tree test = root.getTree("/").addChild("test");
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 15; i++) {
+            Tree folder = test.addChild("f" + i);
+            folder.setProperty("x", "1");
+            for (int j = 0; j < 3; j++) {
+                folder.addChild("n" + j).setProperty("x", "1");
+                expected.add(folder.getPath() + ", " + folder.getPath() + "/n" + j);
+            }
+        }
+        root.commit();
+        Collections.sort(expected);
+
+        List<String> result = executeQuery(
+                "select a.[jcr:path], b.[jcr:path] from [nt:base] as a " +
+                "inner join [nt:base] as b on ischildnode(b, a) " +
+                "where a.[x] = '1' and b.[x] = '1'", SQL2);
+        assertEquals(expected, result);
+    }
+
+    /**
+     * A node store that records the paths it is asked to prefetch.
+     */
+    private class PrefetchingNodeStore extends MemoryNodeStore implements PrefetchNodeStore {
+
+        PrefetchingNodeStore(NodeState state) {
+            super(state);
+        }
+
+        @Override
+        public void prefetch(Collection<String> paths, NodeState rootState) {
+            prefetched.add(new ArrayList<>(paths));
+        }
+
+    }
+
+}
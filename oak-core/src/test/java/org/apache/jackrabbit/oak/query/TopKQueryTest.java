@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import static org.apache.jackrabbit.oak.api.QueryEngine.NO_BINDINGS;
+import static org.apache.jackrabbit.oak.api.QueryEngine.NO_MAPPINGS;
+import static org.apache.jackrabbit.oak.plugins.index.IndexUtils.createIndexDefinition;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jackrabbit.oak.InitialContentHelper;
+import org.apache.jackrabbit.oak.Oak;
+import org.apache.jackrabbit.oak.api.ContentRepository;
+import org.apache.jackrabbit.oak.api.PropertyValue;
+import org.apache.jackrabbit.oak.api.Result;
+import org.apache.jackrabbit.oak.api.Result.SizePrecision;
+import org.apache.jackrabbit.oak.api.ResultRow;
+import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexEditorProvider;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexProvider;
+import org.apache.jackrabbit.oak.plugins.memory.MemoryNodeStore;
+import org.apache.jackrabbit.oak.spi.query.Cursor;
+import org.apache.jackrabbit.oak.spi.query.Filter;
+import org.apache.jackrabbit.oak.spi.query.IndexRow;
+import org.apache.jackrabbit.oak.spi.query.QueryIndex;
+import org.apache.jackrabbit.oak.spi.query.QueryIndex.OrderEntry;
+import org.apache.jackrabbit.oak.spi.query.QueryIndexProvider;
+import org.apache.jackrabbit.oak.spi.security.OpenSecurityProvider;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.junit.Test;
+
+/**
+ * Tests "order by" with "limit" for indexes that can't sort.
+ */
+public class TopKQueryTest extends AbstractQueryTest {
+
+    private final List<String> thresholds = new ArrayList<>();
+
+    @Override
+    protected ContentRepository createRepository() {
+        return new Oak(new MemoryNodeStore(InitialContentHelper.INITIAL_CONTENT))
+                .with(new OpenSecurityProvider())
+                .with((QueryIndexProvider) state -> {
+                    List<QueryIndex> list = new ArrayList<>();
+                    for (QueryIndex index : new PropertyIndexProvider().getQueryIndexes(state)) {
+                        list.add(new ThresholdIndex(index));
+                    }
+                    return list;
+                })
+                .with(new PropertyIndexEditorProvider())
+                .createContentRepository();
+    }
+
+    @Override
+    protected void createTestIndexNode() throws Exception {
+        Tree index = root.getTree("/oak:index");
+        createIndexDefinition(index, "x", false, new String[] {"x"});
+        root.commit();
+    }
+
+    @Test
+    public void orderByLimit() throws Exception {
+        Tree test = root.getTree("/").addChild("test");
+        for (int i = 0; i < 200; i++) {
+            Tree t = test.addChild("n" + i);
+            t.setProperty("x", "1");
+            t.setProperty("modified", (long) ((i * 37) % 200));
+        }
+        root.commit();
+
+        Result result = qe.executeQuery("select [jcr:path] from [nt:base] where [x] = '1' " +
+                "order by [modified] desc", SQL2, 5, 0, NO_BINDINGS, NO_MAPPINGS);
+        List<String> paths = new ArrayList<>();
+        for (ResultRow row : result.getRows()) {
+            paths.add(row.getPath());
+        }
+        // (i * 37) % 200 = 199 - k, for k = 0..4
+        List<String> expected = new ArrayList<>();
+        for (int k = 0; k < 5; k++) {
+            for (int i = 0; i < 200; i++) {
+                if ((i * 37) % 200 == 199 - k) {
+                    expected.add("/test/n" + i);
+                }
+            }
+        }
+        assertEquals(expected, paths);
+        // all matching rows are counted
+        assertEquals(5, result.getSize(SizePrecision.EXACT, Long.MAX_VALUE));
+
+        assertTrue(thresholds.toString(), thresholds.size() > 1);
+        assertEquals("modified DESCENDING 195", thresholds.get(thresholds.size() - 1));
+    }
+
+    @Test
+    public void orderByOffsetLimit() throws Exception {
+        Tree test = root.getTree("/").addChild("test");
+        for (int i = 0; i < 100; i++) {
+            Tree t = test.addChild("n" + i);
+            t.setProperty("x", "1");
+            // equal values keep the order they were read in
+            t.setProperty("modified", (long) (i / 10));
+        }
+        root.commit();
+        List<String> all = executeQuery("select [jcr:path] from [nt:base] where [x] = '1' " +
+                "order by [modified]", SQL2, true, true);
+
+        Result result = qe.executeQuery("select [jcr:path] from [nt:base] where [x] = '1' " +
+                "order by [modified]", SQL2, 15, 10, NO_BINDINGS, NO_MAPPINGS);
+        List<String> paths = new ArrayList<>();
+        for (ResultRow row : result.getRows()) {
+            paths.add(row.getPath());
+        }
+        assertEquals(all.subList(10, 25), paths);
+        assertEquals("modified ASCENDING 2", thresholds.get(thresholds.size() - 1));
+    }
+
+    /**
+     * An index that records the thresholds passed to its cursors.
+     */
+    private class ThresholdIndex implements QueryIndex {
+
+        private final QueryIndex base;
+
+        ThresholdIndex(QueryIndex base) {
+            this.base = base;
+        }
+
+        @Override
+        public double getMinimumCost() {
+            return base.getMinimumCost();
+        }
+
+        @Override
+        public double getCost(Filter filter, NodeState rootState) {
+            return base.getCost(filter, rootState);
+        }
+
+        @Override
+        public Cursor query(Filter filter, NodeState rootState) {
+            Cursor c = base.query(filter, rootState);
+            return new Cursor() {
+
+                @Override
+                public boolean hasNext() {
+                    return c.hasNext();
+                }
+
+                @Override
+                public IndexRow next() {
+                    return c.next();
+                }
+
+                @Override
+                public long getSize(SizePrecision precision, long max) {
+                    return c.getSize(precision, max);
+                }
+
+                @Override
+                public void setOrderThreshold(OrderEntry orderEntry, PropertyValue value) {
+                    thresholds.add(orderEntry.getPropertyName() + " " +
+                            orderEntry.getOrder() + " " + value.getValue(value.getType()));
+                }
+
+            };
+        }
+
+        @Override
+        public String getPlan(Filter filter, NodeState rootState) {
+            return base.getPlan(filter, rootState);
+        }
+
+        @Override
+        public String getIndexName() {
+            return base.getIndexName();
+        }
+
+    }
+
+}
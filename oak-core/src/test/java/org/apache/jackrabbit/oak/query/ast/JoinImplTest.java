@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query.ast;
+
+import static org.apache.jackrabbit.oak.plugins.index.IndexUtils.createIndexDefinition;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.jackrabbit.oak.InitialContentHelper;
+import org.apache.jackrabbit.oak.Oak;
+import org.apache.jackrabbit.oak.api.ContentRepository;
+import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.plugins.index.cursor.Cursors;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexEditorProvider;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexProvider;
+import org.apache.jackrabbit.oak.plugins.memory.MemoryNodeStore;
+import org.apache.jackrabbit.oak.query.AbstractQueryTest;
+import org.apache.jackrabbit.oak.query.QueryEngineSettings;
+import org.apache.jackrabbit.oak.spi.query.Cursor;
+import org.apache.jackrabbit.oak.spi.query.Filter;
+import org.apache.jackrabbit.oak.spi.query.Filter.PropertyRestriction;
+import org.apache.jackrabbit.oak.spi.query.QueryIndex;
+import org.apache.jackrabbit.oak.spi.query.QueryIndex.AdvancedQueryIndex;
+import org.apache.jackrabbit.oak.spi.query.QueryIndex.IndexPlan;
+import org.apache.jackrabbit.oak.spi.query.QueryIndex.OrderEntry;
+import org.apache.jackrabbit.oak.spi.query.QueryIndexProvider;
+import org.apache.jackrabbit.oak.spi.security.OpenSecurityProvider;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests the fallback of a hash join to a nested loop join.
+ */
+public class JoinImplTest extends AbstractQueryTest {
+
+    private final LookupIndex lookupIndex = new LookupIndex();
+
+    @Override
+    protected ContentRepository createRepository() {
+        return new Oak(new MemoryNodeStore(InitialContentHelper.INITIAL_CONTENT))
+                .with(new OpenSecurityProvider())
+                .with(new PropertyIndexProvider())
+                .with(new PropertyIndexEditorProvider())
+                .with((QueryIndexProvider) root -> Collections.singletonList(lookupIndex))
+                .createContentRepository();
+    }
+
+    @Override
+    protected void createTestIndexNode() throws Exception {
+        Tree index = root.getTree("/oak:index");
+        createIndexDefinition(index, "kind", false, new String[] {"kind"});
+        createIndexDefinition(index, "ref", false, new String[] {"ref"});
+        root.commit();
+    }
+
+    @After
+    public void after() {
+        JoinImpl.MAX_BUILD_ROWS = Integer.getInteger("oak.query.joinMaxBuildRows", 100000);
+    }
+
+    @Test
+    public void hashJoinFallback() throws Exception {
+        Tree test = root.getTree("/").addChild("test");
+        Tree parents = test.addChild("parents");
+        Tree children = test.addChild("children");
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Tree p = parents.addChild("p" + i);
+            p.setProperty("kind", "parent");
+            p.setProperty("pid", "x" + i);
+        }
+        for (int i = 0; i < 50; i++) {
+            int p = i % 25;
+            // some children don't have a parent
+            children.addChild("c" + i).setProperty("ref", "x" + p);
+            if (p < 20) {
+                expected.add("/test/children/c" + i + ", /test/parents/p" + p);
+            }
+        }
+        root.commit();
+        Collections.sort(expected);
+
+        // the outer join keeps the children on the left hand side; the
+        // parents are read once using the kind index, or looked up for each
+        // child using the lookup index
+        String query = "select c.[jcr:path], p.[jcr:path] from [nt:base] as c " +
+                "left outer join [nt:base] as p on c.[ref] = p.[pid] " +
+                "where c.[ref] is not null and p.[kind] = 'parent'";
+        String plan = executeQuery("explain " + query, SQL2).get(0);
+        assertTrue(plan, plan.contains("/* hash join */"));
+        assertEquals(expected, executeQuery(query, SQL2));
+        assertEquals(0, lookupIndex.lookups);
+
+        // the parents don't fit, so the lookup index is used
+        // for each child, as for a nested loop join
+        JoinImpl.MAX_BUILD_ROWS = 10;
+        assertEquals(expected, executeQuery(query, SQL2));
+        assertEquals(50, lookupIndex.lookups);
+    }
+
+    /**
+     * An index that can only look up nodes by the value of the "pid"
+     * property.
+     */
+    private static class LookupIndex implements QueryIndex, AdvancedQueryIndex {
+
+        int lookups;
+
+        @Override
+        public double getMinimumCost() {
+            return 1;
+        }
+
+        @Override
+        public double getCost(Filter filter, NodeState rootState) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        @Override
+        public Cursor query(Filter filter, NodeState rootState) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getPlan(Filter filter, NodeState rootState) {
+            return "lookup";
+        }
+
+        @Override
+        public String getIndexName() {
+            return "lookup";
+        }
+
+        @Override
+        public List<IndexPlan> getPlans(Filter filter, List<OrderEntry> sortOrder, NodeState rootState) {
+            PropertyRestriction r = filter.getPropertyRestriction("pid");
+            if (r == null || r.first == null || r.first != r.last) {
+                return Collections.emptyList();
+            }
+            return Collections.singletonList(new IndexPlan.Builder()
+                    .setCostPerExecution(1)
+                    .setCostPerEntry(1)
+                    .setEstimatedEntryCount(15)
+                    .setPlanName("lookup")
+                    .setFilter(filter)
+                    .build());
+        }
+
+        @Override
+        public String getPlanDescription(IndexPlan plan, NodeState root) {
+            return "lookup";
+        }
+
+        @Override
+        public Cursor query(IndexPlan plan, NodeState rootState) {
+            lookups++;
+            String value = plan.getFilter().getPropertyRestriction("pid")
+                    .first.getValue(Type.STRING);
+            List<String> paths = new ArrayList<>();
+            NodeState parents = rootState.getChildNode("test").getChildNode("parents");
+            for (ChildNodeEntry e : parents.getChildNodeEntries()) {
+                if (value.equals(e.getNodeState().getString("pid"))) {
+                    paths.add("/test/parents/" + e.getName());
+                }
+            }
+            return Cursors.newPathCursor(paths, new QueryEngineSettings());
+        }
+    }
+
+}
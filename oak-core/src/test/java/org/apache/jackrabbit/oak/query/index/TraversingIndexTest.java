@@ -22,6 +22,7 @@ import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE
 import static org.apache.jackrabbit.oak.spi.query.QueryConstants.REP_FACET;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -32,6 +33,7 @@ import java.util.List;
 
 import org.apache.jackrabbit.oak.spi.query.Cursor;
 import org.apache.jackrabbit.oak.spi.query.Filter;
+import org.apache.jackrabbit.oak.spi.query.Filter.PathRestriction;
 import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
 import org.junit.Assert;
@@ -84,6 +86,32 @@ public class TraversingIndexTest {
         assertFalse(c.hasNext());
     }
 
+    @Test
+    public void joinPathCost() {
+        TraversingIndex t = new TraversingIndex();
+        FilterImpl f = FilterImpl.newTestInstance();
+        assertEquals(1.0E8, t.getCost(f, EMPTY_NODE), 0);
+
+        // the path of the other selector is only known when executing
+        f.restrictJoinPath("//path/from/join", PathRestriction.ALL_CHILDREN, "[a]");
+        assertEquals(200000, t.getCost(f, EMPTY_NODE), 0);
+        assertTrue(t.getPlan(f, EMPTY_NODE).contains("allDescendents: [a]"));
+        f.restrictJoinPath("//parent/of/join", PathRestriction.EXACT, "parent of [b]");
+        assertEquals(1, t.getCost(f, EMPTY_NODE), 0);
+        assertTrue(t.getPlan(f, EMPTY_NODE).contains("oneNode: parent of [b]"));
+
+        // only changes the plan, but not the cost
+        f = FilterImpl.newTestInstance();
+        f.restrictPath("//path/from/join", PathRestriction.EXACT);
+        assertEquals(1.0E8, t.getCost(f, EMPTY_NODE), 0);
+
+        // a single node is also used if there is another path restriction
+        f = FilterImpl.newTestInstance();
+        f.restrictPath("/content", PathRestriction.ALL_CHILDREN);
+        f.restrictJoinPath("//path/from/join", PathRestriction.EXACT, "[a]");
+        assertEquals(1, t.getCost(f, EMPTY_NODE), 0);
+    }
+
     @Test
     public void testFacets() {
         TraversingIndex traversingIndex = new TraversingIndex();
@@ -20,7 +20,10 @@ package org.apache.jackrabbit.oak.spi.query;
 
 import java.util.Iterator;
 
+import org.apache.jackrabbit.oak.api.PropertyValue;
 import org.apache.jackrabbit.oak.api.Result.SizePrecision;
+import org.apache.jackrabbit.oak.spi.query.QueryIndex.OrderEntry;
+import org.jetbrains.annotations.NotNull;
 
 /**
  * A cursor to read a number of nodes sequentially.
@@ -61,5 +64,24 @@ public interface Cursor extends Iterator<IndexRow> {
      * @return the size, or -1 if unknown
      */
     long getSize(SizePrecision precision, long max);
-    
+
+    /**
+     * Tell the cursor that rows that sort after the given value are no longer
+     * needed. This is called for queries with "order by" and "limit" that
+     * the index doesn't sort, once the query engine has enough rows that sort
+     * before or at this value. The value can only move towards the start of
+     * the sort order while the cursor is read.
+     * <p>
+     * The cursor may skip such rows (for example by passing a minimum score
+     * to a full-text search), but doesn't have to, as the query engine
+     * filters them anyway. Rows that have the given value, and rows that
+     * don't have a value, must not be skipped.
+     *
+     * @param orderEntry the first sort order of the query
+     * @param value the value
+     */
+    default void setOrderThreshold(@NotNull OrderEntry orderEntry, @NotNull PropertyValue value) {
+        // rows are not skipped
+    }
+
 }
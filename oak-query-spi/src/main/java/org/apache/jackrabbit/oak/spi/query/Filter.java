@@ -179,6 +179,19 @@ public interface Filter {
      */
     boolean isAlwaysFalse();
 
+    /**
+     * Get the names of the index definitions that should not be used. The
+     * query engine excludes an index definition if it returned many more rows
+     * than it estimated. Indexes that choose between multiple index
+     * definitions should skip these.
+     *
+     * @return the names of the excluded index definitions (empty by default)
+     */
+    @NotNull
+    default Set<String> getExcludedIndexNames() {
+        return Collections.emptySet();
+    }
+
     /**
      * A restriction for a property.
      */
@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.spi.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Statistics about the values stored in an index, sampled from the index
+ * data. They are stored in a hidden child node of the index definition, one
+ * node per index storage node, so that query planners can estimate the
+ * number of entries for a given value, even if the values are skewed.
+ * <p>
+ * The statistics consist of the number of entries, the number of distinct
+ * values, and a frequency histogram of the most common values. Values that
+ * are not in the histogram are assumed to be evenly distributed.
+ */
+public final class IndexStatistics {
+
+    /**
+     * The name of the hidden child node of the index definition that
+     * contains the statistics.
+     */
+    public static final String STATISTICS_NODE_NAME = ":statistics";
+
+    private static final String ENTRY_COUNT = "entryCount";
+    private static final String DISTINCT_COUNT = "distinctCount";
+    private static final String VALUES = "values";
+    private static final String COUNTS = "counts";
+    private static final String LAST_UPDATED = "lastUpdated";
+
+    private final long entryCount;
+    private final long distinctCount;
+    private final Map<String, Long> mostCommonValues;
+    private final long lastUpdated;
+
+    /**
+     * Create new statistics.
+     *
+     * @param entryCount the number of entries
+     * @param distinctCount the number of distinct values
+     * @param mostCommonValues the number of entries of the most common values
+     * @param lastUpdated the time the statistics were sampled, in
+     *            milliseconds since 1970
+     */
+    public IndexStatistics(long entryCount, long distinctCount,
+            @NotNull Map<String, Long> mostCommonValues, long lastUpdated) {
+        this.entryCount = entryCount;
+        this.distinctCount = distinctCount;
+        this.mostCommonValues = Collections.unmodifiableMap(
+                new LinkedHashMap<>(mostCommonValues));
+        this.lastUpdated = lastUpdated;
+    }
+
+    /**
+     * Read the statistics of an index storage node.
+     *
+     * @param definition the index definition
+     * @param storageNodeName the name of the index storage node, for example
+     *            ":index"
+     * @return the statistics, or null if there are none
+     */
+    @Nullable
+    public static IndexStatistics read(@NotNull NodeState definition, @NotNull String storageNodeName) {
+        NodeState s = definition.getChildNode(STATISTICS_NODE_NAME).getChildNode(storageNodeName);
+        PropertyState entries = s.getProperty(ENTRY_COUNT);
+        PropertyState distinct = s.getProperty(DISTINCT_COUNT);
+        if (entries == null || distinct == null) {
+            return null;
+        }
+        Map<String, Long> values = new LinkedHashMap<>();
+        PropertyState v = s.getProperty(VALUES);
+        PropertyState c = s.getProperty(COUNTS);
+        if (v != null && c != null && v.count() == c.count()) {
+            for (int i = 0; i < v.count(); i++) {
+                values.put(v.getValue(Type.STRING, i), c.getValue(Type.LONG, i));
+            }
+        }
+        PropertyState t = s.getProperty(LAST_UPDATED);
+        return new IndexStatistics(entries.getValue(Type.LONG), distinct.getValue(Type.LONG),
+                values, t == null ? 0 : t.getValue(Type.LONG));
+    }
+
+    /**
+     * Store the statistics of an index storage node, replacing the existing
+     * statistics.
+     *
+     * @param definition the index definition
+     * @param storageNodeName the name of the index storage node
+     */
+    public void write(@NotNull NodeBuilder definition, @NotNull String storageNodeName) {
+        NodeBuilder s = definition.child(STATISTICS_NODE_NAME).child(storageNodeName);
+        s.setProperty(ENTRY_COUNT, entryCount);
+        s.setProperty(DISTINCT_COUNT, distinctCount);
+        List<Long> counts = new ArrayList<>(mostCommonValues.values());
+        s.setProperty(VALUES, mostCommonValues.keySet(), Type.STRINGS);
+        s.setProperty(COUNTS, counts, Type.LONGS);
+        s.setProperty(LAST_UPDATED, lastUpdated);
+    }
+
+    /**
+     * The number of entries.
+     *
+     * @return the number of entries
+     */
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * The number of distinct values.
+     *
+     * @return the number of distinct values
+     */
+    public long getDistinctCount() {
+        return distinctCount;
+    }
+
+    /**
+     * The number of entries of the most common values, in descending order
+     * of the number of entries.
+     *
+     * @return a map from value to the number of entries
+     */
+    @NotNull
+    public Map<String, Long> getMostCommonValues() {
+        return mostCommonValues;
+    }
+
+    /**
+     * The time the statistics were sampled.
+     *
+     * @return the time in milliseconds since 1970
+     */
+    public long getLastUpdated() {
+        return lastUpdated;
+    }
+
+    /**
+     * Whether the other statistics have the same number of entries, number
+     * of distinct values, and most common values. The time they were sampled
+     * is not compared.
+     *
+     * @param other the other statistics
+     * @return true if the values are the same
+     */
+    public boolean hasSameValues(@NotNull IndexStatistics other) {
+        return entryCount == other.entryCount
+                && distinctCount == other.distinctCount
+                && new ArrayList<>(mostCommonValues.entrySet()).equals(
+                        new ArrayList<>(other.mostCommonValues.entrySet()));
+    }
+
+    /**
+     * Estimate the number of entries for the given value.
+     *
+     * @param value the value, as stored in the index
+     * @return the estimated number of entries (at least 1, as the value might
+     *         have been added after the statistics were sampled)
+     */
+    public long getEstimatedCount(@NotNull String value) {
+        Long count = mostCommonValues.get(value);
+        if (count != null) {
+            return Math.max(1, count);
+        }
+        long rest = entryCount;
+        for (long c : mostCommonValues.values()) {
+            rest -= c;
+        }
+        long restDistinct = distinctCount - mostCommonValues.size();
+        if (rest <= 0 || restDistinct <= 0) {
+            return 1;
+        }
+        return Math.max(1, rest / restDistinct);
+    }
+
+    @Override
+    public String toString() {
+        return "entries: " + entryCount + " distinct: " + distinctCount +
+                " mostCommon: " + mostCommonValues;
+    }
+
+}
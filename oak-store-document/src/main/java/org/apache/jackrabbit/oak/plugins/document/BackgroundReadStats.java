@@ -25,12 +25,15 @@ class BackgroundReadStats {
     CacheInvalidationStats cacheStats;
     long readHead;
     long cacheInvalidationTime;
+    long precomputeDiff;
     long populateDiffCache;
     long lock;
     long dispatchChanges;
     long totalReadTime;
     long numExternalChanges;
     long externalChangesLag;
+    long refreshHotDocuments;
+    long numHotDocumentsRefreshed;
 
     @Override
     public String toString() {
@@ -42,11 +45,14 @@ class BackgroundReadStats {
                 "cacheStats:" + cacheStatsMsg +
                 ", head:" + readHead +
                 ", cache:" + cacheInvalidationTime +
+                ", precomputeDiff: " + precomputeDiff +
                 ", diff: " + populateDiffCache +
                 ", lock:" + lock +
                 ", dispatch:" + dispatchChanges +
                 ", numExternalChanges:" + numExternalChanges +
                 ", externalChangesLag:" + externalChangesLag+
+                ", refreshHotDocuments:" + refreshHotDocuments +
+                ", numHotDocumentsRefreshed:" + numHotDocumentsRefreshed +
                 ", totalReadTime:" + totalReadTime +
                 '}';
     }
@@ -30,6 +30,9 @@ class BackgroundWriteStats {
     long num;
     long calls;
     long totalWriteTime;
+    long shards;
+    long maxShardSize;
+    long maxShardWrite;
 
     @Override
     public String toString() {
@@ -41,6 +44,9 @@ class BackgroundWriteStats {
                 ", write:" + write +
                 ", num:" + num +
                 ", calls:" + calls +
-                ", totalWriteTime:" + totalWriteTime;
+                ", totalWriteTime:" + totalWriteTime +
+                ", shards:" + shards +
+                ", maxShardSize:" + maxShardSize +
+                ", maxShardWrite:" + maxShardWrite;
     }
 }
@@ -164,6 +164,12 @@ public class ClusterNodeInfo {
      */
     public static final String REV_RECOVERY_BY = "recoveryBy";
 
+    /**
+     * The number of candidate documents processed so far by an ongoing
+     * recovery.
+     */
+    public static final String REV_RECOVERY_PROGRESS = "recoveryProgress";
+
     /**
      * Additional info, such as the process id, for support.
      */
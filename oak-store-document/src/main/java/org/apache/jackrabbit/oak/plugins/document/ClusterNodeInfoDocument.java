@@ -133,6 +133,15 @@ public class ClusterNodeInfoDocument extends Document {
         return (Long) get(ClusterNodeInfo.REV_RECOVERY_BY);
     }
 
+    /**
+     * @return the number of candidate documents processed so far by an
+     *          ongoing recovery or {@code null} if not available.
+     */
+    @Nullable
+    public Long getRecoveryProgress() {
+        return (Long) get(ClusterNodeInfo.REV_RECOVERY_PROGRESS);
+    }
+
     public int getClusterId() {
         return Integer.parseInt(getId());
     }
@@ -23,24 +23,38 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
-import java.util.SortedMap;
 import java.util.SortedSet;
-import java.util.TreeMap;
 import java.util.TreeSet;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
 
 import org.apache.jackrabbit.guava.common.collect.Maps;
 
 import org.apache.jackrabbit.oak.stats.StatisticsProvider;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * <code>CommitQueue</code> ensures a sequence of commits consistent with the
  * commit revision even if commits did not complete in this sequence.
+ * <p>
+ * Each commit gets a sequence number when its revision is created. The
+ * entries are kept in a ring buffer indexed by sequence number and the
+ * sequence number of the commit at the head of the queue is kept in an
+ * {@link AtomicLong}. A commit that is done waits (parked) until it is at the
+ * head of the queue, calls the {@link Callback} and then advances the head to
+ * the next commit, skipping canceled commits, and unparks the thread of that
+ * commit if it is already waiting. Only the allocation of revisions is
+ * serialized with a lock. The slots of the ring buffer are read and written
+ * with volatile semantics, so that a commit that advances the head always
+ * sees the entry of the next commit, if it was already created. A waiting
+ * commit still wakes up periodically to re-check the head.
  */
 final class CommitQueue {
 
@@ -51,7 +65,38 @@ final class CommitQueue {
      */
     static final long DEFAULT_SUSPEND_TIMEOUT = 60_000;
 
-    private final SortedMap<Revision, Entry> commits = new TreeMap<Revision, Entry>(StableRevisionComparator.INSTANCE);
+    /**
+     * The initial capacity of the ring buffer. The ring buffer grows when
+     * more commits are in progress.
+     */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * The maximum time in nanoseconds a commit is parked before it checks
+     * again whether it is the head of the queue.
+     */
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * The commits in progress by revision.
+     */
+    private final Map<Revision, Entry> commits = new ConcurrentHashMap<>();
+
+    /**
+     * The commits in progress by sequence number. Slots of commits before the
+     * head of the queue are stale and reused for new commits.
+     */
+    private volatile AtomicReferenceArray<Entry> ring = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+
+    /**
+     * The sequence number of the commit at the head of the queue.
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * The sequence number for the next commit. Guarded by this.
+     */
+    private long nextSequence;
 
     /**
      * Map of currently suspended commits until a given Revision is visible.
@@ -91,7 +136,13 @@ final class CommitQueue {
                 rev = context.newRevision();
                 revs.add(rev);
             }
-            commits.put(rev, new Entry(rev));
+            Entry entry = new Entry(rev, nextSequence++);
+            AtomicReferenceArray<Entry> r = ring;
+            if (entry.sequence - head.get() >= r.length()) {
+                r = grow(r, entry.sequence);
+            }
+            r.set((int) (entry.sequence & (r.length() - 1)), entry);
+            commits.put(rev, entry);
         }
         LOG.debug("created commit {}", rev);
         return revs;
@@ -108,9 +159,7 @@ final class CommitQueue {
     }
 
     boolean contains(@NotNull Revision revision) {
-        synchronized (this) {
-            return commits.containsKey(requireNonNull(revision));
-        }
+        return commits.containsKey(requireNonNull(revision));
     }
 
     /**
@@ -258,28 +307,21 @@ final class CommitQueue {
     }
 
     private void removeCommit(@NotNull Revision rev) {
-        // simply remove and notify next head if any
-        synchronized (this) {
-            boolean wasHead = commits.firstKey().equals(rev);
-            commits.remove(rev);
+        Entry entry = commits.remove(rev);
+        if (entry != null) {
+            entry.canceled = true;
+            // advances the head if the canceled commit is the head
+            boolean wasHead = advance(entry.sequence);
             LOG.debug("removed commit {}, wasHead={}", rev, wasHead);
-            if (wasHead) {
-                notifyHead();
-            }
         }
     }
 
     private void waitUntilHeadOfQueue(@NotNull Revision rev,
                                       @NotNull Callback c) {
-        assert !commits.isEmpty();
+        Entry commitEntry = commits.get(rev);
+        assert commitEntry != null;
 
-        boolean isHead;
-        Entry commitEntry;
-        synchronized (this) {
-            isHead = commits.firstKey().equals(rev);
-            commitEntry = commits.get(rev);
-        }
-        if (isHead) {
+        if (head.get() == commitEntry.sequence) {
             statsCollector.doneWaitUntilHead(0);
         } else {
             LOG.debug("not head: {}, waiting...", rev);
@@ -288,68 +330,121 @@ final class CommitQueue {
         try {
             c.headOfQueue(rev);
         } finally {
-            synchronized (this) {
-                commits.remove(rev);
-                try {
-                    LOG.debug("removed {}, head is now {}", rev, commits.isEmpty() ? null : commits.firstKey());
-                } finally {
-                    // notify next if there is any
-                    notifyHead();
-                }
+            commits.remove(rev);
+            advance(commitEntry.sequence);
+            LOG.debug("removed {}", rev);
+        }
+    }
+
+    /**
+     * Advances the head of the queue if the given sequence number is the
+     * current head. Canceled commits are skipped and the thread of the commit
+     * at the new head is unparked.
+     *
+     * @param sequence the sequence number of a commit that is done or was
+     *          canceled.
+     * @return {@code true} if the head was advanced.
+     */
+    private boolean advance(long sequence) {
+        boolean advanced = false;
+        while (head.compareAndSet(sequence, sequence + 1)) {
+            advanced = true;
+            sequence++;
+            Entry next = entryAt(sequence);
+            if (next == null) {
+                // not created yet, the commit will see it is head
+                break;
+            } else if (!next.canceled) {
+                LOG.debug("release {}", next.revision);
+                next.release();
+                break;
             }
         }
+        return advanced;
+    }
+
+    @Nullable
+    private Entry entryAt(long sequence) {
+        AtomicReferenceArray<Entry> r = ring;
+        Entry e = r.get((int) (sequence & (r.length() - 1)));
+        return e != null && e.sequence == sequence ? e : null;
     }
 
-    private void notifyHead() {
-        if (!commits.isEmpty()) {
-            LOG.debug("release {}", commits.firstKey());
-            commits.get(commits.firstKey()).release();
+    /**
+     * Replaces the ring buffer with one twice the size. Must be called while
+     * holding the lock on this.
+     */
+    private AtomicReferenceArray<Entry> grow(AtomicReferenceArray<Entry> r, long nextSequence) {
+        AtomicReferenceArray<Entry> bigger = new AtomicReferenceArray<>(r.length() * 2);
+        for (long seq = head.get(); seq < nextSequence; seq++) {
+            Entry e = r.get((int) (seq & (r.length() - 1)));
+            if (e != null && e.sequence == seq) {
+                bigger.set((int) (seq & (bigger.length() - 1)), e);
+            }
         }
+        ring = bigger;
+        LOG.debug("Increased commit queue capacity to {}", bigger.length());
+        return bigger;
     }
 
     /**
      * An entry in the commit queue.
      */
-    private static final class Entry {
+    private final class Entry {
 
         /**
-         * The revision of the commit (used for debugging).
+         * The revision of the commit.
          */
         private final Revision revision;
 
         /**
-         * The latch. Initially set to 1, so that release() needs to be called
-         * once for await() to continue.
+         * The sequence number of the commit.
+         */
+        private final long sequence;
+
+        /**
+         * Whether the commit was canceled.
          */
-        private final CountDownLatch latch = new CountDownLatch(1);
+        private volatile boolean canceled;
 
-        Entry(Revision revision) {
+        /**
+         * The thread waiting for this commit to become the head of the queue.
+         */
+        private volatile Thread waiter;
+
+        Entry(Revision revision, long sequence) {
             this.revision = revision;
+            this.sequence = sequence;
         }
 
         /**
-         * Release all threads that are waiting.
+         * Unparks the thread waiting for this entry, if any.
          */
         void release() {
-            latch.countDown();
+            Thread t = waiter;
+            if (t != null) {
+                LockSupport.unpark(t);
+            }
         }
 
         /**
-         * Wait for the latch to be released.
+         * Wait until this entry is the head of the queue.
          *
          * @return the number of microseconds this method waited.
          */
         long await() {
             long start = System.nanoTime();
-            for (;;) {
-                try {
-                    LOG.debug("awaiting {}", revision);
-                    latch.await();
-                    break;
-                } catch (InterruptedException e) {
-                    // retry
-                }
+            waiter = Thread.currentThread();
+            LOG.debug("awaiting {}", revision);
+            while (head.get() != sequence) {
+                // wake up periodically and re-check the head, in case
+                // the unpark was missed
+                LockSupport.parkNanos(this, PARK_NANOS);
+                // clear interrupted status, otherwise park() returns
+                // immediately. retry
+                Thread.interrupted();
             }
+            waiter = null;
             return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
         }
     }
@@ -0,0 +1,418 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jackrabbit.oak.api.CommitFailedException;
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.commons.json.JsopBuilder;
+import org.apache.jackrabbit.oak.json.BlobSerializer;
+import org.apache.jackrabbit.oak.json.JsonSerializer;
+import org.apache.jackrabbit.oak.plugins.document.bundlor.BundlingHandler;
+import org.apache.jackrabbit.oak.plugins.document.bundlor.DocumentBundlor;
+import org.apache.jackrabbit.oak.plugins.document.util.Utils;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static java.util.Collections.singletonList;
+import static java.util.Objects.requireNonNull;
+import static org.apache.jackrabbit.guava.common.base.Preconditions.checkArgument;
+import static org.apache.jackrabbit.oak.plugins.document.Collection.JOURNAL;
+import static org.apache.jackrabbit.oak.plugins.document.Collection.NODES;
+import static org.apache.jackrabbit.oak.plugins.memory.PropertyStates.createProperty;
+
+/**
+ * Loads a stream of node states into a {@link DocumentNodeStore} by creating
+ * the {@link NodeDocument}s directly, without going through a regular commit.
+ * This is intended for the initial migration of content into an otherwise
+ * empty store.
+ * <p>
+ * The node states are passed as a sequence of path and node state, in
+ * depth-first pre-order: the root node comes first, every node follows its
+ * parent, and the descendants of a node are contiguous. This is the order of
+ * a flat file store. Only the properties of the node states are used, child
+ * nodes are taken from the sequence. Child nodes are bundled into the document
+ * of their bundling root according to the bundling configuration of the node
+ * store when the load starts.
+ * <p>
+ * A document is written when all its descendants have been read from the
+ * sequence, with batched {@link DocumentStore#create(Collection, List)} calls.
+ * The documents are written as branch commits, with one branch commit
+ * revision and journal entry for every {@link #withCommitSize(int) commit
+ * size} documents. Properties of the root node are applied to the existing
+ * root document. Finally the branch is merged, which makes all nodes visible
+ * at once. There are no conflict checks and the commit hooks of the node
+ * store are not called. The nodes below the root must not exist yet, loading
+ * fails with a {@link DocumentStoreException} when one of them does. In this
+ * case the documents written so far remain as unmerged branch commits, which
+ * are not visible and are eventually removed by the garbage collection.
+ * <p>
+ * The load must complete within the maximum age of a branch, which is half of
+ * the journal garbage collection max age.
+ */
+public final class DocumentBulkLoader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DocumentBulkLoader.class);
+
+    private final DocumentNodeStore nodeStore;
+
+    private final DocumentStore store;
+
+    private final BlobSerializer blobs;
+
+    private final JsopBuilder json = new JsopBuilder();
+
+    private int batchSize;
+
+    private int commitSize = 100_000;
+
+    /**
+     * The documents waiting to be written.
+     */
+    private final List<Doc> pending = new ArrayList<>();
+
+    private Branch branch;
+
+    private RevisionVector base;
+
+    /**
+     * The revision of the current branch commit or {@code null} if there
+     * is none.
+     */
+    private Revision revision;
+
+    private JournalEntry journalEntry;
+
+    private int numCommitDocuments;
+
+    private long numNodes;
+
+    private long numDocuments;
+
+    private int numCommits;
+
+    /**
+     * @param nodeStore the node store to load the nodes into.
+     */
+    public DocumentBulkLoader(@NotNull DocumentNodeStore nodeStore) {
+        this.nodeStore = requireNonNull(nodeStore);
+        this.store = nodeStore.getDocumentStore();
+        this.blobs = nodeStore.getBlobSerializer();
+        this.batchSize = nodeStore.getCreateOrUpdateBatchSize();
+    }
+
+    /**
+     * @param batchSize the number of documents to create with a single call
+     *          to the document store.
+     * @return {@code this} loader.
+     */
+    @NotNull
+    public DocumentBulkLoader withBatchSize(int batchSize) {
+        checkArgument(batchSize > 0, "batchSize must be > 0");
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * @param commitSize the number of documents written with the same branch
+     *          commit revision. All changes of a branch commit are listed in
+     *          a single journal entry, which is kept in memory until the
+     *          branch commit is complete.
+     * @return {@code this} loader.
+     */
+    @NotNull
+    public DocumentBulkLoader withCommitSize(int commitSize) {
+        checkArgument(commitSize > 0, "commitSize must be > 0");
+        this.commitSize = commitSize;
+        return this;
+    }
+
+    /**
+     * Loads the given nodes.
+     *
+     * @param nodes the paths and node states in depth-first pre-order,
+     *          starting with the root node.
+     * @param info the commit info for the merge of the nodes.
+     * @return the root state after the nodes were loaded.
+     * @throws IllegalArgumentException if the nodes are not in the expected
+     *          order.
+     * @throws DocumentStoreException if a node already exists or writing a
+     *          document fails.
+     * @throws CommitFailedException if the merge of the loaded nodes fails.
+     */
+    @NotNull
+    public NodeState load(@NotNull Iterator<? extends Map.Entry<Path, NodeState>> nodes,
+                          @NotNull CommitInfo info)
+            throws CommitFailedException {
+        requireNonNull(nodes);
+        requireNonNull(info);
+        checkArgument(nodes.hasNext(), "No nodes to load");
+        Map.Entry<Path, NodeState> first = nodes.next();
+        checkArgument(first.getKey().isRoot(), "First node is not the root: %s", first.getKey());
+
+        base = nodeStore.getHeadRevision();
+        BundlingHandler rootHandler = nodeStore.getBundlingConfigHandler().newBundlingHandler();
+        Doc rootDoc = new Doc(Path.ROOT, false);
+        Deque<Frame> stack = new ArrayDeque<>();
+        stack.push(new Frame(rootHandler, rootDoc));
+        setProperties(rootHandler, rootDoc, first.getValue());
+        numNodes++;
+
+        while (nodes.hasNext()) {
+            Map.Entry<Path, NodeState> entry = nodes.next();
+            Path path = entry.getKey();
+            Path parentPath = path.getParent();
+            while (!stack.isEmpty() && !stack.peek().handler.getNodeFullPath().equals(parentPath)) {
+                pop(stack);
+            }
+            if (stack.isEmpty()) {
+                throw new IllegalArgumentException("Node " + path +
+                        " does not follow its parent or the subtree of its parent");
+            }
+            stack.push(addNode(stack.peek(), path, entry.getValue()));
+            numNodes++;
+        }
+        while (stack.size() > 1) {
+            pop(stack);
+        }
+        writePending();
+        commitRoot(rootDoc);
+        RevisionVector head;
+        try {
+            head = nodeStore.merge(base.update(revision.asBranchRevision()), info);
+        } catch (ConflictException e) {
+            throw e.asCommitFailedException();
+        }
+        LOG.info("Loaded {} nodes into {} documents with {} branch commits, head is {}",
+                numNodes, numDocuments, numCommits, head);
+        return nodeStore.getRoot(head);
+    }
+
+    /**
+     * @return the number of nodes loaded so far.
+     */
+    public long getNodeCount() {
+        return numNodes;
+    }
+
+    /**
+     * @return the number of documents written so far.
+     */
+    public long getDocumentCount() {
+        return numDocuments;
+    }
+
+    //----------------------------< internal >----------------------------------
+
+    private Frame addNode(Frame parent, Path path, NodeState state) {
+        if (Utils.isNodeNameLong(path, store.getNodeNameLimit())) {
+            throw new DocumentStoreException("Node name is too long: " + path);
+        }
+        BundlingHandler child = parent.handler.childAdded(path.getName(), state);
+        Doc doc;
+        if (child.isBundlingRoot()) {
+            doc = new Doc(path, true);
+            if (!parent.handler.isBundledNode()) {
+                parent.doc.hasChildren = true;
+            }
+        } else {
+            doc = parent.doc;
+            doc.bundledPaths.add(path);
+        }
+        // same as CommitDiff.setOrTouchChildrenFlag()
+        if (child.isBundledNode()) {
+            setProperty(parent.handler, parent.doc,
+                    createProperty(DocumentBundlor.META_PROP_BUNDLED_CHILD, Boolean.TRUE));
+        } else if (parent.handler.isBundledNode()) {
+            setProperty(parent.handler, parent.doc,
+                    createProperty(DocumentBundlor.META_PROP_NON_BUNDLED_CHILD, Boolean.TRUE));
+        }
+        for (PropertyState ps : child.getMetaProps()) {
+            setProperty(child, doc, ps);
+        }
+        setProperties(child, doc, state);
+        return new Frame(child, doc);
+    }
+
+    private void setProperties(BundlingHandler handler, Doc doc, NodeState state) {
+        for (PropertyState ps : state.getProperties()) {
+            setProperty(handler, doc, ps);
+        }
+    }
+
+    private void setProperty(BundlingHandler handler, Doc doc, PropertyState property) {
+        json.resetWriter();
+        JsonSerializer serializer = new JsonSerializer(json, blobs);
+        serializer.serialize(property);
+        doc.properties.put(Utils.escapePropertyName(handler.getPropertyPath(property.getName())),
+                serializer.toString());
+        if (property.getType() == Type.BINARY || property.getType() == Type.BINARIES) {
+            doc.hasBinary = true;
+        }
+    }
+
+    private void pop(Deque<Frame> stack) {
+        Frame f = stack.pop();
+        if (f.handler.isBundlingRoot() && f.doc.isNew) {
+            pending.add(f.doc);
+            if (pending.size() >= batchSize) {
+                writePending();
+            }
+        }
+    }
+
+    private void writePending() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Revision r = currentRevision();
+        List<UpdateOp> ops = new ArrayList<>(pending.size());
+        for (Doc doc : pending) {
+            ops.add(doc.asOperation(r));
+            journalEntry.modified(doc.path);
+            journalEntry.modified(doc.bundledPaths);
+        }
+        if (!store.create(NODES, ops)) {
+            throw new DocumentStoreException("Bulk load failed, at least one of the nodes " +
+                    "already exists: " + ops.get(0).getId() + " ... " + ops.get(ops.size() - 1).getId());
+        }
+        numDocuments += ops.size();
+        numCommitDocuments += ops.size();
+        pending.clear();
+        if (numCommitDocuments >= commitSize) {
+            completeBranchCommit();
+        }
+    }
+
+    /**
+     * Writes the root document with the last branch commit revision.
+     */
+    private void commitRoot(Doc rootDoc) {
+        Revision r = currentRevision();
+        UpdateOp op = rootDoc.asOperation(r);
+        NodeDocument.unsetCommitRoot(op, r);
+        NodeDocument.setRevision(op, r, r.asBranchRevision().toString());
+        if (store.findAndUpdate(NODES, op) == null) {
+            throw new DocumentStoreException("Root document does not exist");
+        }
+        numDocuments++;
+        journalEntry.modified(Path.ROOT);
+        // the _lastRev of the root document is updated with the merge
+        branch.getCommit(r.asBranchRevision()).track(Path.ROOT);
+        completeBranchCommit();
+    }
+
+    private Revision currentRevision() {
+        if (revision == null || journalEntry == null) {
+            revision = nodeStore.newRevision();
+            journalEntry = JOURNAL.newDocument(store);
+            numCommitDocuments = 0;
+            if (branch == null) {
+                branch = nodeStore.getBranches().create(base, revision.asBranchRevision(), this);
+            } else {
+                branch.addCommit(revision.asBranchRevision());
+            }
+        }
+        return revision;
+    }
+
+    private void completeBranchCommit() {
+        Revision r = revision.asBranchRevision();
+        if (!store.create(JOURNAL, singletonList(journalEntry.asUpdateOp(r)))) {
+            throw new DocumentStoreException("Failed to create journal entry for revision " + r);
+        }
+        journalEntry = null;
+        numCommits++;
+        LOG.debug("Completed branch commit {} with {} documents", r, numCommitDocuments);
+    }
+
+    private static final class Frame {
+
+        final BundlingHandler handler;
+
+        final Doc doc;
+
+        Frame(BundlingHandler handler, Doc doc) {
+            this.handler = handler;
+            this.doc = doc;
+        }
+    }
+
+    /**
+     * The changes for a document, collected until all descendants of the
+     * node were read.
+     */
+    private static final class Doc {
+
+        final Path path;
+
+        final boolean isNew;
+
+        final Map<String, String> properties = new LinkedHashMap<>();
+
+        final List<Path> bundledPaths = new ArrayList<>();
+
+        boolean hasChildren;
+
+        boolean hasBinary;
+
+        Doc(Path path, boolean isNew) {
+            this.path = path;
+            this.isNew = isNew;
+        }
+
+        /**
+         * Creates the update operation of a branch commit with the given
+         * revision, equivalent to what a regular branch commit with the root
+         * document as commit root writes.
+         */
+        UpdateOp asOperation(Revision r) {
+            String id = Utils.getIdFromPath(path);
+            UpdateOp op = new UpdateOp(id, isNew);
+            if (isNew) {
+                if (Utils.isIdFromLongPath(id)) {
+                    op.set(NodeDocument.PATH, path.toString());
+                }
+                NodeDocument.setDeleted(op, r, false);
+            }
+            NodeDocument.setModified(op, r);
+            NodeDocument.setBranchCommit(op, r);
+            NodeDocument.setCommitRoot(op, r, 0);
+            for (Map.Entry<String, String> e : properties.entrySet()) {
+                op.setMapEntry(e.getKey(), r, e.getValue());
+            }
+            if (hasChildren) {
+                NodeDocument.setChildrenFlag(op, true);
+            }
+            if (hasBinary) {
+                NodeDocument.setHasBinary(op);
+            }
+            return op;
+        }
+    }
+}
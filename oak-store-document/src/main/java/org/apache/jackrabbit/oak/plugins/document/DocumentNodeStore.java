@@ -223,6 +223,52 @@ public final class DocumentNodeStore
     static final long DEFAULT_MAX_SERVER_TIME_DIFFERENCE = 2000L;
     private final long maxTimeDiffMillis = SystemPropertySupplier.create("oak.documentMK.maxServerTimeDiffMillis", DEFAULT_MAX_SERVER_TIME_DIFFERENCE).loggingTo(LOG).get();
 
+    /**
+     * Maximum number of external changes for which the diff is computed from
+     * the journal before the background operation lock is acquired. The
+     * default of zero disables the precomputation and the diff is computed
+     * while the lock is held.
+     */
+    private final int precomputeDiffLimit = SystemPropertySupplier.create("oak.documentMK.precomputeDiffLimit", 0)
+            .loggingTo(LOG).get();
+
+    /**
+     * Number of tasks used to populate the diff cache with precomputed diffs.
+     */
+    private final int precomputeDiffParallelism = SystemPropertySupplier.create("oak.documentMK.precomputeDiffParallelism", 4)
+            .loggingTo(LOG).get();
+
+    /**
+     * Maximum number of frequently read documents that are read again by the
+     * background read when they were invalidated, before the new head
+     * revision is visible. The default of zero disables tracking of
+     * frequently read documents.
+     */
+    private final int hotDocumentRefreshCount = SystemPropertySupplier.create("oak.documentMK.hotDocumentRefreshCount", 0)
+            .loggingTo(LOG).validateWith(value -> value >= 0).get();
+
+    /**
+     * Tracks frequently read documents or {@code null} if disabled.
+     */
+    private final HotDocumentTracker hotDocuments = hotDocumentRefreshCount > 0
+            ? new HotDocumentTracker(Math.max(10_000, hotDocumentRefreshCount * 100)) : null;
+
+    /**
+     * Minimum delay in milliseconds between the end of a background read and
+     * the start of the next one when it is triggered by a change notification
+     * of the document store.
+     */
+    private final int triggeredReadMinDelay = SystemPropertySupplier.create("oak.documentMK.triggeredReadMinDelay", 100)
+            .loggingTo(LOG).validateWith(value -> value >= 0).get();
+
+    /**
+     * Maximum number of tasks writing back pending {@code _lastRev} updates
+     * in the background update. The default of one writes all updates on the
+     * background update thread.
+     */
+    private final int backgroundUpdateParallelism = SystemPropertySupplier.create("oak.documentMK.backgroundUpdateParallelism", 1)
+            .loggingTo(LOG).get();
+
     public static final String SYS_PROP_PREFETCH = "oak.documentstore.prefetch";
     private final boolean prefetchEnabled = SystemPropertySupplier.create(SYS_PROP_PREFETCH, false).loggingTo(LOG).get();
 
@@ -340,6 +386,17 @@ public final class DocumentNodeStore
 
     private Thread backgroundReadThread;
 
+    /**
+     * The background read operation run by {@link #backgroundReadThread}.
+     */
+    private BackgroundReadOperation backgroundReadOperation;
+
+    /**
+     * The document store notifying about changes or {@code null} if the
+     * document store does not support notifications.
+     */
+    private DocumentStoreChangeNotifier changeNotifier;
+
     /**
      * Monitor object to synchronize background reads.
      */
@@ -581,6 +638,9 @@ public final class DocumentNodeStore
             this.simpleRevisionCounter = new AtomicInteger(0);
         }
         DocumentStore s = builder.getDocumentStore();
+        if (s instanceof DocumentStoreChangeNotifier) {
+            changeNotifier = (DocumentStoreChangeNotifier) s;
+        }
         checkServerTimeDifference(s);
         if (builder.getTiming()) {
             s = new TimingDocumentStoreWrapper(s);
@@ -744,8 +804,9 @@ public final class DocumentNodeStore
         commitQueue.setSuspendTimeoutMillis(builder.getSuspendTimeoutMillis());
         batchCommitQueue = new BatchCommitQueue(store);
         // prepare background threads
+        backgroundReadOperation = new BackgroundReadOperation(this, isDisposed, triggeredReadMinDelay);
         backgroundReadThread = new Thread(
-                new BackgroundReadOperation(this, isDisposed),
+                backgroundReadOperation,
                 "DocumentNodeStore background read thread " + threadNamePostfix);
         backgroundReadThread.setDaemon(true);
         backgroundPurgeThread = new Thread(
@@ -766,6 +827,10 @@ public final class DocumentNodeStore
         // now start the background threads
         clusterUpdateThread.start();
         backgroundReadThread.start();
+        if (changeNotifier != null && getAsyncDelay() > 0) {
+            // run a background read as soon as the store reports a change
+            changeNotifier.setChangeListener(clusterId, backgroundReadOperation::trigger);
+        }
         if (!readOnlyMode) {
             // OAK-8466 - background sweep may take a long time if there is no
             // sweep revision for this clusterId. When this process is suddenly
@@ -878,10 +943,17 @@ public final class DocumentNodeStore
             return;
         }
 
+        if (changeNotifier != null) {
+            changeNotifier.setChangeListener(clusterId, null);
+        }
+
         // notify background threads waiting on isDisposed
         synchronized (isDisposed) {
             isDisposed.notifyAll();
         }
+        if (backgroundReadOperation != null) {
+            backgroundReadOperation.trigger();
+        }
 
         Utils.joinQuietly(backgroundReadThread,
                 backgroundUpdateThread,
@@ -1625,6 +1697,9 @@ public final class DocumentNodeStore
         final long start = PERFLOG.start();
         String id = Utils.getIdFromPath(path);
         Revision lastRevision = getPendingModifications().get(path);
+        if (hotDocuments != null) {
+            hotDocuments.record(id);
+        }
         NodeDocument doc = store.find(Collection.NODES, id);
         if (doc == null) {
             PERFLOG.end(start, 1,
@@ -2502,11 +2577,30 @@ public final class DocumentNodeStore
                 stats.cacheStats = store.invalidateCache();
             }
 
+            @Override
+            void cacheInvalidated() {
+                refreshHotDocuments(stats);
+            }
+
             @Override
             void updateHead(@NotNull Set<Revision> externalChanges,
                             @NotNull RevisionVector sweepRevs,
                             @Nullable Iterable<String> changedPaths) {
                 long time = clock.getTime();
+                PrecomputedDiff diff = null;
+                if (changedPaths != null && precomputeDiffLimit > 0
+                        && stats.numExternalChanges <= precomputeDiffLimit) {
+                    // compute the diff before the lock is acquired
+                    try {
+                        diff = new PrecomputedDiff();
+                        JournalEntry.applyTo(changedPaths, diff, ROOT);
+                    } catch (Exception e1) {
+                        LOG.warn("backgroundRead: Exception while precomputing external changes from journal: " + e1, e1);
+                        diff = null;
+                    }
+                    stats.precomputeDiff = clock.getTime() - time;
+                    time = clock.getTime();
+                }
                 // make sure no local commit is in progress
                 backgroundOperationLock.writeLock().lock();
                 try {
@@ -2527,8 +2621,13 @@ public final class DocumentNodeStore
                         // then there were external changes and reading them
                         // was successful -> apply them to the diff cache
                         try {
-                            JournalEntry.applyTo(changedPaths, diffCache,
-                                    ROOT, oldHead, newHead);
+                            if (diff != null) {
+                                diff.applyTo(diffCache.newEntry(oldHead, newHead, false),
+                                        executor, precomputeDiffParallelism);
+                            } else {
+                                JournalEntry.applyTo(changedPaths, diffCache,
+                                        ROOT, oldHead, newHead);
+                            }
                         } catch (Exception e1) {
                             LOG.error("backgroundRead: Exception while processing external changes from journal: " + e1, e1);
                         }
@@ -2548,6 +2647,32 @@ public final class DocumentNodeStore
         }.process();
     }
 
+    /**
+     * Reads frequently read documents that are not in the cache anymore,
+     * because they were invalidated by the background read. This avoids
+     * that many sessions miss the cache for the same document at the same
+     * time when the new head revision becomes visible.
+     */
+    private void refreshHotDocuments(BackgroundReadStats stats) {
+        HotDocumentTracker tracker = hotDocuments;
+        if (tracker == null) {
+            return;
+        }
+        long time = clock.getTime();
+        // only documents read at least twice since the last refresh
+        for (String id : tracker.hotDocuments(hotDocumentRefreshCount, 2)) {
+            if (store.getIfCached(NODES, id) == null) {
+                try {
+                    store.find(NODES, id);
+                    stats.numHotDocumentsRefreshed++;
+                } catch (DocumentStoreException e) {
+                    LOG.warn("backgroundRead: refreshing document {} failed: {}", id, e.toString());
+                }
+            }
+        }
+        stats.refreshHotDocuments = clock.getTime() - time;
+    }
+
     private static CommitInfo newCommitInfo(@NotNull ChangeSet changeSet, JournalPropertyHandler journalPropertyHandler) {
         CommitContext commitContext = new SimpleCommitContext();
         commitContext.set(COMMIT_CONTEXT_OBSERVATION_CHANGESET, changeSet);
@@ -2775,7 +2900,7 @@ public final class DocumentNodeStore
                 pendingRollbackInvalidations.clear();
                 pushJournalEntry(mostRecent);
             }
-        }, backgroundOperationLock.writeLock());
+        }, backgroundOperationLock.writeLock(), executor, backgroundUpdateParallelism);
     }
 
     private void maybeRefreshHeadRevision() {
@@ -3706,17 +3831,27 @@ public final class DocumentNodeStore
 
         protected abstract void execute(@NotNull DocumentNodeStore nodeStore);
 
+        /**
+         * Waits for the given delay before the next execution or until the
+         * node store is disposed.
+         *
+         * @param delay the delay in milliseconds.
+         */
+        protected void await(int delay) {
+            synchronized (isDisposed) {
+                try {
+                    isDisposed.wait(delay);
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            }
+        }
+
         @Override
         public void run() {
             int delay = delaySupplier.get();
             while (delay != 0 && !isDisposed.get()) {
-                synchronized (isDisposed) {
-                    try {
-                        isDisposed.wait(delay);
-                    } catch (InterruptedException e) {
-                        // ignore
-                    }
-                }
+                await(delay);
                 DocumentNodeStore nodeStore = ref.get();
                 if (nodeStore != null) {
                     try {
@@ -3760,9 +3895,58 @@ public final class DocumentNodeStore
      */
     static class BackgroundReadOperation extends NodeStoreTask {
 
+        private final AtomicBoolean isDisposed;
+
+        private final int minDelay;
+
+        private boolean triggered;
+
+        /**
+         * @param nodeStore the node store.
+         * @param isDisposed whether the node store is disposed.
+         * @param minDelay the minimum delay in milliseconds between the end
+         *          of a run and a triggered run.
+         */
         BackgroundReadOperation(DocumentNodeStore nodeStore,
-                                AtomicBoolean isDisposed) {
+                                AtomicBoolean isDisposed,
+                                int minDelay) {
             super(nodeStore, isDisposed);
+            this.isDisposed = isDisposed;
+            this.minDelay = minDelay;
+        }
+
+        /**
+         * Runs the next background read once the minimum delay after the
+         * current or last run passed. Multiple calls before the next run
+         * result in a single run.
+         */
+        void trigger() {
+            synchronized (this) {
+                triggered = true;
+                notifyAll();
+            }
+        }
+
+        @Override
+        protected void await(int delay) {
+            synchronized (this) {
+                long now = System.currentTimeMillis();
+                long end = now + delay;
+                long earliest = now + Math.min(minDelay, delay);
+                try {
+                    while (!isDisposed.get()) {
+                        long until = triggered ? earliest : end;
+                        if (now >= until) {
+                            break;
+                        }
+                        wait(until - now);
+                        now = System.currentTimeMillis();
+                    }
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+                triggered = false;
+            }
         }
 
         @Override
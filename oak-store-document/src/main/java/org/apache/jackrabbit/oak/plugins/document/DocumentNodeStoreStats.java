@@ -31,6 +31,7 @@ public class DocumentNodeStoreStats implements DocumentNodeStoreStatsCollector {
     private static final String BGR_READ_HEAD = "DOCUMENT_NS_BGR_READ_HEAD";
     private static final String BGR_CACHE_INVALIDATE = "DOCUMENT_NS_BGR_CACHE_INVALIDATE";
     private static final String BGR_DIFF_CACHE = "DOCUMENT_NS_BGR_DIFF_CACHE";
+    private static final String BGR_PRECOMPUTE_DIFF = "DOCUMENT_NS_BGR_PRECOMPUTE_DIFF";
     private static final String BGR_LOCK = "DOCUMENT_NS_BGR_LOCK";
     private static final String BGR_DISPATCH = "DOCUMENT_NS_BGR_DISPATCH";
     private static final String BGR_TOTAL_TIME = "DOCUMENT_NS_BGR_TOTAL_TIME";
@@ -45,6 +46,8 @@ public class DocumentNodeStoreStats implements DocumentNodeStoreStatsCollector {
     static final String BGW_NUM = "DOCUMENT_NS_BGW_NUM";
     static final String BGW_NUM_WRITES_RATE = "DOCUMENT_NS_BGW_NUM_WRITE_RATE";
     private static final String BGW_TOTAL = "DOCUMENT_NS_BGW_TOTAL_TIME";
+    private static final String BGW_SHARD_WRITE = "DOCUMENT_NS_BGW_MAX_SHARD_WRITE";
+    private static final String BGW_SHARD_SIZE = "DOCUMENT_NS_BGW_MAX_SHARD_SIZE";
 
     static final String LEASE_UPDATE = "DOCUMENT_NS_LEASE_UPDATE";
 
@@ -69,6 +72,7 @@ public class DocumentNodeStoreStats implements DocumentNodeStoreStatsCollector {
     private final TimerStats readHead;
     private final TimerStats readCacheInvalidate;
     private final TimerStats readDiffCache;
+    private final TimerStats readPrecomputeDiff;
     private final TimerStats readLock;
     private final TimerStats readDispatch;
     private final TimerStats readTotalTime;
@@ -83,6 +87,8 @@ public class DocumentNodeStoreStats implements DocumentNodeStoreStatsCollector {
     private final HistogramStats writeNum;
     private final TimerStats writeWrite;
     private final TimerStats writeTotal;
+    private final TimerStats writeShard;
+    private final HistogramStats writeShardSize;
     private final MeterStats numWritesRate;
 
     // lease update
@@ -112,6 +118,7 @@ public class DocumentNodeStoreStats implements DocumentNodeStoreStatsCollector {
         readHead = sp.getTimer(BGR_READ_HEAD, StatsOptions.METRICS_ONLY);
         readCacheInvalidate = sp.getTimer(BGR_CACHE_INVALIDATE, StatsOptions.METRICS_ONLY);
         readDiffCache = sp.getTimer(BGR_DIFF_CACHE, StatsOptions.METRICS_ONLY);
+        readPrecomputeDiff = sp.getTimer(BGR_PRECOMPUTE_DIFF, StatsOptions.METRICS_ONLY);
         readLock = sp.getTimer(BGR_LOCK, StatsOptions.METRICS_ONLY);
         readDispatch = sp.getTimer(BGR_DISPATCH, StatsOptions.METRICS_ONLY);
         readTotalTime = sp.getTimer(BGR_TOTAL_TIME, StatsOptions.METRICS_ONLY);
@@ -124,6 +131,8 @@ public class DocumentNodeStoreStats implements DocumentNodeStoreStatsCollector {
         writeSweep = sp.getTimer(BGW_SWEEP, StatsOptions.METRICS_ONLY);
         writeWrite = sp.getTimer(BGW_WRITE, StatsOptions.METRICS_ONLY);
         writeTotal = sp.getTimer(BGW_TOTAL, StatsOptions.METRICS_ONLY);
+        writeShard = sp.getTimer(BGW_SHARD_WRITE, StatsOptions.METRICS_ONLY);
+        writeShardSize = sp.getHistogram(BGW_SHARD_SIZE, StatsOptions.METRICS_ONLY);
         writeNum = sp.getHistogram(BGW_NUM, StatsOptions.METRICS_ONLY);
         numWritesRate = sp.getMeter(BGW_NUM_WRITES_RATE, StatsOptions.DEFAULT); //Enable time series
 
@@ -152,6 +161,7 @@ public class DocumentNodeStoreStats implements DocumentNodeStoreStatsCollector {
         readHead.update(stats.readHead, TimeUnit.MILLISECONDS);
         readCacheInvalidate.update(stats.cacheInvalidationTime, TimeUnit.MILLISECONDS);
         readDiffCache.update(stats.populateDiffCache, TimeUnit.MILLISECONDS);
+        readPrecomputeDiff.update(stats.precomputeDiff, TimeUnit.MILLISECONDS);
         readLock.update(stats.lock, TimeUnit.MILLISECONDS);
         readDispatch.update(stats.dispatchChanges, TimeUnit.MILLISECONDS);
         readTotalTime.update(stats.totalReadTime, TimeUnit.MILLISECONDS);
@@ -171,6 +181,8 @@ public class DocumentNodeStoreStats implements DocumentNodeStoreStatsCollector {
         writeSweep.update(stats.sweep, TimeUnit.MILLISECONDS);
         writeWrite.update(stats.write, TimeUnit.MILLISECONDS);
         writeTotal.update(stats.totalWriteTime, TimeUnit.MILLISECONDS);
+        writeShard.update(stats.maxShardWrite, TimeUnit.MILLISECONDS);
+        writeShardSize.update(stats.maxShardSize);
 
         writeNum.update(stats.num);
 
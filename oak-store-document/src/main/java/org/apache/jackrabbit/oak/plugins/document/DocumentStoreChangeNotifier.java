@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Optional interface implemented by a {@link DocumentStore} that is able to
+ * notify about changes to the root document and the journal, which may have
+ * been written by another cluster node. The {@link DocumentNodeStore} uses
+ * the notification to run a background read right away instead of waiting
+ * for the next scheduled run. The scheduled background read is still
+ * performed, hence a notification may be late, missed or spurious.
+ */
+public interface DocumentStoreChangeNotifier {
+
+    /**
+     * Sets the listener to call when another cluster node updated the
+     * {@code _lastRev} of the root document or added a journal entry. Changes
+     * made by the given cluster node are not reported. The listener is called
+     * from a thread owned by the document store and must return quickly.
+     * Setting a listener replaces a previously set listener.
+     *
+     * @param clusterId the cluster id of the node store the listener belongs
+     *          to.
+     * @param listener the listener or {@code null} to remove the current
+     *          listener.
+     */
+    void setChangeListener(int clusterId, @Nullable Runnable listener);
+}
@@ -74,6 +74,13 @@ abstract class ExternalChange {
      */
     abstract void invalidateCache();
 
+    /**
+     * Called after cache entries were invalidated and before the head is
+     * updated. The default implementation does nothing.
+     */
+    void cacheInvalidated() {
+    }
+
     /**
      * Called when the current head should be updated with revisions of external
      * changes.
@@ -179,6 +186,7 @@ abstract class ExternalChange {
                     }
                 }
                 stats.cacheInvalidationTime = clock.getTime() - time;
+                cacheInvalidated();
             }
 
             // update head
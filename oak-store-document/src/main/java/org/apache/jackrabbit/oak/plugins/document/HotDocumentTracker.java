@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jetbrains.annotations.NotNull;
+
+import static org.apache.jackrabbit.guava.common.base.Preconditions.checkArgument;
+
+/**
+ * Keeps track of frequently read documents. Each read of a document that was
+ * not served from the node state cache is recorded. The counts decay by half
+ * whenever the hot documents are retrieved, so documents that are no longer
+ * read drop out after a few rounds.
+ * <p>
+ * The number of tracked documents is bounded. When the limit is reached,
+ * reads of documents that are not tracked yet are ignored until the next
+ * decay removes documents with a count of zero.
+ */
+final class HotDocumentTracker {
+
+    private final Map<String, AtomicLong> counts = new ConcurrentHashMap<>();
+
+    private final int maxTracked;
+
+    /**
+     * @param maxTracked the maximum number of tracked documents.
+     */
+    HotDocumentTracker(int maxTracked) {
+        checkArgument(maxTracked > 0, "maxTracked must be > 0");
+        this.maxTracked = maxTracked;
+    }
+
+    /**
+     * Records a read of the document with the given id.
+     *
+     * @param id the id of the document.
+     */
+    void record(@NotNull String id) {
+        AtomicLong c = counts.get(id);
+        if (c == null) {
+            if (counts.size() >= maxTracked) {
+                return;
+            }
+            c = counts.computeIfAbsent(id, k -> new AtomicLong());
+        }
+        c.incrementAndGet();
+    }
+
+    /**
+     * Returns the ids of the most frequently read documents, ordered by
+     * descending count, and halves the counts.
+     *
+     * @param num the maximum number of ids to return.
+     * @param minCount the minimum count of a document to be returned.
+     * @return the ids of the hot documents.
+     */
+    @NotNull
+    List<String> hotDocuments(int num, long minCount) {
+        PriorityQueue<Map.Entry<String, Long>> top = new PriorityQueue<>(
+                Math.max(1, num + 1), Map.Entry.comparingByValue());
+        Iterator<Map.Entry<String, AtomicLong>> it = counts.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, AtomicLong> e = it.next();
+            long count = e.getValue().get();
+            if (count >= minCount && num > 0) {
+                top.add(new SimpleImmutableEntry<>(e.getKey(), count));
+                if (top.size() > num) {
+                    top.poll();
+                }
+            }
+            if (e.getValue().addAndGet(-(count - count / 2)) <= 0) {
+                it.remove();
+            }
+        }
+        List<String> ids = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            ids.add(top.poll().getKey());
+        }
+        Collections.reverse(ids);
+        return ids;
+    }
+
+    /**
+     * @return the number of tracked documents.
+     */
+    int size() {
+        return counts.size();
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Encodes and decodes the changed paths of a {@link JournalEntry} in a
+ * compact format. The paths are sorted and each path is written as the
+ * length of the prefix it shares with the previous path, followed by the
+ * remaining characters. The result is deflated and stored as a Base64
+ * string, because not all {@link DocumentStore} implementations support
+ * binary values.
+ * <p>
+ * Decoding is streaming: paths are passed to a {@link PathConsumer} while the
+ * data is inflated, without building the tree of changes in memory.
+ */
+final class JournalChangesCodec {
+
+    private static final int VERSION = 1;
+
+    private JournalChangesCodec() {
+    }
+
+    interface PathConsumer {
+
+        void accept(@NotNull String path) throws IOException;
+    }
+
+    /**
+     * Encodes the given paths.
+     *
+     * @param sortedPaths the paths in ascending {@link String} order.
+     * @return the encoded paths.
+     */
+    @NotNull
+    static String encode(@NotNull Iterable<String> sortedPaths) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater))) {
+            out.writeByte(VERSION);
+            byte[] previous = new byte[0];
+            for (String p : sortedPaths) {
+                byte[] current = p.getBytes(StandardCharsets.UTF_8);
+                int common = commonPrefixLength(previous, current);
+                writeVarInt(out, common);
+                writeVarInt(out, current.length - common);
+                out.write(current, common, current.length - common);
+                previous = current;
+            }
+        } catch (IOException e) {
+            // cannot happen with a ByteArrayOutputStream
+            throw new IllegalStateException(e);
+        } finally {
+            deflater.end();
+        }
+        return Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+
+    /**
+     * Decodes the paths in the given {@code data} and passes them in
+     * ascending order to the {@code consumer}.
+     *
+     * @param data the encoded paths.
+     * @param consumer the consumer for the paths.
+     * @throws IOException if the consumer throws an exception.
+     * @throws IllegalArgumentException if the data is malformed.
+     */
+    static void decode(@NotNull String data, @NotNull PathConsumer consumer)
+            throws IOException {
+        byte[] compressed;
+        try {
+            compressed = Base64.getDecoder().decode(data);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed journal changes", e);
+        }
+        DataInputStream in = new DataInputStream(
+                new InflaterInputStream(new ByteArrayInputStream(compressed)));
+        byte[] previous = new byte[0];
+        try {
+            int version = in.read();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported journal changes version: " + version);
+            }
+            int common;
+            while ((common = readVarInt(in)) >= 0) {
+                int len = readVarInt(in);
+                if (len < 0 || common > previous.length) {
+                    throw new IllegalArgumentException("Malformed journal changes");
+                }
+                byte[] current = new byte[common + len];
+                System.arraycopy(previous, 0, current, 0, common);
+                in.readFully(current, common, len);
+                consumer.accept(new String(current, StandardCharsets.UTF_8));
+                previous = current;
+            }
+        } catch (EOFException | ZipException e) {
+            throw new IllegalArgumentException("Malformed journal changes", e);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static int commonPrefixLength(byte[] a, byte[] b) {
+        int len = Math.min(a.length, b.length);
+        int i = 0;
+        while (i < len && a[i] == b[i]) {
+            i++;
+        }
+        return i;
+    }
+
+    private static void writeVarInt(OutputStream out, int x) throws IOException {
+        while ((x & ~0x7f) != 0) {
+            out.write((x & 0x7f) | 0x80);
+            x >>>= 7;
+        }
+        out.write(x);
+    }
+
+    /**
+     * @return the value or -1 if the end of the stream is reached.
+     */
+    private static int readVarInt(InputStream in) throws IOException {
+        int x = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                if (shift == 0) {
+                    return -1;
+                }
+                throw new EOFException();
+            }
+            x |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return x;
+            }
+        }
+        throw new IllegalArgumentException("Malformed journal changes");
+    }
+}
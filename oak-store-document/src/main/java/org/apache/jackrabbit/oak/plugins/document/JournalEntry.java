@@ -34,6 +34,7 @@ import org.apache.jackrabbit.oak.commons.PathUtils;
 import org.apache.jackrabbit.oak.commons.json.JsopBuilder;
 import org.apache.jackrabbit.oak.commons.json.JsopReader;
 import org.apache.jackrabbit.oak.commons.json.JsopTokenizer;
+import org.apache.jackrabbit.oak.commons.properties.SystemPropertySupplier;
 import org.apache.jackrabbit.oak.commons.sort.StringSort;
 import org.apache.jackrabbit.oak.plugins.document.util.Utils;
 import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
@@ -67,6 +68,12 @@ public final class JournalEntry extends Document {
 
     private static final String CHANGES = "_c";
 
+    /**
+     * Changed paths encoded with {@link JournalChangesCodec}. An entry has
+     * either this field or {@link #CHANGES}.
+     */
+    private static final String COMPRESSED_CHANGES = "_cc";
+
     private static final String CHANGE_SET = "_cs";
 
     static final String BRANCH_COMMITS = "_bc";
@@ -77,6 +84,14 @@ public final class JournalEntry extends Document {
 
     private static final int READ_CHUNK_SIZE = 100;
 
+    /**
+     * Write changed paths in the compressed format. Cluster nodes running an
+     * older version cannot read entries in this format, hence it must only
+     * be enabled when all cluster nodes support it.
+     */
+    private static final boolean COMPRESS_CHANGES = SystemPropertySupplier
+            .create("oak.journal.compressChanges", Boolean.FALSE).loggingTo(LOG).get();
+
     /**
      * switch to disk after 2048 paths
      */
@@ -131,11 +146,24 @@ public final class JournalEntry extends Document {
                         @NotNull RevisionVector from,
                         @NotNull RevisionVector to) throws IOException {
         LOG.debug("applyTo: starting for {} from {} to {}", path, from, to);
+        applyTo(changedPaths, requireNonNull(diffCache).newEntry(from, to, false), path);
+    }
+
+    /**
+     * Appends the changes of the parent nodes of the given sorted
+     * {@code changedPaths} to the diff cache {@code entry} and marks the entry
+     * as done. Only changes at or below {@code path} are appended.
+     *
+     * @param changedPaths the sorted paths of changed nodes.
+     * @param entry the diff cache entry.
+     * @param path the root path of the diff.
+     */
+    static void applyTo(@NotNull Iterable<String> changedPaths,
+                        @NotNull DiffCache.Entry entry,
+                        @NotNull Path path) throws IOException {
         // note that it is not de-duplicated yet
         LOG.debug("applyTo: sorting done.");
 
-        final DiffCache.Entry entry = requireNonNull(diffCache).newEntry(from, to, false);
-
         final Iterator<String> it = changedPaths.iterator();
         if (!it.hasNext()) {
             // nothing at all? that's quite unusual..
@@ -379,7 +407,7 @@ public final class JournalEntry extends Document {
 
     boolean containsModified(Path path) {
         if (path.isRoot()) {
-            return get(CHANGES) != null;
+            return get(CHANGES) != null || get(COMPRESSED_CHANGES) != null;
         }
         TreeNode node = getChanges();
         for (String name : path.elements()) {
@@ -462,7 +490,11 @@ public final class JournalEntry extends Document {
     UpdateOp asUpdateOp(@NotNull Revision revision) {
         String id = asId(revision);
         UpdateOp op = new UpdateOp(id, true);
-        op.set(CHANGES, getChanges().serialize());
+        if (COMPRESS_CHANGES) {
+            op.set(COMPRESSED_CHANGES, getChanges().compress());
+        } else {
+            op.set(CHANGES, getChanges().serialize());
+        }
 
         //For branch commits builder would be null
         if (changeSetBuilder != null) {
@@ -516,21 +548,9 @@ public final class JournalEntry extends Document {
      *          {@code sort}. In this case only some paths may have been added.
      */
     void addTo(final StringSort sort, Path path) throws IOException {
-        TraversingVisitor v = new TraversingVisitor() {
-            @Override
-            public void node(TreeNode node, Path p) throws IOException {
-                sort.add(p.toString());
-            }
-        };
-        TreeNode n = getNode(path);
-        if (n != null) {
-            n.accept(v, path);
-        }
+        addChangedPathsTo(sort, path);
         for (JournalEntry e : getBranchCommits()) {
-            n = e.getNode(path);
-            if (n != null) {
-                n.accept(v, path);
-            }
+            e.addChangedPathsTo(sort, path);
         }
     }
 
@@ -579,15 +599,36 @@ public final class JournalEntry extends Document {
     }
 
     private void addInvalidateOnlyTo(final StringSort sort) throws IOException {
-        TraversingVisitor v = new TraversingVisitor() {
-
-            @Override
-            public void node(TreeNode node, Path path) throws IOException {
-                sort.add(path.toString());
-            }
-        };
         for (JournalEntry e : getInvalidateOnly()) {
-            e.getChanges().accept(v, Path.ROOT);
+            e.addChangedPathsTo(sort, Path.ROOT);
+        }
+    }
+
+    /**
+     * Adds the changed paths of this entry in the scope of {@code path} to
+     * {@code sort}. Compressed changes are streamed to {@code sort} without
+     * building the tree of changes, unless the tree is already present.
+     */
+    private void addChangedPathsTo(final StringSort sort, Path path) throws IOException {
+        String compressed = (String) get(COMPRESSED_CHANGES);
+        if (changes == null && compressed != null) {
+            final String scope = path.toString();
+            final String prefix = path.isRoot() ? scope : scope + "/";
+            JournalChangesCodec.decode(compressed, p -> {
+                if (p.startsWith(prefix) || p.equals(scope)) {
+                    sort.add(p);
+                }
+            });
+            return;
+        }
+        TreeNode n = getNode(path);
+        if (n != null) {
+            n.accept(new TraversingVisitor() {
+                @Override
+                public void node(TreeNode node, Path p) throws IOException {
+                    sort.add(p.toString());
+                }
+            }, path);
         }
     }
 
@@ -673,8 +714,16 @@ public final class JournalEntry extends Document {
         if (changes == null) {
             TreeNode node = new TreeNode(concurrent);
             String c = (String) get(CHANGES);
+            String compressed = (String) get(COMPRESSED_CHANGES);
             if (c != null) {
                 node.parse(new JsopTokenizer(c));
+            } else if (compressed != null) {
+                try {
+                    JournalChangesCodec.decode(compressed, node::getOrCreatePath);
+                } catch (IOException e) {
+                    // cannot happen, the consumer does not throw
+                    throw new IllegalStateException(e);
+                }
             }
             changes = node;
         }
@@ -759,6 +808,27 @@ public final class JournalEntry extends Document {
             }
         }
 
+        /**
+         * @return the paths of this node and all its descendants encoded
+         *          with {@link JournalChangesCodec}.
+         */
+        String compress() {
+            final List<String> paths = Lists.newArrayList();
+            try {
+                accept(new TraversingVisitor() {
+                    @Override
+                    public void node(TreeNode node, Path path) {
+                        paths.add(path.toString());
+                    }
+                }, Path.ROOT);
+            } catch (IOException e) {
+                // cannot happen, the visitor does not throw
+                throw new IllegalStateException(e);
+            }
+            Collections.sort(paths);
+            return JournalChangesCodec.encode(paths);
+        }
+
         String serialize() {
             JsopBuilder builder = new JsopBuilder();
             builder.object();
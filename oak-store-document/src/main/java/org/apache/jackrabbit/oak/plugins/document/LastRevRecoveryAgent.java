@@ -18,6 +18,7 @@
  */
 package org.apache.jackrabbit.oak.plugins.document;
 
+import static org.apache.jackrabbit.guava.common.base.Preconditions.checkArgument;
 import static org.apache.jackrabbit.guava.common.collect.Iterables.filter;
 import static org.apache.jackrabbit.guava.common.collect.Iterables.transform;
 import static org.apache.jackrabbit.guava.common.collect.Lists.newArrayList;
@@ -30,21 +31,32 @@ import static org.apache.jackrabbit.oak.plugins.document.util.Utils.PROPERTY_OR_
 import static org.apache.jackrabbit.oak.plugins.document.util.Utils.isCommitted;
 import static org.apache.jackrabbit.oak.plugins.document.util.Utils.resolveCommitRevision;
 
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 
+import org.apache.jackrabbit.guava.common.collect.AbstractIterator;
 import org.apache.jackrabbit.guava.common.collect.Iterables;
 import org.apache.jackrabbit.guava.common.collect.Sets;
 
 import org.apache.jackrabbit.oak.commons.TimeDurationFormatter;
+import org.apache.jackrabbit.oak.commons.properties.SystemPropertySupplier;
 import org.apache.jackrabbit.oak.plugins.document.bundlor.DocumentBundlor;
 import org.apache.jackrabbit.oak.plugins.document.cache.CacheInvalidationStats;
 import org.apache.jackrabbit.oak.plugins.document.util.MapFactory;
@@ -89,6 +101,20 @@ public class LastRevRecoveryAgent {
     // OAK-9535 : recalculate the journal entry size every 4096 elements
     private static final int PSEUDO_BRANCH_COMMIT_FLUSH_CHECK_COUNT = 4096;
 
+    /**
+     * Number of candidate documents in a chunk processed by a task when
+     * recovery runs in parallel.
+     */
+    static final int RECOVERY_CHUNK_SIZE = 1000;
+
+    /**
+     * Number of threads used to determine the last modification of candidate
+     * documents and to write back the recovered _lastRev updates. The default
+     * of one processes all candidates on the recovering thread.
+     */
+    private int parallelism = SystemPropertySupplier.create("oak.documentMK.recoveryParallelism", 1)
+            .loggingTo(LoggerFactory.getLogger(LastRevRecoveryAgent.class)).get();
+
     public LastRevRecoveryAgent(DocumentStore store,
                                 RevisionContext revisionContext,
                                 MissingLastRevSeeker seeker,
@@ -105,6 +131,16 @@ public class LastRevRecoveryAgent {
                 i -> {});
     }
 
+    /**
+     * Sets the number of threads used for recovery.
+     *
+     * @param parallelism the number of threads.
+     */
+    void setParallelism(int parallelism) {
+        checkArgument(parallelism > 0, "parallelism must be greater than zero");
+        this.parallelism = parallelism;
+    }
+
     /**
      * Recover the correct _lastRev updates for potentially missing candidate
      * nodes. If another cluster node is already performing the recovery for the
@@ -259,6 +295,26 @@ public class LastRevRecoveryAgent {
     public int recover(final Iterable<NodeDocument> suspects,
                        final int clusterId, final boolean dryRun)
             throws DocumentStoreException {
+        if (parallelism <= 1) {
+            return recover(suspects, clusterId, dryRun, null);
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "LastRevRecoveryAgent-" + clusterId + "-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            return recover(suspects, clusterId, dryRun, executor);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private int recover(final Iterable<NodeDocument> suspects,
+                        final int clusterId, final boolean dryRun,
+                        @Nullable final ExecutorService executor)
+            throws DocumentStoreException {
         // set a deadline if this is a self recovery. Self recovery does not
         // update the lease in a background thread and must terminate before
         // the lease acquired by the recovery lock expires.
@@ -347,7 +403,8 @@ public class LastRevRecoveryAgent {
 
         final List<Revision> pseudoBcRevs = new ArrayList<>();
         int nextFlushCheckCount = PSEUDO_BRANCH_COMMIT_FLUSH_CHECK_COUNT;
-        for (NodeDocument doc : suspects) {
+        for (Map.Entry<NodeDocument, Revision> candidate : lastRevsForParents(suspects, clusterId, executor)) {
+            NodeDocument doc = candidate.getKey();
             totalCount++;
             lastCount++;
 
@@ -368,14 +425,14 @@ public class LastRevRecoveryAgent {
                 log.info(message);
                 lastLog = now;
                 lastCount = 0;
+                if (!dryRun) {
+                    missingLastRevUtil.updateRecoveryProgress(clusterId,
+                            revisionContext.getClusterId(), totalCount);
+                }
             }
 
-            Revision currentLastRev = doc.getLastRev().get(clusterId);
-
             // 1. determine last committed modification on document
-            Revision lastModifiedRev = determineLastModification(doc, clusterId);
-
-            Revision lastRevForParents = Utils.max(lastModifiedRev, currentLastRev);
+            Revision lastRevForParents = candidate.getValue();
             // remember the higher of the two revisions. this is the
             // most recent revision currently obtained from either a
             // _lastRev entry or an explicit modification on the document
@@ -544,7 +601,7 @@ public class LastRevRecoveryAgent {
                         log.warn("Unable to create journal entry {} (already exists).", id);
                     }
                 }
-            }, new ReentrantLock());
+            }, new ReentrantLock(), executor != null ? executor : Runnable::run, parallelism);
 
             log.info("Updated lastRev of [{}] documents while performing lastRev recovery for " +
                     "cluster node [{}]: {}", size, clusterId, updates);
@@ -555,6 +612,84 @@ public class LastRevRecoveryAgent {
 
     //--------------------------< internal >------------------------------------
 
+    /**
+     * Determines the revision to propagate to the ancestors of each of the
+     * given documents. This is the most recent of the _lastRev of
+     * {@code clusterId} and the last committed modification by
+     * {@code clusterId}. With an {@code executor}, chunks of documents are
+     * processed concurrently. The documents are returned in the order of
+     * {@code suspects} in both cases.
+     *
+     * @param suspects the candidate documents.
+     * @param clusterId the clusterId to recover.
+     * @param executor the executor or {@code null} to process the documents
+     *                 on the calling thread.
+     * @return the documents with the revision to propagate to their
+     *          ancestors, which may be {@code null}.
+     */
+    private Iterable<Map.Entry<NodeDocument, Revision>> lastRevsForParents(
+            Iterable<NodeDocument> suspects, int clusterId, ExecutorService executor) {
+        if (executor == null) {
+            return transform(suspects, doc -> lastRevForParents(doc, clusterId));
+        }
+        return () -> new AbstractIterator<Map.Entry<NodeDocument, Revision>>() {
+
+            private final Iterator<NodeDocument> docs = suspects.iterator();
+
+            private final Deque<Future<List<Map.Entry<NodeDocument, Revision>>>> pending = new ArrayDeque<>();
+
+            private Iterator<Map.Entry<NodeDocument, Revision>> current = Collections.emptyIterator();
+
+            @Override
+            protected Map.Entry<NodeDocument, Revision> computeNext() {
+                for (;;) {
+                    if (current.hasNext()) {
+                        return current.next();
+                    }
+                    // keep all threads busy while the results of
+                    // the oldest chunk are consumed
+                    while (pending.size() <= parallelism && docs.hasNext()) {
+                        List<NodeDocument> chunk = new ArrayList<>(RECOVERY_CHUNK_SIZE);
+                        while (chunk.size() < RECOVERY_CHUNK_SIZE && docs.hasNext()) {
+                            chunk.add(docs.next());
+                        }
+                        pending.add(executor.submit(() -> newArrayList(
+                                transform(chunk, doc -> lastRevForParents(doc, clusterId)))));
+                    }
+                    if (pending.isEmpty()) {
+                        return endOfData();
+                    }
+                    current = getChunk(pending.poll()).iterator();
+                }
+            }
+        };
+    }
+
+    private Map.Entry<NodeDocument, Revision> lastRevForParents(NodeDocument doc,
+                                                                int clusterId) {
+        Revision currentLastRev = doc.getLastRev().get(clusterId);
+        Revision lastModifiedRev = determineLastModification(doc, clusterId);
+        return new AbstractMap.SimpleImmutableEntry<>(doc,
+                Utils.max(lastModifiedRev, currentLastRev));
+    }
+
+    private static <T> T getChunk(Future<T> f) {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DocumentStoreException("Interrupted while recovering _lastRev", e);
+        } catch (ExecutionException e) {
+            Throwable t = e.getCause();
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            } else if (t instanceof Error) {
+                throw (Error) t;
+            }
+            throw new DocumentStoreException(t);
+        }
+    }
+
     /**
      * Get the earliest branch commit before {@code timeMillis} that has been
      * merged after {@code timeMillis}. This method only considers branch
@@ -649,10 +784,10 @@ public class LastRevRecoveryAgent {
             }
 
             log.info("Last revision recovery already being performed by " +
-                    "cluster node {}. Waiting at most until {} for recovery " +
-                    "to finish ({} seconds remaining).",
-                    infoDoc.getRecoveryBy(), Utils.timestampToString(waitUntil),
-                    remaining / 1000);
+                    "cluster node {} ({} documents processed). Waiting at most " +
+                    "until {} for recovery to finish ({} seconds remaining).",
+                    infoDoc.getRecoveryBy(), infoDoc.getRecoveryProgress(),
+                    Utils.timestampToString(waitUntil), remaining / 1000);
             // check once every five seconds
             long time = Math.min(waitUntil, clock.getTime() + 5000);
             try {
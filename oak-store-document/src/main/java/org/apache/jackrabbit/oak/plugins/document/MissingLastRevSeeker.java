@@ -120,6 +120,19 @@ public class MissingLastRevSeeker {
         new RecoveryLock(store, clock, clusterId).releaseRecoveryLock(success);
     }
 
+    /**
+     * Records the progress of an ongoing recovery for the given
+     * {@code clusterId}. The progress is only recorded if the recovery lock
+     * is held by {@code recoveredBy}.
+     *
+     * @param clusterId the id of the cluster node being recovered.
+     * @param recoveredBy id of cluster doing the recovery.
+     * @param processed the number of candidate documents processed so far.
+     */
+    public void updateRecoveryProgress(int clusterId, int recoveredBy, long processed) {
+        new RecoveryLock(store, clock, clusterId).updateProgress(recoveredBy, processed);
+    }
+
     public NodeDocument getRoot() {
         return store.find(Collection.NODES, Utils.getIdFromPath(Path.ROOT));
     }
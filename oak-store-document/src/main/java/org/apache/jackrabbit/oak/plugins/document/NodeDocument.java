@@ -66,6 +66,7 @@ import org.apache.jackrabbit.oak.commons.json.JsopReader;
 import org.apache.jackrabbit.oak.commons.json.JsopTokenizer;
 import org.apache.jackrabbit.oak.commons.json.JsopWriter;
 import org.apache.jackrabbit.oak.commons.log.LogSilencer;
+import org.apache.jackrabbit.oak.commons.properties.SystemPropertySupplier;
 import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
 import org.apache.jackrabbit.oak.plugins.document.util.Utils;
 import org.jetbrains.annotations.NotNull;
@@ -91,6 +92,14 @@ public final class NodeDocument extends Document {
 
     private static final LogSilencer LOG_SILENCER = new LogSilencer();
 
+    /**
+     * Minimum number of entries in a revision map of a sealed document for the
+     * map to be stored as a {@link PackedRevisionMap}. The default of zero
+     * disables packing.
+     */
+    static final int PACKED_REVISION_MAP_SIZE = SystemPropertySupplier.create(
+            "oak.documentMK.packedRevisionMapSize", 0).loggingTo(LOG).get();
+
     /**
      * All NodeDocument ID value would be greater than this value
      * It can be used as startKey in DocumentStore#query methods
@@ -2296,6 +2305,28 @@ public final class NodeDocument extends Document {
         return ValueMap.create(this, DELETED);
     }
     
+    //-----------------------------< Document >---------------------------------
+
+    /**
+     * Packs the revision maps of this document when they have at least
+     * {@link #PACKED_REVISION_MAP_SIZE} entries.
+     */
+    @NotNull
+    @Override
+    protected Map<?, ?> transformAndSeal(@NotNull Map<Object, Object> map,
+                                         @Nullable String key,
+                                         int level) {
+        if (level == 1 && PACKED_REVISION_MAP_SIZE > 0
+                && map.size() >= PACKED_REVISION_MAP_SIZE
+                && map instanceof SortedMap) {
+            PackedRevisionMap packed = PackedRevisionMap.pack((SortedMap<?, ?>) map);
+            if (packed != null) {
+                return packed;
+            }
+        }
+        return super.transformAndSeal(map, key, level);
+    }
+
     public String asString() {
         JsopWriter json = new JsopBuilder();
         toJson(json, data);
@@ -0,0 +1,453 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.jackrabbit.oak.cache.CacheValue;
+import org.apache.jackrabbit.oak.commons.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An immutable {@link NavigableMap} of {@link Revision} keys to
+ * {@link String} values, which stores the revisions in primitive arrays
+ * instead of a tree of entry and revision objects. The revision keys and
+ * entries are only created when they are accessed.
+ * <p>
+ * Lookups and range views ({@link #headMap(Revision, boolean)},
+ * {@link #tailMap(Revision, boolean)} and
+ * {@link #subMap(Revision, boolean, Revision, boolean)}) work directly on
+ * the arrays. Less frequently used operations like {@link #descendingMap()}
+ * unpack the entries into a {@link TreeMap}. Only maps sorted with the
+ * {@link StableRevisionComparator} or its reverse order are packed, so that
+ * the binary search can compare the packed fields without creating
+ * revisions.
+ */
+final class PackedRevisionMap extends AbstractMap<Revision, String>
+        implements NavigableMap<Revision, String>, CacheValue {
+
+    private final Comparator<? super Revision> comparator;
+
+    /**
+     * Whether the map is sorted in the reverse order of the
+     * {@link StableRevisionComparator}.
+     */
+    private final boolean reverse;
+
+    private final long[] timestamps;
+
+    private final int[] counters;
+
+    /**
+     * The cluster ids of the revisions. The id of a branch revision is stored
+     * as its bitwise complement.
+     */
+    private final int[] clusterIds;
+
+    private final String[] values;
+
+    /**
+     * The range of this map in the arrays, from (inclusive) to (exclusive).
+     */
+    private final int from, to;
+
+    private PackedRevisionMap(Comparator<? super Revision> comparator,
+                              long[] timestamps,
+                              int[] counters,
+                              int[] clusterIds,
+                              String[] values,
+                              int from,
+                              int to) {
+        this.comparator = comparator;
+        this.reverse = comparator == StableRevisionComparator.REVERSE;
+        this.timestamps = timestamps;
+        this.counters = counters;
+        this.clusterIds = clusterIds;
+        this.values = values;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Packs the given map if it is sorted with the
+     * {@link StableRevisionComparator} or its reverse order, all keys are
+     * {@link Revision}s and all values are {@link String}s or {@code null}.
+     *
+     * @param map the map to pack.
+     * @return the packed map or {@code null} if the map cannot be packed.
+     */
+    @Nullable
+    static PackedRevisionMap pack(@NotNull SortedMap<?, ?> map) {
+        @SuppressWarnings("unchecked")
+        Comparator<? super Revision> comparator = (Comparator<? super Revision>) map.comparator();
+        if (comparator != StableRevisionComparator.INSTANCE
+                && comparator != StableRevisionComparator.REVERSE) {
+            return null;
+        }
+        int size = map.size();
+        long[] timestamps = new long[size];
+        int[] counters = new int[size];
+        int[] clusterIds = new int[size];
+        String[] values = new String[size];
+        int i = 0;
+        for (Map.Entry<?, ?> e : map.entrySet()) {
+            Object k = e.getKey();
+            Object v = e.getValue();
+            if (!(k instanceof Revision) || !(v == null || v instanceof String)) {
+                return null;
+            }
+            Revision r = (Revision) k;
+            timestamps[i] = r.getTimestamp();
+            counters[i] = r.getCounter();
+            clusterIds[i] = r.isBranch() ? ~r.getClusterId() : r.getClusterId();
+            values[i] = (String) v;
+            i++;
+        }
+        return new PackedRevisionMap(comparator, timestamps, counters,
+                clusterIds, values, 0, size);
+    }
+
+    //-----------------------------< Map >--------------------------------------
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return from == to;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public String get(Object key) {
+        int idx = indexOf(key);
+        return idx >= 0 ? values[idx] : null;
+    }
+
+    @NotNull
+    @Override
+    public Set<Entry<Revision, String>> entrySet() {
+        return new AbstractSet<Entry<Revision, String>>() {
+            @NotNull
+            @Override
+            public Iterator<Entry<Revision, String>> iterator() {
+                return new Iterator<Entry<Revision, String>>() {
+                    private int next = from;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < to;
+                    }
+
+                    @Override
+                    public Entry<Revision, String> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        return entryAt(next++);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return PackedRevisionMap.this.size();
+            }
+        };
+    }
+
+    //--------------------------< SortedMap >-----------------------------------
+
+    @Override
+    public Comparator<? super Revision> comparator() {
+        return comparator;
+    }
+
+    @Override
+    public Revision firstKey() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return revisionAt(from);
+    }
+
+    @Override
+    public Revision lastKey() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return revisionAt(to - 1);
+    }
+
+    @NotNull
+    @Override
+    public SortedMap<Revision, String> subMap(Revision fromKey, Revision toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    @NotNull
+    @Override
+    public SortedMap<Revision, String> headMap(Revision toKey) {
+        return headMap(toKey, false);
+    }
+
+    @NotNull
+    @Override
+    public SortedMap<Revision, String> tailMap(Revision fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+    //-------------------------< NavigableMap >---------------------------------
+
+    @Override
+    public Entry<Revision, String> lowerEntry(Revision key) {
+        return entryOrNull(lowerBound(key) - 1);
+    }
+
+    @Override
+    public Revision lowerKey(Revision key) {
+        return revisionOrNull(lowerBound(key) - 1);
+    }
+
+    @Override
+    public Entry<Revision, String> floorEntry(Revision key) {
+        return entryOrNull(upperBound(key) - 1);
+    }
+
+    @Override
+    public Revision floorKey(Revision key) {
+        return revisionOrNull(upperBound(key) - 1);
+    }
+
+    @Override
+    public Entry<Revision, String> ceilingEntry(Revision key) {
+        return entryOrNull(lowerBound(key));
+    }
+
+    @Override
+    public Revision ceilingKey(Revision key) {
+        return revisionOrNull(lowerBound(key));
+    }
+
+    @Override
+    public Entry<Revision, String> higherEntry(Revision key) {
+        return entryOrNull(upperBound(key));
+    }
+
+    @Override
+    public Revision higherKey(Revision key) {
+        return revisionOrNull(upperBound(key));
+    }
+
+    @Override
+    public Entry<Revision, String> firstEntry() {
+        return entryOrNull(from);
+    }
+
+    @Override
+    public Entry<Revision, String> lastEntry() {
+        return entryOrNull(to - 1);
+    }
+
+    @Override
+    public Entry<Revision, String> pollFirstEntry() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Entry<Revision, String> pollLastEntry() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public NavigableMap<Revision, String> descendingMap() {
+        return unpack().descendingMap();
+    }
+
+    @Override
+    public NavigableSet<Revision> navigableKeySet() {
+        return unpack().navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<Revision> descendingKeySet() {
+        return unpack().descendingKeySet();
+    }
+
+    @Override
+    public NavigableMap<Revision, String> subMap(Revision fromKey,
+                                                 boolean fromInclusive,
+                                                 Revision toKey,
+                                                 boolean toInclusive) {
+        if (comparator.compare(fromKey, toKey) > 0) {
+            throw new IllegalArgumentException("fromKey > toKey");
+        }
+        int start = fromInclusive ? lowerBound(fromKey) : upperBound(fromKey);
+        int end = toInclusive ? upperBound(toKey) : lowerBound(toKey);
+        return view(start, Math.max(start, end));
+    }
+
+    @Override
+    public NavigableMap<Revision, String> headMap(Revision toKey,
+                                                  boolean inclusive) {
+        return view(from, inclusive ? upperBound(toKey) : lowerBound(toKey));
+    }
+
+    @Override
+    public NavigableMap<Revision, String> tailMap(Revision fromKey,
+                                                  boolean inclusive) {
+        return view(inclusive ? lowerBound(fromKey) : upperBound(fromKey), to);
+    }
+
+    //---------------------------< CacheValue >---------------------------------
+
+    @Override
+    public int getMemory() {
+        // object overhead, five array references and range
+        long size = 48;
+        // arrays: header and one element each
+        size += 4 * 16 + (long) timestamps.length * (8 + 4 + 4 + 4);
+        for (int i = from; i < to; i++) {
+            if (values[i] != null) {
+                size += StringUtils.estimateMemoryUsage(values[i]);
+            }
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    //-----------------------------< internal >---------------------------------
+
+    private NavigableMap<Revision, String> view(int start, int end) {
+        if (start == from && end == to) {
+            return this;
+        }
+        return new PackedRevisionMap(comparator, timestamps, counters,
+                clusterIds, values, start, end);
+    }
+
+    private NavigableMap<Revision, String> unpack() {
+        TreeMap<Revision, String> map = new TreeMap<>(comparator);
+        map.putAll(this);
+        return Collections.unmodifiableNavigableMap(map);
+    }
+
+    private Revision revisionAt(int idx) {
+        int clusterId = clusterIds[idx];
+        boolean branch = clusterId < 0;
+        return new Revision(timestamps[idx], counters[idx],
+                branch ? ~clusterId : clusterId, branch);
+    }
+
+    private Revision revisionOrNull(int idx) {
+        return idx >= from && idx < to ? revisionAt(idx) : null;
+    }
+
+    private Entry<Revision, String> entryAt(int idx) {
+        return new SimpleImmutableEntry<>(revisionAt(idx), values[idx]);
+    }
+
+    private Entry<Revision, String> entryOrNull(int idx) {
+        return idx >= from && idx < to ? entryAt(idx) : null;
+    }
+
+    private int indexOf(Object key) {
+        if (!(key instanceof Revision)) {
+            return -1;
+        }
+        Revision r = (Revision) key;
+        int idx = lowerBound(r);
+        if (idx < to && compareAt(idx, r) == 0) {
+            return idx;
+        }
+        return -1;
+    }
+
+    /**
+     * Compares the revision at the given index with the given key, in the
+     * order of the {@link #comparator}, the same way as
+     * {@link Revision#compareTo(Revision)}.
+     */
+    private int compareAt(int idx, Revision key) {
+        int comp = Long.compare(timestamps[idx], key.getTimestamp());
+        if (comp == 0) {
+            comp = Integer.compare(counters[idx], key.getCounter());
+        }
+        int clusterId = clusterIds[idx];
+        boolean branch = clusterId < 0;
+        if (comp == 0) {
+            comp = Integer.compare(branch ? ~clusterId : clusterId, key.getClusterId());
+        }
+        if (comp == 0 && branch != key.isBranch()) {
+            comp = branch ? -1 : 1;
+        }
+        return reverse ? -comp : comp;
+    }
+
+    /**
+     * @return the index of the first entry with a key greater or equal to
+     *          the given key, or {@link #to} if there is none.
+     */
+    private int lowerBound(Revision key) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareAt(mid, key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the index of the first entry with a key greater than the given
+     *          key, or {@link #to} if there is none.
+     */
+    private int upperBound(Revision key) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareAt(mid, key) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
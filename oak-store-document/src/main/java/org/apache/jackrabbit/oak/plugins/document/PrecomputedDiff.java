@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import org.jetbrains.annotations.NotNull;
+
+import static org.apache.jackrabbit.guava.common.base.Preconditions.checkState;
+
+/**
+ * A {@link DiffCache.Entry} that keeps the appended changes in memory until
+ * they are applied to an actual diff cache entry. This allows the background
+ * read to compute the changes of external changes from the journal before the
+ * background operation lock is acquired and the revision range of the diff
+ * is known.
+ */
+final class PrecomputedDiff implements DiffCache.Entry {
+
+    /**
+     * Minimum number of changes per task when the changes are applied in
+     * parallel.
+     */
+    private static final int MIN_CHANGES_PER_TASK = 1000;
+
+    private final List<Path> paths = new ArrayList<>();
+
+    private final List<String> changes = new ArrayList<>();
+
+    private boolean done;
+
+    @Override
+    public void append(@NotNull Path path, @NotNull String changes) {
+        checkState(!done, "Entry is already done");
+        this.paths.add(path);
+        this.changes.add(changes);
+    }
+
+    @Override
+    public boolean done() {
+        done = true;
+        return true;
+    }
+
+    /**
+     * @return the number of changes in this entry.
+     */
+    int size() {
+        return paths.size();
+    }
+
+    /**
+     * Appends the changes of this entry to the given {@code entry} and marks
+     * it as done. The changes are appended by up to {@code parallelism} tasks
+     * running on the given {@code executor}. This method returns when all
+     * changes have been appended.
+     *
+     * @param entry the diff cache entry.
+     * @param executor the executor for the tasks.
+     * @param parallelism the maximum number of tasks.
+     * @return the return value of {@link DiffCache.Entry#done()}.
+     */
+    boolean applyTo(@NotNull DiffCache.Entry entry,
+                    @NotNull Executor executor,
+                    int parallelism) {
+        checkState(done, "Entry is not done yet");
+        int size = paths.size();
+        int tasks = Math.max(1, Math.min(parallelism, size / MIN_CHANGES_PER_TASK));
+        if (tasks == 1) {
+            append(entry, 0, size);
+        } else {
+            int chunkSize = (size + tasks - 1) / tasks;
+            List<CompletableFuture<Void>> futures = new ArrayList<>(tasks);
+            for (int start = 0; start < size; start += chunkSize) {
+                int from = start;
+                int to = Math.min(size, start + chunkSize);
+                futures.add(CompletableFuture.runAsync(() -> append(entry, from, to), executor));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        }
+        return entry.done();
+    }
+
+    private void append(DiffCache.Entry entry, int from, int to) {
+        for (int i = from; i < to; i++) {
+            entry.append(paths.get(i), changes.get(i));
+        }
+    }
+}
@@ -26,6 +26,7 @@ import static org.apache.jackrabbit.oak.plugins.document.ClusterNodeInfo.LEASE_E
 import static org.apache.jackrabbit.oak.plugins.document.ClusterNodeInfo.RECOVERY_TIME_KEY;
 import static org.apache.jackrabbit.oak.plugins.document.ClusterNodeInfo.REV_RECOVERY_BY;
 import static org.apache.jackrabbit.oak.plugins.document.ClusterNodeInfo.REV_RECOVERY_LOCK;
+import static org.apache.jackrabbit.oak.plugins.document.ClusterNodeInfo.REV_RECOVERY_PROGRESS;
 import static org.apache.jackrabbit.oak.plugins.document.ClusterNodeInfo.RUNTIME_ID_KEY;
 import static org.apache.jackrabbit.oak.plugins.document.ClusterNodeInfo.RecoverLockState.ACQUIRED;
 import static org.apache.jackrabbit.oak.plugins.document.ClusterNodeInfo.STATE;
@@ -101,6 +102,7 @@ class RecoveryLock {
             UpdateOp update = new UpdateOp(Integer.toString(clusterId), false);
             update.set(REV_RECOVERY_LOCK, ClusterNodeInfo.RecoverLockState.NONE.name());
             update.set(REV_RECOVERY_BY, null);
+            update.set(REV_RECOVERY_PROGRESS, null);
             if (success) {
                 update.set(STATE, null);
                 update.set(LEASE_END_KEY, null);
@@ -122,6 +124,24 @@ class RecoveryLock {
         }
     }
 
+    /**
+     * Records the progress of an ongoing recovery on the cluster node info
+     * entry, where it can be read by other cluster nodes waiting for the
+     * recovery to finish. The entry is only updated if the recovery lock is
+     * held by {@code recoveredBy}.
+     *
+     * @param recoveredBy id of cluster doing the recovery.
+     * @param processed the number of candidate documents processed so far.
+     * @return whether the progress was updated.
+     */
+    boolean updateProgress(int recoveredBy, long processed) {
+        UpdateOp update = new UpdateOp(Integer.toString(clusterId), false);
+        update.equals(REV_RECOVERY_LOCK, ACQUIRED.name());
+        update.equals(REV_RECOVERY_BY, (long) recoveredBy);
+        update.set(REV_RECOVERY_PROGRESS, processed);
+        return store.findAndUpdate(CLUSTER_NODES, update) != null;
+    }
+
     //-------------------------------< internal >-------------------------------
 
     /**
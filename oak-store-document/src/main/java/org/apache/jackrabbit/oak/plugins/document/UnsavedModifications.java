@@ -16,11 +16,15 @@
  */
 package org.apache.jackrabbit.oak.plugins.document;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.function.Supplier;
@@ -56,6 +60,12 @@ class UnsavedModifications {
      */
     static final int BACKGROUND_MULTI_UPDATE_LIMIT = 100;
 
+    /**
+     * The depth of the ancestor that defines the subtree of a path, when the
+     * pending changes are written in shards.
+     */
+    static final int SHARD_DEPTH = 2;
+
     private final ConcurrentMap<Path, Revision> map = MapFactory.getInstance().create();
 
     /**
@@ -136,6 +146,34 @@ class UnsavedModifications {
                                         @NotNull Supplier<Revision> sweepRevision,
                                         @NotNull Snapshot snapshot,
                                         @NotNull Lock lock) {
+        return persist(store, sweepRevision, snapshot, lock, Runnable::run, 1);
+    }
+
+    /**
+     * Same as {@link #persist(DocumentStore, Supplier, Snapshot, Lock)}, but
+     * writes the pending changes with up to {@code parallelism} tasks on the
+     * given {@code executor}. The changes are grouped by their ancestor at
+     * depth {@link #SHARD_DEPTH}, and each shard writes one or more of these
+     * subtrees. Within a subtree, deeper nodes are still written before their
+     * ancestors. Changes of nodes above that depth are written after all
+     * shards, and the root document is updated last.
+     *
+     * @param store the document store.
+     * @param sweepRevision supplier for the current sweep revision.
+     * @param snapshot callback when the snapshot of the pending changes is
+     *                 acquired.
+     * @param lock the lock to acquire to get a consistent snapshot of the
+     *             revisions to write back.
+     * @param executor the executor for the shard tasks.
+     * @param parallelism the maximum number of shards.
+     * @return stats about the write operation.
+     */
+    public BackgroundWriteStats persist(@NotNull DocumentStore store,
+                                        @NotNull Supplier<Revision> sweepRevision,
+                                        @NotNull Snapshot snapshot,
+                                        @NotNull Lock lock,
+                                        @NotNull Executor executor,
+                                        int parallelism) {
         BackgroundWriteStats stats = new BackgroundWriteStats();
         if (map.size() == 0) {
             return stats;
@@ -161,31 +199,17 @@ class UnsavedModifications {
             lock.unlock();
         }
         stats.num = pending.size();
-        List<UpdateOp> updates = Lists.newArrayList();
-        Map<Path, Revision> pathToRevision = Maps.newHashMap();
-        for (Iterable<Map.Entry<Path, Revision>> batch : Iterables.partition(
-                pending.entrySet(), BACKGROUND_MULTI_UPDATE_LIMIT)) {
-            for (Map.Entry<Path, Revision> entry : batch) {
-                Path p = entry.getKey();
-                Revision r = entry.getValue();
-                if (p.isRoot()) {
-                    // update root individually at the end
-                    continue;
-                }
-                updates.add(newUpdateOp(p, r));
-                pathToRevision.put(entry.getKey(), r);
-            }
-            if (!updates.isEmpty()) {
-                store.createOrUpdate(NODES, updates);
-                stats.calls++;
-                for (Map.Entry<Path, Revision> entry : pathToRevision.entrySet()) {
-                    map.remove(entry.getKey(), entry.getValue());
-                    LOG.debug("Updated _lastRev to {} on {}", entry.getValue(), entry.getKey());
-                }
-                // clean up for next batch
-                updates.clear();
-                pathToRevision.clear();
-            }
+        // update root individually at the end
+        List<Map.Entry<Path, Revision>> entries = Lists.newArrayList(
+                Iterables.filter(pending.entrySet(), e -> !e.getKey().isRoot()));
+        if (parallelism > 1 && entries.size() > BACKGROUND_MULTI_UPDATE_LIMIT) {
+            writeShards(store, entries, executor, parallelism, stats);
+        } else if (!entries.isEmpty()) {
+            long start = sw.elapsed(TimeUnit.MILLISECONDS);
+            stats.calls += writeBatches(store, entries);
+            stats.shards = 1;
+            stats.maxShardSize = entries.size();
+            stats.maxShardWrite = sw.elapsed(TimeUnit.MILLISECONDS) - start;
         }
         // finally update remaining root document
         Revision rootRev = pending.get(Path.ROOT);
@@ -224,6 +248,102 @@ class UnsavedModifications {
         return map.toString();
     }
 
+    /**
+     * Writes the given {@code _lastRev} updates, sorted with the deepest
+     * paths first, in shards of whole subtrees. Changes of nodes above
+     * {@link #SHARD_DEPTH} are written after all shards.
+     */
+    private void writeShards(DocumentStore store,
+                             List<Map.Entry<Path, Revision>> entries,
+                             Executor executor,
+                             int parallelism,
+                             BackgroundWriteStats stats) {
+        // group by subtree, keeping the order within each subtree
+        Map<Path, List<Map.Entry<Path, Revision>>> subtrees = Maps.newLinkedHashMap();
+        List<Map.Entry<Path, Revision>> ancestors = Lists.newArrayList();
+        for (Map.Entry<Path, Revision> entry : entries) {
+            Path p = entry.getKey();
+            if (p.getDepth() < SHARD_DEPTH) {
+                ancestors.add(entry);
+            } else {
+                Path subtree = p.getAncestor(p.getDepth() - SHARD_DEPTH);
+                subtrees.computeIfAbsent(subtree, k -> new ArrayList<>()).add(entry);
+            }
+        }
+        // assign the largest subtrees first, each to the smallest shard
+        List<List<Map.Entry<Path, Revision>>> groups = new ArrayList<>(subtrees.values());
+        groups.sort((a, b) -> Integer.compare(b.size(), a.size()));
+        int numShards = Math.min(parallelism, groups.size());
+        List<List<Map.Entry<Path, Revision>>> shards = new ArrayList<>(numShards);
+        for (int i = 0; i < numShards; i++) {
+            shards.add(new ArrayList<>());
+        }
+        for (List<Map.Entry<Path, Revision>> group : groups) {
+            List<Map.Entry<Path, Revision>> smallest = shards.get(0);
+            for (List<Map.Entry<Path, Revision>> shard : shards) {
+                if (shard.size() < smallest.size()) {
+                    smallest = shard;
+                }
+            }
+            smallest.addAll(group);
+        }
+        List<CompletableFuture<long[]>> futures = new ArrayList<>(numShards);
+        for (List<Map.Entry<Path, Revision>> shard : shards) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                Stopwatch sw = Stopwatch.createStarted();
+                int calls = writeBatches(store, shard);
+                return new long[]{calls, shard.size(), sw.elapsed(TimeUnit.MILLISECONDS)};
+            }, executor));
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            Throwable t = e.getCause();
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            } else if (t instanceof Error) {
+                throw (Error) t;
+            }
+            throw new DocumentStoreException(t);
+        }
+        stats.shards = futures.size();
+        for (CompletableFuture<long[]> f : futures) {
+            long[] result = f.join();
+            stats.calls += result[0];
+            stats.maxShardSize = Math.max(stats.maxShardSize, result[1]);
+            stats.maxShardWrite = Math.max(stats.maxShardWrite, result[2]);
+        }
+        // the ancestors of the subtrees, after their descendants
+        stats.calls += writeBatches(store, ancestors);
+    }
+
+    /**
+     * Writes the given {@code _lastRev} updates in batches of
+     * {@link #BACKGROUND_MULTI_UPDATE_LIMIT} and removes them from the map
+     * of unsaved modifications.
+     *
+     * @return the number of calls to the document store.
+     */
+    private int writeBatches(DocumentStore store,
+                             List<Map.Entry<Path, Revision>> entries) {
+        int calls = 0;
+        List<UpdateOp> updates = Lists.newArrayList();
+        for (List<Map.Entry<Path, Revision>> batch : Lists.partition(entries, BACKGROUND_MULTI_UPDATE_LIMIT)) {
+            for (Map.Entry<Path, Revision> entry : batch) {
+                updates.add(newUpdateOp(entry.getKey(), entry.getValue()));
+            }
+            store.createOrUpdate(NODES, updates);
+            calls++;
+            for (Map.Entry<Path, Revision> entry : batch) {
+                map.remove(entry.getKey(), entry.getValue());
+                LOG.debug("Updated _lastRev to {} on {}", entry.getValue(), entry.getKey());
+            }
+            // clean up for next batch
+            updates.clear();
+        }
+        return calls;
+    }
+
     private static UpdateOp newUpdateOp(Path path, Revision r) {
         UpdateOp updateOp = createUpdateOp(path, r, false);
         NodeDocument.setLastRev(updateOp, r);
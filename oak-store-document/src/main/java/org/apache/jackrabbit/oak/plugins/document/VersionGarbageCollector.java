@@ -33,8 +33,15 @@ import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
 import java.util.SortedMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
@@ -116,6 +123,12 @@ public class VersionGarbageCollector {
     private static final int DELETE_BATCH_SIZE = 450;
     private static final int UPDATE_BATCH_SIZE = 450;
     private static final int PROGRESS_BATCH_SIZE = 10000;
+
+    /**
+     * Maximum number of checked candidates waiting to be recorded when
+     * documents are collected in parallel.
+     */
+    private static final int COLLECT_QUEUE_SIZE = 1000;
     private static final int FULL_GC_BATCH_SIZE = 1000;
     private static final int FULL_GC_MISSING_DOCS_TYPE_CACHE_SIZE = 64;
     private static final String STATUS_IDLE = "IDLE";
@@ -988,44 +1001,34 @@ public class VersionGarbageCollector {
             int docsTraversed = 0;
             try (DeletedDocsGC gc = new DeletedDocsGC(headRevision, cancel, options, monitor)) {
                 if (phases.start(GCPhase.COLLECTING)) {
-                    Iterable<NodeDocument> itr = versionStore.getPossiblyDeletedDocs(rec.scope.fromMs, rec.scope.toMs);
-                    try {
-                        for (NodeDocument doc : itr) {
-                            // continue with GC?
-                            if (cancel.get()) {
-                                break;
-                            }
-                            // Check if node is actually deleted at current revision
-                            // As node is not modified since oldestRevTimeStamp then
-                            // this node has not be revived again in past maxRevisionAge
-                            // So deleting it is safe
-                            docsTraversed++;
-                            if (docsTraversed % PROGRESS_BATCH_SIZE == 0) {
-                                monitor.info("Iterated through {} documents so far. {} found to be deleted",
-                                        docsTraversed, gc.getNumDocuments());
-                            }
-                            if (phases.start(GCPhase.CHECKING)) {
-                                gc.possiblyDeleted(doc);
-                                phases.stop(GCPhase.CHECKING);
-                            }
-                            if (rec.maxCollect > 0 && gc.docIdsToDelete.getSize() > rec.maxCollect) {
-                                throw new LimitExceededException();
-                            }
-                            if (gc.hasLeafBatch()) {
-                                if (phases.start(GCPhase.DELETING)) {
-                                    gc.removeLeafDocuments(phases.stats);
-                                    phases.stop(GCPhase.DELETING);
+                    if (options.parallelism > 1) {
+                        collectDeletedDocumentsInParallel(phases, gc, rec);
+                    } else {
+                        Iterable<NodeDocument> itr = versionStore.getPossiblyDeletedDocs(rec.scope.fromMs, rec.scope.toMs);
+                        try {
+                            for (NodeDocument doc : itr) {
+                                // continue with GC?
+                                if (cancel.get()) {
+                                    break;
                                 }
-                            }
-                            if (gc.hasRescurrectUpdateBatch()) {
-                                if (phases.start(GCPhase.UPDATING)) {
-                                    gc.updateResurrectedDocuments(phases.stats);
-                                    phases.stop(GCPhase.UPDATING);
+                                // Check if node is actually deleted at current revision
+                                // As node is not modified since oldestRevTimeStamp then
+                                // this node has not be revived again in past maxRevisionAge
+                                // So deleting it is safe
+                                docsTraversed++;
+                                if (docsTraversed % PROGRESS_BATCH_SIZE == 0) {
+                                    monitor.info("Iterated through {} documents so far. {} found to be deleted",
+                                            docsTraversed, gc.getNumDocuments());
                                 }
+                                if (phases.start(GCPhase.CHECKING)) {
+                                    gc.possiblyDeleted(doc);
+                                    phases.stop(GCPhase.CHECKING);
+                                }
+                                removeBatches(phases, gc, rec);
                             }
+                        } finally {
+                            Utils.closeIfCloseable(itr);
                         }
-                    } finally {
-                        Utils.closeIfCloseable(itr);
                     }
                     phases.stop(GCPhase.COLLECTING);
                 }
@@ -1053,6 +1056,157 @@ public class VersionGarbageCollector {
                 }
             }
         }
+
+        /**
+         * Removes or updates a batch of collected documents when enough of
+         * them are available.
+         */
+        private void removeBatches(GCPhases phases,
+                                   DeletedDocsGC gc,
+                                   VersionGCRecommendations rec)
+                throws IOException, LimitExceededException {
+            if (rec.maxCollect > 0 && gc.docIdsToDelete.getSize() > rec.maxCollect) {
+                throw new LimitExceededException();
+            }
+            if (gc.hasLeafBatch()) {
+                if (phases.start(GCPhase.DELETING)) {
+                    gc.removeLeafDocuments(phases.stats);
+                    phases.stop(GCPhase.DELETING);
+                }
+            }
+            if (gc.hasRescurrectUpdateBatch()) {
+                if (phases.start(GCPhase.UPDATING)) {
+                    gc.updateResurrectedDocuments(phases.stats);
+                    phases.stop(GCPhase.UPDATING);
+                }
+            }
+        }
+
+        /**
+         * Splits the time interval of the recommendation into
+         * {@link VersionGCOptions#parallelism} parts and scans them
+         * concurrently for documents of deleted nodes. The worker threads
+         * only read and check candidates. All collected documents are recorded,
+         * removed and updated by the calling thread.
+         */
+        private void collectDeletedDocumentsInParallel(GCPhases phases,
+                                                       DeletedDocsGC gc,
+                                                       VersionGCRecommendations rec)
+                throws IOException, LimitExceededException {
+            List<TimeInterval> intervals = split(rec.scope, options.parallelism);
+            BlockingQueue<Candidate> queue = new ArrayBlockingQueue<>(COLLECT_QUEUE_SIZE);
+            AtomicBoolean stop = new AtomicBoolean();
+            AtomicInteger threadCount = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(intervals.size(), r -> {
+                Thread t = new Thread(r, "VersionGarbageCollector-collect-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            List<Future<?>> futures = new ArrayList<>();
+            for (TimeInterval interval : intervals) {
+                futures.add(executor.submit(() -> {
+                    scanInterval(interval, gc, queue, stop);
+                    return null;
+                }));
+            }
+            monitor.info("Collecting deleted documents with {} threads in {}", intervals.size(), intervals);
+            int docsTraversed = 0;
+            int running = futures.size();
+            try {
+                while (running > 0) {
+                    Candidate c = queue.take();
+                    if (c == Candidate.END) {
+                        running--;
+                        continue;
+                    }
+                    if (cancel.get()) {
+                        // drain the queue until all workers are done
+                        continue;
+                    }
+                    docsTraversed++;
+                    if (docsTraversed % PROGRESS_BATCH_SIZE == 0) {
+                        monitor.info("Iterated through {} documents so far. {} found to be deleted",
+                                docsTraversed, gc.getNumDocuments());
+                    }
+                    gc.record(c);
+                    removeBatches(phases, gc, rec);
+                }
+                for (Future<?> f : futures) {
+                    f.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while collecting deleted documents", e);
+            } catch (ExecutionException e) {
+                Throwable t = e.getCause();
+                if (t instanceof IOException) {
+                    throw (IOException) t;
+                } else if (t instanceof RuntimeException) {
+                    throw (RuntimeException) t;
+                }
+                throw new IOException(t);
+            } finally {
+                stop.set(true);
+                executor.shutdownNow();
+            }
+        }
+
+        private void scanInterval(TimeInterval interval,
+                                  DeletedDocsGC gc,
+                                  BlockingQueue<Candidate> queue,
+                                  AtomicBoolean stop) throws IOException {
+            Iterable<NodeDocument> itr = versionStore.getPossiblyDeletedDocs(interval.fromMs, interval.toMs);
+            try {
+                for (NodeDocument doc : itr) {
+                    if (cancel.get() || stop.get()) {
+                        break;
+                    }
+                    if (!offer(queue, gc.check(doc), stop)) {
+                        break;
+                    }
+                }
+            } finally {
+                Utils.closeIfCloseable(itr);
+                offer(queue, Candidate.END, stop);
+            }
+        }
+
+        private boolean offer(BlockingQueue<Candidate> queue,
+                              Candidate c,
+                              AtomicBoolean stop) {
+            try {
+                while (!stop.get()) {
+                    if (queue.offer(c, 100, MILLISECONDS)) {
+                        return true;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Splits the given interval into {@code n} parts with boundaries at full
+     * seconds, which is the granularity of {@link NodeDocument#MODIFIED_IN_SECS}.
+     */
+    static List<TimeInterval> split(TimeInterval interval, int n) {
+        long from = interval.fromMs;
+        long step = Math.max(SECONDS.toMillis(1), (interval.toMs - from) / n);
+        step -= step % SECONDS.toMillis(1);
+        List<TimeInterval> intervals = new ArrayList<>(n);
+        while (intervals.size() < n - 1 && from + step < interval.toMs) {
+            long to = from + step;
+            to -= to % SECONDS.toMillis(1);
+            if (to <= from) {
+                break;
+            }
+            intervals.add(new TimeInterval(from, to));
+            from = to;
+        }
+        intervals.add(new TimeInterval(from, interval.toMs));
+        return intervals;
     }
 
     private class FullGC implements Closeable {
@@ -2106,7 +2260,7 @@ public class VersionGarbageCollector {
         }
     }
     private void delayOnModifications(final long durationMs, final AtomicBoolean cancel) {
-        long delayMs = round(durationMs * options.delayFactor);
+        long delayMs = Math.max(round(durationMs * options.delayFactor), ds.throttler().throttlingTime());
         if (!cancel.get() && delayMs > 0) {
             try {
                 Clock clock = nodeStore.getClock();
@@ -2203,6 +2357,19 @@ public class VersionGarbageCollector {
          */
         boolean possiblyDeleted(NodeDocument doc)
                 throws IOException {
+            return record(check(doc));
+        }
+
+        /**
+         * Checks if the node of the given document still exists at the head
+         * revision passed to the constructor of this GC. This method does not
+         * modify the state of this GC and can be called concurrently. The
+         * result must be passed to {@link #record(Candidate)}.
+         *
+         * @param doc the candidate document.
+         * @return the result of the check.
+         */
+        Candidate check(NodeDocument doc) {
             gcStats.documentRead();
             // construct an id that also contains
             // the _modified time of the document
@@ -2212,20 +2379,38 @@ public class VersionGarbageCollector {
                 Utils.getDepthFromId(id);
             } catch (IllegalArgumentException e) {
                 monitor.warn("Invalid GC id {} for document {}", id, doc);
-                return false;
+                return Candidate.INVALID;
             }
             if (doc.getNodeAtRevision(nodeStore, headRevision, null) == null) {
                 // Collect id of all previous docs also
-                Iterator<String> previousDocs = previousDocIdsFor(doc);
-                if (!doc.hasChildren() && !previousDocs.hasNext()) {
-                    addLeafDocument(id);
+                List<String> previousDocs = Lists.newArrayList(previousDocIdsFor(doc));
+                boolean leaf = !doc.hasChildren() && previousDocs.isEmpty();
+                return new Candidate(id, doc.getId(), true, leaf, previousDocs);
+            } else {
+                return new Candidate(id, doc.getId(), false, false, Collections.emptyList());
+            }
+        }
+
+        /**
+         * Records the result of {@link #check(NodeDocument)}.
+         *
+         * @param c the result of the check.
+         * @return true iff document is scheduled for deletion
+         */
+        boolean record(Candidate c) throws IOException {
+            if (c == Candidate.INVALID) {
+                return false;
+            }
+            if (c.deleted) {
+                if (c.leaf) {
+                    addLeafDocument(c.id);
                 } else {
-                    addDocument(id);
-                    addPreviousDocuments(previousDocs, doc.getId());
+                    addDocument(c.id);
+                    addPreviousDocuments(c.previousDocIds.iterator(), c.mainDocId);
                 }
                 return true;
             } else {
-                addNonDeletedDocument(id);
+                addNonDeletedDocument(c.id);
             }
             return false;
         }
@@ -2531,6 +2716,31 @@ public class VersionGarbageCollector {
         }
     }
 
+    /**
+     * Result of the check whether a document belongs to a deleted node.
+     */
+    private static final class Candidate {
+
+        static final Candidate INVALID = new Candidate(null, null, false, false, Collections.emptyList());
+
+        static final Candidate END = new Candidate(null, null, false, false, Collections.emptyList());
+
+        final String id;
+        final String mainDocId;
+        final boolean deleted;
+        final boolean leaf;
+        final List<String> previousDocIds;
+
+        Candidate(String id, String mainDocId, boolean deleted,
+                  boolean leaf, List<String> previousDocIds) {
+            this.id = id;
+            this.mainDocId = mainDocId;
+            this.deleted = deleted;
+            this.leaf = leaf;
+            this.previousDocIds = previousDocIds;
+        }
+    }
+
     @NotNull
     private StringSort newStringSort(VersionGCOptions options) {
         return new StringSort(options.overflowToDiskThreshold, NodeDocumentIdComparator.INSTANCE);
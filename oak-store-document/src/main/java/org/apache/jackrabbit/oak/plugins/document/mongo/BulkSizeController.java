@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.mongo;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.jackrabbit.oak.plugins.document.UpdateOp;
+import org.apache.jackrabbit.oak.plugins.document.UpdateOp.Key;
+import org.apache.jackrabbit.oak.plugins.document.UpdateOp.Operation;
+
+/**
+ * Determines the number of {@link UpdateOp}s sent to MongoDB in one bulk
+ * write. With the adaptive mode enabled, the size is adjusted after each bulk
+ * write based on the observed latency, the estimated size of the documents
+ * and the number of conflicts:
+ * <ul>
+ *     <li>The size grows by a quarter when a full bulk completes in less
+ *     than half of the target latency.</li>
+ *     <li>The size shrinks in proportion when a bulk write takes longer than
+ *     the target latency.</li>
+ *     <li>The size is halved when more than a tenth of the updates in a bulk
+ *     fail with a conflict.</li>
+ *     <li>The size never exceeds the number of updates that fit into the
+ *     maximum number of bytes for a bulk write.</li>
+ * </ul>
+ * Without the adaptive mode the size is fixed and only the statistics are
+ * collected.
+ */
+final class BulkSizeController {
+
+    /**
+     * Bulks with up to this number of updates are not worth sending, because
+     * a bulk update requires two calls to MongoDB.
+     */
+    static final int MIN_SIZE = 3;
+
+    private static final double CONFLICT_RATE_THRESHOLD = 0.1;
+
+    private final boolean adaptive;
+
+    private final int maxSize;
+
+    private final long targetLatencyNanos;
+
+    private final long maxBytes;
+
+    private volatile int size;
+
+    private final AtomicLong bulkCount = new AtomicLong();
+
+    private final AtomicLong bulkTimeNanos = new AtomicLong();
+
+    private final AtomicLong conflictCount = new AtomicLong();
+
+    /**
+     * @param initialSize the initial number of updates per bulk, which is
+     *          also the fixed size if {@code adaptive} is {@code false}.
+     * @param adaptive whether the size is adjusted.
+     * @param maxSize the maximum number of updates per bulk.
+     * @param targetLatencyMillis the target latency of a bulk write.
+     * @param maxBytes the maximum estimated size in bytes of the updates in
+     *          one bulk.
+     */
+    BulkSizeController(int initialSize,
+                       boolean adaptive,
+                       int maxSize,
+                       long targetLatencyMillis,
+                       long maxBytes) {
+        this.adaptive = adaptive;
+        this.maxSize = Math.max(MIN_SIZE, maxSize);
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMillis);
+        this.maxBytes = maxBytes;
+        this.size = adaptive ? clamp(initialSize) : initialSize;
+    }
+
+    /**
+     * @return the number of updates to put into the next bulk.
+     */
+    int getSize() {
+        return size;
+    }
+
+    /**
+     * Records the result of a bulk write and adjusts the size for the next
+     * bulk when the adaptive mode is enabled.
+     *
+     * @param numUpdates the number of updates in the bulk.
+     * @param bytes the estimated size of the updates in bytes.
+     * @param conflicts the number of updates that failed with a conflict.
+     * @param durationNanos the duration of the bulk write.
+     */
+    void bulkDone(int numUpdates, long bytes, int conflicts, long durationNanos) {
+        bulkCount.incrementAndGet();
+        bulkTimeNanos.addAndGet(durationNanos);
+        conflictCount.addAndGet(conflicts);
+        if (!adaptive || numUpdates == 0) {
+            return;
+        }
+        synchronized (this) {
+            int s = size;
+            if (conflicts > numUpdates * CONFLICT_RATE_THRESHOLD) {
+                s = s / 2;
+            } else if (durationNanos > targetLatencyNanos) {
+                s = (int) (s * (double) targetLatencyNanos / durationNanos);
+            } else if (durationNanos < targetLatencyNanos / 2 && numUpdates >= s) {
+                s = s + Math.max(1, s / 4);
+            }
+            long bytesPerUpdate = Math.max(1, bytes / numUpdates);
+            s = (int) Math.min(s, maxBytes / bytesPerUpdate);
+            size = clamp(s);
+        }
+    }
+
+    /**
+     * @return the number of bulk writes recorded so far.
+     */
+    long getBulkCount() {
+        return bulkCount.get();
+    }
+
+    /**
+     * @return the accumulated duration of the bulk writes recorded so far.
+     */
+    long getBulkTime(TimeUnit unit) {
+        return unit.convert(bulkTimeNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the number of updates in bulk writes that failed with a
+     *          conflict.
+     */
+    long getConflictCount() {
+        return conflictCount.get();
+    }
+
+    /**
+     * Estimates the size in bytes of the given update when sent to MongoDB.
+     *
+     * @param op the update.
+     * @return the estimated size.
+     */
+    static long estimateSize(UpdateOp op) {
+        long bytes = op.getId().length();
+        for (Map.Entry<Key, Operation> e : op.getChanges().entrySet()) {
+            bytes += e.getKey().toString().length();
+            Object value = e.getValue().value;
+            if (value instanceof String) {
+                bytes += ((String) value).length();
+            } else {
+                bytes += 8;
+            }
+        }
+        return bytes;
+    }
+
+    private int clamp(int s) {
+        return Math.max(MIN_SIZE, Math.min(maxSize, s));
+    }
+}
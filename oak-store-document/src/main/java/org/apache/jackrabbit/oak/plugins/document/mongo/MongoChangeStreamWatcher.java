@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.mongo;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import com.mongodb.client.model.changestream.UpdateDescription;
+
+import org.apache.jackrabbit.oak.plugins.document.Document;
+import org.apache.jackrabbit.oak.plugins.document.Revision;
+import org.apache.jackrabbit.oak.plugins.document.util.Utils;
+import org.bson.conversions.Bson;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static java.util.Arrays.asList;
+
+/**
+ * Watches the root document in the nodes collection and inserts into the
+ * journal collection with MongoDB change streams and calls a listener for
+ * each change made by another cluster node: an update of the {@code _lastRev}
+ * of another cluster node on the root document, or a journal entry of another
+ * cluster node. Each collection is watched by a separate daemon thread.
+ * <p>
+ * Change streams are only available on a replica set. When the MongoDB
+ * deployment does not support change streams, the watcher logs a warning and
+ * stops. Other failures are logged and the change stream is opened again
+ * after a delay. The listener is also called after the change stream was
+ * opened again, because changes may have been missed in the meantime.
+ */
+final class MongoChangeStreamWatcher implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MongoChangeStreamWatcher.class);
+
+    /**
+     * Error code when change streams are only supported on replica sets.
+     */
+    private static final int CHANGE_STREAM_NOT_SUPPORTED = 40573;
+
+    /**
+     * Error code of an unknown aggregation stage on MongoDB versions without
+     * change stream support.
+     */
+    private static final int UNRECOGNIZED_PIPELINE_STAGE = 40324;
+
+    /**
+     * The maximum time a thread waits for the next change before it checks
+     * whether the watcher was closed.
+     */
+    private static final long MAX_AWAIT_MILLIS = 500;
+
+    /**
+     * Delay before a change stream is opened again after a failure.
+     */
+    private static final long RETRY_DELAY_MILLIS = 5000;
+
+    /**
+     * The prefix of the updated field names of {@code _lastRev} entries.
+     */
+    private static final String LAST_REV_PREFIX = "_lastRev.";
+
+    private final int clusterId;
+
+    private final Runnable listener;
+
+    private final List<Thread> threads = new ArrayList<>();
+
+    private final AtomicLong changeCount = new AtomicLong();
+
+    private volatile boolean closed;
+
+    /**
+     * @param nodes the nodes collection.
+     * @param journal the journal collection.
+     * @param clusterId the cluster id of this cluster node. Its changes are
+     *          not reported.
+     * @param listener the listener to call on changes.
+     */
+    MongoChangeStreamWatcher(@NotNull MongoCollection<?> nodes,
+                             @NotNull MongoCollection<?> journal,
+                             int clusterId,
+                             @NotNull Runnable listener) {
+        this.clusterId = clusterId;
+        this.listener = listener;
+        String rootId = Utils.getIdFromPath("/");
+        // the _lastRev entries are only known by name,
+        // so they are checked when the change is received
+        List<Bson> rootUpdates = asList(
+                Aggregates.match(Filters.and(
+                        Filters.eq("documentKey." + Document.ID, rootId),
+                        Filters.in("operationType", "update", "replace"))),
+                Aggregates.project(Projections.exclude("fullDocument",
+                        "updateDescription.removedFields")));
+        List<Bson> journalInserts = asList(
+                Aggregates.match(Filters.and(
+                        Filters.eq("operationType", "insert"),
+                        Filters.not(Filters.regex("documentKey." + Document.ID,
+                                getJournalIdPattern(clusterId))))),
+                Aggregates.project(Projections.exclude("fullDocument")));
+        threads.add(newThread(nodes, rootUpdates));
+        threads.add(newThread(journal, journalInserts));
+    }
+
+    /**
+     * Returns the pattern of the ids of journal entries written by the given
+     * cluster node. The id starts with the cluster id, for branch commits
+     * prefixed with "b".
+     *
+     * @param clusterId the cluster id.
+     * @return the pattern.
+     */
+    static String getJournalIdPattern(int clusterId) {
+        return "^b?" + clusterId + "-";
+    }
+
+    /**
+     * Returns whether the update of the root document sets the
+     * {@code _lastRev} of another cluster node. A replacement of the root
+     * document (without update description) is always reported.
+     *
+     * @param update the update description of the change or {@code null}.
+     * @param clusterId the cluster id of this cluster node.
+     * @return whether another cluster node updated the {@code _lastRev}.
+     */
+    static boolean isExternalLastRevUpdate(@Nullable UpdateDescription update,
+                                           int clusterId) {
+        if (update == null || update.getUpdatedFields() == null) {
+            return true;
+        }
+        for (String field : update.getUpdatedFields().keySet()) {
+            if (field.startsWith(LAST_REV_PREFIX)) {
+                Revision r = Revision.fromString(field.substring(LAST_REV_PREFIX.length()));
+                if (r.getClusterId() != clusterId) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Starts watching the collections.
+     */
+    void start() {
+        threads.forEach(Thread::start);
+    }
+
+    /**
+     * @return the number of changes reported to the listener.
+     */
+    long getChangeCount() {
+        return changeCount.get();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (Thread t : threads) {
+            try {
+                t.join(MAX_AWAIT_MILLIS * 4);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private Thread newThread(MongoCollection<?> collection, List<Bson> pipeline) {
+        String name = collection.getNamespace().getCollectionName();
+        Thread t = new Thread(() -> watch(collection, pipeline),
+                "MongoDocumentStore change stream watcher (" + name + ")");
+        t.setDaemon(true);
+        return t;
+    }
+
+    private void watch(MongoCollection<?> collection, List<Bson> pipeline) {
+        String name = collection.getNamespace().getCollectionName();
+        boolean reopened = false;
+        while (!closed && !Thread.currentThread().isInterrupted()) {
+            try (MongoChangeStreamCursor<? extends ChangeStreamDocument<?>> cursor = collection.watch(pipeline)
+                    .maxAwaitTime(MAX_AWAIT_MILLIS, TimeUnit.MILLISECONDS).cursor()) {
+                LOG.debug("Watching changes in {}", name);
+                if (reopened) {
+                    changed();
+                }
+                while (!closed) {
+                    ChangeStreamDocument<?> change = cursor.tryNext();
+                    if (change != null && (change.getOperationType() != OperationType.UPDATE
+                            || isExternalLastRevUpdate(change.getUpdateDescription(), clusterId))) {
+                        changed();
+                    }
+                }
+            } catch (MongoCommandException e) {
+                if (e.getErrorCode() == CHANGE_STREAM_NOT_SUPPORTED
+                        || e.getErrorCode() == UNRECOGNIZED_PIPELINE_STAGE) {
+                    LOG.warn("Change streams are not supported by this MongoDB deployment. " +
+                            "External changes in {} are detected by polling only: {}", name, e.getMessage());
+                    return;
+                }
+                retryLater(name, e);
+            } catch (MongoException | IllegalStateException e) {
+                retryLater(name, e);
+            }
+            reopened = true;
+        }
+    }
+
+    private void changed() {
+        changeCount.incrementAndGet();
+        listener.run();
+    }
+
+    private void retryLater(String name, Exception e) {
+        if (closed) {
+            return;
+        }
+        LOG.warn("Watching changes in {} failed, retrying in {} ms: {}",
+                name, RETRY_DELAY_MILLIS, e.toString());
+        long end = System.currentTimeMillis() + RETRY_DELAY_MILLIS;
+        while (!closed && System.currentTimeMillis() < end) {
+            try {
+                Thread.sleep(Math.max(1, Math.min(MAX_AWAIT_MILLIS, end - System.currentTimeMillis())));
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
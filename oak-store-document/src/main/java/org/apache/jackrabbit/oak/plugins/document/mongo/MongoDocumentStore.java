@@ -33,6 +33,10 @@ import java.util.TreeMap;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
@@ -65,6 +69,7 @@ import org.apache.jackrabbit.oak.cache.CacheValue;
 import org.apache.jackrabbit.oak.plugins.document.Collection;
 import org.apache.jackrabbit.oak.plugins.document.Document;
 import org.apache.jackrabbit.oak.plugins.document.DocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.DocumentStoreChangeNotifier;
 import org.apache.jackrabbit.oak.plugins.document.DocumentStoreException;
 import org.apache.jackrabbit.oak.plugins.document.DocumentStoreStatsCollector;
 import org.apache.jackrabbit.oak.plugins.document.JournalEntry;
@@ -145,7 +150,7 @@ import static org.apache.jackrabbit.oak.plugins.document.util.Utils.isThrottling
 /**
  * A document store that uses MongoDB as the backend.
  */
-public class MongoDocumentStore implements DocumentStore {
+public class MongoDocumentStore implements DocumentStore, DocumentStoreChangeNotifier {
 
     private static final Logger LOG = LoggerFactory.getLogger(MongoDocumentStore.class);
     private static final PerfLogger PERFLOG = new PerfLogger(
@@ -217,6 +222,16 @@ public class MongoDocumentStore implements DocumentStore {
 
     private final AtomicLong mongoWriteExceptions = new AtomicLong();
 
+    /**
+     * Reads of documents in the nodes collection that are currently in
+     * progress. Concurrent finds for the same key that accept a cached
+     * document wait for the read in progress instead of reading the document
+     * again.
+     */
+    private final ConcurrentMap<String, InFlightRead> inFlightReads = new ConcurrentHashMap<>();
+
+    private final AtomicLong coalescedReads = new AtomicLong();
+
     /**
      * Duration in seconds under which queries would use index on _modified field
      * If set to -1 then modifiedTime index would not be used.
@@ -262,6 +277,46 @@ public class MongoDocumentStore implements DocumentStore {
     private int bulkRetries =
             Integer.getInteger("oak.mongo.bulkRetries", 0);
 
+    /**
+     * Whether the number of documents in one bulk update is adjusted based
+     * on the observed latency, document size and conflicts. When enabled,
+     * {@link #bulkSize} is the initial size.
+     * <p>
+     * Default is false.
+     */
+    private final boolean bulkSizeAdaptive =
+            Boolean.getBoolean("oak.mongo.bulkSizeAdaptive");
+
+    /**
+     * The maximum number of documents in one bulk update when the size is
+     * adjusted dynamically.
+     * <p>
+     * Default is 1000.
+     */
+    private final int bulkMaxSize =
+            Integer.getInteger("oak.mongo.bulkMaxSize", 1000);
+
+    /**
+     * The target latency in milliseconds of a bulk update when the size is
+     * adjusted dynamically.
+     * <p>
+     * Default is 100.
+     */
+    private final long bulkTargetLatencyMillis =
+            Long.getLong("oak.mongo.bulkTargetLatencyMillis", 100);
+
+    /**
+     * The maximum estimated size in bytes of the documents in one bulk update
+     * when the size is adjusted dynamically.
+     * <p>
+     * Default is 8 MB.
+     */
+    private final long bulkMaxBytes =
+            Long.getLong("oak.mongo.bulkMaxBytes", 8 * 1024 * 1024);
+
+    private final BulkSizeController bulkSizeController = new BulkSizeController(
+            bulkSize, bulkSizeAdaptive, bulkMaxSize, bulkTargetLatencyMillis, bulkMaxBytes);
+
     /**
      * How many times a query to MongoDB should be retried when it fails with a
      * MongoException.
@@ -283,6 +338,20 @@ public class MongoDocumentStore implements DocumentStore {
     private final int minPrefetch =
             Integer.getInteger("oak.mongo.minPrefetch", 5);
 
+    /**
+     * Whether changes to the root document and the journal are watched with
+     * MongoDB change streams. This requires a replica set.
+     * <p>
+     * Default is false.
+     */
+    private final boolean changeStreams =
+            Boolean.getBoolean("oak.mongo.changeStreams");
+
+    /**
+     * The change stream watcher while a change listener is set.
+     */
+    private MongoChangeStreamWatcher changeStreamWatcher;
+
     /**
      * Feature flag for use of MongoDB client sessions.
      */
@@ -597,6 +666,16 @@ public class MongoDocumentStore implements DocumentStore {
         }
         Throwable t;
         try {
+            if (maxCacheAge > 0 || preferCached) {
+                InFlightRead read = inFlightReads.get(key);
+                if (read != null && (preferCached
+                        || getTime() - read.startTime < maxCacheAge)) {
+                    doc = read.result.join();
+                    coalescedReads.incrementAndGet();
+                    stats.doneFindCached(collection, key);
+                    return doc == NodeDocument.NULL ? null : (T) doc;
+                }
+            }
             Lock lock = nodeLocks.acquire(key);
             try {
                 if (maxCacheAge > 0 || preferCached) {
@@ -614,16 +693,26 @@ public class MongoDocumentStore implements DocumentStore {
                         }
                     }
                 }
-                final NodeDocument d = (NodeDocument) findUncachedWithRetry(
-                        collection, key,
-                        getReadPreference(maxCacheAge));
-                invalidateCache(collection, key);
-                doc = nodesCache.get(key, new Callable<NodeDocument>() {
-                    @Override
-                    public NodeDocument call() throws Exception {
-                        return d == null ? NodeDocument.NULL : d;
-                    }
-                });
+                InFlightRead read = new InFlightRead(getTime());
+                inFlightReads.put(key, read);
+                try {
+                    final NodeDocument d = (NodeDocument) findUncachedWithRetry(
+                            collection, key,
+                            getReadPreference(maxCacheAge));
+                    invalidateCache(collection, key);
+                    doc = nodesCache.get(key, new Callable<NodeDocument>() {
+                        @Override
+                        public NodeDocument call() throws Exception {
+                            return d == null ? NodeDocument.NULL : d;
+                        }
+                    });
+                    read.result.complete(doc);
+                } catch (Throwable e) {
+                    read.result.completeExceptionally(e);
+                    throw e;
+                } finally {
+                    inFlightReads.remove(key, read);
+                }
             } finally {
                 lock.unlock();
             }
@@ -636,12 +725,43 @@ public class MongoDocumentStore implements DocumentStore {
             t = e.getCause();
         } catch (ExecutionException e) {
             t = e.getCause();
+        } catch (CompletionException e) {
+            t = e.getCause();
         } catch (RuntimeException e) {
             t = e;
         }
         throw handleException(t, collection, key);
     }
 
+    /**
+     * @return the number of finds that waited for a read of the same document
+     *          in progress instead of reading it again.
+     */
+    long getCoalescedReads() {
+        return coalescedReads.get();
+    }
+
+    /**
+     * A read of a document from the nodes collection in progress.
+     */
+    private static final class InFlightRead {
+
+        /**
+         * The time when the read started.
+         */
+        final long startTime;
+
+        /**
+         * The document as put into the cache, {@link NodeDocument#NULL} if it
+         * does not exist.
+         */
+        final CompletableFuture<NodeDocument> result = new CompletableFuture<>();
+
+        InFlightRead(long startTime) {
+            this.startTime = startTime;
+        }
+    }
+
     /**
      * Finds a document and performs a number of retries if the read fails with
      * an exception.
@@ -1248,7 +1368,7 @@ public class MongoDocumentStore implements DocumentStore {
                     // in bulk mode wouldn't result in any performance gain
                     break;
                 }
-                for (List<UpdateOp> partition : Lists.partition(new ArrayList<>(operationsToCover.values()), bulkSize)) {
+                for (List<UpdateOp> partition : Lists.partition(new ArrayList<>(operationsToCover.values()), bulkSizeController.getSize())) {
                     Map<UpdateOp, T> successfulUpdates = bulkModify(collection, partition, oldDocs);
                     results.putAll(successfulUpdates);
                     operationsToCover.values().removeAll(successfulUpdates.keySet());
@@ -1346,7 +1466,7 @@ public class MongoDocumentStore implements DocumentStore {
                     // in bulk mode wouldn't result in any performance gain
                     break;
                 }
-                for (List<UpdateOp> partition : Lists.partition(Lists.newArrayList(operationsToCover.values()), bulkSize)) {
+                for (List<UpdateOp> partition : Lists.partition(Lists.newArrayList(operationsToCover.values()), bulkSizeController.getSize())) {
                     Map<UpdateOp, T> successfulUpdates = bulkUpdate(collection, partition, oldDocs);
                     results.putAll(successfulUpdates);
                     operationsToCover.values().removeAll(successfulUpdates.keySet());
@@ -1608,8 +1728,10 @@ public class MongoDocumentStore implements DocumentStore {
         List<WriteModel<BasicDBObject>> writes = new ArrayList<>(updateOps.size());
         String[] bulkIds = new String[updateOps.size()];
         int i = 0;
+        long bytes = 0;
         for (UpdateOp updateOp : updateOps) {
             String id = updateOp.getId();
+            bytes += BulkSizeController.estimateSize(updateOp);
             Bson query = createQueryForUpdate(id, updateOp.getConditions());
             // fail on insert when isNew == false OR isUpsert == false
             boolean failInsert = !(isUpsert && updateOp.isNew());
@@ -1628,6 +1750,7 @@ public class MongoDocumentStore implements DocumentStore {
         Set<String> failedUpdates = new HashSet<String>();
         Set<String> upserts = new HashSet<String>();
         BulkWriteOptions options = new BulkWriteOptions().ordered(false);
+        final Stopwatch watch = startWatch();
         try {
             bulkResult = execute(session -> {
                 if (session != null) {
@@ -1641,6 +1764,9 @@ public class MongoDocumentStore implements DocumentStore {
             for (BulkWriteError err : e.getWriteErrors()) {
                 failedUpdates.add(bulkIds[err.getIndex()]);
             }
+        } finally {
+            bulkSizeController.bulkDone(writes.size(), bytes,
+                    failedUpdates.size(), watch.elapsed(NANOSECONDS));
         }
         for (BulkWriteUpsert upsert : bulkResult.getUpserts()) {
             upserts.add(bulkIds[upsert.getIndex()]);
@@ -2026,8 +2152,33 @@ public class MongoDocumentStore implements DocumentStore {
         return Filters.eq(Document.ID, key);
     }
 
+    /**
+     * Sets the listener for changes to the root document and the journal
+     * made by other cluster nodes. Changes are only reported when the system
+     * property
+     * {@code oak.mongo.changeStreams} is set to {@code true}, otherwise the
+     * listener is ignored.
+     */
+    @Override
+    public synchronized void setChangeListener(int clusterId, @Nullable Runnable listener) {
+        closeChangeStreamWatcher();
+        if (listener != null && changeStreams) {
+            changeStreamWatcher = new MongoChangeStreamWatcher(nodes, journal, clusterId, listener);
+            changeStreamWatcher.start();
+            LOG.info("Watching changes to the root document and journal with change streams");
+        }
+    }
+
+    private synchronized void closeChangeStreamWatcher() {
+        if (changeStreamWatcher != null) {
+            changeStreamWatcher.close();
+            changeStreamWatcher = null;
+        }
+    }
+
     @Override
     public void dispose() {
+        closeChangeStreamWatcher();
         connection.close();
         if (clusterNodesConnection != connection) {
             clusterNodesConnection.close();
@@ -2320,6 +2471,10 @@ public class MongoDocumentStore implements DocumentStore {
         return mongoWriteExceptions.get();
     }
 
+    BulkSizeController getBulkSizeController() {
+        return bulkSizeController;
+    }
+
     private <T extends Document> DocumentStoreException handleException(Throwable ex,
                                                                         Collection<T> collection,
                                                                         String id) {
@@ -30,6 +30,7 @@ import org.apache.jackrabbit.oak.stats.StatisticsProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.apache.jackrabbit.oak.stats.StatsOptions.METRICS_ONLY;
 
 /**
@@ -83,6 +84,13 @@ public final class MongoDocumentStoreMetrics implements Runnable {
             updateCounter(getDBCounter("fsTotalSize"), dbStats.fsTotalSize);
 
             updateCounter(getDocumentStoreCounter("mongoWriteExceptions"), store.getAmountOfMongoWriteExceptions());
+
+            BulkSizeController bulk = store.getBulkSizeController();
+            updateCounter(getDocumentStoreCounter("bulkSize"), bulk.getSize());
+            updateCounter(getDocumentStoreCounter("bulkCount"), bulk.getBulkCount());
+            updateCounter(getDocumentStoreCounter("bulkTime"), bulk.getBulkTime(MILLISECONDS));
+            updateCounter(getDocumentStoreCounter("bulkConflicts"), bulk.getConflictCount());
+            updateCounter(getDocumentStoreCounter("coalescedReads"), store.getCoalescedReads());
         } catch (MongoException e) {
             LOG.warn("Updating counters failed: {}", e.toString());
         }
@@ -0,0 +1,480 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.persistentCache;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.WriteBuffer;
+import org.h2.mvstore.type.DataType;
+import org.h2.mvstore.type.ObjectDataType;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An append-only cache file, used as an alternative to the MVStore for the
+ * persistent cache (option {@code store=log}).
+ * <p>
+ * Each record is appended to the end of the file, and an in-memory hash index
+ * maps the serialized key to the position of the latest value. Entries are
+ * never rewritten or compacted: stale entries are dropped together with the
+ * whole file when the {@link PersistentCache} switches generations. Reads do
+ * not acquire any lock, they use positional reads on the file channel. Writes
+ * append the record and update the index under one lock, so that the index
+ * only points to completely written records, in the order they were written.
+ * <p>
+ * Record layout: {@code [int length][int checksum][byte type][int mapId][payload]},
+ * where the length covers everything after the length field itself, and the
+ * checksum is the CRC32 of everything after the checksum field. An incomplete
+ * or corrupt record at the end of the file (for example after a crash) is
+ * ignored; when the file is opened for writing, it is truncated to the end of
+ * the last valid record, so that the next write can not leave part of the
+ * broken record behind. An empty file (for example one that was created, but
+ * not yet written to) is treated as a file without records.
+ */
+class CacheLogFile implements Closeable {
+
+    static final Logger LOG = LoggerFactory.getLogger(CacheLogFile.class);
+
+    private static final int MAGIC = 0x4F414B4C;
+    private static final int VERSION = 2;
+    private static final int HEADER_LENGTH = 8;
+
+    /**
+     * The length of the checksum, type and map id fields of a record.
+     */
+    private static final int RECORD_HEADER_LENGTH = 4 + 1 + 4;
+
+    private static final byte TYPE_MAP = 0;
+    private static final byte TYPE_PUT = 1;
+    private static final byte TYPE_REMOVE = 2;
+    private static final byte TYPE_CLEAR = 3;
+
+    private final File file;
+    private final boolean readOnly;
+    private final FileChannel channel;
+
+    private final Map<String, Integer> mapIds = new ConcurrentHashMap<>();
+    private final Map<Integer, Map<ByteBuffer, ValuePosition>> indexes = new ConcurrentHashMap<>();
+
+    private volatile long size;
+
+    CacheLogFile(File file, boolean readOnly) throws IOException {
+        this.file = file;
+        this.readOnly = readOnly;
+        if (readOnly) {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        } else {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        }
+        try {
+            if (channel.size() == 0 && readOnly) {
+                size = 0;
+            } else if (channel.size() == 0) {
+                writeHeader();
+                size = HEADER_LENGTH;
+            } else {
+                size = scan();
+                if (!readOnly && size < channel.size()) {
+                    channel.truncate(size);
+                    channel.force(false);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Open a map backed by this file.
+     *
+     * @param name the map name
+     * @param builder the builder providing the key and value types, or null
+     *            to use the default object data type
+     * @return the map
+     */
+    @SuppressWarnings("unchecked")
+    <K, V> Map<K, V> openMap(String name, MVMap.Builder<K, V> builder) throws IOException {
+        DataType<K> keyType = builder == null ? null : builder.getKeyType();
+        DataType<V> valueType = builder == null ? null : builder.getValueType();
+        if (keyType == null) {
+            keyType = (DataType<K>) new ObjectDataType();
+        }
+        if (valueType == null) {
+            valueType = (DataType<V>) new ObjectDataType();
+        }
+        return new LogMap<>(getMapId(name), keyType, valueType);
+    }
+
+    /**
+     * Get the number of bytes used by this file.
+     *
+     * @return the file size
+     */
+    long getFileSize() {
+        return size;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int getMapId(String name) throws IOException {
+        Integer id = mapIds.get(name);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = mapIds.get(name);
+            if (id == null) {
+                if (readOnly) {
+                    // not found in a read-only file: use an empty map
+                    return -1;
+                }
+                id = mapIds.size();
+                byte[] n = name.getBytes(StandardCharsets.UTF_8);
+                ByteBuffer buff = ByteBuffer.allocate(4 + RECORD_HEADER_LENGTH + n.length);
+                buff.putInt(RECORD_HEADER_LENGTH + n.length).putInt(0).put(TYPE_MAP).putInt(id).put(n);
+                ((Buffer) buff).flip();
+                append(setChecksum(buff));
+                mapIds.put(name, id);
+            }
+            return id;
+        }
+    }
+
+    private Map<ByteBuffer, ValuePosition> getIndex(int mapId) {
+        return indexes.computeIfAbsent(mapId, k -> new ConcurrentHashMap<>());
+    }
+
+    /**
+     * Read all records and build the index.
+     *
+     * @return the position after the last valid record
+     */
+    private long scan() throws IOException {
+        long fileSize = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        readFully(header, 0);
+        if (header.getInt() != MAGIC) {
+            throw new IllegalStateException("Not a cache log file: " + file);
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            if (readOnly) {
+                throw new IllegalStateException("Unsupported version " + version +
+                        " of cache log file " + file);
+            }
+            // the entries are only cached: start over with an empty file
+            LOG.info("Discarding the entries of {} written with version {}", file, version);
+            writeHeader();
+            return HEADER_LENGTH;
+        }
+        long pos = HEADER_LENGTH;
+        ByteBuffer lengthBuff = ByteBuffer.allocate(4);
+        while (pos + 4 <= fileSize) {
+            ((Buffer) lengthBuff).clear();
+            readFully(lengthBuff, pos);
+            int len = lengthBuff.getInt();
+            if (len < RECORD_HEADER_LENGTH || pos + 4 + len > fileSize) {
+                LOG.info("Ignoring incomplete record at position {} in {}", pos, file);
+                break;
+            }
+            ByteBuffer record = ByteBuffer.allocate(len);
+            readFully(record, pos + 4);
+            int checksum = record.getInt();
+            if (checksum != checksum(record)) {
+                LOG.info("Ignoring corrupt record at position {} in {}", pos, file);
+                break;
+            }
+            byte type = record.get();
+            int mapId = record.getInt();
+            switch (type) {
+            case TYPE_MAP:
+                String name = new String(record.array(), record.position(),
+                        record.remaining(), StandardCharsets.UTF_8);
+                mapIds.put(name, mapId);
+                break;
+            case TYPE_PUT: {
+                int keyLength = record.getInt();
+                byte[] key = new byte[keyLength];
+                record.get(key);
+                int valueOffset = 4 + RECORD_HEADER_LENGTH + 4 + keyLength;
+                getIndex(mapId).put(ByteBuffer.wrap(key), new ValuePosition(pos + valueOffset, len + 4 - valueOffset));
+                break;
+            }
+            case TYPE_REMOVE:
+                getIndex(mapId).remove(record.slice());
+                break;
+            case TYPE_CLEAR:
+                getIndex(mapId).clear();
+                break;
+            default:
+                throw new IllegalStateException("Unknown record type " + type +
+                        " at position " + pos + " in " + file);
+            }
+            pos += 4 + len;
+        }
+        return pos;
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(MAGIC).putInt(VERSION);
+        ((Buffer) header).flip();
+        writeFully(header, 0);
+    }
+
+    /**
+     * Calculate the checksum of the remaining bytes of the buffer, without
+     * changing its position.
+     */
+    private static int checksum(ByteBuffer buff) {
+        CRC32 crc = new CRC32();
+        crc.update(buff.duplicate());
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Set the checksum field of a record that is ready to be appended.
+     *
+     * @param record the record, including the length field
+     * @return the record
+     */
+    private static ByteBuffer setChecksum(ByteBuffer record) {
+        ByteBuffer data = record.duplicate();
+        ((Buffer) data).position(4 + 4);
+        record.putInt(4, checksum(data));
+        return record;
+    }
+
+    private synchronized long append(ByteBuffer buff) throws IOException {
+        if (readOnly) {
+            throw new IllegalStateException("Read-only cache file: " + file);
+        }
+        long pos = size;
+        writeFully(buff, pos);
+        size = pos + ((Buffer) buff).limit();
+        return pos;
+    }
+
+    private void writeFully(ByteBuffer buff, long pos) throws IOException {
+        while (buff.hasRemaining()) {
+            pos += channel.write(buff, pos);
+        }
+    }
+
+    private void readFully(ByteBuffer buff, long pos) throws IOException {
+        while (buff.hasRemaining()) {
+            int len = channel.read(buff, pos);
+            if (len < 0) {
+                throw new EOFException("Unexpected end of file " + file + " at position " + pos);
+            }
+            pos += len;
+        }
+        ((Buffer) buff).flip();
+    }
+
+    private static final class ValuePosition {
+
+        final long position;
+        final int length;
+
+        ValuePosition(long position, int length) {
+            this.position = position;
+            this.length = length;
+        }
+    }
+
+    /**
+     * A map view on the records of one map in the file. Only the operations
+     * needed by the {@link CacheMap} are supported.
+     */
+    private final class LogMap<K, V> implements Map<K, V> {
+
+        private final int mapId;
+        private final DataType<K> keyType;
+        private final DataType<V> valueType;
+        private final Map<ByteBuffer, ValuePosition> index;
+        private final ThreadLocal<WriteBuffer> writeBuffer =
+                ThreadLocal.withInitial(() -> new WriteBuffer(1024));
+
+        LogMap(int mapId, DataType<K> keyType, DataType<V> valueType) {
+            this.mapId = mapId;
+            this.keyType = keyType;
+            this.valueType = valueType;
+            this.index = mapId < 0 ? new ConcurrentHashMap<>() : getIndex(mapId);
+        }
+
+        @SuppressWarnings("unchecked")
+        private ByteBuffer serializeKey(Object key) {
+            WriteBuffer buff = writeBuffer.get();
+            buff.clear();
+            keyType.write(buff, (K) key);
+            ByteBuffer b = buff.getBuffer();
+            byte[] data = new byte[b.position()];
+            System.arraycopy(b.array(), b.arrayOffset(), data, 0, data.length);
+            return ByteBuffer.wrap(data);
+        }
+
+        @Override
+        public V get(Object key) {
+            ValuePosition e = index.get(serializeKey(key));
+            if (e == null) {
+                return null;
+            }
+            ByteBuffer buff = ByteBuffer.allocate(e.length);
+            try {
+                readFully(buff, e.position);
+            } catch (IOException ex) {
+                throw new IllegalStateException("Could not read from " + file, ex);
+            }
+            return valueType.read(buff);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return index.containsKey(serializeKey(key));
+        }
+
+        @Override
+        public V put(K key, V value) {
+            ByteBuffer k = serializeKey(key);
+            WriteBuffer buff = writeBuffer.get();
+            buff.clear();
+            // space for the length and the checksum
+            buff.putInt(0);
+            buff.putInt(0);
+            buff.put(TYPE_PUT);
+            buff.putInt(mapId);
+            buff.putInt(k.remaining());
+            buff.put(k.duplicate());
+            int valueOffset = buff.position();
+            valueType.write(buff, value);
+            ByteBuffer record = buff.getBuffer();
+            int length = record.position();
+            record.putInt(0, length - 4);
+            ((Buffer) record).flip();
+            setChecksum(record);
+            try {
+                synchronized (CacheLogFile.this) {
+                    long pos = append(record);
+                    index.put(k, new ValuePosition(pos + valueOffset, length - valueOffset));
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not write to " + file, e);
+            }
+            // the old value is not read back, as this is not needed by the cache
+            return null;
+        }
+
+        @Override
+        public V remove(Object key) {
+            ByteBuffer k = serializeKey(key);
+            ByteBuffer record = ByteBuffer.allocate(4 + RECORD_HEADER_LENGTH + k.remaining());
+            record.putInt(RECORD_HEADER_LENGTH + k.remaining()).putInt(0)
+                    .put(TYPE_REMOVE).putInt(mapId).put(k.duplicate());
+            ((Buffer) record).flip();
+            setChecksum(record);
+            try {
+                synchronized (CacheLogFile.this) {
+                    if (index.remove(k) != null) {
+                        append(record);
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not write to " + file, e);
+            }
+            return null;
+        }
+
+        @Override
+        public void clear() {
+            ByteBuffer record = ByteBuffer.allocate(4 + RECORD_HEADER_LENGTH);
+            record.putInt(RECORD_HEADER_LENGTH).putInt(0).put(TYPE_CLEAR).putInt(mapId);
+            ((Buffer) record).flip();
+            setChecksum(record);
+            try {
+                synchronized (CacheLogFile.this) {
+                    append(record);
+                    index.clear();
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not write to " + file, e);
+            }
+        }
+
+        @Override
+        public int size() {
+            return index.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return index.isEmpty();
+        }
+
+        @Override
+        public boolean containsValue(Object value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void putAll(@NotNull Map<? extends K, ? extends V> m) {
+            throw new UnsupportedOperationException();
+        }
+
+        @NotNull
+        @Override
+        public Set<K> keySet() {
+            throw new UnsupportedOperationException();
+        }
+
+        @NotNull
+        @Override
+        public Collection<V> values() {
+            throw new UnsupportedOperationException();
+        }
+
+        @NotNull
+        @Override
+        public Set<Map.Entry<K, V>> entrySet() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -56,6 +56,7 @@ public class PersistentCache implements Broadcaster.Listener {
 
     private static final String FILE_PREFIX = "cache-";
     private static final String FILE_SUFFIX = ".data";
+    private static final String LOG_FILE_SUFFIX = ".log";
     private static final AtomicInteger COUNTER = new AtomicInteger();
 
     private boolean cacheNodes = true;
@@ -80,6 +81,8 @@ public class PersistentCache implements Broadcaster.Listener {
     private int autoCompact = 0;
     private boolean appendOnly;
     private boolean manualCommit;
+    private boolean logStore;
+    private String fileSuffix = FILE_SUFFIX;
     private Broadcaster broadcaster;
     private ThreadLocal<WriteBuffer> writeBuffer = new ThreadLocal<WriteBuffer>();
     private final byte[] broadcastId;
@@ -141,6 +144,14 @@ public class PersistentCache implements Broadcaster.Listener {
                 manualCommit = true;
             } else if (p.startsWith("broadcast=")) {
                 broadcast = p.split("=")[1];               
+            } else if (p.startsWith("store=")) {
+                String store = p.split("=")[1];
+                if (store.equals("log")) {
+                    logStore = true;
+                    fileSuffix = LOG_FILE_SUFFIX;
+                } else if (!store.equals("mvstore")) {
+                    throw new IllegalArgumentException("Unknown store type " + store);
+                }
             } else if (p.equals("-async")) {
                 asyncCache = false;
             } else if (p.equals("+asyncDiff")) {
@@ -166,8 +177,8 @@ public class PersistentCache implements Broadcaster.Listener {
         if (list != null) {
             for (File f : list) {
                 String fn = f.getName();
-                if (fn.startsWith(FILE_PREFIX) && fn.endsWith(FILE_SUFFIX)) {
-                    String g = fn.substring(FILE_PREFIX.length(), fn.indexOf(FILE_SUFFIX));
+                if (fn.startsWith(FILE_PREFIX) && fn.endsWith(fileSuffix)) {
+                    String g = fn.substring(FILE_PREFIX.length(), fn.indexOf(fileSuffix));
                     try {
                         int gen = Integer.parseInt(g);
                         if (gen >= 0) {
@@ -244,10 +255,13 @@ public class PersistentCache implements Broadcaster.Listener {
         if (directory.length() == 0) {
             return null;
         }
-        return directory + "/" + FILE_PREFIX + generation + FILE_SUFFIX;
+        return directory + "/" + FILE_PREFIX + generation + fileSuffix;
     }
     
     private MapFactory createMapFactory(final int generation, final boolean readOnly) {
+        if (logStore) {
+            return createLogMapFactory(generation, readOnly);
+        }
         MapFactory f = new MapFactory() {
             
             final String fileName = getFileName(generation);
@@ -365,6 +379,76 @@ public class PersistentCache implements Broadcaster.Listener {
         f.openStore();
         return f;
     }
+
+    private MapFactory createLogMapFactory(final int generation, final boolean readOnly) {
+        MapFactory f = new MapFactory() {
+
+            final String fileName = getFileName(generation);
+            volatile CacheLogFile store;
+            File tempFile;
+
+            @Override
+            void openStore() {
+                if (store != null) {
+                    return;
+                }
+                try {
+                    File file;
+                    if (fileName != null) {
+                        file = new File(fileName);
+                    } else {
+                        // no directory configured: use a temporary file,
+                        // similar to an in-memory MVStore
+                        tempFile = File.createTempFile(FILE_PREFIX, LOG_FILE_SUFFIX);
+                        tempFile.deleteOnExit();
+                        file = tempFile;
+                    }
+                    store = new CacheLogFile(file, readOnly);
+                } catch (Exception e) {
+                    exceptionCount++;
+                    LOG.warn("Could not open the store " + fileName, e);
+                }
+            }
+
+            @Override
+            synchronized void closeStore() {
+                if (store == null) {
+                    return;
+                }
+                try {
+                    store.close();
+                } catch (Exception e) {
+                    exceptionCount++;
+                    LOG.debug("Could not close the store", e);
+                    LOG.warn("Could not close the store: " + e);
+                }
+                if (tempFile != null) {
+                    tempFile.delete();
+                    tempFile = null;
+                }
+                store = null;
+            }
+
+            @Override
+            <K, V> Map<K, V> openMap(String name, Builder<K, V> builder) {
+                try {
+                    return store.openMap(name, builder);
+                } catch (Exception e) {
+                    exceptionCount++;
+                    LOG.warn("Could not open the map", e);
+                    return null;
+                }
+            }
+
+            @Override
+            long getFileSize() {
+                CacheLogFile s = store;
+                return s == null ? 0 : s.getFileSize();
+            }
+        };
+        f.openStore();
+        return f;
+    }
     
     public void close() {
         writeDispatcher.stop();
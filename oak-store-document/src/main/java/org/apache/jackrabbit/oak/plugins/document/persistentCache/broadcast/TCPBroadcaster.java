@@ -17,6 +17,7 @@
 package org.apache.jackrabbit.oak.plugins.document.persistentCache.broadcast;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -28,9 +29,13 @@ import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.Charset;
 import java.security.MessageDigest;
+import java.util.ArrayDeque;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -40,18 +45,41 @@ import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * A broadcast mechanism that uses TCP. It is mainly used for testing.
+ * <p>
+ * With the option "batch &lt;millis&gt;", messages are not sent one by one,
+ * but collected for the given time window. Identical messages within a window
+ * are coalesced, and the batch is compressed and sent over one non-blocking
+ * {@link SocketChannel} per peer. If a peer cannot keep up, the oldest
+ * pending batches for that peer are dropped. All nodes need to use the same
+ * mode, because the batch format is not understood by older versions.
  */
 public class TCPBroadcaster implements Broadcaster {
 
     static final Logger LOG = LoggerFactory.getLogger(TCPBroadcaster.class);
     private static final int TIMEOUT = 100;
     private static final int MAX_BUFFER_SIZE = 64;
+
+    /**
+     * The maximum number of bytes of messages in a batch. Messages are
+     * dropped when a batch is full.
+     */
+    private static final int MAX_BATCH_BYTES = 1024 * 1024;
+
+    /**
+     * The maximum number of batches waiting to be written to a peer.
+     */
+    private static final int MAX_PENDING_BATCHES = 16;
     private static final AtomicInteger NEXT_ID = new AtomicInteger();
     private static final Charset UTF8 = Charset.forName("UTF-8");
 
@@ -61,6 +89,21 @@ public class TCPBroadcaster implements Broadcaster {
     private final ConcurrentHashMap<String, Client> clients = new ConcurrentHashMap<String, Client>();
     private final ArrayBlockingQueue<ByteBuffer> sendBuffer = new ArrayBlockingQueue<ByteBuffer>(MAX_BUFFER_SIZE * 2);
 
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+
+    /**
+     * The messages of the current batch (only used in batch mode).
+     */
+    private LinkedHashSet<ByteBuffer> batch = new LinkedHashSet<ByteBuffer>();
+    private int batchBytes;
+
+    /**
+     * The batch window in milliseconds, or 0 if batching is disabled.
+     */
+    private int batchMillis;
+
     private volatile DynamicBroadcastConfig broadcastConfig;
     private ServerSocket serverSocket;
     private Thread acceptThread;
@@ -100,6 +143,8 @@ public class TCPBroadcaster implements Broadcaster {
                     key = p.split(" ")[1];
                 } else if (p.startsWith("sendTo ")) {
                     sendTo = p.split(" ");
+                } else if (p.startsWith("batch ")) {
+                    batchMillis = Integer.parseInt(p.split(" ")[1]);
                 }
             }                    
             sendTo[0] = null;
@@ -122,7 +167,7 @@ public class TCPBroadcaster implements Broadcaster {
                 for (String send : sendTo) {
                     if (send != null && !send.isEmpty()) {
                         try {
-                            Client c = new Client(send, port, ownKey);
+                            Client c = new Client(send, port, ownKey, batchMillis > 0, droppedCount);
                             clients.put(send + ":" + port, c);
                         } catch (IOException e) {
                             LOG.debug("Cannot connect to " + send + " " + port);
@@ -219,17 +264,28 @@ public class TCPBroadcaster implements Broadcaster {
                             }
                             while (!socket.isClosed()) {
                                 int len = in.readInt();
+                                if (len < 0) {
+                                    // a compressed batch of messages
+                                    // compressed data may be slightly larger than the messages
+                                    if (len < -2 * MAX_BATCH_BYTES) {
+                                        throw new IOException("Malformed batch length " + len);
+                                    }
+                                    byte[] data = new byte[-len];
+                                    in.readFully(data);
+                                    receiveBatch(data);
+                                    continue;
+                                }
                                 byte[] data = new byte[len];
                                 in.readFully(data);
-                                ByteBuffer buff = ByteBuffer.wrap(data);
-                                int start = buff.position();
-                                for (Listener l : listeners) {
-                                    ((Buffer)buff).position(start);
-                                    l.receive(buff);
-                                }
+                                receive(ByteBuffer.wrap(data));
+                            }
+                        } catch (IOException | DataFormatException e) {
+                            LOG.debug("Receiving failed", e);
+                            try {
+                                socket.close();
+                            } catch (IOException e2) {
+                                // ignore
                             }
-                        } catch (IOException e) {
-                            // ignore
                         }
                     }
                 };
@@ -298,7 +354,7 @@ public class TCPBroadcaster implements Broadcaster {
                     int port = Integer.parseInt(listener.substring(index + 1));
                     try {
                         byte[] key = id.getBytes(UTF8);
-                        c = new Client(host, port, key);
+                        c = new Client(host, port, key, batchMillis > 0, droppedCount);
                         clients.put(clientKey, c);
                     } catch (UnknownHostException e) {
                         // ignore
@@ -308,9 +364,60 @@ public class TCPBroadcaster implements Broadcaster {
         }
     }
     
+    private void receive(ByteBuffer buff) {
+        int start = buff.position();
+        for (Listener l : listeners) {
+            ((Buffer)buff).position(start);
+            l.receive(buff);
+        }
+    }
+
+    private void receiveBatch(byte[] compressed) throws IOException, DataFormatException {
+        Inflater inflater = new Inflater();
+        byte[] data;
+        try {
+            inflater.setInput(compressed);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated batch");
+                }
+                out.write(buffer, 0, n);
+                if (out.size() > MAX_BATCH_BYTES + 4) {
+                    throw new IOException("Batch too large");
+                }
+            }
+            data = out.toByteArray();
+        } finally {
+            inflater.end();
+        }
+        ByteBuffer all = ByteBuffer.wrap(data);
+        while (all.hasRemaining()) {
+            if (all.remaining() < 4) {
+                throw new IOException("Malformed batch");
+            }
+            int len = all.getInt();
+            if (len < 0 || len > all.remaining()) {
+                throw new IOException("Malformed message length " + len + " in batch");
+            }
+            ByteBuffer buff = ByteBuffer.wrap(data, all.position(), len).slice();
+            ((Buffer)all).position(all.position() + len);
+            receive(buff);
+        }
+    }
+
     void send() {
         while (isRunning()) {
             try {
+                if (batchMillis > 0) {
+                    Thread.sleep(batchMillis);
+                    if (isRunning()) {
+                        sendBatch();
+                    }
+                    continue;
+                }
                 ByteBuffer buff = sendBuffer.poll(10, TimeUnit.MILLISECONDS);
                 if (buff != null && isRunning()) {
                     sendBuffer(buff);
@@ -326,8 +433,14 @@ public class TCPBroadcaster implements Broadcaster {
         ByteBuffer b = ByteBuffer.allocate(buff.remaining());
         b.put(buff);
         ((Buffer)b).flip();
+        if (batchMillis > 0) {
+            addToBatch(b);
+            return;
+        }
         while (sendBuffer.size() > MAX_BUFFER_SIZE) {
-            sendBuffer.poll();
+            if (sendBuffer.poll() != null) {
+                droppedCount.incrementAndGet();
+            }
         }
         try {
             sendBuffer.add(b);
@@ -335,8 +448,91 @@ public class TCPBroadcaster implements Broadcaster {
             // ignore - might happen once in a while,
             // if the buffer was not yet full just before, but now
             // many threads concurrently tried to add
+            droppedCount.incrementAndGet();
         }
     }
+
+    private synchronized void addToBatch(ByteBuffer b) {
+        if (batch.remove(b)) {
+            // keep the last occurrence, so that the order relative to
+            // other messages is the same as without coalescing
+            batch.add(b);
+            coalescedCount.incrementAndGet();
+        } else if (batchBytes + b.remaining() > MAX_BATCH_BYTES) {
+            droppedCount.incrementAndGet();
+        } else {
+            batch.add(b);
+            batchBytes += b.remaining() + 4;
+        }
+    }
+
+    private synchronized LinkedHashSet<ByteBuffer> takeBatch() {
+        LinkedHashSet<ByteBuffer> b = batch;
+        if (!b.isEmpty()) {
+            batch = new LinkedHashSet<ByteBuffer>();
+            batchBytes = 0;
+        }
+        return b;
+    }
+
+    private void sendBatch() {
+        LinkedHashSet<ByteBuffer> messages = takeBatch();
+        if (!messages.isEmpty()) {
+            byte[] data = compressBatch(messages);
+            batchCount.incrementAndGet();
+            for (Client c : clients.values()) {
+                c.enqueue(data, messages.size());
+            }
+        }
+        for (Client c : clients.values()) {
+            c.flush();
+            if (!isRunning()) {
+                break;
+            }
+        }
+    }
+
+    private static byte[] compressBatch(Iterable<ByteBuffer> messages) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater))) {
+            for (ByteBuffer m : messages) {
+                out.writeInt(m.remaining());
+                out.write(m.array(), m.arrayOffset() + m.position(), m.remaining());
+            }
+        } catch (IOException e) {
+            // cannot happen with a ByteArrayOutputStream
+            throw new IllegalStateException(e);
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return the number of messages that were not sent because the send
+     *          buffer, the batch or the queue of a peer was full, or (in
+     *          batch mode) because a peer was not connected. In batch mode,
+     *          a message is counted once per peer that dropped it.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return the number of messages that were not sent because an identical
+     *          message was already in the same batch.
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * @return the number of batches sent.
+     */
+    public long getBatchCount() {
+        return batchCount.get();
+    }
     
     private void sendBuffer(ByteBuffer buff) {
         int len = buff.limit();
@@ -388,6 +584,13 @@ public class TCPBroadcaster implements Broadcaster {
             } catch (InterruptedException e) {
                 // ignore
             }
+            for (Client c : clients.values()) {
+                c.close();
+            }
+            if (batchMillis > 0) {
+                LOG.info("Closed; batches: " + batchCount + ", dropped: " + droppedCount
+                        + ", coalesced: " + coalescedCount);
+            }
         }
     }
 
@@ -399,11 +602,18 @@ public class TCPBroadcaster implements Broadcaster {
         final String host;
         final int port;
         final byte[] key;
+        final boolean useChannel;
+        final AtomicLong droppedCount;
         DataOutputStream out;
-        Client(String host, int port, byte[] key) throws UnknownHostException {
+        volatile SocketChannel channel;
+        final ArrayDeque<PendingBatch> pending = new ArrayDeque<PendingBatch>();
+        Client(String host, int port, byte[] key, boolean useChannel,
+                AtomicLong droppedCount) throws UnknownHostException {
             this.host = host;
             this.port = port;
             this.key = key;
+            this.useChannel = useChannel;
+            this.droppedCount = droppedCount;
         }
         void send(byte[] data) {
             DataOutputStream o = out;
@@ -425,7 +635,81 @@ public class TCPBroadcaster implements Broadcaster {
                 }
             }
         }
+        /**
+         * Adds a compressed batch to the queue of this peer. If the queue is
+         * full, the oldest batch that was not partially written yet is
+         * dropped, so that the peer never sees an incomplete frame. The
+         * messages of a dropped batch, or of a batch that cannot be queued
+         * because the peer is not connected, are counted as dropped.
+         *
+         * @param data the compressed batch
+         * @param messages the number of messages in the batch
+         */
+        synchronized void enqueue(byte[] data, int messages) {
+            if (channel == null) {
+                // not connected (yet)
+                droppedCount.addAndGet(messages);
+                return;
+            }
+            if (pending.size() >= MAX_PENDING_BATCHES) {
+                Iterator<PendingBatch> it = pending.iterator();
+                PendingBatch oldest = it.next();
+                if (oldest.buff.position() > 0) {
+                    // writing has started: keep it
+                    oldest = it.next();
+                }
+                it.remove();
+                droppedCount.addAndGet(oldest.messages);
+            }
+            ByteBuffer buff = ByteBuffer.allocate(4 + data.length);
+            buff.putInt(-data.length);
+            buff.put(data);
+            ((Buffer)buff).flip();
+            pending.add(new PendingBatch(buff, messages));
+        }
+        /**
+         * Writes as much of the pending batches as possible without blocking.
+         */
+        synchronized void flush() {
+            SocketChannel ch = channel;
+            if (ch == null) {
+                return;
+            }
+            try {
+                while (!pending.isEmpty()) {
+                    ByteBuffer buff = pending.peek().buff;
+                    ch.write(buff);
+                    if (buff.hasRemaining()) {
+                        // socket buffer is full, retry later
+                        return;
+                    }
+                    pending.poll();
+                }
+            } catch (IOException e) {
+                LOG.debug("Writing failed, port " + port, e);
+                close();
+            }
+        }
+        synchronized void close() {
+            SocketChannel ch = channel;
+            if (ch != null) {
+                try {
+                    ch.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+                channel = null;
+                for (PendingBatch b : pending) {
+                    droppedCount.addAndGet(b.messages);
+                }
+                pending.clear();
+            }
+        }
         void tryConnect() {
+            if (useChannel) {
+                tryConnectChannel();
+                return;
+            }
             DataOutputStream o = out;
             if (o != null || host == null) {
                 return;
@@ -448,6 +732,53 @@ public class TCPBroadcaster implements Broadcaster {
                 // ok, done
             }
         }
+        private void tryConnectChannel() {
+            if (channel != null || host == null) {
+                return;
+            }
+            InetAddress address;
+            try {
+                address = InetAddress.getByName(host);
+            } catch (UnknownHostException e1) {
+                return;
+            }
+            SocketChannel ch = null;
+            try {
+                ch = SocketChannel.open();
+                ch.socket().connect(new InetSocketAddress(address, port), TIMEOUT);
+                ByteBuffer k = ByteBuffer.wrap(key);
+                while (k.hasRemaining()) {
+                    ch.write(k);
+                }
+                ch.configureBlocking(false);
+                synchronized (this) {
+                    channel = ch;
+                }
+                LOG.info("Connected to " + address + " port " + port + " k " + key[0]);
+            } catch (IOException e) {
+                // ok, done
+                if (ch != null) {
+                    try {
+                        ch.close();
+                    } catch (IOException e1) {
+                        // ignore
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A compressed batch, including the frame length, waiting to be written
+     * to a peer.
+     */
+    static class PendingBatch {
+        final ByteBuffer buff;
+        final int messages;
+        PendingBatch(ByteBuffer buff, int messages) {
+            this.buff = buff;
+            this.messages = messages;
+        }
     }
 
 }
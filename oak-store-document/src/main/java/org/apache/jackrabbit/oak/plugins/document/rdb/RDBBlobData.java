@@ -0,0 +1,236 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.rdb;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import org.apache.commons.io.IOUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Encoding and decoding of the BDATA column. Three formats are supported
+ * when reading:
+ * <ul>
+ *     <li>plain UTF-8 encoded JSON,</li>
+ *     <li>GZIP compressed JSON (detected by the GZIP signature),</li>
+ *     <li>JSON compressed with a {@link RDBDocumentCodec}, prefixed with a
+ *     header: a zero byte, the id of the codec and the uncompressed length
+ *     as a four byte big-endian integer.</li>
+ * </ul>
+ * The first two formats are written when no codec is configured.
+ */
+final class RDBBlobData {
+
+    static final int HEADER_LENGTH = 6;
+
+    private static final byte MAGIC = 0;
+
+    private static final byte[] GZIPSIG = { 31, -117 };
+
+    static final RDBDocumentCodec NONE = new RDBDocumentCodec() {
+
+        @Override
+        public byte getId() {
+            return 0;
+        }
+
+        @Override
+        public @NotNull String getName() {
+            return "none";
+        }
+
+        @Override
+        public @NotNull byte[] compress(@NotNull byte[] data) {
+            return data;
+        }
+
+        @Override
+        public @NotNull byte[] decompress(@NotNull byte[] data, int offset, int length, int uncompressedLength)
+                throws IOException {
+            if (length != uncompressedLength) {
+                throw new IOException("Length mismatch: " + length + " != " + uncompressedLength);
+            }
+            byte[] result = new byte[length];
+            System.arraycopy(data, offset, result, 0, length);
+            return result;
+        }
+    };
+
+    static final RDBDocumentCodec DEFLATE = new RDBDocumentCodec() {
+
+        @Override
+        public byte getId() {
+            return 1;
+        }
+
+        @Override
+        public @NotNull String getName() {
+            return "deflate";
+        }
+
+        @Override
+        public @NotNull byte[] compress(@NotNull byte[] data) {
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+            try {
+                deflater.setInput(data);
+                deflater.finish();
+                ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 16);
+                byte[] buffer = new byte[8192];
+                while (!deflater.finished()) {
+                    int n = deflater.deflate(buffer);
+                    out.write(buffer, 0, n);
+                }
+                return out.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        @Override
+        public @NotNull byte[] decompress(@NotNull byte[] data, int offset, int length, int uncompressedLength)
+                throws IOException {
+            // nowrap mode requires an extra dummy byte at the end of the input
+            byte[] input = new byte[length + 1];
+            System.arraycopy(data, offset, input, 0, length);
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(input);
+                byte[] result = new byte[uncompressedLength];
+                int n = inflater.inflate(result);
+                if (n != uncompressedLength || !inflater.finished()) {
+                    throw new IOException("Length mismatch: " + n + " != " + uncompressedLength);
+                }
+                return result;
+            } catch (DataFormatException ex) {
+                throw new IOException(ex);
+            } finally {
+                inflater.end();
+            }
+        }
+    };
+
+    private RDBBlobData() {
+    }
+
+    /**
+     * Returns the built-in codec with the given name.
+     *
+     * @param name the name of the codec (case-insensitive).
+     * @return the codec.
+     * @throws IllegalArgumentException if there is no codec with this name or
+     *          the codec is not available.
+     */
+    @NotNull
+    static RDBDocumentCodec forName(@NotNull String name) {
+        switch (name.toLowerCase(Locale.ENGLISH)) {
+            case "none":
+                return NONE;
+            case "deflate":
+                return DEFLATE;
+            case "lz4":
+                return lz4();
+            default:
+                throw new IllegalArgumentException("Unknown BDATA codec: " + name);
+        }
+    }
+
+    /**
+     * Encodes the JSON serialization of a document with the given codec.
+     *
+     * @param json the JSON serialization.
+     * @param codec the codec.
+     * @return the encoded data including the header.
+     * @throws IOException if the codec fails.
+     */
+    @NotNull
+    static byte[] encode(@NotNull String json, @NotNull RDBDocumentCodec codec) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = codec.compress(bytes);
+        byte[] result = new byte[HEADER_LENGTH + compressed.length];
+        result[0] = MAGIC;
+        result[1] = codec.getId();
+        result[2] = (byte) (bytes.length >>> 24);
+        result[3] = (byte) (bytes.length >>> 16);
+        result[4] = (byte) (bytes.length >>> 8);
+        result[5] = (byte) bytes.length;
+        System.arraycopy(compressed, 0, result, HEADER_LENGTH, compressed.length);
+        return result;
+    }
+
+    /**
+     * Decodes the BDATA column into the JSON serialization of the document.
+     *
+     * @param bdata the content of the BDATA column.
+     * @param codec the codec configured for the store, used for ids that do
+     *          not belong to a built-in codec. May be {@code null}.
+     * @return the JSON serialization.
+     * @throws IOException if the data cannot be decoded.
+     */
+    @NotNull
+    static String decode(@NotNull byte[] bdata, @Nullable RDBDocumentCodec codec) throws IOException {
+        if (bdata.length >= HEADER_LENGTH && bdata[0] == MAGIC) {
+            RDBDocumentCodec c = forId(bdata[1], codec);
+            int length = ((bdata[2] & 0xff) << 24) | ((bdata[3] & 0xff) << 16)
+                    | ((bdata[4] & 0xff) << 8) | (bdata[5] & 0xff);
+            byte[] bytes = c.decompress(bdata, HEADER_LENGTH, bdata.length - HEADER_LENGTH, length);
+            return new String(bytes, StandardCharsets.UTF_8);
+        } else if (bdata.length >= 2 && bdata[0] == GZIPSIG[0] && bdata[1] == GZIPSIG[1]) {
+            try (GZIPInputStream gis = new GZIPInputStream(new ByteArrayInputStream(bdata), 65536)) {
+                return IOUtils.toString(gis, StandardCharsets.UTF_8);
+            }
+        } else {
+            return new String(bdata, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static RDBDocumentCodec forId(byte id, @Nullable RDBDocumentCodec codec) throws IOException {
+        if (codec != null && codec.getId() == id) {
+            return codec;
+        }
+        switch (id) {
+            case 0:
+                return NONE;
+            case 1:
+                return DEFLATE;
+            case 2:
+                try {
+                    return lz4();
+                } catch (IllegalArgumentException ex) {
+                    throw new IOException(ex.getMessage(), ex);
+                }
+            default:
+                throw new IOException("Unknown BDATA codec id: " + id);
+        }
+    }
+
+    private static RDBDocumentCodec lz4() {
+        try {
+            return RDBLZ4Codec.INSTANCE;
+        } catch (LinkageError ex) {
+            throw new IllegalArgumentException("BDATA codec lz4 is not available (lz4-java missing?)", ex);
+        }
+    }
+}
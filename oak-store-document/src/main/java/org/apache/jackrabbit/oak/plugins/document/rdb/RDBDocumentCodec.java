@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.rdb;
+
+import java.io.IOException;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Compression codec for the serialized document in the BDATA column.
+ * <p>
+ * Documents written with a codec are stored with a header that contains the
+ * id of the codec and the length of the uncompressed data, so that rows
+ * written with different codecs (and rows in the older GZIP or plain JSON
+ * format) can be read by the same store. Built-in codecs are available via
+ * {@link RDBOptions#bdataCodec(String)}.
+ */
+public interface RDBDocumentCodec {
+
+    /**
+     * @return the id of this codec as stored in the header of the BDATA
+     *         column. Ids below 64 are reserved for built-in codecs.
+     */
+    byte getId();
+
+    /**
+     * @return the name of this codec.
+     */
+    @NotNull
+    String getName();
+
+    /**
+     * Compresses the given data.
+     *
+     * @param data the uncompressed data.
+     * @return the compressed data.
+     * @throws IOException if the data cannot be compressed.
+     */
+    @NotNull
+    byte[] compress(@NotNull byte[] data) throws IOException;
+
+    /**
+     * Decompresses the given range of {@code data}.
+     *
+     * @param data the compressed data.
+     * @param offset the offset of the compressed data.
+     * @param length the length of the compressed data.
+     * @param uncompressedLength the length of the uncompressed data.
+     * @return the uncompressed data.
+     * @throws IOException if the data cannot be decompressed.
+     */
+    @NotNull
+    byte[] decompress(@NotNull byte[] data, int offset, int length, int uncompressedLength)
+            throws IOException;
+}
@@ -22,16 +22,13 @@ import static org.apache.jackrabbit.oak.plugins.document.rdb.RDBJSONSupport.appe
 import static org.apache.jackrabbit.oak.plugins.document.rdb.RDBJSONSupport.appendJsonString;
 import static org.apache.jackrabbit.oak.plugins.document.rdb.RDBJSONSupport.appendJsonValue;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
-import java.util.zip.GZIPInputStream;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.jackrabbit.oak.commons.json.JsopReader;
 import org.apache.jackrabbit.oak.commons.json.JsopTokenizer;
 import org.apache.jackrabbit.oak.plugins.document.Collection;
@@ -45,6 +42,7 @@ import org.apache.jackrabbit.oak.plugins.document.UpdateOp;
 import org.apache.jackrabbit.oak.plugins.document.UpdateOp.Key;
 import org.apache.jackrabbit.oak.plugins.document.UpdateOp.Operation;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -70,8 +68,36 @@ public class RDBDocumentSerializer {
 
     private static final RDBJSONSupport JSON = new RDBJSONSupport(true);
 
+    private final RDBDocumentCodec codec;
+
     public RDBDocumentSerializer(DocumentStore store) {
+        this(store, null);
+    }
+
+    /**
+     * @param store the document store.
+     * @param codec the codec for the BDATA column or {@code null} to write
+     *          GZIP compressed JSON.
+     */
+    public RDBDocumentSerializer(DocumentStore store, @Nullable RDBDocumentCodec codec) {
         this.store = store;
+        this.codec = codec;
+    }
+
+    /**
+     * Encodes the JSON serialization of a document for the BDATA column.
+     */
+    @NotNull
+    public byte[] asBytes(@NotNull String data) {
+        if (codec == null) {
+            return RDBDocumentStore.asBytes(data);
+        }
+        try {
+            return RDBBlobData.encode(data, codec);
+        } catch (IOException ex) {
+            LOG.error("Error while compressing contents with " + codec.getName(), ex);
+            throw asDocumentStoreException(ex, "Error while compressing contents with " + codec.getName());
+        }
     }
 
     /**
@@ -337,18 +363,9 @@ public class RDBDocumentSerializer {
 
     // low level operations
 
-    private static byte[] GZIPSIG = { 31, -117 };
-
-    private static String fromBlobData(byte[] bdata) {
+    private String fromBlobData(byte[] bdata) {
         try {
-            if (bdata.length >= 2 && bdata[0] == GZIPSIG[0] && bdata[1] == GZIPSIG[1]) {
-                // GZIP
-                try (GZIPInputStream gis = new GZIPInputStream(new ByteArrayInputStream(bdata), 65536)) {
-                    return IOUtils.toString(gis, "UTF-8");
-                }
-            } else {
-                return IOUtils.toString(bdata, "UTF-8");
-            }
+            return RDBBlobData.decode(bdata, codec);
         } catch (IOException ex) {
             LOG.debug("Unexpected exception while processing blob data", ex);
             throw new RuntimeException(ex);
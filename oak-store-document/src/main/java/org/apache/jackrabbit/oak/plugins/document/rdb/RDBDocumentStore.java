@@ -192,8 +192,9 @@ import org.apache.jackrabbit.guava.common.collect.Sets;
  * <tr>
  * <th>BDATA</th>
  * <td>blob</td>
- * <td>The document's JSON serialization (usually GZIPped, only used for "large"
- * documents).</td>
+ * <td>The document's JSON serialization (usually GZIPped, or compressed with the
+ * {@link RDBDocumentCodec} configured in {@link RDBOptions}, only used for
+ * "large" documents).</td>
  * </tr>
  * </tbody>
  * </table>
@@ -984,9 +985,10 @@ public class RDBDocumentStore implements DocumentStore {
             new String[] { ID, NodeDocument.HAS_BINARY_FLAG, NodeDocument.DELETED_ONCE, COLLISIONSMODCOUNT, MODIFIED, MODCOUNT,
                     NodeDocument.SD_TYPE, NodeDocument.SD_MAX_REV_TIME_IN_SECS, VERSIONPROP }));
 
-    private final RDBDocumentSerializer ser = new RDBDocumentSerializer(this);
+    private RDBDocumentSerializer ser;
 
     private void initialize(DataSource ds, DocumentNodeStoreBuilder<?> builder, RDBOptions options) throws Exception {
+        this.ser = new RDBDocumentSerializer(this, options.getBdataCodec());
         this.stats = builder.getDocumentStoreStatsCollector();
 
         this.callStack = LOG.isDebugEnabled() ? new Exception("call stack of RDBDocumentStore creation") : null;
@@ -2103,7 +2105,7 @@ public class RDBDocumentStore implements DocumentStore {
             this.ch.rollbackConnection(connection);
             String addDiags = "";
             if (data != null && RDBJDBCTools.matchesSQLState(ex, "22", "72")) {
-                byte[] bytes = asBytes(data);
+                byte[] bytes = ser.asBytes(data);
                 addDiags = String.format(" (DATA size in Java characters: %d, in octets: %d, computed character limit: %d)",
                         data.length(), bytes.length, tmd.getDataLimitInOctets() / CHAR2OCTETRATIO);
             }
@@ -2167,7 +2169,7 @@ public class RDBDocumentStore implements DocumentStore {
 
                 for (Document d : documents) {
                     String data = ser.asString(d, tmd.getColumnOnlyProperties());
-                    byte bytes[] = asBytes(data);
+                    byte bytes[] = ser.asBytes(data);
                     if (bytes.length > longest) {
                         longest = bytes.length;
                         longestChars = data.length();
@@ -19,7 +19,6 @@ package org.apache.jackrabbit.oak.plugins.document.rdb;
 import static org.apache.jackrabbit.guava.common.collect.Iterables.transform;
 import static org.apache.jackrabbit.guava.common.collect.Sets.newHashSet;
 import static org.apache.jackrabbit.oak.plugins.document.rdb.RDBDocumentStore.CHAR2OCTETRATIO;
-import static org.apache.jackrabbit.oak.plugins.document.rdb.RDBDocumentStore.asBytes;
 import static org.apache.jackrabbit.oak.plugins.document.rdb.RDBJDBCTools.asDocumentStoreException;
 import static org.apache.jackrabbit.oak.plugins.document.rdb.RDBJDBCTools.closeResultSet;
 import static org.apache.jackrabbit.oak.plugins.document.rdb.RDBJDBCTools.closeStatement;
@@ -285,7 +284,7 @@ public class RDBDocumentStoreJDBC {
                     stmt.setBinaryStream(si++, null, 0);
                 } else {
                     setDataInStatement(tmd, stmt, si++, "\"blob\"");
-                    byte[] bytes = asBytes(data);
+                    byte[] bytes = this.ser.asBytes(data);
                     stmt.setBytes(si++, bytes);
                 }
                 stmt.addBatch();
@@ -366,7 +365,7 @@ public class RDBDocumentStoreJDBC {
                     stmt.setBinaryStream(si++, null, 0);
                 } else {
                     setDataInStatement(tmd, stmt, si++, "\"blob\"");
-                    byte[] bytes = asBytes(data);
+                    byte[] bytes = this.ser.asBytes(data);
                     stmt.setBytes(si++, bytes);
                 }
 
@@ -935,7 +934,7 @@ public class RDBDocumentStoreJDBC {
                 stmt.setBinaryStream(si++, null, 0);
             } else {
                 setDataInStatement(tmd, stmt, si++, "\"blob\"");
-                byte[] bytes = asBytes(data);
+                byte[] bytes = this.ser.asBytes(data);
                 stmt.setBytes(si++, bytes);
             }
 
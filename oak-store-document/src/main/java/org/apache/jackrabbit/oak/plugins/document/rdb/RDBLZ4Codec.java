@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.rdb;
+
+import java.io.IOException;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * {@link RDBDocumentCodec} using LZ4 block compression. Requires the optional
+ * lz4-java library.
+ */
+final class RDBLZ4Codec implements RDBDocumentCodec {
+
+    static final RDBLZ4Codec INSTANCE = new RDBLZ4Codec();
+
+    private final LZ4Compressor compressor;
+
+    private final LZ4FastDecompressor decompressor;
+
+    private RDBLZ4Codec() {
+        LZ4Factory factory = LZ4Factory.fastestInstance();
+        this.compressor = factory.fastCompressor();
+        this.decompressor = factory.fastDecompressor();
+    }
+
+    @Override
+    public byte getId() {
+        return 2;
+    }
+
+    @Override
+    public @NotNull String getName() {
+        return "lz4";
+    }
+
+    @Override
+    public @NotNull byte[] compress(@NotNull byte[] data) {
+        return compressor.compress(data);
+    }
+
+    @Override
+    public @NotNull byte[] decompress(@NotNull byte[] data, int offset, int length, int uncompressedLength)
+            throws IOException {
+        try {
+            byte[] result = new byte[uncompressedLength];
+            int read = decompressor.decompress(data, offset, result, 0, uncompressedLength);
+            if (read != length) {
+                throw new IOException("Length mismatch: " + read + " != " + length);
+            }
+            return result;
+        } catch (LZ4Exception ex) {
+            throw new IOException(ex);
+        }
+    }
+}
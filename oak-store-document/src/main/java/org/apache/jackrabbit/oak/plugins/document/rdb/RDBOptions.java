@@ -17,6 +17,7 @@
 package org.apache.jackrabbit.oak.plugins.document.rdb;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Options applicable to RDB persistence
@@ -28,6 +29,8 @@ public class RDBOptions {
     private int initialSchema = Integer.getInteger("org.apache.jackrabbit.oak.plugins.document.rdb.RDBOptions.INITIALSCHEMA", 2);
     private int upgradeToSchema = Integer.getInteger("org.apache.jackrabbit.oak.plugins.document.rdb.RDBOptions.UPGRADETOSCHEMA",
             2);
+    private RDBDocumentCodec bdataCodec = codecForName(
+            System.getProperty("org.apache.jackrabbit.oak.plugins.document.rdb.RDBOptions.BDATACODEC"));
 
     public RDBOptions() {
     }
@@ -79,4 +82,34 @@ public class RDBOptions {
     public int getUpgradeToSchema() {
         return this.upgradeToSchema;
     }
+
+    /**
+     * Codec for the document serialization in the BDATA column. Without a
+     * codec, BDATA is written as GZIP compressed JSON (the format understood
+     * by all versions). Rows are always readable regardless of the codec
+     * they were written with, but older versions cannot read rows written
+     * with a codec.
+     */
+    public RDBOptions bdataCodec(@Nullable RDBDocumentCodec bdataCodec) {
+        this.bdataCodec = bdataCodec;
+        return this;
+    }
+
+    /**
+     * Selects one of the built-in codecs for the BDATA column by name:
+     * "none", "deflate" or "lz4" (requires lz4-java).
+     *
+     * @see #bdataCodec(RDBDocumentCodec)
+     */
+    public RDBOptions bdataCodec(@NotNull String name) {
+        return bdataCodec(RDBBlobData.forName(name));
+    }
+
+    public @Nullable RDBDocumentCodec getBdataCodec() {
+        return this.bdataCodec;
+    }
+
+    private static RDBDocumentCodec codecForName(String name) {
+        return name == null || name.isEmpty() ? null : RDBBlobData.forName(name);
+    }
 }
@@ -19,7 +19,11 @@
 
 package org.apache.jackrabbit.oak.plugins.document.secondary;
 
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.jackrabbit.guava.common.cache.CacheStats;
 import org.apache.jackrabbit.guava.common.collect.EvictingQueue;
+import org.apache.jackrabbit.oak.cache.AbstractCacheStats;
 import org.apache.jackrabbit.oak.plugins.document.AbstractDocumentNodeState;
 import org.apache.jackrabbit.oak.plugins.document.DocumentNodeStateCache;
 import org.apache.jackrabbit.oak.plugins.document.NodeStateDiffer;
@@ -51,6 +55,10 @@ public class SecondaryStoreCache implements DocumentNodeStateCache, SecondarySto
     private final MeterStats knownMissedInRange;
     private final MeterStats headRevMatched;
     private final MeterStats prevRevMatched;
+    private final MeterStats coveredRevMatched;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AbstractCacheStats cacheStats = new SecondaryCacheStats();
     private final int maxSize = 10000;
     private final EvictingQueue<AbstractDocumentNodeState> queue;
     private volatile AbstractDocumentNodeState[] previousRoots = EMPTY;
@@ -68,6 +76,7 @@ public class SecondaryStoreCache implements DocumentNodeStateCache, SecondarySto
                 .DEFAULT);
         this.headRevMatched = statisticsProvider.getMeter("DOCUMENT_CACHE_SEC_HEAD", StatsOptions.DEFAULT);
         this.prevRevMatched = statisticsProvider.getMeter("DOCUMENT_CACHE_SEC_OLD", StatsOptions.DEFAULT);
+        this.coveredRevMatched = statisticsProvider.getMeter("DOCUMENT_CACHE_SEC_COVERED", StatsOptions.DEFAULT);
         this.queue = EvictingQueue.create(maxSize);
     }
 
@@ -85,6 +94,7 @@ public class SecondaryStoreCache implements DocumentNodeStateCache, SecondarySto
         }
 
         if (!DelegatingDocumentNodeState.hasMetaProps(store.getRoot())){
+            missCount.incrementAndGet();
             return null;
         }
 
@@ -93,29 +103,37 @@ public class SecondaryStoreCache implements DocumentNodeStateCache, SecondarySto
         //If the root rev is < lastRev then secondary store is lagging and would
         //not have the matching result
         if (lastRev.compareTo(currentRoot.getLastRevision()) > 0){
+            missCount.incrementAndGet();
             return null;
         }
 
         AbstractDocumentNodeState nodeState = findByMatchingLastRev(currentRoot, path, lastRev);
         if (nodeState != null){
             headRevMatched.mark();
+            hitCount.incrementAndGet();
             return nodeState;
         }
 
-        AbstractDocumentNodeState matchingRoot = findMatchingRoot(rootRevision);
-        if (matchingRoot != null){
-            NodeState state = NodeStateUtils.getNode(matchingRoot, p);
-            if (state.exists()){
-                AbstractDocumentNodeState docState = asDocState(state);
-                prevRevMatched.mark();
-                return docState;
-            }
+        nodeState = findInPreviousRoots(p, rootRevision, lastRev);
+        if (nodeState != null){
+            hitCount.incrementAndGet();
+            return nodeState;
         }
 
         knownMissed.mark();
+        missCount.incrementAndGet();
         return null;
     }
 
+    /**
+     * Returns the statistics of the lookups served by this cache. Lookups for
+     * paths not included in the secondary store are not counted.
+     */
+    @NotNull
+    public AbstractCacheStats getCacheStats() {
+        return cacheStats;
+    }
+
     @Override
     public boolean isCached(Path path) {
         return pathFilter.filter(path.toString()) == PathFilter.Result.INCLUDE;
@@ -141,15 +159,22 @@ public class SecondaryStoreCache implements DocumentNodeStateCache, SecondarySto
 
         AbstractDocumentNodeState docState = asDocState(state);
         if (lastRev.equals(docState.getLastRevision())) {
-            headRevMatched.mark();
             return docState;
         }
 
         return null;
     }
 
+    /**
+     * Looks up the node state in the previous roots. The root with the
+     * requested root revision is used when present. Otherwise the roots right
+     * before and after the requested root revision are checked: the node state
+     * of such a root can be served if its lastRev matches the requested one,
+     * because the subtree was then not modified in between.
+     */
     @Nullable
-    private AbstractDocumentNodeState findMatchingRoot(RevisionVector rr) {
+    private AbstractDocumentNodeState findInPreviousRoots(String path, RevisionVector rr,
+                                                          RevisionVector lastRev) {
         if (isEmpty()){
             return null;
         }
@@ -169,9 +194,23 @@ public class SecondaryStoreCache implements DocumentNodeStateCache, SecondarySto
             return null;
         }
 
-        AbstractDocumentNodeState result = findMatchingRoot(roots, rr);
-        if (result != null){
-            return result;
+        int index = findFloorRoot(roots, rr);
+        AbstractDocumentNodeState floor = roots[index];
+        if (floor.getRootRevision().equals(rr)){
+            NodeState state = NodeStateUtils.getNode(floor, path);
+            if (state.exists()){
+                prevRevMatched.mark();
+                return asDocState(state);
+            }
+            return null;
+        }
+
+        for (int i = index; i <= index + 1 && i < roots.length; i++) {
+            NodeState state = NodeStateUtils.getNode(roots[i], path);
+            if (state.exists() && lastRev.equals(asDocState(state).getLastRevision())){
+                coveredRevMatched.mark();
+                return asDocState(state);
+            }
         }
         knownMissedInRange.mark();
         return null;
@@ -190,30 +229,55 @@ public class SecondaryStoreCache implements DocumentNodeStateCache, SecondarySto
         return previousRoots.length == 0;
     }
 
-
-    static AbstractDocumentNodeState findMatchingRoot(AbstractDocumentNodeState[] roots, RevisionVector key) {
+    /**
+     * Returns the index of the latest root with a root revision less than or
+     * equal to the given key. The root revision of the first root must not be
+     * greater than the key.
+     */
+    static int findFloorRoot(AbstractDocumentNodeState[] roots, RevisionVector key) {
         int low = 0;
         int high = roots.length - 1;
 
-        //Perform a binary search as the array is sorted in ascending order
-        while (low <= high) {
-            int mid = (low + high) >>> 1;
-            AbstractDocumentNodeState midVal = roots[mid];
-            int cmp = midVal.getRootRevision().compareTo(key);
-
-            if (cmp < 0) {
-                low = mid + 1;
-            } else if (cmp > 0) {
-                high = mid - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (roots[mid].getRootRevision().compareTo(key) <= 0) {
+                low = mid;
             } else {
-                return midVal; // key found
+                high = mid - 1;
             }
         }
-        return null;  // key not found.
+        return low;
     }
 
     private static AbstractDocumentNodeState asDocState(NodeState state) {
         return (AbstractDocumentNodeState)state;
     }
 
+    private class SecondaryCacheStats extends AbstractCacheStats {
+
+        SecondaryCacheStats() {
+            super("SecondaryStoreCache");
+        }
+
+        @Override
+        protected CacheStats getCurrentStats() {
+            return new CacheStats(hitCount.get(), missCount.get(), 0, 0, 0, 0);
+        }
+
+        @Override
+        public long getElementCount() {
+            return previousRoots.length;
+        }
+
+        @Override
+        public long getMaxTotalWeight() {
+            return maxSize;
+        }
+
+        @Override
+        public long estimateCurrentWeight() {
+            return previousRoots.length;
+        }
+    }
+
 }
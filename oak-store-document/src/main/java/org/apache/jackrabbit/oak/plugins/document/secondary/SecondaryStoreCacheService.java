@@ -28,6 +28,7 @@ import java.util.List;
 import java.util.concurrent.Executor;
 
 import org.apache.jackrabbit.guava.common.collect.Lists;
+import org.apache.jackrabbit.oak.api.jmx.CacheStatsMBean;
 import org.apache.jackrabbit.oak.osgi.OsgiWhiteboard;
 import org.apache.jackrabbit.oak.plugins.document.AbstractDocumentNodeState;
 import org.apache.jackrabbit.oak.plugins.document.DocumentNodeStateCache;
@@ -145,6 +146,11 @@ public class SecondaryStoreCacheService {
         registerObserver(observer, config);
 
         regs.add(bundleContext.registerService(DocumentNodeStateCache.class.getName(), cache, null));
+        oakRegs.add(registerMBean(whiteboard,
+                CacheStatsMBean.class,
+                cache.getCacheStats(),
+                CacheStatsMBean.TYPE,
+                cache.getCacheStats().getName()));
 
         //TODO Need to see OSGi dynamics. Its possible that DocumentNodeStore works after the cache
         //gets deregistered but the SegmentNodeState instances might still be in use and that would cause
@@ -183,6 +183,52 @@ public class CommitQueueTest {
         assertNoExceptions();
     }
 
+    @Test
+    public void manyCommitsInProgress() throws Exception {
+        final CommitQueue queue = new CommitQueue(DummyRevisionContext.INSTANCE);
+        final List<Revision> seen = synchronizedList(new ArrayList<Revision>());
+        final CommitQueue.Callback c = new CommitQueue.Callback() {
+            @Override
+            public void headOfQueue(@NotNull Revision r) {
+                seen.add(r);
+            }
+        };
+        // more than the initial capacity of the ring buffer
+        List<Revision> revisions = new ArrayList<Revision>();
+        for (int i = 0; i < 300; i++) {
+            revisions.add(queue.createRevision());
+        }
+        final Random random = new Random(42);
+        final Set<Revision> canceled = Collections.synchronizedSet(new HashSet<Revision>());
+        List<Thread> threads = new ArrayList<Thread>();
+        List<Revision> shuffled = new ArrayList<Revision>(revisions);
+        Collections.shuffle(shuffled, random);
+        for (final Revision r : shuffled) {
+            final boolean cancel = random.nextInt(5) == 0;
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    if (cancel) {
+                        canceled.add(r);
+                        queue.canceled(r);
+                    } else {
+                        queue.done(r, c);
+                    }
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        revisions.removeAll(canceled);
+        assertEquals(revisions, seen);
+        for (Revision r : shuffled) {
+            assertFalse(queue.contains(r));
+        }
+    }
+
     // OAK-2868
     @Test
     public void branchCommitMustNotBlockTrunkCommit() throws Exception {
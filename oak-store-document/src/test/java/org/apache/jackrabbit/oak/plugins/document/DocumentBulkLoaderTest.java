@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.jackrabbit.oak.InitialContent;
+import org.apache.jackrabbit.oak.api.CommitFailedException;
+import org.apache.jackrabbit.oak.plugins.document.bundlor.BundledTypesRegistry;
+import org.apache.jackrabbit.oak.plugins.document.bundlor.BundlingConfigInitializer;
+import org.apache.jackrabbit.oak.plugins.document.bundlor.DocumentBundlor;
+import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.util.Utils;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.EqualsDiff;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.apache.jackrabbit.JcrConstants.JCR_PRIMARYTYPE;
+import static org.apache.jackrabbit.oak.api.Type.NAME;
+import static org.apache.jackrabbit.oak.plugins.document.Collection.NODES;
+import static org.apache.jackrabbit.oak.plugins.document.bundlor.BundlingConfigHandler.BUNDLOR;
+import static org.apache.jackrabbit.oak.plugins.document.bundlor.BundlingConfigHandler.DOCUMENT_NODE_STORE;
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DocumentBulkLoaderTest {
+
+    @Rule
+    public DocumentMKBuilderProvider builderProvider = new DocumentMKBuilderProvider();
+
+    private final MemoryDocumentStore store = new MemoryDocumentStore();
+
+    private DocumentNodeStore ns;
+
+    @Before
+    public void before() throws Exception {
+        ns = newNodeStore(1);
+        NodeState registryState = BundledTypesRegistry.builder()
+                .forType("app:Asset")
+                    .include("jcr:content")
+                    .include("jcr:content/metadata")
+                .build();
+        NodeBuilder builder = ns.getRoot().builder();
+        new InitialContent().initialize(builder);
+        BundlingConfigInitializer.INSTANCE.initialize(builder);
+        builder.getChildNode("jcr:system")
+                .getChildNode(DOCUMENT_NODE_STORE)
+                .getChildNode(BUNDLOR)
+                .setChildNode("app:Asset", registryState.getChildNode("app:Asset"));
+        ns.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        ns.runBackgroundOperations();
+    }
+
+    @Test
+    public void load() throws Exception {
+        NodeBuilder root = EMPTY_NODE.builder();
+        root.setProperty("rootProp", "value");
+        NodeBuilder test = root.child("test");
+        for (int i = 0; i < 20; i++) {
+            NodeBuilder folder = test.child("folder-" + i);
+            folder.setProperty("index", i);
+            for (int j = 0; j < 5; j++) {
+                NodeBuilder asset = folder.child("asset-" + j);
+                asset.setProperty(JCR_PRIMARYTYPE, "app:Asset", NAME);
+                NodeBuilder content = asset.child("jcr:content");
+                content.setProperty("data", "binary".getBytes());
+                content.child("metadata").setProperty("title", "asset " + j);
+                content.child("comments").child("c1").setProperty("text", "hello");
+            }
+        }
+        NodeState expected = root.getNodeState();
+
+        DocumentBulkLoader loader = new DocumentBulkLoader(ns)
+                .withBatchSize(7).withCommitSize(50);
+        NodeState loaded = loader.load(preOrder(expected).iterator(), CommitInfo.EMPTY);
+
+        assertEquals(1 + 1 + 20 * (1 + 5 * 5), loader.getNodeCount());
+        // asset, jcr:content and metadata are in one document
+        assertEquals(1 + 1 + 20 * (1 + 5 * 3), loader.getDocumentCount());
+        assertEquals("value", loaded.getString("rootProp"));
+        assertTrue(loaded.hasChildNode("jcr:system"));
+        assertTrue(EqualsDiff.equals(expected.getChildNode("test"), loaded.getChildNode("test")));
+        assertTrue(EqualsDiff.equals(expected.getChildNode("test"), ns.getRoot().getChildNode("test")));
+
+        Path asset = Path.fromString("/test/folder-3/asset-2");
+        NodeDocument assetDoc = store.find(NODES, Utils.getIdFromPath(asset));
+        assertNotNull(assetDoc);
+        assertTrue(assetDoc.hasBinary());
+        assertTrue(store.find(NODES, Utils.getIdFromPath(asset.getParent())).hasChildren());
+        assertTrue(assetDoc.keySet().contains(
+                Utils.escapePropertyName("jcr:content/" + DocumentBundlor.META_PROP_BUNDLING_PATH)));
+        assertNull(store.find(NODES, Utils.getIdFromPath(new Path(asset, "jcr:content"))));
+        assertNotNull(store.find(NODES, Utils.getIdFromPath(
+                Path.fromString("/test/folder-3/asset-2/jcr:content/comments"))));
+
+        // documents look like the ones of a regular branch commit
+        NodeBuilder builder = ns.getRoot().builder();
+        builder.setChildNode("committed", expected.getChildNode("test").getChildNode("folder-3"));
+        ns.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        for (String rel : new String[]{"", "/asset-2", "/asset-2/jcr:content/comments"}) {
+            Set<String> committed = new HashSet<>(store.find(NODES,
+                    Utils.getIdFromPath(Path.fromString("/committed" + rel))).keySet());
+            committed.add(NodeDocument.BRANCH_COMMITS);
+            assertEquals(committed, store.find(NODES,
+                    Utils.getIdFromPath(Path.fromString("/test/folder-3" + rel))).keySet());
+        }
+
+        // changes are visible on another cluster node
+        ns.runBackgroundOperations();
+        DocumentNodeStore ns2 = newNodeStore(2);
+        assertTrue(EqualsDiff.equals(expected.getChildNode("test"), ns2.getRoot().getChildNode("test")));
+
+        // and can be modified afterwards
+        builder = ns.getRoot().builder();
+        builder.child("test").child("folder-0").remove();
+        builder.child("test").child("folder-1").setProperty("index", 100);
+        ns.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        assertFalse(ns.getRoot().getChildNode("test").hasChildNode("folder-0"));
+        assertEquals(100, ns.getRoot().getChildNode("test").getChildNode("folder-1")
+                .getProperty("index").getValue(org.apache.jackrabbit.oak.api.Type.LONG).intValue());
+    }
+
+    @Test
+    public void unsorted() throws Exception {
+        List<Map.Entry<Path, NodeState>> nodes = new ArrayList<>();
+        nodes.add(new SimpleImmutableEntry<>(Path.ROOT, EMPTY_NODE));
+        nodes.add(new SimpleImmutableEntry<>(Path.fromString("/a"), EMPTY_NODE));
+        nodes.add(new SimpleImmutableEntry<>(Path.fromString("/b/c"), EMPTY_NODE));
+        try {
+            new DocumentBulkLoader(ns).load(nodes.iterator(), CommitInfo.EMPTY);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertFalse(ns.getRoot().hasChildNode("a"));
+    }
+
+    @Test
+    public void existingNode() throws Exception {
+        NodeBuilder root = EMPTY_NODE.builder();
+        root.child("jcr:system").child("foo");
+        try {
+            new DocumentBulkLoader(ns).load(preOrder(root.getNodeState()).iterator(),
+                    CommitInfo.EMPTY);
+            fail("DocumentStoreException expected");
+        } catch (DocumentStoreException e) {
+            // expected
+        }
+        assertFalse(ns.getRoot().getChildNode("jcr:system").hasChildNode("foo"));
+    }
+
+    private DocumentNodeStore newNodeStore(int clusterId) {
+        return builderProvider.newBuilder().setDocumentStore(store)
+                .setClusterId(clusterId).setAsyncDelay(0).getNodeStore();
+    }
+
+    private static List<Map.Entry<Path, NodeState>> preOrder(NodeState root) {
+        List<Map.Entry<Path, NodeState>> nodes = new ArrayList<>();
+        preOrder(Path.ROOT, root, nodes);
+        return nodes;
+    }
+
+    private static void preOrder(Path path,
+                                 NodeState state,
+                                 List<Map.Entry<Path, NodeState>> nodes) {
+        nodes.add(new SimpleImmutableEntry<>(path, state));
+        List<String> names = new ArrayList<>();
+        for (ChildNodeEntry e : state.getChildNodeEntries()) {
+            names.add(e.getName());
+        }
+        Collections.sort(names);
+        for (String name : names) {
+            preOrder(new Path(path, name), state.getChildNode(name), nodes);
+        }
+    }
+}
@@ -22,6 +22,8 @@ package org.apache.jackrabbit.oak.plugins.document;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.jackrabbit.guava.common.base.Joiner;
 import org.apache.jackrabbit.guava.common.base.Splitter;
@@ -33,6 +35,7 @@ import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
 import org.apache.jackrabbit.oak.plugins.document.spi.JournalProperty;
 import org.apache.jackrabbit.oak.plugins.document.spi.JournalPropertyBuilder;
 import org.apache.jackrabbit.oak.plugins.document.spi.JournalPropertyService;
+import org.apache.jackrabbit.oak.plugins.document.util.Utils;
 import org.apache.jackrabbit.oak.plugins.observation.ChangeCollectorProvider;
 import org.apache.jackrabbit.oak.spi.commit.CommitContext;
 import org.apache.jackrabbit.oak.spi.commit.CommitHook;
@@ -56,6 +59,7 @@ import static org.hamcrest.collection.IsIterableContainingInAnyOrder.containsInA
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
@@ -215,6 +219,68 @@ public class ExternalChangesTest {
         assertThat(ct.values, containsInAnyOrder("foo", "bar", "NULL"));
     }
 
+    @Test
+    public void backgroundReadOnChangeNotification() throws Exception {
+        NotifyingMemoryDocumentStore store = new NotifyingMemoryDocumentStore();
+        // scheduled background operations effectively disabled
+        DocumentNodeStore ns3 = builderProvider.newBuilder()
+                .setAsyncDelay(60 * 60 * 1000).setDocumentStore(store)
+                .setLeaseCheckMode(LeaseCheckMode.DISABLED)
+                .setClusterId(3).getNodeStore();
+        DocumentNodeStore ns4 = builderProvider.newBuilder()
+                .setAsyncDelay(60 * 60 * 1000).setDocumentStore(store)
+                .setLeaseCheckMode(LeaseCheckMode.DISABLED)
+                .setClusterId(4).getNodeStore();
+        // ns4 replaced the listener of ns3
+        assertNotNull(store.listener);
+        assertEquals(4, store.clusterId);
+        store.notifications.set(0);
+
+        // changes of ns4 itself are not reported
+        NodeBuilder b = ns4.getRoot().builder();
+        b.child("bar");
+        ns4.merge(b, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        ns4.runBackgroundUpdateOperations();
+        assertEquals(0, store.notifications.get());
+
+        b = ns3.getRoot().builder();
+        b.child("foo");
+        ns3.merge(b, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        ns3.runBackgroundUpdateOperations();
+        assertTrue(store.notifications.get() > 0);
+
+        long end = System.currentTimeMillis() + 10 * 1000;
+        while (!ns4.getRoot().hasChildNode("foo") && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertTrue(ns4.getRoot().hasChildNode("foo"));
+
+        ns4.dispose();
+        assertNull(store.listener);
+    }
+
+    @Test
+    public void triggeredBackgroundReadMinDelay() throws Exception {
+        DocumentNodeStore ns = builderProvider.newBuilder()
+                .setAsyncDelay(0).getNodeStore();
+        DocumentNodeStore.BackgroundReadOperation op =
+                new DocumentNodeStore.BackgroundReadOperation(ns, new AtomicBoolean(), 200);
+
+        // triggered during or right after a run
+        op.trigger();
+        long start = System.currentTimeMillis();
+        op.await(60 * 1000);
+        long time = System.currentTimeMillis() - start;
+        assertTrue("time: " + time, time >= 200 && time < 30 * 1000);
+
+        // triggered while waiting
+        start = System.currentTimeMillis();
+        new Thread(op::trigger).start();
+        op.await(60 * 1000);
+        time = System.currentTimeMillis() - start;
+        assertTrue("time: " + time, time >= 200 && time < 30 * 1000);
+    }
+
     private CommitHook newCollectingHook(){
         return new EditorHook(new ChangeCollectorProvider());
     }
@@ -288,6 +354,68 @@ public class ExternalChangesTest {
         final Set<String> values = Sets.newHashSet();
     }
 
+    /**
+     * An in-memory stand-in for a document store with change notifications.
+     */
+    private static class NotifyingMemoryDocumentStore
+            extends MemoryDocumentStore implements DocumentStoreChangeNotifier {
+
+        private final String rootId = Utils.getIdFromPath(Path.ROOT);
+
+        final AtomicInteger notifications = new AtomicInteger();
+
+        volatile int clusterId;
+
+        volatile Runnable listener;
+
+        @Override
+        public void setChangeListener(int clusterId, @Nullable Runnable listener) {
+            this.clusterId = clusterId;
+            this.listener = listener;
+        }
+
+        @Override
+        public <T extends Document> T findAndUpdate(Collection<T> collection,
+                                                    UpdateOp update) {
+            T doc = super.findAndUpdate(collection, update);
+            if (collection == Collection.NODES && rootId.equals(update.getId())) {
+                // only _lastRev updates of other cluster nodes
+                for (UpdateOp.Key k : update.getChanges().keySet()) {
+                    if ("_lastRev".equals(k.getName())
+                            && k.getRevision().getClusterId() != clusterId) {
+                        changed();
+                        break;
+                    }
+                }
+            }
+            return doc;
+        }
+
+        @Override
+        public <T extends Document> boolean create(Collection<T> collection,
+                                                   List<UpdateOp> updateOps) {
+            boolean success = super.create(collection, updateOps);
+            if (collection == Collection.JOURNAL) {
+                // only journal entries of other cluster nodes
+                for (UpdateOp op : updateOps) {
+                    if (!op.getId().matches("b?" + clusterId + "-.*")) {
+                        changed();
+                        break;
+                    }
+                }
+            }
+            return success;
+        }
+
+        private void changed() {
+            notifications.incrementAndGet();
+            Runnable l = listener;
+            if (l != null) {
+                l.run();
+            }
+        }
+    }
+
     private static class TestJournalBuilder implements JournalPropertyBuilder<TestProperty>{
         final CumulativeTestProperty allProps = new CumulativeTestProperty();
 
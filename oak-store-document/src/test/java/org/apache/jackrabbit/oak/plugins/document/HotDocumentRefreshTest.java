@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.plugins.document.cache.CacheInvalidationStats;
+import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.util.Utils;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the refresh of frequently read documents in the background read.
+ */
+public class HotDocumentRefreshTest {
+
+    @Rule
+    public final DocumentMKBuilderProvider builderProvider = new DocumentMKBuilderProvider();
+
+    @Test
+    public void refreshAfterExternalChange() throws Exception {
+        MemoryDocumentStore memStore = new MemoryDocumentStore();
+        InvalidatingStore store = new InvalidatingStore(memStore);
+        DocumentNodeStore ns1 = builderProvider.newBuilder().setAsyncDelay(0)
+                .setDocumentStore(memStore).setClusterId(1).getNodeStore();
+        DocumentNodeStore ns2;
+        System.setProperty("oak.documentMK.hotDocumentRefreshCount", "10");
+        try {
+            ns2 = builderProvider.newBuilder().setAsyncDelay(0)
+                    .setDocumentStore(store).setClusterId(2).getNodeStore();
+        } finally {
+            System.clearProperty("oak.documentMK.hotDocumentRefreshCount");
+        }
+
+        NodeBuilder b = ns1.getRoot().builder();
+        b.child("hot");
+        b.child("cold");
+        ns1.merge(b, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        ns1.runBackgroundOperations();
+        // ns2 reads both documents once when it sees the external change
+        ns2.runBackgroundOperations();
+
+        Path hot = Path.fromString("/hot");
+        String hotId = Utils.getIdFromPath(hot);
+        for (int i = 0; i < 3; i++) {
+            ns2.readNode(hot, ns2.getHeadRevision());
+        }
+
+        b = ns1.getRoot().builder();
+        b.child("hot").setProperty("p", 1);
+        b.child("cold").setProperty("p", 1);
+        ns1.merge(b, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        ns1.runBackgroundOperations();
+
+        store.finds.clear();
+        store.misses.clear();
+        ns2.runBackgroundReadOperations();
+        // both were invalidated, but only the hot document is looked up
+        // and read again before the new head revision becomes visible
+        assertEquals(Collections.singletonList(hotId), store.misses);
+        assertEquals(hotId, store.finds.get(0));
+        assertEquals(1L, ns2.getRoot().getChildNode("hot").getProperty("p").getValue(Type.LONG).longValue());
+    }
+
+    /**
+     * A document store wrapper that keeps track of the invalidated documents
+     * as if it had a cache.
+     */
+    private static class InvalidatingStore extends DocumentStoreWrapper {
+
+        final Set<String> invalidated = ConcurrentHashMap.newKeySet();
+
+        final List<String> finds = new CopyOnWriteArrayList<>();
+
+        final List<String> misses = new CopyOnWriteArrayList<>();
+
+        InvalidatingStore(DocumentStore store) {
+            super(store);
+        }
+
+        @Override
+        public <T extends Document> T find(Collection<T> collection, String key) {
+            if (collection == Collection.NODES) {
+                finds.add(key);
+                invalidated.remove(key);
+            }
+            return super.find(collection, key);
+        }
+
+        @Override
+        public <T extends Document> T getIfCached(Collection<T> collection, String key) {
+            if (collection == Collection.NODES && invalidated.contains(key)) {
+                misses.add(key);
+                return null;
+            }
+            // not recorded as a find
+            return super.find(collection, key);
+        }
+
+        @Override
+        public CacheInvalidationStats invalidateCache(Iterable<String> keys) {
+            keys.forEach(invalidated::add);
+            return super.invalidateCache(keys);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HotDocumentTrackerTest {
+
+    @Test
+    public void hotDocuments() {
+        HotDocumentTracker tracker = new HotDocumentTracker(100);
+        record(tracker, "1:/a", 10);
+        record(tracker, "1:/b", 5);
+        record(tracker, "1:/c", 1);
+        List<String> hot = tracker.hotDocuments(2, 2);
+        assertEquals(asList("1:/a", "1:/b"), hot);
+        // counts are halved: a=5, b=3, c=1 -> 1
+        assertEquals(asList("1:/a", "1:/b"), tracker.hotDocuments(10, 2));
+        // a=3, b=2, c=0 -> removed
+        assertEquals(2, tracker.size());
+    }
+
+    @Test
+    public void decay() {
+        HotDocumentTracker tracker = new HotDocumentTracker(100);
+        record(tracker, "1:/a", 8);
+        for (int i = 0; i < 4; i++) {
+            tracker.hotDocuments(10, 1);
+        }
+        assertEquals(0, tracker.size());
+        assertTrue(tracker.hotDocuments(10, 1).isEmpty());
+    }
+
+    @Test
+    public void maxTracked() {
+        HotDocumentTracker tracker = new HotDocumentTracker(2);
+        record(tracker, "1:/a", 1);
+        record(tracker, "1:/b", 1);
+        record(tracker, "1:/c", 3);
+        assertEquals(2, tracker.size());
+        assertEquals(2, tracker.hotDocuments(10, 1).size());
+    }
+
+    private static void record(HotDocumentTracker tracker, String id, int times) {
+        for (int i = 0; i < times; i++) {
+            tracker.record(id);
+        }
+    }
+}
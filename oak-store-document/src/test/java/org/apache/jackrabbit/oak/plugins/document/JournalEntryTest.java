@@ -22,7 +22,10 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.jackrabbit.guava.common.collect.Lists;
 import org.apache.jackrabbit.guava.common.collect.Sets;
@@ -70,6 +73,55 @@ public class JournalEntryTest {
         sort.close();
     }
 
+    @Test
+    public void applyToPrecomputed() throws Exception {
+        DiffCache expected = new MemoryDiffCache(new DocumentMK.Builder());
+        DiffCache cache = new MemoryDiffCache(new DocumentMK.Builder());
+        // enough changed parents for four tasks with at least
+        // PrecomputedDiff.MIN_CHANGES_PER_TASK changes each
+        List<Path> paths = Lists.newArrayList();
+        for (int i = 0; i < 50; i++) {
+            for (int j = 0; j < 100; j++) {
+                paths.add(Path.fromString("/n" + i + "/m" + j + "/c"));
+            }
+        }
+        StringSort sort = JournalEntry.newSorter();
+        add(sort, paths);
+        RevisionVector from = new RevisionVector(new Revision(1, 0, 1));
+        RevisionVector to = new RevisionVector(new Revision(2, 0, 1));
+        sort.sort();
+        JournalEntry.applyTo(sort, expected, Path.ROOT, from, to);
+
+        PrecomputedDiff diff = new PrecomputedDiff();
+        JournalEntry.applyTo(sort, diff, Path.ROOT);
+        assertTrue(diff.size() >= 4000);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        AtomicInteger tasks = new AtomicInteger();
+        try {
+            diff.applyTo(cache.newEntry(from, to, false), command -> {
+                tasks.incrementAndGet();
+                executor.execute(command);
+            }, 4);
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(4, tasks.get());
+
+        // same result as the sequential diff, for the changed
+        // nodes and all their ancestors
+        Set<Path> all = Sets.newHashSet();
+        for (Path p : paths) {
+            for (; p != null; p = p.getParent()) {
+                all.add(p);
+            }
+        }
+        for (Path p : all) {
+            assertEquals(p.toString(), expected.getChanges(from, to, p, null),
+                    cache.getChanges(from, to, p, null));
+        }
+        sort.close();
+    }
+
     @Test
     public void applyToWithPath() throws Exception {
         DiffCache cache = new MemoryDiffCache(new DocumentMK.Builder());
@@ -353,6 +405,36 @@ public class JournalEntryTest {
         sort.close();
     }
 
+    @Test
+    public void compressedChanges() throws Exception {
+        List<String> paths = Lists.newArrayList("/", "/bar", "/bar/a", "/foo",
+                "/foo-bar", "/foo/a", "/foo/b", "/foo/c", "/\u00e4/\u00f6");
+        String encoded = JournalChangesCodec.encode(paths);
+        List<String> decoded = Lists.newArrayList();
+        JournalChangesCodec.decode(encoded, decoded::add);
+        assertEquals(paths, decoded);
+
+        // read an entry in the compressed format
+        DocumentStore store = new MemoryDocumentStore();
+        JournalEntry entry = JOURNAL.newDocument(store);
+        entry.put("_cc", encoded);
+        assertTrue(entry.containsModified(Path.ROOT));
+        assertTrue(entry.containsModified(p("/foo/b")));
+        assertFalse(entry.containsModified(p("/bar/b")));
+
+        entry = JOURNAL.newDocument(store);
+        entry.put("_cc", encoded);
+        StringSort sort = JournalEntry.newSorter();
+        entry.addTo(sort, p("/foo"));
+        assertEquals(4, sort.getSize());
+        sort.close();
+
+        sort = JournalEntry.newSorter();
+        entry.addTo(sort, Path.ROOT);
+        assertEquals(paths.size(), sort.getSize());
+        sort.close();
+    }
+
     @Test
     public void countUpdatedPaths() {
         DocumentStore store = new MemoryDocumentStore();
@@ -22,10 +22,12 @@ package org.apache.jackrabbit.oak.plugins.document;
 import org.apache.jackrabbit.guava.common.collect.Iterables;
 
 import org.apache.jackrabbit.oak.api.CommitFailedException;
+import org.apache.jackrabbit.oak.api.Type;
 import org.apache.jackrabbit.oak.plugins.document.util.Utils;
 import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
 import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
 import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
 import org.junit.Test;
 
 import static org.apache.jackrabbit.oak.plugins.document.Collection.NODES;
@@ -87,6 +89,48 @@ public class LastRevRecoveryAgentTest extends AbstractTwoNodeTest {
         disposeQuietly(ds2);
     }
 
+    @Test
+    public void parallelRecovery() throws Exception {
+        int numChildren = LastRevRecoveryAgent.RECOVERY_CHUNK_SIZE * 2 + 10;
+        NodeBuilder b1 = ds1.getRoot().builder();
+        NodeBuilder x = b1.child("x");
+        for (int i = 0; i < numChildren; i++) {
+            x.child("c-" + i);
+        }
+        merge(ds1, b1);
+        ds1.runBackgroundOperations();
+        ds2.runBackgroundOperations();
+
+        NodeBuilder b2 = ds2.getRoot().builder();
+        x = b2.child("x");
+        for (int i = 0; i < numChildren; i++) {
+            x.child("c-" + i).setProperty("p", i);
+        }
+        merge(ds2, b2);
+        Revision lastRev2 = ds2.getHeadRevision().getRevision(c2Id);
+
+        long leaseTime = ds1.getClusterInfo().getLeaseTime();
+        ds1.runBackgroundOperations();
+        clock.waitUntil(clock.getTime() + leaseTime + 10);
+        ds1.getClusterInfo().renewLease();
+
+        LastRevRecoveryAgent agent = ds1.getLastRevRecoveryAgent();
+        agent.setParallelism(4);
+        assertTrue(agent.isRecoveryNeeded());
+        // candidates span multiple chunks, but only the parents need an update
+        assertEquals(2, agent.recover(c2Id));
+        assertEquals(lastRev2, getDocument(ds1, "/x").getLastRev().get(c2Id));
+        assertEquals(lastRev2, getDocument(ds1, "/").getLastRev().get(c2Id));
+
+        ds1.runBackgroundOperations();
+        NodeState xState = ds1.getRoot().getChildNode("x");
+        for (int i = 0; i < numChildren; i += 97) {
+            assertEquals(i, xState.getChildNode("c-" + i).getProperty("p").getValue(Type.LONG).intValue());
+        }
+
+        disposeQuietly(ds2);
+    }
+
     //OAK-5337
     @Test
     public void testSelfRecovery() throws Exception{
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import static org.apache.jackrabbit.oak.plugins.document.StableRevisionComparator.REVERSE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class PackedRevisionMapTest {
+
+    @Test
+    public void sameAsTreeMap() {
+        assertSameAsTreeMap(REVERSE);
+    }
+
+    @Test
+    public void sameAsTreeMapAscending() {
+        assertSameAsTreeMap(StableRevisionComparator.INSTANCE);
+    }
+
+    private static void assertSameAsTreeMap(Comparator<Revision> comparator) {
+        Random r = new Random(42);
+        TreeMap<Revision, String> map = new TreeMap<>(comparator);
+        List<Revision> probes = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Revision rev = new Revision(1000 + r.nextInt(100), r.nextInt(3),
+                    1 + r.nextInt(3), r.nextBoolean());
+            if (r.nextBoolean()) {
+                map.put(rev, r.nextBoolean() ? "v" + i : null);
+            }
+            probes.add(rev);
+        }
+        PackedRevisionMap packed = PackedRevisionMap.pack(map);
+        assertNotNull(packed);
+        assertEquals(map, packed);
+        assertEquals(new ArrayList<>(map.entrySet()), new ArrayList<>(packed.entrySet()));
+        assertEquals(map.firstKey(), packed.firstKey());
+        assertEquals(map.lastKey(), packed.lastKey());
+        assertEquals(map.descendingMap(), packed.descendingMap());
+        for (Revision p : probes) {
+            assertEquals(map.containsKey(p), packed.containsKey(p));
+            assertEquals(map.get(p), packed.get(p));
+            assertEquals(map.lowerKey(p), packed.lowerKey(p));
+            assertEquals(map.floorKey(p), packed.floorKey(p));
+            assertEquals(map.ceilingKey(p), packed.ceilingKey(p));
+            assertEquals(map.higherKey(p), packed.higherKey(p));
+            assertSameEntries(map.headMap(p), packed.headMap(p));
+            assertSameEntries(map.headMap(p, true), packed.headMap(p, true));
+            assertSameEntries(map.tailMap(p), packed.tailMap(p));
+            assertSameEntries(map.tailMap(p, false), packed.tailMap(p, false));
+            NavigableMap<Revision, String> head = map.headMap(p, true);
+            NavigableMap<Revision, String> packedHead = packed.headMap(p, true);
+            for (Revision q : probes) {
+                assertEquals(head.get(q), packedHead.get(q));
+                if (comparator.compare(q, p) <= 0) {
+                    assertSameEntries(map.subMap(q, true, p, false),
+                            packed.subMap(q, true, p, false));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void packOnlyRevisionsAndStrings() {
+        TreeMap<Revision, Object> map = new TreeMap<>(REVERSE);
+        map.put(Revision.newRevision(1), "foo");
+        assertNotNull(PackedRevisionMap.pack(map));
+        map.put(Revision.newRevision(1), 42L);
+        assertNull(PackedRevisionMap.pack(map));
+        assertNull(PackedRevisionMap.pack(new TreeMap<String, String>()));
+        // only maps sorted with the stable revision comparator
+        TreeMap<Revision, String> other = new TreeMap<>(Revision::compareRevisionTime);
+        other.put(Revision.newRevision(1), "foo");
+        assertNull(PackedRevisionMap.pack(other));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void immutable() {
+        TreeMap<Revision, String> map = new TreeMap<>(REVERSE);
+        map.put(Revision.newRevision(1), "foo");
+        PackedRevisionMap.pack(map).put(Revision.newRevision(1), "bar");
+    }
+
+    private static void assertSameEntries(SortedMap<Revision, String> expected,
+                                          SortedMap<Revision, String> actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(actual.entrySet()));
+    }
+}
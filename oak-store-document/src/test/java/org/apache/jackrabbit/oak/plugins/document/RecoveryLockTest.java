@@ -118,6 +118,18 @@ public class RecoveryLockTest {
         assertNull(c.get(ClusterNodeInfo.LEASE_END_KEY));
     }
 
+    @Test
+    public void recoveryProgress() throws Exception {
+        clock.waitUntil(info1.getLeaseEndTime() + DEFAULT_LEASE_UPDATE_INTERVAL_MILLIS);
+        assertFalse(lock1.updateProgress(2, 10));
+        assertTrue(lock1.acquireRecoveryLock(2));
+        assertFalse(lock1.updateProgress(3, 10));
+        assertTrue(lock1.updateProgress(2, 10));
+        assertEquals(Long.valueOf(10), infoDocument(1).getRecoveryProgress());
+        lock1.releaseRecoveryLock(true);
+        assertNull(infoDocument(1).getRecoveryProgress());
+    }
+
     @Test
     public void unsuccessfulRecovery() throws Exception {
         clock.waitUntil(info1.getLeaseEndTime() + DEFAULT_LEASE_UPDATE_INTERVAL_MILLIS);
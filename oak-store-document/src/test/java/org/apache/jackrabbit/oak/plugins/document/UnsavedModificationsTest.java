@@ -16,13 +16,25 @@
  */
 package org.apache.jackrabbit.oak.plugins.document;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+
 import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.util.Utils;
 import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
 import org.junit.Rule;
 import org.junit.Test;
 
 import static org.apache.jackrabbit.oak.plugins.document.TestUtils.merge;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 public class UnsavedModificationsTest {
 
@@ -41,4 +53,78 @@ public class UnsavedModificationsTest {
         ns.runBackgroundUpdateOperations();
         assertEquals(0, store.getNumFindCalls(Collection.CLUSTER_NODES));
     }
+
+    @Test
+    public void persistInParallel() throws Exception {
+        List<Path> written = Collections.synchronizedList(new ArrayList<>());
+        Map<Path, String> threads = new ConcurrentHashMap<>();
+        MemoryDocumentStore store = new MemoryDocumentStore() {
+            @Override
+            public <T extends Document> List<T> createOrUpdate(Collection<T> collection,
+                                                               List<UpdateOp> updateOps) {
+                if (collection == Collection.NODES) {
+                    for (UpdateOp op : updateOps) {
+                        Path p = Path.fromString(Utils.getPathFromId(op.getId()));
+                        written.add(p);
+                        threads.put(p, Thread.currentThread().getName());
+                    }
+                }
+                return super.createOrUpdate(collection, updateOps);
+            }
+        };
+        DocumentNodeStore ns = builderProvider.newBuilder()
+                .setDocumentStore(store).setAsyncDelay(0).getNodeStore();
+        // 4 nodes with 10 subtrees of 21 nodes each
+        List<Path> paths = new ArrayList<>();
+        NodeBuilder builder = ns.getRoot().builder();
+        for (int i = 0; i < 4; i++) {
+            NodeBuilder p = builder.child("p" + i);
+            paths.add(Path.fromString("/p" + i));
+            for (int j = 0; j < 10; j++) {
+                NodeBuilder c = p.child("c" + j);
+                paths.add(Path.fromString("/p" + i + "/c" + j));
+                for (int k = 0; k < 20; k++) {
+                    c.child("g" + k);
+                    paths.add(Path.fromString("/p" + i + "/c" + j + "/g" + k));
+                }
+            }
+        }
+        merge(ns, builder);
+        ns.runBackgroundOperations();
+        written.clear();
+
+        UnsavedModifications mods = new UnsavedModifications();
+        Revision r = ns.newRevision();
+        for (Path p : paths) {
+            mods.put(p, r);
+        }
+        mods.put(Path.ROOT, r);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            BackgroundWriteStats stats = mods.persist(store, () -> null,
+                    UnsavedModifications.Snapshot.IGNORE, new ReentrantLock(),
+                    executor, 4);
+            assertEquals(4, stats.shards);
+            assertEquals(210, stats.maxShardSize);
+            // 3 batches per shard, one for the 4 top level nodes, and the root
+            assertEquals(14, stats.calls);
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(mods.getPaths().isEmpty());
+        for (Path p : paths) {
+            NodeDocument doc = store.find(Collection.NODES, Utils.getIdFromPath(p));
+            assertNotNull(doc);
+            assertEquals(r, doc.getLastRev().get(r.getClusterId()));
+            if (p.getDepth() == 3) {
+                // a subtree is written by one shard
+                assertEquals(threads.get(p.getParent()), threads.get(p));
+            }
+            // descendants are written before their ancestors
+            if (!p.getParent().isRoot()) {
+                assertTrue(p.toString(), written.indexOf(p) < written.indexOf(p.getParent()));
+            }
+        }
+        assertEquals(r, Utils.getRootDocument(store).getLastRev().get(r.getClusterId()));
+    }
 }
@@ -216,6 +216,48 @@ public class VersionGCDeletionTest {
         }
     }
 
+    @Test
+    public void deleteInParallel() throws Exception{
+        int noOfDocsToDelete = 1000;
+        DocumentStore ts = new MemoryDocumentStore();
+        store = new DocumentMK.Builder()
+                .clock(clock)
+                .setLeaseCheckMode(LeaseCheckMode.LENIENT)
+                .setDocumentStore(ts)
+                .setAsyncDelay(0)
+                .getNodeStore();
+
+        // spread the modifications over time
+        for (int i = 0; i < noOfDocsToDelete; i += 100) {
+            NodeBuilder b1 = store.getRoot().builder();
+            for (int j = i; j < i + 100; j++) {
+                b1.child("a" + j).child("b" + j);
+            }
+            store.merge(b1, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+            NodeBuilder b2 = store.getRoot().builder();
+            for (int j = i; j < i + 100; j++) {
+                b2.child("a" + j).remove();
+            }
+            store.merge(b2, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+            clock.waitUntil(clock.getTime() + TimeUnit.MINUTES.toMillis(1));
+        }
+        store.runBackgroundOperations();
+
+        long maxAge = 1; //hours
+        clock.waitUntil(clock.getTime() + HOURS.toMillis(maxAge * 2));
+        VersionGarbageCollector gc = store.getVersionGarbageCollector();
+        gc.setOptions(gc.getOptions().withParallelism(4));
+
+        VersionGCStats stats = gc.gc(maxAge, HOURS);
+        assertEquals(noOfDocsToDelete * 2, stats.deletedDocGCCount);
+        assertEquals(noOfDocsToDelete, stats.deletedLeafDocGCCount);
+
+        for (int i = 0; i < noOfDocsToDelete; i++){
+            assertNull(ts.find(Collection.NODES, "2:/a"+i+"/b"+i));
+            assertNull(ts.find(Collection.NODES, "1:/a"+i));
+        }
+    }
+
     @Test
     public void gcWithPathsHavingNewLine() throws Exception{
         int noOfDocsToDelete = 200;
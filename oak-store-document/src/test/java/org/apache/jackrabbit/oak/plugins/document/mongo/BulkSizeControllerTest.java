@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.mongo;
+
+import org.junit.Test;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.apache.jackrabbit.oak.plugins.document.mongo.BulkSizeController.MIN_SIZE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BulkSizeControllerTest {
+
+    private static final long MAX_BYTES = 1024 * 1024;
+
+    @Test
+    public void fixedSize() {
+        BulkSizeController c = new BulkSizeController(30, false, 1000, 100, MAX_BYTES);
+        c.bulkDone(30, 3000, 0, MILLISECONDS.toNanos(1));
+        c.bulkDone(30, 3000, 20, MILLISECONDS.toNanos(1000));
+        assertEquals(30, c.getSize());
+        assertEquals(2, c.getBulkCount());
+        assertEquals(20, c.getConflictCount());
+        assertEquals(1001, c.getBulkTime(MILLISECONDS));
+    }
+
+    @Test
+    public void growWhenFast() {
+        BulkSizeController c = new BulkSizeController(30, true, 1000, 100, MAX_BYTES);
+        for (int i = 0; i < 100; i++) {
+            c.bulkDone(c.getSize(), c.getSize() * 100L, 0, MILLISECONDS.toNanos(10));
+        }
+        assertEquals(1000, c.getSize());
+    }
+
+    @Test
+    public void doNotGrowWhenNotFull() {
+        BulkSizeController c = new BulkSizeController(30, true, 1000, 100, MAX_BYTES);
+        c.bulkDone(10, 1000, 0, MILLISECONDS.toNanos(10));
+        assertEquals(30, c.getSize());
+    }
+
+    @Test
+    public void shrinkWhenSlow() {
+        BulkSizeController c = new BulkSizeController(100, true, 1000, 100, MAX_BYTES);
+        c.bulkDone(100, 10000, 0, MILLISECONDS.toNanos(400));
+        assertEquals(25, c.getSize());
+        for (int i = 0; i < 10; i++) {
+            c.bulkDone(c.getSize(), 1000, 0, MILLISECONDS.toNanos(1000));
+        }
+        assertEquals(MIN_SIZE, c.getSize());
+    }
+
+    @Test
+    public void shrinkOnConflicts() {
+        BulkSizeController c = new BulkSizeController(100, true, 1000, 100, MAX_BYTES);
+        c.bulkDone(100, 10000, 5, MILLISECONDS.toNanos(10));
+        assertTrue(c.getSize() > 100);
+        int size = c.getSize();
+        c.bulkDone(size, 10000, size / 2, MILLISECONDS.toNanos(10));
+        assertEquals(size / 2, c.getSize());
+    }
+
+    @Test
+    public void limitByBytes() {
+        BulkSizeController c = new BulkSizeController(100, true, 1000, 100, MAX_BYTES);
+        // 64 kB per update
+        c.bulkDone(100, 100 * 64 * 1024, 0, MILLISECONDS.toNanos(10));
+        assertEquals(16, c.getSize());
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.mongo;
+
+import java.util.regex.Pattern;
+
+import com.mongodb.client.model.changestream.UpdateDescription;
+
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.junit.Test;
+
+import static org.apache.jackrabbit.oak.plugins.document.mongo.MongoChangeStreamWatcher.getJournalIdPattern;
+import static org.apache.jackrabbit.oak.plugins.document.mongo.MongoChangeStreamWatcher.isExternalLastRevUpdate;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MongoChangeStreamWatcherTest {
+
+    @Test
+    public void journalIdPattern() {
+        Pattern p = Pattern.compile(getJournalIdPattern(1));
+        assertTrue(p.matcher("1-0000017f4a3c2b10-00000000").find());
+        assertTrue(p.matcher("b1-0000017f4a3c2b10-00000000").find());
+        assertFalse(p.matcher("2-0000017f4a3c2b10-00000000").find());
+        assertFalse(p.matcher("11-0000017f4a3c2b10-00000000").find());
+        assertFalse(p.matcher("b11-0000017f4a3c2b10-00000000").find());
+    }
+
+    @Test
+    public void externalLastRevUpdate() {
+        // _lastRev of this cluster node
+        BsonDocument fields = new BsonDocument("_lastRev.r0-0-1", new BsonString("r17f4a3c2b1-0-1"))
+                .append("_modified", new BsonString("1234"));
+        assertFalse(isExternalLastRevUpdate(new UpdateDescription(null, fields), 1));
+        assertTrue(isExternalLastRevUpdate(new UpdateDescription(null, fields), 2));
+
+        // a commit without _lastRev update
+        fields = new BsonDocument("_revisions.r17f4a3c2b1-0-2", new BsonString("c"));
+        assertFalse(isExternalLastRevUpdate(new UpdateDescription(null, fields), 1));
+
+        // _lastRev of another cluster node, updated together with the one of this node
+        fields = new BsonDocument("_lastRev.r0-0-1", new BsonString("r17f4a3c2b1-0-1"))
+                .append("_lastRev.r0-0-a", new BsonString("r17f4a3c2b1-0-a"));
+        assertTrue(isExternalLastRevUpdate(new UpdateDescription(null, fields), 1));
+
+        // replacement of the document
+        assertTrue(isExternalLastRevUpdate(null, 1));
+    }
+}
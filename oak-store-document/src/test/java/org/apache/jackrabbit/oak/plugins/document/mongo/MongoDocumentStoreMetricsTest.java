@@ -81,6 +81,8 @@ public class MongoDocumentStoreMetricsTest extends AbstractMongoConnectionTest {
 
             metrics.run();
             assertEquals(11, getCount("MongoDB.nodes.count"));
+
+            assertEquals(30, getCount("MongoDB.DocumentStore.bulkSize"));
         } finally {
             store.dispose();
         }
@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.mongo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoDatabase;
+
+import org.apache.jackrabbit.oak.plugins.document.Collection;
+import org.apache.jackrabbit.oak.plugins.document.Document;
+import org.apache.jackrabbit.oak.plugins.document.DocumentMK;
+import org.apache.jackrabbit.oak.plugins.document.DocumentStoreException;
+import org.apache.jackrabbit.oak.plugins.document.MongoUtils;
+import org.apache.jackrabbit.oak.plugins.document.NodeDocument;
+import org.apache.jackrabbit.oak.plugins.document.UpdateOp;
+import org.apache.jackrabbit.oak.plugins.document.util.Utils;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static java.util.Collections.singletonList;
+import static org.apache.jackrabbit.oak.plugins.document.Collection.NODES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the coalescing of concurrent reads of the same document in
+ * {@link MongoDocumentStore}.
+ */
+public class MongoReadCoalescingTest {
+
+    private static final int NUM_WAITING = 4;
+
+    private final String id = Utils.getIdFromPath("/foo");
+
+    private MongoTestClient client;
+
+    private BlockingStore store;
+
+    private ExecutorService executor;
+
+    @BeforeClass
+    public static void checkMongoAvailable() {
+        Assume.assumeTrue(MongoUtils.isAvailable());
+    }
+
+    @Before
+    public void before() {
+        MongoUtils.dropCollections(MongoUtils.DB);
+        client = new MongoTestClient(MongoUtils.URL);
+        store = new BlockingStore(client, client.getDatabase(MongoUtils.DB));
+        assertTrue(store.create(NODES, singletonList(new UpdateOp(id, true))));
+        store.invalidateCache(NODES, id);
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void after() {
+        executor.shutdownNow();
+        store.dispose();
+        MongoUtils.dropCollections(MongoUtils.DB);
+    }
+
+    @Test
+    public void concurrentFind() throws Exception {
+        long coalesced = store.getCoalescedReads();
+        List<Future<NodeDocument>> finds = startFinds();
+        store.proceed.countDown();
+        for (Future<NodeDocument> f : finds) {
+            NodeDocument doc = f.get(10, TimeUnit.SECONDS);
+            assertNotNull(doc);
+            assertEquals(id, doc.getId());
+        }
+        assertEquals(1, store.reads.get());
+        assertEquals(coalesced + NUM_WAITING, store.getCoalescedReads());
+    }
+
+    @Test
+    public void failedFind() throws Exception {
+        store.fail = true;
+        List<Future<NodeDocument>> finds = startFinds();
+        store.proceed.countDown();
+        for (Future<NodeDocument> f : finds) {
+            try {
+                f.get(10, TimeUnit.SECONDS);
+                fail("DocumentStoreException expected");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause().toString(), e.getCause() instanceof DocumentStoreException);
+                assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains("read failed"));
+            }
+        }
+        // the failed read is not used for the next find
+        store.fail = false;
+        int reads = store.reads.get();
+        long coalesced = store.getCoalescedReads();
+        NodeDocument doc = store.find(NODES, id);
+        assertNotNull(doc);
+        assertEquals(reads + 1, store.reads.get());
+        assertEquals(coalesced, store.getCoalescedReads());
+    }
+
+    /**
+     * Starts a find that blocks while reading from MongoDB, and then finds
+     * of the same document that wait for it.
+     */
+    private List<Future<NodeDocument>> startFinds() throws Exception {
+        List<Future<NodeDocument>> finds = new ArrayList<>();
+        store.blocking = true;
+        finds.add(executor.submit(() -> store.find(NODES, id)));
+        assertTrue(store.entered.await(10, TimeUnit.SECONDS));
+        List<Thread> waiting = new ArrayList<>();
+        CountDownLatch started = new CountDownLatch(NUM_WAITING);
+        for (int i = 0; i < NUM_WAITING; i++) {
+            finds.add(executor.submit(() -> {
+                synchronized (waiting) {
+                    waiting.add(Thread.currentThread());
+                }
+                started.countDown();
+                return store.find(NODES, id);
+            }));
+        }
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        // wait until all of them wait for the read in progress
+        long end = System.currentTimeMillis() + 10 * 1000;
+        synchronized (waiting) {
+            for (Thread t : waiting) {
+                while (t.getState() != Thread.State.WAITING
+                        && System.currentTimeMillis() < end) {
+                    Thread.sleep(1);
+                }
+                assertEquals(Thread.State.WAITING, t.getState());
+            }
+        }
+        return finds;
+    }
+
+    private static class BlockingStore extends MongoDocumentStore {
+
+        final AtomicInteger reads = new AtomicInteger();
+
+        final CountDownLatch entered = new CountDownLatch(1);
+
+        final CountDownLatch proceed = new CountDownLatch(1);
+
+        volatile boolean blocking;
+
+        volatile boolean fail;
+
+        BlockingStore(MongoTestClient client, MongoDatabase db) {
+            super(client, db, new DocumentMK.Builder());
+        }
+
+        @Override
+        protected <T extends Document> T findUncached(Collection<T> collection,
+                                                      String key,
+                                                      DocumentReadPreference docReadPref) {
+            if (collection == NODES && blocking) {
+                reads.incrementAndGet();
+                entered.countDown();
+                try {
+                    proceed.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (fail) {
+                    throw new MongoException("read failed");
+                }
+            }
+            return super.findUncached(collection, key, docReadPref);
+        }
+    }
+}
@@ -20,13 +20,23 @@ package org.apache.jackrabbit.oak.plugins.document.persistentCache;
 
 import static org.junit.Assert.assertNull;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.net.Socket;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.zip.DeflaterOutputStream;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.jackrabbit.guava.common.cache.Cache;
@@ -148,6 +158,84 @@ public class BroadcastTest {
         broadcast("tcp:sendTo localhost;key 123", 80);
     }
 
+    @Test
+    public void broadcastTCPBatch() throws Exception {
+        String config = "sendTo localhost;key 123;ports 9870 9871;batch 5";
+        TCPBroadcaster b1 = new TCPBroadcaster(config);
+        TCPBroadcaster b2 = new TCPBroadcaster(config);
+        try {
+            final Set<String> received = Collections.synchronizedSet(new HashSet<String>());
+            b2.addListener(new Broadcaster.Listener() {
+                @Override
+                public void receive(ByteBuffer buff) {
+                    byte[] data = new byte[buff.remaining()];
+                    buff.get(data);
+                    received.add(new String(data, StandardCharsets.UTF_8));
+                }
+            });
+            // wait until the peers are connected
+            Assert.assertTrue(waitFor(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    b1.send(ByteBuffer.wrap("ping".getBytes(StandardCharsets.UTF_8)));
+                    return received.contains("ping");
+                }
+            }, 10000));
+            for (int i = 0; i < 100; i++) {
+                ByteBuffer m = ByteBuffer.wrap(("m" + i).getBytes(StandardCharsets.UTF_8));
+                b1.send(m.duplicate());
+                b1.send(m);
+            }
+            Assert.assertTrue(waitFor(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    for (int i = 0; i < 100; i++) {
+                        if (!received.contains("m" + i)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+            }, 10000));
+            Assert.assertTrue(b1.getCoalescedCount() > 0);
+            Assert.assertTrue(b1.getBatchCount() > 0);
+        } finally {
+            b1.close();
+            b2.close();
+        }
+    }
+
+    @Test
+    public void broadcastTCPMalformedBatch() throws Exception {
+        TCPBroadcaster b = new TCPBroadcaster("key 123;ports 9872 9872;batch 5");
+        final List<ByteBuffer> received = Collections.synchronizedList(new ArrayList<ByteBuffer>());
+        b.addListener(new Broadcaster.Listener() {
+            @Override
+            public void receive(ByteBuffer buff) {
+                received.add(buff);
+            }
+        });
+        try (Socket socket = new Socket("localhost", 9872)) {
+            socket.setSoTimeout(10000);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.write(MessageDigest.getInstance("SHA-256").digest("123".getBytes(StandardCharsets.UTF_8)));
+            // a batch with a message length larger than the batch
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream batch = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+                batch.writeInt(1000);
+                batch.writeShort(0);
+            }
+            out.writeInt(-bytes.size());
+            out.write(bytes.toByteArray());
+            out.flush();
+            // the connection is closed
+            Assert.assertEquals(-1, socket.getInputStream().read());
+            Assert.assertTrue(received.isEmpty());
+        } finally {
+            b.close();
+        }
+    }
+
     @Test
     public void broadcastInMemory() throws Exception {
         broadcast("inMemory", 100);
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.persistentCache;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.guava.common.cache.Cache;
+import org.apache.jackrabbit.oak.cache.CacheLIRS;
+import org.apache.jackrabbit.oak.plugins.document.Path;
+import org.apache.jackrabbit.oak.plugins.document.PathRev;
+import org.apache.jackrabbit.oak.plugins.document.Revision;
+import org.apache.jackrabbit.oak.plugins.document.RevisionVector;
+import org.apache.jackrabbit.oak.plugins.document.util.StringValue;
+import org.junit.Test;
+
+/**
+ * Compares the MVStore based persistent cache with the append-only log store.
+ */
+public class CacheStorePerformance {
+
+    private static final int ENTRIES = Integer.getInteger("entries", 200000);
+    private static final int READERS = Integer.getInteger("readers", 4);
+
+    @Test
+    public void mvStore() throws Exception {
+        run("size=64,-async");
+    }
+
+    @Test
+    public void logStore() throws Exception {
+        run("size=64,-async,store=log");
+    }
+
+    private static void run(String options) throws Exception {
+        File dir = new File("target/cacheStorePerformance");
+        FileUtils.deleteDirectory(dir);
+        PersistentCache pCache = new PersistentCache(dir.getPath() + "," + options);
+        try {
+            CacheLIRS<PathRev, StringValue> mem = new CacheLIRS.Builder<PathRev, StringValue>().
+                    maximumSize(1).build();
+            Cache<PathRev, StringValue> cache = pCache.wrap(null, null, mem, CacheType.DIFF);
+            String value = new String(new char[200]).replace('\0', 'x');
+
+            long time = System.nanoTime();
+            for (int i = 0; i < ENTRIES; i++) {
+                cache.put(key(i), new StringValue(value));
+            }
+            time = System.nanoTime() - time;
+            System.out.println(options + " put: " + TimeUnit.NANOSECONDS.toMillis(time) + " ms");
+
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < READERS; t++) {
+                final int seed = t;
+                threads.add(new Thread(() -> {
+                    Random r = new Random(seed);
+                    for (int i = 0; i < ENTRIES; i++) {
+                        cache.getIfPresent(key(r.nextInt(ENTRIES)));
+                    }
+                }));
+            }
+            time = System.nanoTime();
+            for (Thread t : threads) {
+                t.start();
+            }
+            for (Thread t : threads) {
+                t.join();
+            }
+            time = System.nanoTime() - time;
+            System.out.println(options + " get (" + READERS + " threads): " +
+                    TimeUnit.NANOSECONDS.toMillis(time) + " ms");
+        } finally {
+            pCache.close();
+        }
+    }
+
+    private static PathRev key(int i) {
+        return new PathRev(Path.fromString("/node-" + i),
+                new RevisionVector(new Revision(i, 0, 1)));
+    }
+}
@@ -20,10 +20,13 @@ package org.apache.jackrabbit.oak.plugins.document.persistentCache;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.Map;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.jackrabbit.guava.common.cache.Cache;
@@ -107,6 +110,147 @@ public class CacheTest {
         assertTrue(new File("target/cacheTest/cache-3.data").exists());
     }
 
+    @Test
+    public void logStore() throws Exception {
+        FileUtils.deleteDirectory(new File("target/cacheTest"));
+        PersistentCache cache = new PersistentCache("target/cacheTest,store=log");
+        try {
+            CacheMap<String, String> m1 = cache.openMap(0, "m1", null);
+            CacheMap<String, String> m2 = cache.openMap(0, "m2", null);
+            m1.put("a", "1");
+            m1.put("b", "2");
+            m2.put("a", "3");
+            m1.put("b", "4");
+            m1.remove("a");
+            assertFalse(m1.containsKey("a"));
+            assertEquals("4", m1.get("b"));
+            assertEquals("3", m2.get("a"));
+        } finally {
+            cache.close();
+        }
+        assertTrue(new File("target/cacheTest/cache-0.log").exists());
+        assertFalse(new File("target/cacheTest/cache-0.data").exists());
+
+        // re-open and read the entries back from the file
+        cache = new PersistentCache("target/cacheTest,store=log");
+        try {
+            CacheMap<String, String> m1 = cache.openMap(0, "m1", null);
+            CacheMap<String, String> m2 = cache.openMap(0, "m2", null);
+            assertFalse(m1.containsKey("a"));
+            assertEquals("4", m1.get("b"));
+            assertEquals("3", m2.get("a"));
+            m2.clear();
+            assertFalse(m2.containsKey("a"));
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void logStoreIncompleteRecord() throws Exception {
+        FileUtils.deleteDirectory(new File("target/cacheTest"));
+        PersistentCache cache = new PersistentCache("target/cacheTest,store=log");
+        try {
+            CacheMap<String, String> m = cache.openMap(0, "m", null);
+            m.put("a", "1");
+        } finally {
+            cache.close();
+        }
+        // simulate a partially written record
+        try (FileOutputStream out = new FileOutputStream("target/cacheTest/cache-0.log", true)) {
+            out.write(new byte[] { 0, 0, 0, 100, 1 });
+        }
+        cache = new PersistentCache("target/cacheTest,store=log");
+        try {
+            CacheMap<String, String> m = cache.openMap(0, "m", null);
+            assertEquals("1", m.get("a"));
+            m.put("b", "2");
+            assertEquals("2", m.get("b"));
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void logStoreTornRecord() throws Exception {
+        FileUtils.deleteDirectory(new File("target/cacheTest"));
+        File file = new File("target/cacheTest/cache-0.log");
+        PersistentCache cache = new PersistentCache("target/cacheTest,store=log");
+        try {
+            CacheMap<String, String> m = cache.openMap(0, "m", null);
+            m.put("a", "1");
+            m.put("b", "0123456789012345678901234567890123456789");
+        } finally {
+            cache.close();
+        }
+        // tear the last record
+        try (RandomAccessFile f = new RandomAccessFile(file, "rw")) {
+            f.setLength(f.length() - 3);
+        }
+        // append a shorter record where the torn record was
+        cache = new PersistentCache("target/cacheTest,store=log");
+        try {
+            CacheMap<String, String> m = cache.openMap(0, "m", null);
+            assertEquals("1", m.get("a"));
+            assertNull(m.get("b"));
+            m.put("c", "2");
+        } finally {
+            cache.close();
+        }
+        cache = new PersistentCache("target/cacheTest,store=log");
+        try {
+            CacheMap<String, String> m = cache.openMap(0, "m", null);
+            assertEquals("1", m.get("a"));
+            assertNull(m.get("b"));
+            assertEquals("2", m.get("c"));
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void logStoreCorruptRecord() throws Exception {
+        FileUtils.deleteDirectory(new File("target/cacheTest"));
+        File file = new File("target/cacheTest/cache-0.log");
+        PersistentCache cache = new PersistentCache("target/cacheTest,store=log");
+        try {
+            CacheMap<String, String> m = cache.openMap(0, "m", null);
+            m.put("a", "1");
+        } finally {
+            cache.close();
+        }
+        // a complete record of zeros, as left behind by a crash
+        // after the file was extended, but before the data was written
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(new byte[] { 0, 0, 0, 20 });
+            out.write(new byte[20]);
+        }
+        long length = file.length();
+        try (CacheLogFile log = new CacheLogFile(file, true)) {
+            Map<String, String> m = log.openMap("m", null);
+            assertEquals(1, m.size());
+        }
+        assertEquals(length, file.length());
+        try (CacheLogFile log = new CacheLogFile(file, false)) {
+            Map<String, String> m = log.openMap("m", null);
+            assertEquals(1, m.size());
+        }
+        assertEquals(length - 24, file.length());
+    }
+
+    @Test
+    public void logStoreEmptyReadOnlyFile() throws Exception {
+        FileUtils.deleteDirectory(new File("target/cacheTest"));
+        File file = new File("target/cacheTest/cache-0.log");
+        file.getParentFile().mkdirs();
+        assertTrue(file.createNewFile());
+        try (CacheLogFile log = new CacheLogFile(file, true)) {
+            Map<String, String> m = log.openMap("m", null);
+            assertTrue(m.isEmpty());
+            assertNull(m.get("a"));
+        }
+    }
+
     @Test
     @Ignore
     public void interrupt() throws Exception {
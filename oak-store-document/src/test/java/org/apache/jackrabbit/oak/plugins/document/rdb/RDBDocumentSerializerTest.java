@@ -231,4 +231,38 @@ public class RDBDocumentSerializerTest {
         } catch (DocumentStoreException expected) {
         }
     }
+
+    @Test
+    public void testBlobCodecs() {
+        String json = "{\"s\":\"string\", \"b\":true, \"i\":1}";
+        for (String name : new String[] { "none", "deflate", "lz4" }) {
+            RDBDocumentSerializer codecSer = new RDBDocumentSerializer(store, RDBBlobData.forName(name));
+            byte[] bytes = codecSer.asBytes(json);
+            assertEquals(0, bytes[0]);
+            // readable with and without the codec configured
+            for (RDBDocumentSerializer s : new RDBDocumentSerializer[] { codecSer, this.ser }) {
+                RDBRow row = new RDBRow("_foo", 0L, false, 1l, 2l, 3l, 0L, 0L, 0L,
+                        "\"blob\", [[\"=\", \"foo\", \"bar\"]]", bytes);
+                NodeDocument doc = s.fromRow(Collection.NODES, row);
+                assertEquals(name, "string", doc.get("s"));
+                assertEquals(name, Boolean.TRUE, doc.get("b"));
+                assertEquals(name, 1L, doc.get("i"));
+                assertEquals(name, "bar", doc.get("foo"));
+            }
+            // still reads the GZIP format
+            RDBRow row = new RDBRow("_foo", 0L, false, 1l, 2l, 3l, 0L, 0L, 0L, "\"blob\"", RDBDocumentStore.asBytes(json));
+            assertEquals(name, "string", codecSer.fromRow(Collection.NODES, row).get("s"));
+        }
+    }
+
+    @Test
+    public void testInvalidBlobCodec() {
+        try {
+            byte[] bytes = { 0, 99, 0, 0, 0, 2, '{', '}' };
+            RDBRow row = new RDBRow("_foo", 0L, false, 1l, 2l, 3l, 0L, 0L, 0L, "\"blob\"", bytes);
+            this.ser.fromRow(Collection.NODES, row);
+            fail("should fail");
+        } catch (DocumentStoreException expected) {
+        }
+    }
 }
@@ -58,6 +58,7 @@ import static org.apache.jackrabbit.oak.plugins.document.secondary.SecondaryStor
 import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -170,16 +171,17 @@ public class SecondaryStoreCacheTest {
 
         Collections.shuffle(revs);
         for (RevisionVector rev : revs){
-            AbstractDocumentNodeState result = SecondaryStoreCache.findMatchingRoot(rootsArr, rev);
-            assertNotNull(result);
-            assertEquals(rev, result.getRootRevision());
+            int index = SecondaryStoreCache.findFloorRoot(rootsArr, rev);
+            assertEquals(rev, rootsArr[index].getRootRevision());
         }
 
+        //A newer revision is not one of the roots, the latest root is the floor
         NodeBuilder nb = primary.getRoot().builder();
         create(nb, "/a/m");
         AbstractDocumentNodeState r = merge(nb);
-        AbstractDocumentNodeState result = SecondaryStoreCache.findMatchingRoot(rootsArr, r.getRootRevision());
-        assertNull(result);
+        int index = SecondaryStoreCache.findFloorRoot(rootsArr, r.getRootRevision());
+        assertEquals(rootsArr.length - 1, index);
+        assertNotEquals(r.getRootRevision(), rootsArr[index].getRootRevision());
 
     }
 
@@ -218,6 +220,67 @@ public class SecondaryStoreCacheTest {
         assertNull(result);
     }
 
+    @Test
+    public void readAtCoveredRevision() throws Exception{
+        PathFilter pathFilter = new PathFilter(of("/a"), empty);
+        SecondaryStoreCache cache = createBuilder(pathFilter).buildCache();
+        SecondaryStoreObserver observer = createBuilder(pathFilter).buildObserver(cache);
+
+        NodeBuilder nb = primary.getRoot().builder();
+        create(nb, "/a/b", "/a/c");
+        AbstractDocumentNodeState r0 = merge(nb);
+        observer.contentChanged(r0, CommitInfo.EMPTY);
+
+        //Change /a/b in r1, which is not observed, so r1 is never
+        //pushed to secondary. /a/c stays unmodified in r1
+        nb = primary.getRoot().builder();
+        nb.child("a").child("b").setProperty("foo", "1");
+        AbstractDocumentNodeState r1 = merge(nb);
+        AbstractDocumentNodeState a_b_1 = documentState(r1, "/a/b");
+        AbstractDocumentNodeState a_c_1 = documentState(r1, "/a/c");
+
+        nb = primary.getRoot().builder();
+        nb.child("a").child("b").setProperty("foo", "2");
+        nb.child("a").child("c").setProperty("foo", "bar");
+        AbstractDocumentNodeState r2 = merge(nb);
+        observer.contentChanged(r2, CommitInfo.EMPTY);
+
+        //r1 is neither head nor one of the previous roots, but /a/c
+        //is unmodified between r0 and r1
+        AbstractDocumentNodeState result = cache.getDocumentNodeState(Path.fromString("/a/c"),
+                r1.getRootRevision(), a_c_1.getLastRevision());
+        assertTrue(EqualsDiff.equals(a_c_1, result));
+
+        //State of /a/b at r1 was never pushed to secondary
+        assertNull(cache.getDocumentNodeState(Path.fromString("/a/b"),
+                r1.getRootRevision(), a_b_1.getLastRevision()));
+
+        assertEquals(1, cache.getCacheStats().getHitCount());
+        assertEquals(1, cache.getCacheStats().getMissCount());
+        assertEquals(0.5, cache.getCacheStats().getHitRate(), 0.001);
+    }
+
+    @Test
+    public void floorRoot() throws Exception{
+        List<AbstractDocumentNodeState> roots = Lists.newArrayList();
+        List<RevisionVector> between = Lists.newArrayList();
+        for (int i = 0; i < 10; i++) {
+            NodeBuilder nb = primary.getRoot().builder();
+            create(nb, "/a/b"+i);
+            if (i % 2 == 0) {
+                roots.add(merge(nb));
+            } else {
+                between.add(merge(nb).getRootRevision());
+            }
+        }
+
+        AbstractDocumentNodeState[] rootsArr = Iterables.toArray(roots, AbstractDocumentNodeState.class);
+        for (int i = 0; i < rootsArr.length; i++) {
+            assertEquals(i, SecondaryStoreCache.findFloorRoot(rootsArr, rootsArr[i].getRootRevision()));
+            assertEquals(i, SecondaryStoreCache.findFloorRoot(rootsArr, between.get(i)));
+        }
+    }
+
     @Test
     public void isCached() throws Exception{
         SecondaryStoreCache cache = createCache(new PathFilter(of("/a"), empty));